@@ -4,8 +4,10 @@ import fr.inserm.u1078.tludwig.maok.LineBuilder;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.Argument;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.CRAM;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.Function;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.FunctionFactory;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 
 import java.io.*;
 import java.net.URISyntaxException;
@@ -48,7 +50,13 @@ public class Main {
   public static final String KEY_VERBOSE = "--verbose";
   public static final String KEY_GZ = "--gz";
   public static final String KEY_PLUGIN = "--plugin";
-  public static final String[] ALLOWED_KEYS = {KEY_DEBUG, KEY_MONO_THREAD, KEY_VERBOSE, KEY_GZ, KEY_PLUGIN};
+  public static final String KEY_BATCH_SIZE = "--batchsize";
+  public static final String KEY_REORDER_WINDOW = "--reorderwindow";
+  public static final String KEY_THREADS = "--threads";
+  public static final String KEY_GZ_LEVEL = "--gzlevel";
+  public static final String KEY_SHARDS = "--shards";
+  public static final String KEY_CRAM_REFERENCE = "--cramref";
+  public static final String[] ALLOWED_KEYS = {KEY_DEBUG, KEY_MONO_THREAD, KEY_VERBOSE, KEY_GZ, KEY_PLUGIN, KEY_BATCH_SIZE, KEY_REORDER_WINDOW, KEY_THREADS, KEY_GZ_LEVEL, KEY_SHARDS, KEY_CRAM_REFERENCE};
 
   private static String[] args = null;
   private static final Date START = new Date();
@@ -165,6 +173,16 @@ public class Main {
     return targetDirectory;
   }
 
+  private static int getIntValue(String[] args, int i) {
+    if (i + 1 >= args.length)
+      throw new StartUpException("Option [" + args[i] + "] must be followed be an integer.");
+    try {
+      return Integer.parseInt(args[i + 1]);
+    } catch (NumberFormatException e) {
+      throw new StartUpException("Option [" + args[i] + "] must be followed be an integer. Invalid value {" + args[i + 1] + "}");
+    }
+  }
+
   private static void launchAllTestingScripts(String[] args) {
     Message.setVerboseActive(true);
     Message.setDebugActive(true);
@@ -246,6 +264,28 @@ public class Main {
         case KEY_MONO_THREAD:;
           Function.setMonoThread();
           break;
+        case KEY_BATCH_SIZE:
+          Function.setBatchSize(getIntValue(args, i));
+          break;
+        case KEY_REORDER_WINDOW:
+          Function.setReorderWindow(getIntValue(args, i));
+          break;
+        case KEY_GZ_LEVEL:
+          Function.setCompressionLevel(getIntValue(args, i));
+          break;
+        case KEY_SHARDS:
+          Function.setShards(getValueFromCommandLine(Arrays.copyOfRange(args, i, args.length), "shard size (" + Function.SHARD_BY_CONTIG + " or a length in bp)"));
+          break;
+        case KEY_CRAM_REFERENCE:
+          CRAM.setReference(getValueFromCommandLine(Arrays.copyOfRange(args, i, args.length), "reference fasta file"));
+          break;
+        case KEY_THREADS:
+          try {
+            ThreadConfiguration.parse(getValueFromCommandLine(Arrays.copyOfRange(args, i, args.length), "number of threads (N or readers:workers:consumers)"));
+          } catch (NumberFormatException e) {
+            throw new StartUpException("Invalid value for option [" + arg + "] : " + e.getMessage());
+          }
+          break;
       }
     }
 
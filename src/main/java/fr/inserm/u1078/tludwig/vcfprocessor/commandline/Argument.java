@@ -67,6 +67,8 @@ public class Argument {
       return FrequencyArguments.TYPE;
     if(argumentClass.equals(PropertyArguments.class))
       return PropertyArguments.TYPE;
+    if(argumentClass.equals(SAMArguments.class))
+      return SAMArguments.TYPE;
     return "Unknown Filter Type";
   }
 
@@ -92,7 +94,7 @@ public class Argument {
     sb.newLine("Here is the list of filters available to limit the variants, genotypes or samples taken into account.");
     sb.newLine();
     
-    Class<?>[] argClasses = new Class<?>[]{PositionArguments.class, SampleArguments.class, GenotypeArguments.class, FrequencyArguments.class, PropertyArguments.class};
+    Class<?>[] argClasses = new Class<?>[]{PositionArguments.class, SampleArguments.class, GenotypeArguments.class, FrequencyArguments.class, PropertyArguments.class, SAMArguments.class};
     for (Class<?> argClass : argClasses) {
       Message.verbose("type "+argClass.getSimpleName());
       ArrayList<Argument> arguments = getAllArguments(argClass);
@@ -9,6 +9,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.*;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.genotype.*;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.line.*;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.sam.*;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.sample.*;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.Function;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.FunctionFactory;
@@ -18,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -32,10 +34,16 @@ public class CommandParser {
   private final ArrayList<Filter<?>> filters;
   private final ArrayList<SampleFilter> sampleFilters;
   private final ArrayList<LineFilter> lineFilters;
+  private final ArrayList<OrderedLineFilter> orderedLineFilters;
   private final ArrayList<SAMLineFilter> samLineFilters;
   private final ArrayList<VariantFilter> variantFilters;
   private final ArrayList<GenotypeFilter> genotypeFilters;
+  private final ConcurrentHashMap<String, GenotypeFilterPlan> genotypeFilterPlans;
   private final HashMap<String, String[]> options;
+  private String[] requiredFormats = null;
+  private String[] requiredInfos = null;
+  private String[] requiredVEPFields = null;
+  private boolean samArgumentsProcessed = false;
 
   private static final boolean KEEP = true;
   private static final boolean REMOVE = false;
@@ -45,15 +53,32 @@ public class CommandParser {
   private static final boolean ANY = false;
 
   public CommandParser(String[] args) {
+    this(args, true);
+  }
+
+  /**
+   * @param args the arguments
+   * @param parse if false, the arguments are ignored
+   */
+  private CommandParser(String[] args, boolean parse) {
     this.filters = new ArrayList<>();
     this.lineFilters = new ArrayList<>();
+    this.orderedLineFilters = new ArrayList<>();
     this.samLineFilters = new ArrayList<>();
     this.sampleFilters = new ArrayList<>();
     this.variantFilters = new ArrayList<>();
     this.genotypeFilters = new ArrayList<>();
+    this.genotypeFilterPlans = new ConcurrentHashMap<>();
     this.options = new HashMap<>();
     this.args = args;
-    this.keys = this.initKeys();
+    this.keys = parse ? this.initKeys() : new ArrayList<>();
+  }
+
+  /**
+   * @return a CommandParser without any argument (thus without any filter), for the files that are read as references
+   */
+  public static CommandParser withoutArguments() {
+    return new CommandParser(new String[0], false);
   }
   
   public static ArrayList<String> getAllowedKeys(String[] args){
@@ -374,7 +399,7 @@ public class CommandParser {
     if (hasArgument(PropertyArguments.KEEP_INFO_VALUE))
       addFilter(new InfoValueFilter(KEEP, getStringOption(PropertyArguments.KEEP_INFO_VALUE)));
     if (hasArgument(PropertyArguments.REMOVE_INFO_VALUE))
-      addFilter(new InfoValueFilter(REMOVE, getStringOption(PropertyArguments.KEEP_INFO_VALUE)));
+      addFilter(new InfoValueFilter(REMOVE, getStringOption(PropertyArguments.REMOVE_INFO_VALUE)));
 
     //PropertyArguments.MIN_Q
     //PropertyArguments.MAX_Q
@@ -621,6 +646,26 @@ public class CommandParser {
     }
   }
 
+  /**
+   * Filters the alignments of SAM/BAM files. Called by each SAM file, the filters are only created once
+   */
+  public synchronized void processSAMArguments() {
+    if (samArgumentsProcessed)
+      return;
+    samArgumentsProcessed = true;
+    //SAMArguments.MIN_MAPQ
+    if (hasArgument(SAMArguments.MIN_MAPQ))
+      addFilter(new MappingQualityFilter(getIntegerOption(SAMArguments.MIN_MAPQ)));
+
+    //SAMArguments.REQUIRE_FLAGS
+    if (hasArgument(SAMArguments.REQUIRE_FLAGS))
+      addFilter(new SAMFlagFilter(KEEP, getFlagOption(SAMArguments.REQUIRE_FLAGS)));
+
+    //SAMArguments.EXCLUDE_FLAGS
+    if (hasArgument(SAMArguments.EXCLUDE_FLAGS))
+      addFilter(new SAMFlagFilter(REMOVE, getFlagOption(SAMArguments.EXCLUDE_FLAGS)));
+  }
+
   /**
    * Retunrs a Key/Values Map of BCFArguents
    * @return
@@ -631,9 +676,37 @@ public class CommandParser {
     addBCFArgument(ret, BCFArguments.IGNORE_FORMAT);
     addBCFArgument(ret, BCFArguments.CONSERVE_INFO);
     addBCFArgument(ret, BCFArguments.IGNORE_INFO);
+    //Without explicit arguments, only the fields declared by the function are decoded, unless filters might need the others
+    boolean filtered = !lineFilters.isEmpty() || !orderedLineFilters.isEmpty() || !variantFilters.isEmpty() || !genotypeFilters.isEmpty();
+    if (!filtered && requiredFormats != null && !ret.containsKey(BCFArguments.CONSERVE_FORMAT.getKey().toLowerCase()) && !ret.containsKey(BCFArguments.IGNORE_FORMAT.getKey().toLowerCase()))
+      ret.put(BCFArguments.CONSERVE_FORMAT.getKey().toLowerCase(), requiredFormats);
+    if (!filtered && requiredInfos != null && !ret.containsKey(BCFArguments.CONSERVE_INFO.getKey().toLowerCase()) && !ret.containsKey(BCFArguments.IGNORE_INFO.getKey().toLowerCase()))
+      ret.put(BCFArguments.CONSERVE_INFO.getKey().toLowerCase(), requiredInfos);
     return ret;
   }
 
+  /**
+   * Sets the FORMAT/INFO fields declared by the function, used as --conserve-format/--conserve-info when those are not given
+   * @param formats the FORMAT fields, null for all
+   * @param infos the INFO fields, null for all
+   */
+  public void setRequiredFields(String[] formats, String[] infos) {
+    this.requiredFormats = formats;
+    this.requiredInfos = infos;
+  }
+
+  /**
+   * Sets the VEP fields declared by the function, the only columns extracted when the CSQ annotations are parsed
+   * @param vepFields the VEP fields, null for the default ones (ALLELE_NUM and Consequence)
+   */
+  public void setRequiredVEPFields(String[] vepFields) {
+    this.requiredVEPFields = vepFields;
+  }
+
+  public String[] getRequiredVEPFields() {
+    return requiredVEPFields;
+  }
+
   private void addBCFArgument(HashMap<String, String[]>ret, Argument arg) {
     String key = arg.getKey().toLowerCase();
     if (options.containsKey(key))
@@ -656,12 +729,18 @@ public class CommandParser {
     Message.verbose("\tLine Filters [" + this.lineFilters.size() + "]");
     for (Filter<?> f : this.lineFilters)
       Message.verbose("\t\t" + f.getSummary());
+    Message.verbose("\tOrdered Line Filters [" + this.orderedLineFilters.size() + "]");
+    for (Filter<?> f : this.orderedLineFilters)
+      Message.verbose("\t\t" + f.getSummary());
     Message.verbose("\tGenotype Filters [" + this.genotypeFilters.size() + "]");
     for (Filter<?> f : this.genotypeFilters)
       Message.verbose("\t\t" + f.getSummary());
     Message.verbose("\tVariant Filters [" + this.variantFilters.size() + "]");
     for (Filter<?> f : this.variantFilters)
       Message.verbose("\t\t" + f.getSummary());
+    Message.verbose("\tAlignment Filters [" + this.samLineFilters.size() + "]");
+    for (Filter<?> f : this.samLineFilters)
+      Message.verbose("\t\t" + f.getSummary());
   }
 
   private boolean hasArgument(Argument arg) {
@@ -724,6 +803,15 @@ public class CommandParser {
     }
   }
 
+  private int getFlagOption(Argument arg) {
+    String op = getStringOption(arg);
+    try {
+      return Integer.decode(op);
+    } catch (NumberFormatException e) {
+      throw new StartUpException("FLAG value not valid for argument " + arg + " value [" + op + "]", e);
+    }
+  }
+
   private String getStringOption(Argument arg) {
     String[] op = getListOptions(arg);
     try {
@@ -744,10 +832,14 @@ public class CommandParser {
         this.sampleFilters.add((SampleFilter) filter);
       if (filter instanceof LineFilter)
         this.lineFilters.add((LineFilter) filter);
+      if (filter instanceof OrderedLineFilter)
+        this.orderedLineFilters.add((OrderedLineFilter) filter);
       if (filter instanceof VariantFilter)
         this.variantFilters.add((VariantFilter) filter);
       if (filter instanceof GenotypeFilter)
         this.genotypeFilters.add((GenotypeFilter) filter);
+      if (filter instanceof SAMLineFilter)
+        this.samLineFilters.add((SAMLineFilter) filter);
     }
   }
 
@@ -767,6 +859,23 @@ public class CommandParser {
     return lineFilters;
   }
 
+  /**
+   * @return the line filters that depend on the previous records, applied in the order of the file
+   */
+  public ArrayList<OrderedLineFilter> getOrderedLineFilters() {
+    return orderedLineFilters;
+  }
+
+  /**
+   * @return new copies of the ordered line filters, with an empty state, for a single Reader
+   */
+  public ArrayList<OrderedLineFilter> newOrderedLineFilters() {
+    ArrayList<OrderedLineFilter> ret = new ArrayList<>();
+    for (OrderedLineFilter filter : orderedLineFilters)
+      ret.add(filter.copy());
+    return ret;
+  }
+
   public ArrayList<SAMLineFilter> getSAMLineFilters() {
     return samLineFilters;
   }
@@ -779,6 +888,14 @@ public class CommandParser {
     return genotypeFilters;
   }
 
+  /**
+   * @param format the FORMAT string of a record
+   * @return the genotype filters compiled for this FORMAT, built once for each distinct FORMAT and shared by all the threads
+   */
+  public GenotypeFilterPlan getGenotypeFilterPlan(String format) {
+    return genotypeFilterPlans.computeIfAbsent(format, f -> new GenotypeFilterPlan(genotypeFilters, f));
+  }
+
   public static String[] parseOptions(String[] args, String key) {
     for (int i = 0; i < args.length; i++)
       if (key.equals(args[i].toLowerCase())) {
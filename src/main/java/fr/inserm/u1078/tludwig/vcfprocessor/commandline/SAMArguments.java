@@ -0,0 +1,38 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.commandline;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
+
+/**
+ * Filters applied on the alignments of SAM/BAM files
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class SAMArguments {
+
+  public static final String TYPE = "Alignment Filters";
+
+  public static final Argument MIN_MAPQ = Argument.newArgument("--min-mapq",
+          TYPE,
+          "mapq",
+          new String[][]{{"20", "alignments with a mapping quality of at least 20"}},
+          new Description("Keep alignments with a mapping quality (MAPQ) greater or equal to the given value.")
+  );
+  public static final Argument REQUIRE_FLAGS = Argument.newArgument("--require-flags",
+          TYPE,
+          "flags",
+          new String[][]{
+            {"2", "alignments of reads mapped in proper pair"},
+            {"0x42", "alignments of the first read of a pair mapped in proper pair"}
+          },
+          new Description("Keep alignments having all the bits of the given FLAG value set (decimal or hexadecimal with 0x).")
+  );
+  public static final Argument EXCLUDE_FLAGS = Argument.newArgument("--exclude-flags",
+          TYPE,
+          "flags",
+          new String[][]{
+            {"1024", "removes duplicates"},
+            {"1796", "removes unmapped, secondary, QC failed and duplicate alignments (default of samtools depth/mosdepth)"}
+          },
+          new Description("Remove alignments having any of the bits of the given FLAG value set (decimal or hexadecimal with 0x).")
+  );
+}
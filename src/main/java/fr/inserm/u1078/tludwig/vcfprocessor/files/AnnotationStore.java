@@ -0,0 +1,520 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files;
+
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Canonical;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Prebuilt, memory-mapped annotation store (dbSNP, gnomAD...), queried without loading the annotations in the heap.<br/>
+ * The file holds a value region, then, for each chromosome, the sorted keys (position, hash of the allele, offset of the value)
+ * and a table of the chromosomes. Values are looked up by binary search on the keys, and the allele stored with the value is
+ * checked, so hash collisions are harmless. Lookups only read the mapped file, and can be made by several threads at once.<br/>
+ * Layout :
+ * <ul>
+ *   <li>MAGIC, VERSION, type (UTF)</li>
+ *   <li>values : (int alleleLength, allele, int valueLength, value)*</li>
+ *   <li>keys : (int pos, int hash, long valueOffset)*, grouped by chromosome, sorted by (pos, hash, valueOffset)</li>
+ *   <li>chromosomes : int n, (UTF name, long firstKey, long nbKeys)*</li>
+ *   <li>trailer : long keysOffset, long chromosomesOffset, MAGIC</li>
+ * </ul>
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class AnnotationStore implements Closeable {
+  public static final String EXTENSION = "annot";
+  public static final String TYPE_DBSNP = "dbsnp";
+  public static final String TYPE_GNOMAD = "gnomad";
+  public static final String TYPE_PREPARED_GNOMAD = "prepared";
+
+  private static final byte[] MAGIC = {'V', 'P', 'A', 'S'};
+  private static final int VERSION = 1;
+  private static final int KEY_SIZE = 16;
+  private static final int TRAILER_SIZE = 8 + 8 + 4;
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+  /** maximal size of a stored value, segments overlap by this size, so that no value is split between two segments */
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private final String filename;
+  private final String type;
+  private final RandomAccessFile file;
+  private final MappedByteBuffer[] segments;
+  private final long keysOffset;
+  private final HashMap<String, long[]> chromosomes; //name -> {first key, number of keys}
+
+  /**
+   * Opens an annotation store
+   * @param filename the name of the file, built with BuildAnnotationIndex
+   * @param expectedType the type of annotations expected (TYPE_*)
+   * @throws IOException if the file can't be read, is not an annotation store or is of another type
+   */
+  public AnnotationStore(String filename, String expectedType) throws IOException {
+    this.filename = filename;
+    this.file = new RandomAccessFile(filename, "r");
+    FileChannel channel = file.getChannel();
+    long size = channel.size();
+    if (size < TRAILER_SIZE + MAGIC.length)
+      throw new IOException("[" + filename + "] is not an annotation store");
+
+    int nbSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    this.segments = new MappedByteBuffer[nbSegments];
+    for (int s = 0; s < nbSegments; s++) {
+      long start = ((long) s) << SEGMENT_SHIFT;
+      segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, (1L << SEGMENT_SHIFT) + MAX_RECORD_SIZE));
+    }
+
+    if (!hasMagic(0) || !hasMagic(size - MAGIC.length))
+      throw new IOException("[" + filename + "] is not an annotation store");
+    if (getInt(MAGIC.length) != VERSION)
+      throw new IOException("Unsupported version " + getInt(MAGIC.length) + " for annotation store [" + filename + "]");
+    this.type = readUTF(MAGIC.length + 4);
+    if (expectedType != null && !expectedType.equals(type))
+      throw new IOException("Annotation store [" + filename + "] holds [" + type + "] annotations, expected [" + expectedType + "]");
+
+    this.keysOffset = getLong(size - TRAILER_SIZE);
+    long chromosomesOffset = getLong(size - TRAILER_SIZE + 8);
+    this.chromosomes = new HashMap<>();
+    int n = getInt(chromosomesOffset);
+    long p = chromosomesOffset + 4;
+    for (int c = 0; c < n; c++) {
+      String name = readUTF(p);
+      p += 2 + (getShort(p) & 0xffff);
+      chromosomes.put(name, new long[]{getLong(p), getLong(p + 8)});
+      p += 16;
+    }
+    Message.verbose("Annotation store [" + filename + "] opened : " + type + " annotations for " + n + " chromosomes");
+  }
+
+  /**
+   * @param filename the name of a file
+   * @return true if the file exists and starts as an annotation store
+   */
+  public static boolean isAnnotationStore(String filename) {
+    File f = new File(filename);
+    if (!f.isFile() || f.length() < MAGIC.length)
+      return false;
+    try (FileInputStream in = new FileInputStream(f)) {
+      byte[] magic = in.readNBytes(MAGIC.length);
+      for (int i = 0; i < MAGIC.length; i++)
+        if (magic[i] != MAGIC[i])
+          return false;
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Gets the value associated with a variant
+   * @param chrom the chromosome
+   * @param pos the position
+   * @param allele the allele, as given when the store was built ("" for position only keys)
+   * @return the value, null if the variant is not in the store. If the variant was added several times, the last value added is returned
+   */
+  public String get(String chrom, int pos, String allele) {
+    long[] range = chromosomes.get(chrom);
+    if (range == null)
+      return null;
+    int hash = allele.hashCode();
+    long lo = range[0];
+    long hi = range[0] + range[1];
+    while (lo < hi) { //first key >= (pos, hash)
+      long mid = (lo + hi) >>> 1;
+      long k = keysOffset + mid * KEY_SIZE;
+      int p = getInt(k);
+      if (p < pos || (p == pos && getInt(k + 4) < hash))
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    byte[] expected = allele.getBytes(StandardCharsets.UTF_8);
+    String found = null;
+    long end = range[0] + range[1];
+    for (long i = lo; i < end; i++) {
+      long k = keysOffset + i * KEY_SIZE;
+      if (getInt(k) != pos || getInt(k + 4) != hash)
+        break;
+      long offset = getLong(k + 8);
+      if (matches(offset, expected))
+        found = readValue(offset);
+    }
+    return found;
+  }
+
+  /**
+   * Gets the value associated with a variant in Canonical notation
+   * @param canonical the variant
+   * @return the value, null if the variant is not in the store
+   */
+  public String get(Canonical canonical) {
+    return get(getChrom(canonical), canonical.getPos(), getAllele(canonical));
+  }
+
+  private static String getChrom(Canonical canonical) {
+    return String.valueOf(canonical.getChr());
+  }
+
+  private static String getAllele(Canonical canonical) {
+    return canonical.getLength() + ":" + canonical.getAllele();
+  }
+
+  private boolean matches(long offset, byte[] allele) {
+    if (getInt(offset) != allele.length)
+      return false;
+    ByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+    int index = (int) (offset & SEGMENT_MASK) + 4;
+    for (int i = 0; i < allele.length; i++)
+      if (segment.get(index + i) != allele[i])
+        return false;
+    return true;
+  }
+
+  private String readValue(long offset) {
+    long p = offset + 4 + getInt(offset);
+    int length = getInt(p);
+    byte[] value = new byte[length];
+    segments[(int) ((p + 4) >>> SEGMENT_SHIFT)].get((int) ((p + 4) & SEGMENT_MASK), value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  private boolean hasMagic(long p) {
+    for (int i = 0; i < MAGIC.length; i++)
+      if (segments[(int) ((p + i) >>> SEGMENT_SHIFT)].get((int) ((p + i) & SEGMENT_MASK)) != MAGIC[i])
+        return false;
+    return true;
+  }
+
+  private short getShort(long p) {
+    return segments[(int) (p >>> SEGMENT_SHIFT)].getShort((int) (p & SEGMENT_MASK));
+  }
+
+  private int getInt(long p) {
+    return segments[(int) (p >>> SEGMENT_SHIFT)].getInt((int) (p & SEGMENT_MASK));
+  }
+
+  private long getLong(long p) {
+    return segments[(int) (p >>> SEGMENT_SHIFT)].getLong((int) (p & SEGMENT_MASK));
+  }
+
+  private String readUTF(long p) {
+    byte[] bytes = new byte[getShort(p) & 0xffff];
+    segments[(int) ((p + 2) >>> SEGMENT_SHIFT)].get((int) ((p + 2) & SEGMENT_MASK), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Writes an annotation store, with constant memory.<br/>
+   * Values are written as they are added, keys are written to a temporary file per chromosome, as sorted runs. Keys that are not
+   * too far from being sorted (as in a sorted VCF file, where the canonical position can be after the position of the record)
+   * are reordered in a small window, then sorted by chunks of bounded size : a sorted input gives a single run, an unsorted input
+   * one run per chunk. The runs are merged when the store is closed, a bounded number of runs at a time
+   */
+  public static class Builder implements Closeable {
+    private static final int WINDOW = 10000;
+
+    private final DataOutputStream out;
+    private long written;
+    private final LinkedHashMap<String, Chromosome> chromosomes = new LinkedHashMap<>();
+    private Chromosome current = null;
+    private final PriorityQueue<long[]> pending = new PriorityQueue<>(AnnotationStore::compareKeys); //{pos, hash, offset}
+    private long nbKeys = 0;
+    private long nbSkipped = 0;
+
+    /**
+     * @param out the stream to write the store to (not compressed)
+     * @param type the type of the annotations (TYPE_*)
+     * @throws IOException if the header can't be written
+     */
+    public Builder(OutputStream out, String type) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out, 4 * 65536));
+      this.out.write(MAGIC);
+      this.out.writeInt(VERSION);
+      this.out.writeUTF(type);
+      this.written = this.out.size();
+    }
+
+    /**
+     * Adds an annotation
+     * @param chrom the chromosome
+     * @param pos the position
+     * @param allele the allele ("" for position only keys)
+     * @param value the value
+     * @throws IOException if the annotation can't be written
+     */
+    public void add(String chrom, int pos, String allele, String value) throws IOException {
+      byte[] a = allele.getBytes(StandardCharsets.UTF_8);
+      byte[] v = value.getBytes(StandardCharsets.UTF_8);
+      if (8 + a.length + v.length > MAX_RECORD_SIZE) {
+        nbSkipped++;
+        return;
+      }
+      if (current == null || !current.name.equals(chrom)) {
+        if (current != null) {
+          flush(Long.MAX_VALUE);
+          current.spill();
+        }
+        current = chromosomes.get(chrom);
+        if (current == null) {
+          current = new Chromosome(chrom);
+          chromosomes.put(chrom, current);
+        }
+      }
+      flush(pos - WINDOW);
+      pending.add(new long[]{pos, allele.hashCode(), written});
+      out.writeInt(a.length);
+      out.write(a);
+      out.writeInt(v.length);
+      out.write(v);
+      written += 8 + a.length + v.length;
+      nbKeys++;
+    }
+
+    /**
+     * Adds an annotation for a variant in Canonical notation
+     * @param canonical the variant
+     * @param value the value
+     * @throws IOException if the annotation can't be written
+     */
+    public void add(Canonical canonical, String value) throws IOException {
+      add(getChrom(canonical), canonical.getPos(), getAllele(canonical), value);
+    }
+
+    /**
+     * Moves the pending keys before the given position to the runs of the current chromosome
+     */
+    private void flush(long before) throws IOException {
+      while (!pending.isEmpty() && pending.peek()[0] < before)
+        current.write(pending.poll());
+    }
+
+    public long getNbKeys() {
+      return nbKeys;
+    }
+
+    public long getNbSkipped() {
+      return nbSkipped;
+    }
+
+    /**
+     * Merges the runs of keys of each chromosome, and writes the keys and the table of the chromosomes. The underlying stream is flushed, not closed
+     * @throws IOException if the store can't be written
+     */
+    @Override
+    public void close() throws IOException {
+      if (current != null)
+        flush(Long.MAX_VALUE);
+      long keysOffset = written;
+      long first = 0;
+      for (Chromosome chromosome : chromosomes.values()) {
+        chromosome.first = first;
+        chromosome.mergeTo(out);
+        first += chromosome.count;
+      }
+      long chromosomesOffset = keysOffset + first * KEY_SIZE;
+      out.writeInt(chromosomes.size());
+      for (Chromosome chromosome : chromosomes.values()) {
+        out.writeUTF(chromosome.name);
+        out.writeLong(chromosome.first);
+        out.writeLong(chromosome.count);
+      }
+      out.writeLong(keysOffset);
+      out.writeLong(chromosomesOffset);
+      out.write(MAGIC);
+      out.flush();
+      if (nbSkipped > 0)
+        Message.warning(nbSkipped + " annotations longer than " + MAX_RECORD_SIZE + " bytes were skipped");
+      Message.verbose("Annotation store : " + nbKeys + " keys, " + chromosomes.size() + " chromosomes");
+    }
+  }
+
+  private static int compareKeys(long[] a, long[] b) {
+    for (int i = 0; i < 3; i++) {
+      int c = Long.compare(a[i], b[i]);
+      if (c != 0)
+        return c;
+    }
+    return 0;
+  }
+
+  /**
+   * The keys of a chromosome, while the store is built, in a temporary file made of sorted runs
+   */
+  private static class Chromosome {
+    /** maximal number of keys sorted in memory */
+    private static final int CHUNK = 1 << 18;
+    /** maximal number of runs merged at once */
+    private static final int MAX_FAN_IN = 64;
+
+    private final String name;
+    private final File tmp;
+    private final DataOutputStream keys;
+    private final ArrayList<long[]> chunk = new ArrayList<>();
+    private final ArrayList<Long> runs = new ArrayList<>(); //index of the first key of each run
+    private long count = 0;
+    private long first;
+    private long[] last = null;
+
+    private Chromosome(String name) throws IOException {
+      this.name = name;
+      this.tmp = createTempFile();
+      this.keys = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+    }
+
+    private static File createTempFile() throws IOException {
+      File file = File.createTempFile(AnnotationStore.class.getSimpleName() + ".", ".keys");
+      file.deleteOnExit();
+      return file;
+    }
+
+    private void write(long[] key) throws IOException {
+      chunk.add(key);
+      if (chunk.size() == CHUNK)
+        spill();
+    }
+
+    /**
+     * Sorts the keys in memory, and writes them to the temporary file. They start a new run, unless they all come after the last key written
+     */
+    private void spill() throws IOException {
+      if (chunk.isEmpty())
+        return;
+      chunk.sort(AnnotationStore::compareKeys);
+      if (last == null || compareKeys(chunk.get(0), last) < 0)
+        runs.add(count);
+      for (long[] key : chunk)
+        writeKey(keys, key);
+      count += chunk.size();
+      last = chunk.get(chunk.size() - 1);
+      chunk.clear();
+    }
+
+    /**
+     * Writes the keys, sorted, by merging the runs, at most MAX_FAN_IN at a time
+     */
+    private void mergeTo(DataOutputStream out) throws IOException {
+      spill();
+      keys.close();
+      if (runs.size() > 1)
+        Message.verbose(runs.size() + " sorted runs to merge for chromosome " + name);
+      File file = tmp;
+      ArrayList<Long> starts = runs;
+      while (starts.size() > MAX_FAN_IN) {
+        File merged = createTempFile();
+        ArrayList<Long> mergedStarts = new ArrayList<>();
+        try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 65536))) {
+          for (int r = 0; r < starts.size(); r += MAX_FAN_IN) {
+            mergedStarts.add(starts.get(r)); //the merged run holds the same keys as the runs it merges
+            merge(file, starts, r, Math.min(r + MAX_FAN_IN, starts.size()), o);
+          }
+        }
+        delete(file);
+        file = merged;
+        starts = mergedStarts;
+      }
+      merge(file, starts, 0, starts.size(), out);
+      delete(file);
+    }
+
+    /**
+     * Merges consecutive runs of a file
+     * @param file the file
+     * @param starts the index of the first key of each run of the file
+     * @param from the first run to merge
+     * @param to the run after the last run to merge
+     * @param out the stream to write the merged keys to
+     */
+    private void merge(File file, ArrayList<Long> starts, int from, int to, DataOutputStream out) throws IOException {
+      PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> compareKeys(a.key, b.key));
+      for (int r = from; r < to; r++) {
+        long end = r + 1 < starts.size() ? starts.get(r + 1) : count;
+        Run run = new Run(file, starts.get(r), end - starts.get(r));
+        if (run.next())
+          queue.add(run);
+      }
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        writeKey(out, run.key);
+        if (run.next())
+          queue.add(run);
+      }
+    }
+
+    private static void writeKey(DataOutputStream out, long[] key) throws IOException {
+      out.writeInt((int) key[0]);
+      out.writeInt((int) key[1]);
+      out.writeLong(key[2]);
+    }
+
+    private static void delete(File file) {
+      if (!file.delete())
+        Message.warning("Could not delete temporary file [" + file.getAbsolutePath() + "]");
+    }
+  }
+
+  /**
+   * A sorted run of keys, read from the temporary file of a chromosome
+   */
+  private static class Run {
+    private final DataInputStream in;
+    private long remaining;
+    private final long[] key = new long[3];
+
+    private Run(File tmp, long first, long count) throws IOException {
+      FileInputStream fis = new FileInputStream(tmp);
+      long toSkip = first * KEY_SIZE;
+      while (toSkip > 0) {
+        long skipped = fis.skip(toSkip);
+        if (skipped <= 0)
+          throw new EOFException("Could not reach run at key " + first + " in [" + tmp.getAbsolutePath() + "]");
+        toSkip -= skipped;
+      }
+      this.in = new DataInputStream(new BufferedInputStream(fis, 8192));
+      this.remaining = count;
+    }
+
+    private boolean next() throws IOException {
+      if (remaining == 0) {
+        in.close();
+        return false;
+      }
+      remaining--;
+      key[0] = in.readInt();
+      key[1] = in.readInt();
+      key[2] = in.readLong();
+      return true;
+    }
+  }
+}
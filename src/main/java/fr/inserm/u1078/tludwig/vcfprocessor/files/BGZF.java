@@ -0,0 +1,144 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.TabixReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Blocked GNU Zip Format : a gzip file, made of concatenated independent gzip members ("blocks") of at most 64KB,
+ * each having its compressed size in the "BC" extra subfield of its header
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public final class BGZF {
+
+  /** Fixed part of a gzip member header, before the extra field */
+  private static final int FIXED_HEADER_LENGTH = 12;
+  private static final int SI1 = 'B';
+  private static final int SI2 = 'C';
+
+  private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+  private BGZF() {
+  }
+
+  /**
+   * Checks if a file starts with a BGZF block
+   * @param filename the name of the file
+   * @return true if the file is in BGZF format
+   */
+  public static boolean isBGZF(String filename) {
+    try (InputStream in = new FileInputStream(filename)) {
+      byte[] header = in.readNBytes(TabixReader.BLOCK_HEADER_LENGTH);
+      return header.length == TabixReader.BLOCK_HEADER_LENGTH
+          && header[0] == TabixReader.GZIP_ID1
+          && (header[1] & 0xff) == TabixReader.GZIP_ID2
+          && header[2] == TabixReader.GZIP_CM_DEFLATE
+          && (header[3] & TabixReader.GZIP_FLG) != 0
+          && readShort(header, 10) == TabixReader.GZIP_XLEN
+          && header[12] == SI1
+          && header[13] == SI2;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads a whole BGZF block
+   * @param in the compressed stream
+   * @return the compressed block, or null if the end of the stream is reached
+   * @throws IOException if the stream can't be read or the block is not a valid BGZF block
+   */
+  public static Block readBlock(InputStream in) throws IOException {
+    byte[] header = in.readNBytes(FIXED_HEADER_LENGTH);
+    if (header.length == 0)
+      return null;
+    if (header.length < FIXED_HEADER_LENGTH)
+      throw new IOException("Truncated BGZF block header");
+    if (header[0] != TabixReader.GZIP_ID1 || (header[1] & 0xff) != TabixReader.GZIP_ID2 || header[2] != TabixReader.GZIP_CM_DEFLATE || (header[3] & TabixReader.GZIP_FLG) == 0)
+      throw new IOException("Invalid BGZF block header");
+    int xlen = readShort(header, 10);
+    byte[] extra = in.readNBytes(xlen);
+    if (extra.length < xlen)
+      throw new IOException("Truncated BGZF block header");
+    int blockSize = -1;
+    for (int i = 0; i + 4 <= xlen; ) {
+      int slen = readShort(extra, i + 2);
+      if (extra[i] == SI1 && extra[i + 1] == SI2 && slen == 2)
+        blockSize = readShort(extra, i + 4) + 1;
+      i += 4 + slen;
+    }
+    if (blockSize < 0)
+      throw new IOException("Missing BGZF block size");
+
+    int headerLength = FIXED_HEADER_LENGTH + xlen;
+    byte[] data = new byte[blockSize];
+    System.arraycopy(header, 0, data, 0, FIXED_HEADER_LENGTH);
+    System.arraycopy(extra, 0, data, FIXED_HEADER_LENGTH, xlen);
+    int read = in.readNBytes(data, headerLength, blockSize - headerLength);
+    if (read < blockSize - headerLength)
+      throw new IOException("Truncated BGZF block");
+    return new Block(data, headerLength);
+  }
+
+  /**
+   * Decompresses a BGZF block. Can be called concurrently
+   * @param block the compressed block
+   * @return the uncompressed data
+   * @throws IOException if the data can't be inflated, or doesn't match the block's size/CRC
+   */
+  public static byte[] inflate(Block block) throws IOException {
+    byte[] data = block.data;
+    int footer = data.length - TabixReader.BLOCK_FOOTER_LENGTH;
+    int expectedCrc = readInt(data, footer);
+    int size = readInt(data, footer + 4);
+    byte[] uncompressed = new byte[size];
+    Inflater inflater = INFLATERS.get();
+    inflater.reset();
+    inflater.setInput(data, block.headerLength, footer - block.headerLength);
+    try {
+      if (inflater.inflate(uncompressed) != size)
+        throw new IOException("BGZF block did not inflate to the expected size");
+    } catch (DataFormatException e) {
+      throw new IOException("Could not inflate BGZF block", e);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(uncompressed);
+    if ((int) crc.getValue() != expectedCrc)
+      throw new IOException("BGZF block CRC mismatch");
+    return uncompressed;
+  }
+
+  private static int readShort(byte[] b, int offset) {
+    return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+  }
+
+  private static int readInt(byte[] b, int offset) {
+    return readShort(b, offset) | (readShort(b, offset + 2) << 16);
+  }
+
+  /**
+   * A compressed BGZF block, with its header and footer
+   */
+  public static class Block {
+    private final byte[] data;
+    private final int headerLength;
+
+    private Block(byte[] data, int headerLength) {
+      this.data = data;
+      this.headerLength = headerLength;
+    }
+
+    /**
+     * @return the size of the block in the compressed file
+     */
+    public int getCompressedSize() {
+      return data.length;
+    }
+  }
+}
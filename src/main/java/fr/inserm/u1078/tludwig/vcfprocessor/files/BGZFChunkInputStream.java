@@ -0,0 +1,122 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.List;
+
+/**
+ * InputStream on a BGZF file, that only returns the uncompressed bytes of a list of chunks.
+ * Each chunk is a pair of virtual offsets {start, end} (compressed block address &lt;&lt; 16 | offset in the uncompressed block),
+ * as found in Tabix/CSI indexes. The file is seeked directly to the first block of each chunk.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class BGZFChunkInputStream extends InputStream {
+  private static final int SHIFT = 16;
+  private static final int OFFSET_MASK = 0xffff;
+  private static final byte[] EMPTY = new byte[0];
+
+  private final RandomAccessFile file;
+  private final List<long[]> chunks;
+  private int nextChunk = 0;
+
+  private InputStream in = null;
+  private long address = -1; //address, in the compressed file, of the next block to read from in
+  private long endAddress;
+  private int endOffset;
+
+  private byte[] block = EMPTY;
+  private int offset = 0;
+  private int limit = 0;
+
+  /**
+   * @param filename the name of the BGZF file
+   * @param chunks the chunks to read, sorted and disjoint (see TabixReader.mergeChunks)
+   * @throws IOException if the file can't be opened
+   */
+  public BGZFChunkInputStream(String filename, List<long[]> chunks) throws IOException {
+    this.file = new RandomAccessFile(filename, "r");
+    this.chunks = chunks;
+  }
+
+  /**
+   * Makes sure the current block has bytes left to read, moving to the next block or to the next chunk if needed
+   * @return false if the end of the last chunk is reached
+   * @throws IOException if a block can't be read or inflated
+   */
+  private boolean fill() throws IOException {
+    while (offset >= limit) {
+      if (in != null && address <= endAddress) { //next block of the current chunk
+        readBlock(0);
+        continue;
+      }
+      if (nextChunk >= chunks.size())
+        return false;
+      long[] chunk = chunks.get(nextChunk++);
+      long start = chunk[0] >>> SHIFT;
+      endAddress = chunk[1] >>> SHIFT;
+      endOffset = (int) (chunk[1] & OFFSET_MASK);
+      if (in == null || start != address) { //chunks following each other are read without seeking
+        file.seek(start);
+        in = new BufferedInputStream(Channels.newInputStream(file.getChannel()), 4 * 65536);
+        address = start;
+      }
+      readBlock((int) (chunk[0] & OFFSET_MASK));
+    }
+    return true;
+  }
+
+  /**
+   * Reads and inflates the block at the current address
+   * @param from the first uncompressed byte to return
+   * @throws IOException if the block can't be read or inflated
+   */
+  private void readBlock(int from) throws IOException {
+    long current = address;
+    BGZF.Block compressed = BGZF.readBlock(in);
+    if (compressed == null) {
+      block = EMPTY;
+      offset = limit = 0;
+      address = Long.MAX_VALUE;
+      return;
+    }
+    address += compressed.getCompressedSize();
+    block = BGZF.inflate(compressed);
+    offset = Math.min(from, block.length);
+    limit = current == endAddress ? Math.min(endOffset, block.length) : block.length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill())
+      return -1;
+    return block[offset++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    int total = 0;
+    while (total < len && fill()) {
+      int n = Math.min(len - total, limit - offset);
+      System.arraycopy(block, offset, b, off + total, n);
+      offset += n;
+      total += n;
+    }
+    return total == 0 ? -1 : total;
+  }
+
+  @Override
+  public int available() {
+    return limit - offset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -33,6 +33,30 @@ public class ByteArray {
     return pointer.getAndIncrement();
   }
 
+  /**
+   * Gets the underlying Byte Array
+   * @return the array, not a copy
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * Gets the current position of the pointer
+   * @return the pointer value
+   */
+  public int getPointer() {
+    return pointer.get();
+  }
+
+  /**
+   * Moves the pointer to the given position
+   * @param position the new pointer value
+   */
+  public void setPointer(final int position) {
+    pointer.set(position);
+  }
+
   /**
    * Gets the number bytes left in the buffer
    * @return the buffer's size minus the pointer's position
@@ -45,6 +45,16 @@ public class FAI implements FileFormat {
     return -1;
   }
 
+  /**
+   * Gets the index line of a chromosome
+   *
+   * @param chromosome - the chromosome to look for
+   * @return the line for this chromosome, or null if the chromosome is not in the index
+   */
+  FAILine getLine(String chromosome) {
+    return this.chromosomes.get(chromosome.toUpperCase());
+  }
+
   /**
    * Loads the fastq index into the FAI object
    */
@@ -61,7 +71,7 @@ public class FAI implements FileFormat {
   /**
    * One line from the fastq index file
    */
-  private static class FAILine {
+  static class FAILine {
 
     /**
      * chromosome name
@@ -123,6 +133,14 @@ public class FAI implements FileFormat {
     public long getChromosomeLength() {
       return chromosomeLength;
     }
+
+    public long getLineBases() {
+      return lineBases;
+    }
+
+    public long getLineCharacters() {
+      return lineCharacters;
+    }
   }
 
   @Override
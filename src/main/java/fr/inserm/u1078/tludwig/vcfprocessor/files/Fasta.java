@@ -4,6 +4,9 @@ import fr.inserm.u1078.tludwig.maok.tools.Message;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Fasta file
@@ -12,6 +15,12 @@ import java.io.RandomAccessFile;
  */
 public class Fasta implements FileFormat {
 
+  /**
+   * size of each mapped segment of the file
+   */
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
   /**
    * the filename of the fastq file
    */
@@ -21,9 +30,14 @@ public class Fasta implements FileFormat {
    */
   private final FAI fai;
   /**
-   * A unique RandomAccessFile to do the job
+   * The file, only kept open to be closed
    */
   private final RandomAccessFile raf;
+  /**
+   * The file, mapped in memory by segments of SEGMENT_SIZE bytes. Only the absolute get methods are used, so the buffers are
+   * never modified, and can be read by several threads at once without locking
+   */
+  private final MappedByteBuffer[] segments;
 
   /**
    * Creates a Fasta, from a fasta file with the given name
@@ -48,10 +62,19 @@ public class Fasta implements FileFormat {
     try {
       fai = new FAI(indexName);
       raf = new RandomAccessFile(this.filename, "r");
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = i * SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+      }
     } catch (FAIException e) {
       throw new FastaException("Index not found for fastq file " + this.filename + " :", e);
     } catch (FileNotFoundException e) {
       throw new FastaException("Could not find file " + this.filename, e);
+    } catch (IOException e) {
+      throw new FastaException("Could not map file " + this.filename, e);
     }
   }
 
@@ -64,7 +87,9 @@ public class Fasta implements FileFormat {
    * @throws FastaException if there is a problem with the fasta file
    */
   public char getCharacterFor(String chromosome, long position) throws FastaException {
-    return this.getCharactersAt(chromosome, position, 1)[0];
+    FAI.FAILine line = this.getLine(chromosome, position, 1);
+    long index = line.getIndexForPosition(position);
+    return (char) (segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_SIZE - 1))) & 0xFF);
   }
 
   /**
@@ -77,11 +102,12 @@ public class Fasta implements FileFormat {
    * @throws FastaException if there is a problem with the fasta file
    */
   public String getStringFor(String chromosome, long position, int length) throws FastaException {
-    return new String(this.getCharactersAt(chromosome, position, length));
+    return new String(this.getBytesAt(chromosome, position, length), StandardCharsets.ISO_8859_1);
   }
 
   /**
-   * Gets the sequence (as a char[]) of given length, start at the given position on the given chromosome
+   * Gets the sequence (as a byte[]) of given length, start at the given position on the given chromosome.
+   * The bases are copied line by line from the mapped file, skipping the line breaks
    *
    * @param chromosome the chromosome name
    * @param position the position on the chromosome
@@ -89,20 +115,49 @@ public class Fasta implements FileFormat {
    * @return the sequence of the given length at the position
    * @throws FastaException if there is a problem with the fasta file
    */
-  synchronized
-  private char[] getCharactersAt(String chromosome, long position, int length) throws FastaException {
-    long index = fai.getIndexForPosition(chromosome, position);
-
-    try {
-      raf.seek(index);
-      char[] ret = new char[length];
-      /*raf.seek(index-skipped);*/
-      for (int i = 0; i < length; i++)
-        ret[i] = (char) raf.readByte();
-      return ret;
-    } catch (IOException e) {
-      throw new FastaException("Error while trying to read " + index + "th character (chromosome " + chromosome + " position " + position + ") from file " + this.filename, e);
+  public byte[] getBytesAt(String chromosome, long position, int length) throws FastaException {
+    FAI.FAILine line = this.getLine(chromosome, position, length);
+    byte[] ret = new byte[length];
+    int copied = 0;
+    while (copied < length) {
+      long pos = position + copied;
+      long index = line.getIndexForPosition(pos);
+      long leftInLine = line.getLineBases() - (pos - 1) % line.getLineBases();
+      long leftInSegment = SEGMENT_SIZE - (index & (SEGMENT_SIZE - 1));
+      int n = (int) Math.min(length - copied, Math.min(leftInLine, leftInSegment));
+      segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_SIZE - 1)), ret, copied, n);
+      copied += n;
     }
+    return ret;
+  }
+
+  /**
+   * Gets the length of a chromosome
+   *
+   * @param chromosome the chromosome name
+   * @return the length of the chromosome, or -1 if the chromosome is not in the index
+   */
+  public long getChromosomeLength(String chromosome) {
+    FAI.FAILine line = fai.getLine(chromosome);
+    return line == null ? -1 : line.getChromosomeLength();
+  }
+
+  /**
+   * Gets the index line of a chromosome, checks that the sequence is within the chromosome
+   *
+   * @param chromosome the chromosome name
+   * @param position the position on the chromosome
+   * @param length the length of the sequence to read
+   * @return the index line of the chromosome
+   * @throws FastaException if the chromosome is unknown, or the sequence outside the chromosome
+   */
+  private FAI.FAILine getLine(String chromosome, long position, int length) throws FastaException {
+    FAI.FAILine line = fai.getLine(chromosome);
+    if (line == null)
+      throw new FastaException("Chromosome " + chromosome + " not found in the index of file " + this.filename);
+    if (position < 1 || length < 0 || position + length - 1 > line.getChromosomeLength())
+      throw new FastaException("Error while trying to read " + length + " characters (chromosome " + chromosome + " position " + position + ") from file " + this.filename + ", outside of the chromosome");
+    return line;
   }
 
   /**
@@ -0,0 +1,127 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * InputStream on a BGZF file, where the blocks are read ahead and inflated in parallel on a small pool of threads.
+ * The uncompressed blocks are returned in the order of the file.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class ParallelBGZFInputStream extends InputStream {
+
+  public static final int BLOCKS_AHEAD_PER_THREAD = 4;
+  private static final byte[] EMPTY = new byte[0];
+
+  private final InputStream in;
+  private final ExecutorService pool;
+  private final ArrayDeque<Future<byte[]>> pending;
+  private final int depth;
+  private boolean compressedEOF = false;
+  private byte[] block = EMPTY;
+  private int offset = 0;
+
+  public ParallelBGZFInputStream(String filename) throws IOException {
+    this(filename, ThreadConfiguration.getReaders());
+  }
+
+  /**
+   * @param filename the name of the BGZF file
+   * @param threads the number of threads inflating blocks
+   * @throws IOException if the file can't be opened
+   */
+  public ParallelBGZFInputStream(String filename, int threads) throws IOException {
+    this.in = new BufferedInputStream(new FileInputStream(filename), 4 * 65536);
+    int nb = Math.max(1, threads);
+    this.pool = Executors.newFixedThreadPool(nb, r -> {
+      Thread t = new WellBehavedThread(r, "BGZF inflater for " + filename);
+      t.setDaemon(true);
+      return t;
+    });
+    this.depth = BLOCKS_AHEAD_PER_THREAD * nb;
+    this.pending = new ArrayDeque<>(depth);
+  }
+
+  /**
+   * Reads compressed blocks, and submits them to the pool, until enough blocks are pending
+   * @throws IOException if a block can't be read
+   */
+  private void readAhead() throws IOException {
+    while (!compressedEOF && pending.size() < depth) {
+      BGZF.Block compressed = BGZF.readBlock(in);
+      if (compressed == null)
+        compressedEOF = true;
+      else
+        pending.add(pool.submit(() -> BGZF.inflate(compressed)));
+    }
+  }
+
+  /**
+   * Makes sure the current block has bytes left to read
+   * @return false if the end of the stream is reached
+   * @throws IOException if a block can't be read or inflated
+   */
+  private boolean fill() throws IOException {
+    while (offset >= block.length) {
+      readAhead();
+      Future<byte[]> next = pending.poll();
+      if (next == null)
+        return false;
+      try {
+        block = next.get();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while inflating BGZF block", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw (IOException) e.getCause();
+        throw new IOException("Could not inflate BGZF block", e.getCause());
+      }
+      offset = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill())
+      return -1;
+    return block[offset++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    int total = 0;
+    while (total < len && fill()) {
+      int n = Math.min(len - total, block.length - offset);
+      System.arraycopy(block, offset, b, off + total, n);
+      offset += n;
+      total += n;
+    }
+    return total == 0 ? -1 : total;
+  }
+
+  @Override
+  public int available() {
+    return block.length - offset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    pool.shutdownNow();
+    pending.clear();
+    in.close();
+  }
+}
@@ -0,0 +1,267 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.TabixReader;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * OutputStream writing a BGZF file, where the 64KB blocks are compressed in parallel on a small pool of threads,
+ * and written in order. The empty EOF block is written on close(), which also releases the native memory of the deflaters
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class ParallelBGZFOutputStream extends OutputStream {
+
+  /** uncompressed data per block, leaving room for the header/footer and incompressible data (same as bgzip) */
+  public static final int BLOCK_INPUT_SIZE = 0xff00;
+  public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  public static final int BLOCKS_AHEAD_PER_THREAD = 4;
+
+  /** Empty BGZF block that marks the end of the file */
+  public static final byte[] EOF_BLOCK = {
+      0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00,
+      0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+  };
+
+  private final OutputStream out;
+  private final int level;
+  private final ExecutorService pool;
+  private final ArrayDeque<Future<byte[]>> pending;
+  private final ArrayDeque<long[]> pendingBlocks = new ArrayDeque<>(); //{uncompressed start, uncompressed length} of the pending blocks
+  private final int depth;
+  /** the deflaters not in use, at most one per thread, ended on close() */
+  private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+  private byte[] buffer = new byte[BLOCK_INPUT_SIZE];
+  private int size = 0;
+  private boolean closed = false;
+  private long position = 0; //uncompressed bytes submitted so far
+  private long address = 0; //compressed bytes written so far
+  private BlockListener listener = null;
+
+  public ParallelBGZFOutputStream(String filename, int level) throws IOException {
+    this(new BufferedOutputStream(new FileOutputStream(filename), 4 * 65536), level);
+  }
+
+  public ParallelBGZFOutputStream(OutputStream out, int level) {
+    this(out, level, ThreadConfiguration.getConsumers());
+  }
+
+  /**
+   * @param out the underlying stream
+   * @param level the compression level (0-9)
+   * @param threads the number of threads compressing blocks
+   */
+  public ParallelBGZFOutputStream(OutputStream out, int level, int threads) {
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+      throw new IllegalArgumentException("Invalid compression level [" + level + "]");
+    this.out = out;
+    this.level = level;
+    int nb = Math.max(1, threads);
+    this.pool = Executors.newFixedThreadPool(nb, r -> {
+      Thread t = new WellBehavedThread(r, "BGZF deflater");
+      t.setDaemon(true);
+      return t;
+    });
+    this.depth = BLOCKS_AHEAD_PER_THREAD * nb;
+    this.pending = new ArrayDeque<>(depth);
+  }
+
+  /**
+   * Sets a listener, informed of the address of each block when it is written (to build an index)
+   * @param listener the listener
+   */
+  public void setBlockListener(BlockListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @return the number of uncompressed bytes written to this stream so far
+   */
+  public long getPosition() {
+    return position + size;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    buffer[size++] = (byte) b;
+    if (size == BLOCK_INPUT_SIZE)
+      submitBlock();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, BLOCK_INPUT_SIZE - size);
+      System.arraycopy(b, off, buffer, size, n);
+      size += n;
+      off += n;
+      len -= n;
+      if (size == BLOCK_INPUT_SIZE)
+        submitBlock();
+    }
+  }
+
+  /**
+   * Sends the buffered data to be compressed as a block, writes the oldest compressed blocks if too many are pending
+   * @throws IOException if a block can't be written
+   */
+  private void submitBlock() throws IOException {
+    if (size == 0)
+      return;
+    final byte[] data = buffer;
+    final int length = size;
+    pending.add(pool.submit(() -> compress(data, length)));
+    pendingBlocks.add(new long[]{position, length});
+    position += length;
+    buffer = new byte[BLOCK_INPUT_SIZE];
+    size = 0;
+    while (pending.size() >= depth)
+      writeNextBlock();
+  }
+
+  private void writeNextBlock() throws IOException {
+    try {
+      byte[] block = pending.poll().get();
+      long[] uncompressed = pendingBlocks.poll();
+      out.write(block);
+      if (listener != null)
+        listener.blockWritten(uncompressed[0], (int) uncompressed[1], address);
+      address += block.length;
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while compressing BGZF block", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not compress BGZF block", e.getCause());
+    }
+  }
+
+  /**
+   * Compresses the data as a whole BGZF block (stored uncompressed if deflate expands it too much)
+   * @param data the uncompressed data
+   * @param length the length of the data
+   * @return the BGZF block
+   */
+  private byte[] compress(byte[] data, int length) {
+    Deflater deflater = deflaters.poll();
+    if (deflater == null)
+      deflater = new Deflater(level, true);
+    byte[] block = new byte[TabixReader.MAX_COMPRESSED_BLOCK_SIZE];
+    int cdataSize;
+    try {
+      cdataSize = deflate(deflater, data, length, block);
+    } finally {
+      deflaters.add(deflater);
+    }
+    if (cdataSize < 0) { //doesn't fit in a block, store it
+      Deflater store = new Deflater(Deflater.NO_COMPRESSION, true);
+      cdataSize = deflate(store, data, length, block);
+      store.end();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, length);
+    int blockSize = TabixReader.BLOCK_HEADER_LENGTH + cdataSize + TabixReader.BLOCK_FOOTER_LENGTH;
+
+    System.arraycopy(EOF_BLOCK, 0, block, 0, TabixReader.BLOCK_LENGTH_OFFSET);
+    writeShort(block, TabixReader.BLOCK_LENGTH_OFFSET, blockSize - 1);
+    int footer = TabixReader.BLOCK_HEADER_LENGTH + cdataSize;
+    writeInt(block, footer, (int) crc.getValue());
+    writeInt(block, footer + 4, length);
+
+    byte[] ret = new byte[blockSize];
+    System.arraycopy(block, 0, ret, 0, blockSize);
+    return ret;
+  }
+
+  /**
+   * @return the size of the deflated data, written after the header, or -1 if it doesn't fit in a block
+   */
+  private static int deflate(Deflater deflater, byte[] data, int length, byte[] block) {
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    int max = block.length - TabixReader.BLOCK_HEADER_LENGTH - TabixReader.BLOCK_FOOTER_LENGTH;
+    int cdataSize = deflater.deflate(block, TabixReader.BLOCK_HEADER_LENGTH, max);
+    return deflater.finished() ? cdataSize : -1;
+  }
+
+  /**
+   * Informed of the position of the blocks in the compressed file, in order, by the thread writing to the stream
+   */
+  public interface BlockListener {
+    /**
+     * @param uncompressedStart the position of the first byte of the block in the uncompressed data
+     * @param uncompressedLength the uncompressed size of the block
+     * @param address the position of the block in the compressed file
+     * @throws IOException if the listener fails
+     */
+    void blockWritten(long uncompressedStart, int uncompressedLength, long address) throws IOException;
+
+    /**
+     * The stream has been closed
+     * @param uncompressedEnd the total size of the uncompressed data
+     * @param eofAddress the position of the EOF block in the compressed file
+     * @throws IOException if the listener fails
+     */
+    void closed(long uncompressedEnd, long eofAddress) throws IOException;
+  }
+
+  private static void writeShort(byte[] b, int offset, int value) {
+    b[offset] = (byte) value;
+    b[offset + 1] = (byte) (value >>> 8);
+  }
+
+  private static void writeInt(byte[] b, int offset, int value) {
+    writeShort(b, offset, value);
+    writeShort(b, offset + 2, value >>> 16);
+  }
+
+  /**
+   * Compresses and writes all the buffered data, the current block is closed even if it is not full
+   * @throws IOException if the data can't be written
+   */
+  @Override
+  public void flush() throws IOException {
+    submitBlock();
+    while (!pending.isEmpty())
+      writeNextBlock();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    try {
+      flush();
+      out.write(EOF_BLOCK);
+      out.flush();
+      if (listener != null)
+        listener.closed(position, address);
+    } finally {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      Deflater deflater;
+      while ((deflater = deflaters.poll()) != null)
+        deflater.end();
+      out.close();
+    }
+  }
+}
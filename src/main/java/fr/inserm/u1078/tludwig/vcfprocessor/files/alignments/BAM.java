@@ -14,7 +14,7 @@ import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.zip.ZipException;
 
-public class BAM implements AlignmentProducer {
+public class BAM implements IndexedAlignmentProducer {
   public static final byte[] BAM_MAGIC_STRING = "BAM\1".getBytes();
   private final BlockCompressedInputStream in;
   private final SAM sam;
@@ -113,102 +113,102 @@ public class BAM implements AlignmentProducer {
 
 
   /**
-   * @param ref
-   * @param originalRegions Regions are expected to be sorted
-   * @param queue
-   * @throws IOException
-   * @throws SAMException
-   * @throws InterruptedException
+   * Puts in the queue every record of a reference that overlaps at least one of the regions, in the order of the file
+   * @param ref the index of the reference
+   * @param originalRegions the regions on this reference
+   * @param queue the queue receiving the records
+   * @throws IOException if the file can't be read
+   * @throws SAMException if a record can't be built
+   * @throws InterruptedException if interrupted while waiting for room in the queue
    */
   public void populateRecords(int ref, List<Region> originalRegions, LinkedBlockingQueue<AlignmentRecord> queue) throws IOException, SAMException, InterruptedException {
-    //TODO is it faster to work region-by-region ?
+    this.readRecords(ref, originalRegions, queue::put);
+  }
+
+  /**
+   * Gives to the handler every record of a reference that overlaps at least one of the regions, in the order of the file.<br/>
+   * The chunks of all the regions are coalesced, and read with a single stream, seeking forward only, so that each record is
+   * decoded once. A sweep-line over the regions (sorted by start) tests each record against the regions it can overlap only.<br/>
+   * Each call opens its own stream, so that several threads can read different references of the same file
+   * @param ref the index of the reference
+   * @param originalRegions the regions on this reference
+   * @param handler the handler receiving the records
+   * @throws IOException if the file can't be read
+   * @throws SAMException if a record can't be built or handled
+   * @throws InterruptedException if the handler was interrupted
+   */
+  @Override
+  public void readRecords(int ref, List<Region> originalRegions, RecordHandler handler) throws IOException, SAMException, InterruptedException {
     if(originalRegions.isEmpty()) {
       Message.debug("Empty regions");
       return;
     }
     ArrayList<Region> regions = new ArrayList<>(originalRegions);
-    Message.debug("Looking for chunks");
-    ChunkList chunks = bai.getChunks(ref, regions);
-    Message.debug("Found " + chunks.size() + " chunks for ref ["+ref+"]");
-
-    int first = regions.get(0).getStart1Based();
-    int last = regions.get(regions.size() - 1).getEnd1Based();
-    for (Chunk chunk : chunks) {
-      //Message.debug("Chunk " + chunk);
-      pointer = chunk.getBeg();
-      long start = chunk.getBeg();
-      long end = chunk.getEnd();
-
-      BlockCompressedInputStream in = new BlockCompressedInputStream(new File(this.getFilename()));
-
-      //Message.debug("Skipping to " + pointer);
-
-      in.seek(pointer);
-      //Message.debug("Reading until " + chunk.getEnd());
-      int curPos = -1;
-      while (pointer < end && curPos <= last) {
-        final int blockSize = ByteBuffer.wrap(in.readNBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getInt(); //TODO long ?
-        final BAMByteArray bba = new BAMByteArray(in.readNBytes(blockSize));
-        RawAlignmentRecordData record = new RawAlignmentRecordData(bba, pointer);
-        pointer += 4 + blockSize;
-        BAMRecord bamRecord = (BAMRecord) this.build(record);
-        if (bamRecord == null)
-          Message.debug("AlignmentRecord is null");
-        else {
+    regions.sort(Comparator.comparingInt(Region::getStart1Based));
+    List<Chunk> chunks = coalesce(bai.getChunks(ref, regions));
+    Message.debug("Found " + chunks.size() + " chunks for " + regions.size() + " regions on ref ["+ref+"]");
+
+    int last = 0;
+    for(Region region : regions)
+      last = Math.max(last, region.getEnd1Based());
+
+    int first = 0; //first region that can still overlap the next records
+    try (BlockCompressedInputStream in = new BlockCompressedInputStream(new File(this.getFilename()))) {
+      long position = -1;
+      for (Chunk chunk : chunks) {
+        if (chunk.getEnd() <= position) //already read with the previous chunk
+          continue;
+        if (chunk.getBeg() > position)
+          in.seek(chunk.getBeg());
+        position = in.getFilePointer();
+        int curPos = -1;
+        while (position < chunk.getEnd() && curPos <= last) {
+          final byte[] size = in.readNBytes(4);
+          if (size.length < 4)
+            break;
+          final int blockSize = ByteBuffer.wrap(size).order(ByteOrder.LITTLE_ENDIAN).getInt();
+          final BAMByteArray bba = new BAMByteArray(in.readNBytes(blockSize));
+          BAMRecord bamRecord = (BAMRecord) this.build(new RawAlignmentRecordData(bba, position));
+          position = in.getFilePointer();
+          if (bamRecord == null) {
+            Message.debug("AlignmentRecord is null");
+            continue;
+          }
           curPos = bamRecord.getPos();
           int curEnd = bamRecord.getEndPos();
-          Set<Region> toRemove = new HashSet<>();
-          for (Region r : regions) {
-            //if (curPos == 65438) Message.debug("Pos[" + curPos + "] End[" + curEnd + "] region [" + r + "] overlap [" + r.overlap(curPos, curEnd) + "]");
-            if (r.overlap(curPos, curEnd)) {
-              queue.put(bamRecord);
+          while (first < regions.size() && regions.get(first).getEnd1Based() < curPos)
+            first++;
+          for (int r = first; r < regions.size() && regions.get(r).getStart1Based() <= curEnd; r++)
+            if (regions.get(r).overlap(curPos, curEnd)) {
+              handler.handle(bamRecord);
               break;
-            } else if (r.getEnd1Based() < curPos){
-              toRemove.add(r);
             }
-          }
-          regions.removeAll(toRemove);
         }
+        if (curPos > last)
+          break;
       }
-      in.close();
     }
   }
 
-  public void populateRecords(int ref, Region region, LinkedBlockingQueue<AlignmentRecord> queue) throws IOException, SAMException, InterruptedException {
-    //TODO is it faster to work region-by-region ?
-    ChunkList chunks = bai.getChunks(ref, region);
-
-    int last = region.getEnd1Based();
+  /**
+   * Merges the chunks that overlap or are close (see Chunk.isMergeable), including those that became mergeable
+   * after a previous merge
+   * @param chunks the chunks, sorted
+   * @return the coalesced chunks, sorted
+   */
+  private static List<Chunk> coalesce(ChunkList chunks) {
+    ArrayList<Chunk> ret = new ArrayList<>();
     for (Chunk chunk : chunks) {
-      //Message.debug("Chunk " + chunk);
-      pointer = chunk.getBeg();
-      long start = chunk.getBeg();
-      long end = chunk.getEnd();
-
-      BlockCompressedInputStream in = new BlockCompressedInputStream(new File(this.getFilename()));
-
-      //Message.debug("Skipping to " + pointer);
-
-      in.seek(pointer);
-      //Message.debug("Reading until " + chunk.getEnd());
-      int curPos = -1;
-      while (pointer < end && curPos <= last) {
-        final int blockSize = ByteBuffer.wrap(in.readNBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getInt(); //TODO long ?
-        final BAMByteArray bba = new BAMByteArray(in.readNBytes(blockSize));
-        RawAlignmentRecordData record = new RawAlignmentRecordData(bba, pointer);
-        pointer += 4 + blockSize;
-        BAMRecord bamRecord = (BAMRecord) this.build(record);
-        if (bamRecord == null)
-          Message.debug("AlignmentRecord is null");
-        else {
-          curPos = bamRecord.getPos();
-          int curEnd = bamRecord.getEndPos();
-          if (region.overlap(curPos, curEnd))
-            queue.put(bamRecord);
-        }
-      }
-      in.close();
+      if (!ret.isEmpty() && ret.get(ret.size() - 1).isMergeable(chunk))
+        ret.set(ret.size() - 1, Chunk.merge(ret.get(ret.size() - 1), chunk));
+      else
+        ret.add(chunk);
     }
+    return ret;
+  }
+
+  public void populateRecords(int ref, Region region, LinkedBlockingQueue<AlignmentRecord> queue) throws IOException, SAMException, InterruptedException {
+    this.populateRecords(ref, Collections.singletonList(region), queue);
   }
 
   @Override
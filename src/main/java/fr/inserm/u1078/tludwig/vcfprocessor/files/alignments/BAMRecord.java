@@ -138,7 +138,7 @@ public class BAMRecord extends AlignmentRecord {
     byte[] types = new byte[nOp];
     for(int i = 0 ; i < nOp; i++){
       types[i] = (byte)(this.cigarIntegers[i] & 0x000f) ;
-      length[i] = (this.cigarIntegers[i] & 0xfff0) >> 4;
+      length[i] = this.cigarIntegers[i] >>> 4;
       if(types[i] < 0 || types[i] > 8)
         throw new SAMException.InvalidCigarException(this.bamfile, StringTools.join(",", this.cigarIntegers), ByteArray.hex(types[i]));
     }
@@ -0,0 +1,119 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.FileFormat;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * CRAM index file : a gzipped text file, with one line per slice (and per reference, for multi-reference slices)
+ * <pre>
+ * refId  start  span  container_offset  slice_offset  slice_size
+ * </pre>
+ * The container offset is from the start of the file, the slice offset from the start of the content of the container
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAI implements FileFormat {
+  private final String filename;
+  private final ArrayList<Entry> entries = new ArrayList<>();
+
+  public CRAI(String filename) throws IOException {
+    this.filename = filename;
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(filename)), StandardCharsets.US_ASCII))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.isBlank())
+          continue;
+        String[] f = line.trim().split("\\s+");
+        if (f.length < 6)
+          throw new IOException("Malformed line in CRAM index [" + filename + "] : " + line);
+        entries.add(new Entry(Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), Long.parseLong(f[3]), Integer.parseInt(f[4]), Integer.parseInt(f[5])));
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed CRAM index [" + filename + "]", e);
+    }
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * @param ref the index of the reference
+   * @param regions the regions on this reference
+   * @return the slices of the reference that overlap at least one of the regions, in the order of the file
+   */
+  public List<Entry> getEntries(int ref, List<Region> regions) {
+    ArrayList<Entry> ret = new ArrayList<>();
+    for (Entry entry : entries)
+      if (entry.refId == ref)
+        for (Region region : regions)
+          if (region.overlap(entry.start, entry.start + entry.span - 1)) {
+            ret.add(entry);
+            break;
+          }
+    ret.sort(Comparator.comparingLong(Entry::getContainerOffset).thenComparingInt(Entry::getSliceOffset));
+    return ret;
+  }
+
+  @Override
+  public String[] knownExtensions() {
+    return new String[]{"crai"};
+  }
+
+  @Override
+  public String fileFormatDescription() {
+    return "CRAM index file";
+  }
+
+  public static class Entry {
+    private final int refId;
+    private final int start;
+    private final int span;
+    private final long containerOffset;
+    private final int sliceOffset;
+    private final int sliceSize;
+
+    public Entry(int refId, int start, int span, long containerOffset, int sliceOffset, int sliceSize) {
+      this.refId = refId;
+      this.start = start;
+      this.span = span;
+      this.containerOffset = containerOffset;
+      this.sliceOffset = sliceOffset;
+      this.sliceSize = sliceSize;
+    }
+
+    public int getRefId() {
+      return refId;
+    }
+
+    public int getStart() {
+      return start;
+    }
+
+    public int getSpan() {
+      return span;
+    }
+
+    public long getContainerOffset() {
+      return containerOffset;
+    }
+
+    public int getSliceOffset() {
+      return sliceOffset;
+    }
+
+    public int getSliceSize() {
+      return sliceSize;
+    }
+  }
+}
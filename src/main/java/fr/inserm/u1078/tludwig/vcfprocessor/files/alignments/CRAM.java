@@ -1,30 +1,119 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
 
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.Fasta;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.FastaException;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CRAM 3.x file.<br/>
+ * Containers are read sequentially, and their slices are uncompressed and decoded in parallel (by ThreadConfiguration.getReaders()
+ * threads), the records being given back in the order of the file.<br/>
+ * The reference is the fasta file given with --cramref or, if absent, the local file in the UR field of the @SQ headers.
+ * Supported block compressions : raw, gzip, rANS 4x8<br/>
+ * The file must be closed (close()) if it is not read until the end
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAM implements IndexedAlignmentProducer, Closeable {
+  public static final byte[] CRAM_MAGIC_STRING = "CRAM".getBytes(StandardCharsets.US_ASCII);
+  public static final int SUPPORTED_MAJOR_VERSION = 3;
+  private static final int FILE_DEFINITION_LENGTH = 26;
+
+  private static String referenceFilename = null;
 
-public class CRAM implements AlignmentProducer {
   private final SAM sam;
+  private final String filename;
+  private final InputStream in;
+  private final CRAI crai;
+  private String[] readGroups = new String[0];
+  private String headerReference = null;
+  private Fasta reference = null;
+
+  private ExecutorService decoders = null;
+  private final ArrayDeque<Future<CRAMRecord[]>> pendingSlices = new ArrayDeque<>();
+  private CRAMRecord[] currentSlice = new CRAMRecord[0];
+  private int currentIndex = 0;
+  private boolean eof = false;
 
   public CRAM(String filename, SAM sam) throws CRAMException, IOException {
     this.sam = sam;
+    this.filename = filename;
+    this.in = this.checkValid(filename);
+    this.loadHeaders();
+    File index = new File(filename + ".crai");
+    this.crai = index.exists() ? new CRAI(index.getAbsolutePath()) : null;
   }
 
-  @Override
-  public RawAlignmentRecordData readNext() {
-    //TODO implement
-    throw new UnsupportedOperationException();
+  /**
+   * Sets the reference fasta file (must be indexed) used to decode the CRAM files
+   * @param filename the name of the fasta file
+   */
+  public static void setReference(String filename) {
+    referenceFilename = filename;
   }
 
-  @Override
-  public AlignmentRecord build(RawAlignmentRecordData record) {
-    //TODO implement
-    throw new UnsupportedOperationException();
+  private InputStream checkValid(String filename) throws IOException, CRAMException {
+    InputStream stream = new BufferedInputStream(new FileInputStream(filename));
+    byte[] definition = stream.readNBytes(FILE_DEFINITION_LENGTH);
+    if (definition.length < FILE_DEFINITION_LENGTH || !Arrays.equals(Arrays.copyOf(definition, 4), CRAM_MAGIC_STRING)) {
+      stream.close();
+      throw new CRAMException("Not a CRAM file [" + filename + "]");
+    }
+    if (definition[4] != SUPPORTED_MAJOR_VERSION) {
+      stream.close();
+      throw new CRAMException("Unsupported CRAM version " + definition[4] + "." + definition[5] + " for [" + filename + "]");
+    }
+    return stream;
   }
 
   @Override
   public long loadHeaders() throws IOException {
-    //TODO implement
-    throw new UnsupportedOperationException();
+    CRAMContainer container = CRAMContainer.read(in);
+    if (container == null)
+      throw new IOException("No header container in CRAM file [" + filename + "]");
+    byte[] data;
+    try {
+      data = container.readFirstBlock().getData();
+    } catch (CRAMException e) {
+      throw new IOException("Could not read the header of CRAM file [" + filename + "]", e);
+    }
+    CRAMByteArray block = new CRAMByteArray(data);
+    int length = block.readLittleEndianSInt32();
+    String text = new String(block.readBytes(length), StandardCharsets.ISO_8859_1);
+    ArrayList<String> groups = new ArrayList<>();
+    for (String line : text.split("\n")) {
+      if (line.startsWith("@RG"))
+        groups.add(SAMHeader.getField(line, "ID"));
+      else if (line.startsWith("@SQ") && headerReference == null) {
+        String ur = SAMHeader.getField(line, "UR");
+        if (ur != null) {
+          if (ur.startsWith("file://"))
+            ur = ur.substring("file://".length());
+          if (new File(ur).exists())
+            headerReference = ur;
+        }
+      }
+    }
+    this.readGroups = groups.toArray(new String[0]);
+    SAMHeader samHeader = SAMHeader.fromText(text);
+    this.setHeaders(samHeader);
+    return samHeader.getByteLength();
   }
 
   @Override
@@ -39,7 +128,191 @@ public class CRAM implements AlignmentProducer {
 
   @Override
   public String getFilename() {
-    return this.sam.getFilename();
+    return this.filename;
+  }
+
+  public String getReferenceName(int id) {
+    if (id < 0 || id >= getHeaders().getReferences().length)
+      return "*";
+    return getHeaders().getReferences()[id].getName();
+  }
+
+  String getReadGroup(int index) {
+    return index < readGroups.length ? readGroups[index] : String.valueOf(index);
+  }
+
+  private synchronized Fasta getReference() throws CRAMException {
+    if (reference == null) {
+      String name = referenceFilename != null ? referenceFilename : headerReference;
+      if (name == null)
+        throw new CRAMException("A reference is needed to decode [" + filename + "], use --cramref");
+      try {
+        reference = new Fasta(name);
+      } catch (FastaException e) {
+        throw new CRAMException("Could not open reference [" + name + "]", e);
+      }
+    }
+    return reference;
+  }
+
+  /**
+   * Gets the bases of the reference, positions outside of the chromosome are N
+   * @param refId the index of the reference
+   * @param start the first position (1-based)
+   * @param end the last position (1-based, included)
+   * @return the bases, as in the fasta file
+   * @throws CRAMException if the reference is unavailable or doesn't contain this chromosome
+   */
+  byte[] getReferenceBases(int refId, int start, int end) throws CRAMException {
+    Fasta fasta = getReference();
+    String name = getReferenceName(refId);
+    long length = fasta.getChromosomeLength(name);
+    if (length < 0) {
+      name = name.toLowerCase().startsWith("chr") ? name.substring(3) : "chr" + name;
+      length = fasta.getChromosomeLength(name);
+    }
+    if (length < 0)
+      throw new CRAMException("Reference [" + getReferenceName(refId) + "] not found in the fasta file");
+    byte[] ret = new byte[Math.max(0, end - start + 1)];
+    Arrays.fill(ret, (byte) 'N');
+    int from = Math.max(start, 1);
+    int to = (int) Math.min(end, length);
+    if (to >= from)
+      try {
+        System.arraycopy(fasta.getBytesAt(name, from, to - from + 1), 0, ret, from - start, to - from + 1);
+      } catch (FastaException e) {
+        throw new CRAMException("Could not read reference [" + name + ":" + from + "-" + to + "]", e);
+      }
+    return ret;
+  }
+
+  @Override
+  public RawAlignmentRecordData readNext() throws IOException {
+    while (currentIndex >= currentSlice.length) {
+      submitSlices();
+      Future<CRAMRecord[]> next = pendingSlices.poll();
+      if (next == null) {
+        close();
+        return null;
+      }
+      try {
+        currentSlice = next.get();
+      } catch (ExecutionException e) {
+        throw new IOException("Could not decode slice from CRAM file [" + filename + "]", e.getCause());
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while decoding CRAM file [" + filename + "]", e);
+      }
+      currentIndex = 0;
+    }
+    return new RawAlignmentRecordData(currentSlice[currentIndex++]);
+  }
+
+  /**
+   * Reads containers until enough slices are being decoded to keep the decoding threads busy
+   */
+  private void submitSlices() throws IOException {
+    int threads = ThreadConfiguration.getReaders();
+    if (decoders == null)
+      decoders = Executors.newFixedThreadPool(threads, new WellBehavedThreadFactory());
+    while (!eof && pendingSlices.size() < 2 * threads) {
+      CRAMContainer container = CRAMContainer.read(in);
+      if (container == null) {
+        eof = true;
+        break;
+      }
+      if (container.getNbRecords() == 0) //EOF container
+        continue;
+      CRAMCompressionHeader compression;
+      try {
+        compression = container.readCompressionHeader();
+      } catch (CRAMException e) {
+        throw new IOException("Could not read compression header from CRAM file [" + filename + "]", e);
+      }
+      for (int landmark : container.getLandmarks())
+        pendingSlices.add(decoders.submit(() -> container.readSlice(compression, landmark).decode(this)));
+    }
+  }
+
+  /**
+   * Closes the sequential stream, stops the decoding threads and releases the reference
+   * @throws IOException if the stream can't be closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (decoders != null)
+      decoders.shutdownNow();
+    pendingSlices.clear();
+    if (reference != null)
+      reference.close();
+    reference = null;
+    in.close();
+  }
+
+  @Override
+  public AlignmentRecord build(RawAlignmentRecordData record) {
+    return record.getCRAMRecord();
+  }
+
+  /**
+   * Gives to the handler every record of a reference that overlaps at least one of the regions, in the order of the file.<br/>
+   * The slices are found with the .crai index, a sweep-line over the regions (sorted by start) tests each record against the
+   * regions it can overlap only.<br/>
+   * Each call opens its own stream, so that several threads can read different references of the same file
+   * @param ref the index of the reference
+   * @param originalRegions the regions on this reference
+   * @param handler the handler receiving the records
+   * @throws IOException if the file or its index can't be read
+   * @throws SAMException if a slice can't be decoded or a record handled
+   * @throws InterruptedException if the handler was interrupted
+   */
+  @Override
+  public void readRecords(int ref, List<Region> originalRegions, RecordHandler handler) throws IOException, SAMException, InterruptedException {
+    if (crai == null)
+      throw new IOException("Index file [" + filename + ".crai] not found");
+    if (originalRegions.isEmpty()) {
+      Message.debug("Empty regions");
+      return;
+    }
+    ArrayList<Region> regions = new ArrayList<>(originalRegions);
+    regions.sort(Comparator.comparingInt(Region::getStart1Based));
+    List<CRAI.Entry> entries = crai.getEntries(ref, regions);
+    Message.debug("Found " + entries.size() + " slices for " + regions.size() + " regions on ref [" + ref + "]");
+
+    int first = 0; //first region that can still overlap the next records
+    try (FileInputStream file = new FileInputStream(filename)) {
+      long containerOffset = -1;
+      CRAMContainer container = null;
+      CRAMCompressionHeader compression = null;
+      for (CRAI.Entry entry : entries) {
+        CRAMRecord[] records;
+        try {
+          if (entry.getContainerOffset() != containerOffset) {
+            containerOffset = entry.getContainerOffset();
+            file.getChannel().position(containerOffset);
+            container = CRAMContainer.read(new BufferedInputStream(file));
+            if (container == null)
+              throw new IOException("No container at offset [" + containerOffset + "] in [" + filename + "]");
+            compression = container.readCompressionHeader();
+          }
+          records = container.readSlice(compression, entry.getSliceOffset()).decode(this);
+        } catch (CRAMException e) {
+          throw new SAMException(this, "Could not decode slice at [" + entry.getContainerOffset() + "/" + entry.getSliceOffset() + "]", e);
+        }
+        for (CRAMRecord record : records) {
+          if (record.getRefIDAsNum() != ref)
+            continue;
+          int curPos = record.getPos();
+          int curEnd = record.getEndPos();
+          while (first < regions.size() && regions.get(first).getEnd1Based() < curPos)
+            first++;
+          for (int r = first; r < regions.size() && regions.get(r).getStart1Based() <= curEnd; r++)
+            if (regions.get(r).overlap(curPos, curEnd)) {
+              handler.handle(record);
+              break;
+            }
+        }
+      }
+    }
   }
 
   @Override
@@ -0,0 +1,96 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A block of a CRAM container : header (method, content type, content id, sizes), data and CRC32.<br/>
+ * The data are uncompressed when the block is read
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAMBlock {
+  public static final int METHOD_RAW = 0;
+  public static final int METHOD_GZIP = 1;
+  public static final int METHOD_BZIP2 = 2;
+  public static final int METHOD_LZMA = 3;
+  public static final int METHOD_RANS4x8 = 4;
+  public static final String[] METHODS = {"raw", "gzip", "bzip2", "lzma", "rans4x8", "ransNx16", "adaptive arithmetic", "fqzcomp", "name tokenizer"};
+
+  public static final int CONTENT_FILE_HEADER = 0;
+  public static final int CONTENT_COMPRESSION_HEADER = 1;
+  public static final int CONTENT_SLICE_HEADER = 2;
+  public static final int CONTENT_EXTERNAL = 4;
+  public static final int CONTENT_CORE = 5;
+
+  private final int method;
+  private final int contentType;
+  private final int contentId;
+  private final byte[] data;
+
+  private CRAMBlock(int method, int contentType, int contentId, byte[] data) {
+    this.method = method;
+    this.contentType = contentType;
+    this.contentId = contentId;
+    this.data = data;
+  }
+
+  /**
+   * Reads and uncompresses the block at the current position of the array
+   * @param in the content of the container
+   * @return the block
+   * @throws CRAMException if the block can't be read or uncompressed
+   */
+  public static CRAMBlock read(CRAMByteArray in) throws CRAMException {
+    int method = in.readUInt8();
+    int contentType = in.readUInt8();
+    int contentId = in.readITF8();
+    int compressedSize = in.readITF8();
+    int rawSize = in.readITF8();
+    byte[] compressed = compressedSize == 0 ? new byte[0] : in.readBytes(compressedSize);
+    in.readLittleEndianSInt32(); //CRC32
+    byte[] data = uncompress(method, compressed, rawSize);
+    if (data.length != rawSize)
+      throw new CRAMException("Block of content id [" + contentId + "] has " + data.length + " bytes instead of " + rawSize);
+    return new CRAMBlock(method, contentType, contentId, data);
+  }
+
+  private static byte[] uncompress(int method, byte[] compressed, int rawSize) throws CRAMException {
+    switch (method) {
+      case METHOD_RAW:
+        return compressed;
+      case METHOD_GZIP:
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+          return gz.readNBytes(rawSize);
+        } catch (IOException e) {
+          throw new CRAMException("Could not uncompress gzip block", e);
+        }
+      case METHOD_RANS4x8:
+        return RANS4x8.uncompress(compressed);
+      default:
+        String name = method >= 0 && method < METHODS.length ? METHODS[method] : "unknown";
+        throw new CRAMException("Compression method [" + method + ":" + name + "] is not supported");
+    }
+  }
+
+  public int getMethod() {
+    return method;
+  }
+
+  public int getContentType() {
+    return contentType;
+  }
+
+  public int getContentId() {
+    return contentId;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public CRAMByteArray getContent() {
+    return new CRAMByteArray(data);
+  }
+}
@@ -2,6 +2,10 @@ package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.files.ByteArray;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
 public class CRAMByteArray extends ByteArray {
   /**
    * Constructor
@@ -11,4 +15,103 @@ public class CRAMByteArray extends ByteArray {
   public CRAMByteArray(byte[] array) {
     super(array);
   }
+
+  /**
+   * Reads an ITF8 integer (1 to 5 bytes, the number of leading 1 bits of the first byte gives the number of extra bytes)
+   * @return the value
+   */
+  public int readITF8() {
+    final int b0 = readUInt8();
+    if ((b0 & 0x80) == 0)
+      return b0;
+    if ((b0 & 0x40) == 0)
+      return ((b0 & 0x3f) << 8) | readUInt8();
+    if ((b0 & 0x20) == 0)
+      return ((b0 & 0x1f) << 16) | (readUInt8() << 8) | readUInt8();
+    if ((b0 & 0x10) == 0)
+      return ((b0 & 0x0f) << 24) | (readUInt8() << 16) | (readUInt8() << 8) | readUInt8();
+    return ((b0 & 0x0f) << 28) | (readUInt8() << 20) | (readUInt8() << 12) | (readUInt8() << 4) | (readUInt8() & 0x0f);
+  }
+
+  /**
+   * Reads an LTF8 long (1 to 9 bytes, the number of leading 1 bits of the first byte gives the number of extra bytes)
+   * @return the value
+   */
+  public long readLTF8() {
+    final int b0 = readUInt8();
+    int extra = Integer.numberOfLeadingZeros(~(b0 << 24));
+    long value = extra >= 7 ? 0 : b0 & (0xff >> (extra + 1));
+    for (int i = 0; i < extra; i++)
+      value = (value << 8) | readUInt8();
+    return value;
+  }
+
+  /**
+   * Reads an array of ITF8 integers, prefixed by its ITF8 length
+   * @return the values
+   */
+  public int[] readITF8Array() {
+    int[] ret = new int[readITF8()];
+    for (int i = 0; i < ret.length; i++)
+      ret[i] = readITF8();
+    return ret;
+  }
+
+  /**
+   * Reads an array of bytes, prefixed by its ITF8 length
+   * @return the bytes
+   */
+  public byte[] readITF8Bytes() {
+    int length = readITF8();
+    return length == 0 ? new byte[0] : readBytes(length);
+  }
+
+  /**
+   * Reads an ITF8 integer from a stream
+   * @param in the stream
+   * @return the value
+   * @throws IOException if the stream can't be read, or ends before the value
+   */
+  public static int readITF8(InputStream in) throws IOException {
+    final int b0 = read(in);
+    int extra = Math.min(4, Integer.numberOfLeadingZeros(~(b0 << 24)));
+    if (extra == 4)
+      return ((b0 & 0x0f) << 28) | (read(in) << 20) | (read(in) << 12) | (read(in) << 4) | (read(in) & 0x0f);
+    int value = b0 & (0xff >> (extra + 1));
+    for (int i = 0; i < extra; i++)
+      value = (value << 8) | read(in);
+    return value;
+  }
+
+  /**
+   * Reads an LTF8 long from a stream
+   * @param in the stream
+   * @return the value
+   * @throws IOException if the stream can't be read, or ends before the value
+   */
+  public static long readLTF8(InputStream in) throws IOException {
+    final int b0 = read(in);
+    int extra = Integer.numberOfLeadingZeros(~(b0 << 24));
+    long value = extra >= 7 ? 0 : b0 & (0xff >> (extra + 1));
+    for (int i = 0; i < extra; i++)
+      value = (value << 8) | read(in);
+    return value;
+  }
+
+  /**
+   * Reads a little endian INT32 from a stream
+   * @param in the stream
+   * @return the value
+   * @throws IOException if the stream can't be read, or ends before the value
+   */
+  public static int readLittleEndianSInt32(InputStream in) throws IOException {
+    return read(in) | (read(in) << 8) | (read(in) << 16) | (read(in) << 24);
+  }
+
+  private static int read(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1)
+      throw new EOFException("Unexpected end of CRAM stream");
+    return b;
+  }
 }
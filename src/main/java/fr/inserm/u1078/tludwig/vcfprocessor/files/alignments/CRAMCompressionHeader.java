@@ -0,0 +1,169 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compression header of a CRAM container : preservation map, encodings of the data series and of the tags.<br/>
+ * Shared (read-only) by all the slices of the container
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAMCompressionHeader {
+  private static final byte[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+  private boolean readNamesIncluded = true;
+  private boolean apDelta = true;
+  private boolean referenceRequired = true;
+  /** substitutions[reference base][code] = read base */
+  private final byte[][] substitutions = new byte[5][4];
+  /** for each tag line : the tag ids (2 characters and BAM type, on 3 bytes) */
+  private int[][] tagDictionary = new int[0][];
+  private final HashMap<String, CRAMEncoding> dataSeries = new HashMap<>();
+  private final HashMap<Integer, CRAMEncoding> tags = new HashMap<>();
+
+  public CRAMCompressionHeader(CRAMBlock block) throws CRAMException {
+    if (block.getContentType() != CRAMBlock.CONTENT_COMPRESSION_HEADER)
+      throw new CRAMException("Expected a compression header block, found content type [" + block.getContentType() + "]");
+    CRAMByteArray in = block.getContent();
+    readPreservationMap(in);
+    readDataSeries(in);
+    readTagEncodings(in);
+  }
+
+  private void readPreservationMap(CRAMByteArray in) throws CRAMException {
+    in.readITF8(); //size in bytes
+    int n = in.readITF8();
+    byte[] matrix = null;
+    for (int i = 0; i < n; i++) {
+      String key = new String(in.readBytes(2), StandardCharsets.US_ASCII);
+      switch (key) {
+        case "RN":
+          readNamesIncluded = in.readByte() != 0;
+          break;
+        case "AP":
+          apDelta = in.readByte() != 0;
+          break;
+        case "RR":
+          referenceRequired = in.readByte() != 0;
+          break;
+        case "SM":
+          matrix = in.readBytes(5);
+          break;
+        case "TD":
+          tagDictionary = readTagDictionary(new CRAMByteArray(in.readITF8Bytes()));
+          break;
+        default:
+          throw new CRAMException("Unknown key [" + key + "] in preservation map");
+      }
+    }
+    if (matrix == null)
+      throw new CRAMException("No substitution matrix in preservation map");
+    for (int ref = 0; ref < 5; ref++) {
+      int alt = 0;
+      for (int b = 0; b < 5; b++)
+        if (b != ref) {
+          int code = (matrix[ref] >> (6 - 2 * alt)) & 3;
+          substitutions[ref][code] = BASES[b];
+          alt++;
+        }
+    }
+  }
+
+  /**
+   * Tag lines are separated by \0, each line is a list of 3-bytes tag ids
+   */
+  private static int[][] readTagDictionary(CRAMByteArray in) {
+    byte[] data = in.getData();
+    ArrayList<int[]> lines = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < data.length; i++)
+      if (data[i] == 0) {
+        int[] line = new int[(i - start) / 3];
+        for (int t = 0; t < line.length; t++) {
+          int p = start + 3 * t;
+          line[t] = tagId(data[p], data[p + 1], data[p + 2]);
+        }
+        lines.add(line);
+        start = i + 1;
+      }
+    return lines.toArray(new int[0][]);
+  }
+
+  private void readDataSeries(CRAMByteArray in) throws CRAMException {
+    in.readITF8(); //size in bytes
+    int n = in.readITF8();
+    for (int i = 0; i < n; i++) {
+      String key = new String(in.readBytes(2), StandardCharsets.US_ASCII);
+      dataSeries.put(key, CRAMEncoding.read(in));
+    }
+  }
+
+  private void readTagEncodings(CRAMByteArray in) throws CRAMException {
+    in.readITF8(); //size in bytes
+    int n = in.readITF8();
+    for (int i = 0; i < n; i++) {
+      int id = in.readITF8();
+      tags.put(id, CRAMEncoding.read(in));
+    }
+  }
+
+  public static int tagId(byte c1, byte c2, byte type) {
+    return ((c1 & 0xff) << 16) | ((c2 & 0xff) << 8) | (type & 0xff);
+  }
+
+  public boolean isReadNamesIncluded() {
+    return readNamesIncluded;
+  }
+
+  public boolean isAPDelta() {
+    return apDelta;
+  }
+
+  public boolean isReferenceRequired() {
+    return referenceRequired;
+  }
+
+  /**
+   * @param referenceBase the base on the reference
+   * @param code the substitution code
+   * @return the base of the read
+   */
+  public byte substitute(byte referenceBase, int code) {
+    int ref;
+    switch (referenceBase) {
+      case 'A': case 'a': ref = 0; break;
+      case 'C': case 'c': ref = 1; break;
+      case 'G': case 'g': ref = 2; break;
+      case 'T': case 't': ref = 3; break;
+      default: ref = 4;
+    }
+    return substitutions[ref][code & 3];
+  }
+
+  public int[] getTagLine(int index) throws CRAMException {
+    if (index < 0 || index >= tagDictionary.length)
+      throw new CRAMException("Tag line [" + index + "] not found in dictionary");
+    return tagDictionary[index];
+  }
+
+  /**
+   * @param key the name of the data series
+   * @return the encoding of the data series
+   * @throws CRAMException if the data series is not in the compression header
+   */
+  public CRAMEncoding getDataSeries(String key) throws CRAMException {
+    CRAMEncoding ret = dataSeries.get(key);
+    if (ret == null)
+      throw new CRAMException("No encoding for data series [" + key + "]");
+    return ret;
+  }
+
+  public CRAMEncoding getTagEncoding(int id) throws CRAMException {
+    CRAMEncoding ret = tags.get(id);
+    if (ret == null)
+      throw new CRAMException("No encoding for tag [" + (char) (id >> 16) + (char) ((id >> 8) & 0xff) + ":" + (char) (id & 0xff) + "]");
+    return ret;
+  }
+}
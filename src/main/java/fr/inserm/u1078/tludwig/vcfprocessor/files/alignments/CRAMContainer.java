@@ -0,0 +1,123 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A CRAM container : header (reference, span, number of records, landmarks of the slices) and the raw content (compression
+ * header and slices).<br/>
+ * The content is only read when the container is read, the blocks are uncompressed when the slices are read
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAMContainer {
+  private final int refId;
+  private final int start;
+  private final int span;
+  private final int nbRecords;
+  private final long recordCounter;
+  private final int nbBlocks;
+  private final int[] landmarks;
+  private final byte[] data;
+
+  private CRAMContainer(int refId, int start, int span, int nbRecords, long recordCounter, int nbBlocks, int[] landmarks, byte[] data) {
+    this.refId = refId;
+    this.start = start;
+    this.span = span;
+    this.nbRecords = nbRecords;
+    this.recordCounter = recordCounter;
+    this.nbBlocks = nbBlocks;
+    this.landmarks = landmarks;
+    this.data = data;
+  }
+
+  /**
+   * Reads the container at the current position of the stream
+   * @param in the CRAM file
+   * @return the container, or null if the end of the stream is reached
+   * @throws IOException if the container is truncated
+   */
+  public static CRAMContainer read(InputStream in) throws IOException {
+    int length;
+    try {
+      length = CRAMByteArray.readLittleEndianSInt32(in);
+    } catch (EOFException e) {
+      return null;
+    }
+    int refId = CRAMByteArray.readITF8(in);
+    int start = CRAMByteArray.readITF8(in);
+    int span = CRAMByteArray.readITF8(in);
+    int nbRecords = CRAMByteArray.readITF8(in);
+    long recordCounter = CRAMByteArray.readLTF8(in);
+    CRAMByteArray.readLTF8(in); //number of bases
+    int nbBlocks = CRAMByteArray.readITF8(in);
+    int[] landmarks = new int[CRAMByteArray.readITF8(in)];
+    for (int i = 0; i < landmarks.length; i++)
+      landmarks[i] = CRAMByteArray.readITF8(in);
+    CRAMByteArray.readLittleEndianSInt32(in); //CRC32
+    byte[] data = in.readNBytes(length);
+    if (data.length != length)
+      throw new EOFException("Truncated CRAM container (" + data.length + "/" + length + " bytes)");
+    return new CRAMContainer(refId, start, span, nbRecords, recordCounter, nbBlocks, landmarks, data);
+  }
+
+  public int getRefId() {
+    return refId;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public int getSpan() {
+    return span;
+  }
+
+  public int getNbRecords() {
+    return nbRecords;
+  }
+
+  public long getRecordCounter() {
+    return recordCounter;
+  }
+
+  public int getNbBlocks() {
+    return nbBlocks;
+  }
+
+  public int[] getLandmarks() {
+    return landmarks;
+  }
+
+  /**
+   * @return the first block of the container (the SAM header, for the first container of the file)
+   * @throws CRAMException if the block can't be read
+   */
+  public CRAMBlock readFirstBlock() throws CRAMException {
+    return CRAMBlock.read(new CRAMByteArray(data));
+  }
+
+  /**
+   * @return the compression header, that starts the content of the container
+   * @throws CRAMException if the compression header can't be read
+   */
+  public CRAMCompressionHeader readCompressionHeader() throws CRAMException {
+    return new CRAMCompressionHeader(readFirstBlock());
+  }
+
+  /**
+   * Reads (and uncompresses) a slice
+   * @param compression the compression header of this container
+   * @param offset the offset of the slice, from the start of the content of the container (a landmark, or the offset given by the .crai)
+   * @return the slice
+   * @throws CRAMException if the slice can't be read
+   */
+  public CRAMSlice readSlice(CRAMCompressionHeader compression, int offset) throws CRAMException {
+    if (offset < 0 || offset >= data.length)
+      throw new CRAMException("Slice offset [" + offset + "] outside of the container (" + data.length + " bytes)");
+    CRAMByteArray in = new CRAMByteArray(data);
+    in.setPointer(offset);
+    return new CRAMSlice(in, compression);
+  }
+}
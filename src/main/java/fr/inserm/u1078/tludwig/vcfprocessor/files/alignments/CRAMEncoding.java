@@ -0,0 +1,310 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Encoding of a data series or a tag in a CRAM compression header, and the decoding of its values from the core block (bit
+ * codecs : HUFFMAN, BETA, GAMMA, SUBEXP) or an external block (EXTERNAL, BYTE_ARRAY_STOP)
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public abstract class CRAMEncoding {
+  public static final int NULL = 0;
+  public static final int EXTERNAL = 1;
+  public static final int HUFFMAN = 3;
+  public static final int BYTE_ARRAY_LEN = 4;
+  public static final int BYTE_ARRAY_STOP = 5;
+  public static final int BETA = 6;
+  public static final int SUBEXP = 7;
+  public static final int GAMMA = 9;
+
+  /**
+   * Reads an encoding : codec id, length of the parameters, parameters
+   * @param in the compression header
+   * @return the encoding
+   * @throws CRAMException if the codec is unknown
+   */
+  public static CRAMEncoding read(CRAMByteArray in) throws CRAMException {
+    int codec = in.readITF8();
+    CRAMByteArray params = new CRAMByteArray(in.readITF8Bytes());
+    switch (codec) {
+      case NULL:
+        return new Null();
+      case EXTERNAL:
+        return new External(params.readITF8());
+      case HUFFMAN:
+        return new Huffman(params.readITF8Array(), params.readITF8Array());
+      case BYTE_ARRAY_LEN:
+        return new ByteArrayLen(read(params), read(params));
+      case BYTE_ARRAY_STOP:
+        return new ByteArrayStop(params.readByte(), params.readITF8());
+      case BETA:
+        return new Beta(params.readITF8(), params.readITF8());
+      case SUBEXP:
+        return new SubExp(params.readITF8(), params.readITF8());
+      case GAMMA:
+        return new Gamma(params.readITF8());
+      default:
+        throw new CRAMException("Encoding [" + codec + "] is not supported");
+    }
+  }
+
+  public int readInt(Streams s) throws CRAMException {
+    throw new CRAMException(this.getClass().getSimpleName() + " can't decode integers");
+  }
+
+  public byte readByte(Streams s) throws CRAMException {
+    return (byte) readInt(s);
+  }
+
+  /**
+   * @param s the streams of the slice
+   * @param length the number of values to read
+   * @return the values, as bytes
+   * @throws CRAMException if the values can't be decoded
+   */
+  public byte[] readBytes(Streams s, int length) throws CRAMException {
+    byte[] ret = new byte[length];
+    for (int i = 0; i < length; i++)
+      ret[i] = readByte(s);
+    return ret;
+  }
+
+  /**
+   * @param s the streams of the slice
+   * @return an array of bytes, whose length is given by the encoding itself
+   * @throws CRAMException if the values can't be decoded
+   */
+  public byte[] readByteArray(Streams s) throws CRAMException {
+    throw new CRAMException(this.getClass().getSimpleName() + " can't decode arrays of bytes");
+  }
+
+  /**
+   * The core block (read bit by bit, most significant bit first), and the external blocks of a slice
+   */
+  public static class Streams {
+    private final byte[] core;
+    private int bytePosition = 0;
+    private int bitPosition = 0;
+    private final HashMap<Integer, CRAMByteArray> external;
+
+    public Streams(byte[] core, HashMap<Integer, CRAMByteArray> external) {
+      this.core = core;
+      this.external = external;
+    }
+
+    int readBit() throws CRAMException {
+      if (bytePosition >= core.length)
+        throw new CRAMException("End of core block reached");
+      int bit = (core[bytePosition] >> (7 - bitPosition)) & 1;
+      if (++bitPosition == 8) {
+        bitPosition = 0;
+        bytePosition++;
+      }
+      return bit;
+    }
+
+    int readBits(int n) throws CRAMException {
+      int value = 0;
+      for (int i = 0; i < n; i++)
+        value = (value << 1) | readBit();
+      return value;
+    }
+
+    CRAMByteArray getExternal(int id) throws CRAMException {
+      CRAMByteArray ret = external.get(id);
+      if (ret == null)
+        throw new CRAMException("No external block with content id [" + id + "]");
+      return ret;
+    }
+  }
+
+  public static class Null extends CRAMEncoding {
+    @Override
+    public int readInt(Streams s) {
+      return 0;
+    }
+
+    @Override
+    public byte[] readByteArray(Streams s) {
+      return new byte[0];
+    }
+  }
+
+  public static class External extends CRAMEncoding {
+    private final int id;
+
+    External(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public int readInt(Streams s) throws CRAMException {
+      return s.getExternal(id).readITF8();
+    }
+
+    @Override
+    public byte readByte(Streams s) throws CRAMException {
+      return s.getExternal(id).readByte();
+    }
+
+    @Override
+    public byte[] readBytes(Streams s, int length) throws CRAMException {
+      return length == 0 ? new byte[0] : s.getExternal(id).readBytes(length);
+    }
+  }
+
+  /**
+   * Canonical Huffman code : codes are assigned by increasing bit length, then by increasing symbol value
+   */
+  public static class Huffman extends CRAMEncoding {
+    private final int[] symbols;
+    /** for each bit length : the first code, and the index of its symbol */
+    private final int[] firstCode;
+    private final int[] firstIndex;
+    private final int[] count;
+    private final int maxLength;
+
+    Huffman(int[] alphabet, int[] lengths) throws CRAMException {
+      if (alphabet.length != lengths.length || alphabet.length == 0)
+        throw new CRAMException("Invalid HUFFMAN parameters (" + alphabet.length + " symbols, " + lengths.length + " bit lengths)");
+      Integer[] order = new Integer[alphabet.length];
+      for (int i = 0; i < order.length; i++)
+        order[i] = i;
+      Arrays.sort(order, (a, b) -> lengths[a] != lengths[b] ? Integer.compare(lengths[a], lengths[b]) : Integer.compare(alphabet[a], alphabet[b]));
+      int max = 0;
+      for (int length : lengths)
+        max = Math.max(max, length);
+      if (max > 31)
+        throw new CRAMException("HUFFMAN code too long (" + max + " bits)");
+      this.maxLength = max;
+      this.symbols = new int[order.length];
+      this.firstCode = new int[max + 1];
+      this.firstIndex = new int[max + 1];
+      this.count = new int[max + 1];
+      int code = 0;
+      int previous = lengths[order[0]];
+      for (int i = 0; i < order.length; i++) {
+        int length = lengths[order[i]];
+        if (i > 0)
+          code = (code + 1) << (length - previous);
+        previous = length;
+        symbols[i] = alphabet[order[i]];
+        if (count[length]++ == 0) {
+          firstCode[length] = code;
+          firstIndex[length] = i;
+        }
+      }
+    }
+
+    @Override
+    public int readInt(Streams s) throws CRAMException {
+      if (maxLength == 0)
+        return symbols[0];
+      int code = 0;
+      for (int length = 1; length <= maxLength; length++) {
+        code = (code << 1) | s.readBit();
+        int offset = code - firstCode[length];
+        if (count[length] > 0 && offset >= 0 && offset < count[length])
+          return symbols[firstIndex[length] + offset];
+      }
+      throw new CRAMException("Invalid HUFFMAN code");
+    }
+  }
+
+  public static class ByteArrayLen extends CRAMEncoding {
+    private final CRAMEncoding length;
+    private final CRAMEncoding value;
+
+    ByteArrayLen(CRAMEncoding length, CRAMEncoding value) {
+      this.length = length;
+      this.value = value;
+    }
+
+    @Override
+    public byte[] readByteArray(Streams s) throws CRAMException {
+      return value.readBytes(s, length.readInt(s));
+    }
+  }
+
+  public static class ByteArrayStop extends CRAMEncoding {
+    private final byte stop;
+    private final int id;
+
+    ByteArrayStop(byte stop, int id) {
+      this.stop = stop;
+      this.id = id;
+    }
+
+    @Override
+    public byte[] readByteArray(Streams s) throws CRAMException {
+      CRAMByteArray in = s.getExternal(id);
+      byte[] data = in.getData();
+      int start = in.getPointer();
+      int end = start;
+      while (end < data.length && data[end] != stop)
+        end++;
+      if (end == data.length)
+        throw new CRAMException("No stop byte found in external block [" + id + "]");
+      in.setPointer(end + 1);
+      return Arrays.copyOfRange(data, start, end);
+    }
+  }
+
+  public static class Beta extends CRAMEncoding {
+    private final int offset;
+    private final int bits;
+
+    Beta(int offset, int bits) {
+      this.offset = offset;
+      this.bits = bits;
+    }
+
+    @Override
+    public int readInt(Streams s) throws CRAMException {
+      return s.readBits(bits) - offset;
+    }
+  }
+
+  public static class Gamma extends CRAMEncoding {
+    private final int offset;
+
+    Gamma(int offset) {
+      this.offset = offset;
+    }
+
+    @Override
+    public int readInt(Streams s) throws CRAMException {
+      int zeros = 0;
+      while (s.readBit() == 0)
+        zeros++;
+      return ((1 << zeros) | s.readBits(zeros)) - offset;
+    }
+  }
+
+  public static class SubExp extends CRAMEncoding {
+    private final int offset;
+    private final int k;
+
+    SubExp(int offset, int k) {
+      this.offset = offset;
+      this.k = k;
+    }
+
+    @Override
+    public int readInt(Streams s) throws CRAMException {
+      int ones = 0;
+      while (s.readBit() == 1)
+        ones++;
+      int value;
+      if (ones == 0)
+        value = s.readBits(k);
+      else {
+        int b = ones + k - 1;
+        value = (1 << b) | s.readBits(b);
+      }
+      return value - offset;
+    }
+  }
+}
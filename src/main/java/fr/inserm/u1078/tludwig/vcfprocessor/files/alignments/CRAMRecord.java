@@ -1,68 +1,119 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
 
-import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.AlignmentRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Cigar;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Tag;
 
+/**
+ * An alignment decoded from a CRAM slice (see CRAMSlice.decode()).<br/>
+ * The mate fields of records whose mate is in the same slice are set once the whole slice is decoded
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
 public class CRAMRecord extends AlignmentRecord {
+  public static final int FLAG_MATE_UNMAPPED = 0x8;
+  public static final int FLAG_UNMAPPED = 0x4;
+  public static final int FLAG_REVERSE = 0x10;
+  public static final int FLAG_MATE_REVERSE = 0x20;
+
+  private final CRAM cram;
+  String queryName;
+  int flag;
+  int refID;
+  int pos;
+  int mapQ;
+  Cigar cigar;
+  int nextRefID = -1;
+  int nextPos = 0;
+  int templateLength = 0;
+  String sequence;
+  String qual;
+  Tag[] tags;
+
+  CRAMRecord(CRAM cram) {
+    this.cram = cram;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder ret = new StringBuilder(this.queryName);
+    ret.append(T).append(this.flag);
+    ret.append(T).append(getRefId());
+    ret.append(T).append(this.pos);
+    ret.append(T).append(this.mapQ);
+    ret.append(T).append(this.cigar);
+    ret.append(T).append(this.getNextRefId());
+    ret.append(T).append(this.nextPos);
+    ret.append(T).append(this.templateLength);
+    ret.append(T).append(this.sequence);
+    ret.append(T).append(this.qual);
+    for (Tag tag : tags)
+      ret.append(T).append(tag);
+    return ret.toString();
+  }
 
   @Override
   public String getQueryName() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return queryName;
   }
 
   @Override
   public int getFlag() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return flag;
+  }
+
+  public int getRefIDAsNum() {
+    return refID;
   }
 
   @Override
   public String getRefId() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return cram.getReferenceName(refID);
   }
 
   @Override
   public int getPos() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return pos;
   }
 
   @Override
   public int getMappingQuality() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return mapQ;
   }
 
   @Override
   public Cigar getCigar() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return cigar;
   }
 
   @Override
   public String getNextRefId() {
-    throw new UnsupportedOperationException(); //TODO implement
+    if (refID == nextRefID && nextRefID != -1)
+      return "=";
+    return cram.getReferenceName(nextRefID);
   }
 
   @Override
   public int getNextPos() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return nextPos;
   }
 
   @Override
   public int getTemplateLength() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return templateLength;
   }
 
   @Override
   public String getSequence() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return sequence;
   }
 
   @Override
   public String getSeqQuality() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return qual;
   }
 
   @Override
   public Tag[] getTags() {
-    throw new UnsupportedOperationException(); //TODO implement
+    return tags;
   }
 }
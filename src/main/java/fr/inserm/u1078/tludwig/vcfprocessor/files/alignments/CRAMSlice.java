@@ -0,0 +1,469 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Cigar;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Tag;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A slice of a CRAM container : slice header, core block and external blocks.<br/>
+ * Slices are independent from each other (given the compression header of their container), so they can be decoded in parallel
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CRAMSlice {
+  public static final int MULTI_REF = -2;
+  public static final int UNMAPPED = -1;
+
+  private static final int CF_QUALITY_ARRAY = 0x1;
+  private static final int CF_DETACHED = 0x2;
+  private static final int CF_MATE_DOWNSTREAM = 0x4;
+  private static final int CF_UNKNOWN_BASES = 0x8;
+
+  private static final int MF_MATE_REVERSE = 0x1;
+  private static final int MF_MATE_UNMAPPED = 0x2;
+
+  private static final byte UNKNOWN_QUALITY = (byte) 0xFF;
+  private static final byte DEFAULT_QUALITY = 30;
+
+  private final CRAMCompressionHeader compression;
+  private final int refId;
+  private final int start;
+  private final int span;
+  private final int nbRecords;
+  private final long recordCounter;
+  private final int embeddedReference;
+  private final byte[] core;
+  private final HashMap<Integer, byte[]> external = new HashMap<>();
+
+  /**
+   * Reads a slice (slice header block, then its blocks) at the current position of the container
+   * @param in the content of the container
+   * @param compression the compression header of the container
+   * @throws CRAMException if the slice can't be read
+   */
+  public CRAMSlice(CRAMByteArray in, CRAMCompressionHeader compression) throws CRAMException {
+    this.compression = compression;
+    CRAMBlock header = CRAMBlock.read(in);
+    if (header.getContentType() != CRAMBlock.CONTENT_SLICE_HEADER)
+      throw new CRAMException("Expected a slice header block, found content type [" + header.getContentType() + "]");
+    CRAMByteArray h = header.getContent();
+    this.refId = h.readITF8();
+    this.start = h.readITF8();
+    this.span = h.readITF8();
+    this.nbRecords = h.readITF8();
+    this.recordCounter = h.readLTF8();
+    int nbBlocks = h.readITF8();
+    h.readITF8Array(); //content ids
+    this.embeddedReference = h.readITF8();
+    //reference md5 and optional tags are ignored
+
+    byte[] coreData = null;
+    for (int i = 0; i < nbBlocks; i++) {
+      CRAMBlock block = CRAMBlock.read(in);
+      if (block.getContentType() == CRAMBlock.CONTENT_CORE)
+        coreData = block.getData();
+      else
+        external.put(block.getContentId(), block.getData());
+    }
+    this.core = coreData == null ? new byte[0] : coreData;
+  }
+
+  public int getRefId() {
+    return refId;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public int getSpan() {
+    return span;
+  }
+
+  public int getNbRecords() {
+    return nbRecords;
+  }
+
+  /**
+   * Decodes all the records of the slice
+   * @param cram the CRAM file (for the references and read groups)
+   * @return the records, in the order of the file
+   * @throws CRAMException if the slice can't be decoded
+   */
+  public CRAMRecord[] decode(CRAM cram) throws CRAMException {
+    return new Decoder(cram).decode();
+  }
+
+  /**
+   * The state of the decoding of a slice (streams, encodings, reference window). One per call to decode()
+   */
+  private class Decoder {
+    private final CRAM cram;
+    private final CRAMEncoding.Streams streams;
+    private final HashMap<String, CRAMEncoding> encodings = new HashMap<>();
+
+    /** reference bases of the current window, starting at refStart (1-based) */
+    private byte[] ref = null;
+    private int refStart = 0;
+    private int windowRefId = UNMAPPED;
+
+    private final ArrayList<Integer> cigarLengths = new ArrayList<>();
+    private final ArrayList<Byte> cigarTypes = new ArrayList<>();
+
+    Decoder(CRAM cram) throws CRAMException {
+      this.cram = cram;
+      HashMap<Integer, CRAMByteArray> blocks = new HashMap<>();
+      for (Integer id : external.keySet())
+        blocks.put(id, new CRAMByteArray(external.get(id)));
+      this.streams = new CRAMEncoding.Streams(core, blocks);
+      if (embeddedReference >= 0) {
+        byte[] embedded = external.get(embeddedReference);
+        if (embedded == null)
+          throw new CRAMException("Embedded reference block [" + embeddedReference + "] not found");
+        this.ref = upperCase(embedded);
+        this.refStart = start;
+        this.windowRefId = refId;
+      }
+    }
+
+    private CRAMEncoding get(String key) throws CRAMException {
+      CRAMEncoding encoding = encodings.get(key);
+      if (encoding == null) {
+        encoding = compression.getDataSeries(key);
+        encodings.put(key, encoding);
+      }
+      return encoding;
+    }
+
+    private int readInt(String key) throws CRAMException {
+      return get(key).readInt(streams);
+    }
+
+    private byte readByte(String key) throws CRAMException {
+      return get(key).readByte(streams);
+    }
+
+    private byte[] readByteArray(String key) throws CRAMException {
+      return get(key).readByteArray(streams);
+    }
+
+    CRAMRecord[] decode() throws CRAMException {
+      CRAMRecord[] records = new CRAMRecord[nbRecords];
+      int[] mates = new int[nbRecords];
+      int previousPos = start;
+      for (int i = 0; i < nbRecords; i++) {
+        CRAMRecord r = new CRAMRecord(cram);
+        records[i] = r;
+        mates[i] = -1;
+        r.flag = readInt("BF");
+        int cf = readInt("CF");
+        r.refID = refId == MULTI_REF ? readInt("RI") : refId;
+        int length = readInt("RL");
+        int ap = readInt("AP");
+        if (compression.isAPDelta()) {
+          r.pos = previousPos + ap;
+          previousPos = r.pos;
+        } else
+          r.pos = ap;
+        int readGroup = readInt("RG");
+        if (compression.isReadNamesIncluded())
+          r.queryName = new String(readByteArray("RN"), StandardCharsets.US_ASCII);
+
+        if ((cf & CF_DETACHED) != 0) {
+          int mf = readInt("MF");
+          if ((mf & MF_MATE_REVERSE) != 0)
+            r.flag |= CRAMRecord.FLAG_MATE_REVERSE;
+          if ((mf & MF_MATE_UNMAPPED) != 0)
+            r.flag |= CRAMRecord.FLAG_MATE_UNMAPPED;
+          if (!compression.isReadNamesIncluded())
+            r.queryName = new String(readByteArray("RN"), StandardCharsets.US_ASCII);
+          r.nextRefID = readInt("NS");
+          r.nextPos = readInt("NP");
+          r.templateLength = readInt("TS");
+        } else if ((cf & CF_MATE_DOWNSTREAM) != 0)
+          mates[i] = i + 1 + readInt("NF");
+
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (int id : compression.getTagLine(readInt("TL")))
+          tags.add(decodeTag(id, compression.getTagEncoding(id).readByteArray(streams)));
+        if (readGroup >= 0)
+          tags.add(new Tag("RG", 'Z', cram.getReadGroup(readGroup)));
+        r.tags = tags.toArray(new Tag[0]);
+
+        byte[] quality = new byte[length];
+        java.util.Arrays.fill(quality, UNKNOWN_QUALITY);
+        if ((r.flag & CRAMRecord.FLAG_UNMAPPED) == 0) {
+          decodeMapped(r, cf, length, quality);
+          r.mapQ = readInt("MQ");
+        } else {
+          r.cigar = new Cigar(new int[0], new byte[0]);
+          r.sequence = (cf & CF_UNKNOWN_BASES) == 0 ? basesToString(get("BA").readBytes(streams, length)) : "*";
+        }
+        if ((cf & CF_QUALITY_ARRAY) != 0)
+          quality = get("QS").readBytes(streams, length);
+        r.qual = qualityToString(quality);
+      }
+
+      resolveMates(records, mates);
+      return records;
+    }
+
+    /**
+     * Decodes the read features of a mapped record, and rebuilds its sequence and CIGAR from the reference
+     */
+    private void decodeMapped(CRAMRecord r, int cf, int length, byte[] quality) throws CRAMException {
+      byte[] seq = new byte[length];
+      cigarLengths.clear();
+      cigarTypes.clear();
+      int readPos = 1;
+      int refPos = r.pos;
+      int featurePos = 0;
+      int nbFeatures = readInt("FN");
+      for (int f = 0; f < nbFeatures; f++) {
+        byte code = readByte("FC");
+        featurePos += readInt("FP");
+        //matches up to the feature
+        int matches = featurePos - readPos;
+        if (matches > 0) {
+          copyReference(r.refID, seq, readPos, refPos, matches);
+          addCigar(Cigar.M, matches);
+          readPos += matches;
+          refPos += matches;
+        }
+        switch (code) {
+          case 'B': {
+            setBase(seq, readPos, readByte("BA"));
+            setBase(quality, readPos, readByte("QS"));
+            addCigar(Cigar.M, 1);
+            readPos++;
+            refPos++;
+            break;
+          }
+          case 'X': {
+            byte base = compression.substitute(getReferenceBase(r.refID, refPos), readByte("BS"));
+            setBase(seq, readPos, base);
+            addCigar(Cigar.M, 1);
+            readPos++;
+            refPos++;
+            break;
+          }
+          case 'b': {
+            byte[] bases = readByteArray("BB");
+            copyBases(seq, readPos, bases);
+            addCigar(Cigar.M, bases.length);
+            readPos += bases.length;
+            refPos += bases.length;
+            break;
+          }
+          case 'I': {
+            byte[] bases = readByteArray("IN");
+            copyBases(seq, readPos, bases);
+            addCigar(Cigar.I, bases.length);
+            readPos += bases.length;
+            break;
+          }
+          case 'i': {
+            setBase(seq, readPos, readByte("BA"));
+            addCigar(Cigar.I, 1);
+            readPos++;
+            break;
+          }
+          case 'S': {
+            byte[] bases = readByteArray("SC");
+            copyBases(seq, readPos, bases);
+            addCigar(Cigar.S, bases.length);
+            readPos += bases.length;
+            break;
+          }
+          case 'D': {
+            int n = readInt("DL");
+            addCigar(Cigar.D, n);
+            refPos += n;
+            break;
+          }
+          case 'N': {
+            int n = readInt("RS");
+            addCigar(Cigar.N, n);
+            refPos += n;
+            break;
+          }
+          case 'H':
+            addCigar(Cigar.H, readInt("HC"));
+            break;
+          case 'P':
+            addCigar(Cigar.P, readInt("PD"));
+            break;
+          case 'Q':
+            setBase(quality, readPos, readByte("QS"));
+            break;
+          case 'q':
+            copyBases(quality, readPos, readByteArray("QQ"));
+            break;
+          default:
+            throw new CRAMException("Unknown read feature [" + (char) code + "]");
+        }
+      }
+      int matches = length + 1 - readPos;
+      if (matches > 0) {
+        copyReference(r.refID, seq, readPos, refPos, matches);
+        addCigar(Cigar.M, matches);
+      }
+      r.cigar = new Cigar(cigarLengths, cigarTypes);
+      r.sequence = (cf & CF_UNKNOWN_BASES) == 0 ? basesToString(seq) : "*";
+    }
+
+    private void addCigar(int type, int length) {
+      if (length <= 0)
+        return;
+      int last = cigarTypes.size() - 1;
+      if (last >= 0 && cigarTypes.get(last) == type)
+        cigarLengths.set(last, cigarLengths.get(last) + length);
+      else {
+        cigarTypes.add((byte) type);
+        cigarLengths.add(length);
+      }
+    }
+
+    private void setBase(byte[] array, int readPos, byte value) {
+      if (readPos >= 1 && readPos <= array.length)
+        array[readPos - 1] = value;
+    }
+
+    private void copyBases(byte[] array, int readPos, byte[] bases) {
+      int n = Math.min(bases.length, array.length - readPos + 1);
+      if (n > 0)
+        System.arraycopy(bases, 0, array, readPos - 1, n);
+    }
+
+    private void copyReference(int refID, byte[] seq, int readPos, int refPos, int n) throws CRAMException {
+      if (!compression.isReferenceRequired()) {
+        for (int i = 0; i < n; i++)
+          setBase(seq, readPos + i, (byte) 'N');
+        return;
+      }
+      ensureReference(refID, refPos, refPos + n - 1);
+      for (int i = 0; i < n; i++) {
+        int index = refPos + i - refStart;
+        setBase(seq, readPos + i, index >= 0 && index < ref.length ? ref[index] : (byte) 'N');
+      }
+    }
+
+    private byte getReferenceBase(int refID, int refPos) throws CRAMException {
+      if (!compression.isReferenceRequired())
+        return 'N';
+      ensureReference(refID, refPos, refPos);
+      int index = refPos - refStart;
+      return index >= 0 && index < ref.length ? ref[index] : (byte) 'N';
+    }
+
+    /**
+     * Loads the reference bases, for the whole slice if possible, so that it is read once
+     */
+    private void ensureReference(int refID, int from, int to) throws CRAMException {
+      if (ref != null && refID == windowRefId && from >= refStart && to < refStart + ref.length)
+        return;
+      if (embeddedReference >= 0 && refID == windowRefId) //outside of the embedded reference
+        return;
+      int windowStart = from;
+      int windowEnd = to;
+      if (refId == refID && from >= start && to < start + span) {
+        windowStart = start;
+        windowEnd = start + span - 1;
+      }
+      this.ref = upperCase(cram.getReferenceBases(refID, windowStart, windowEnd));
+      this.refStart = windowStart;
+      this.windowRefId = refID;
+    }
+
+    private Tag decodeTag(int id, byte[] value) {
+      byte[] bytes = new byte[3 + value.length];
+      bytes[0] = (byte) (id >> 16);
+      bytes[1] = (byte) (id >> 8);
+      bytes[2] = (byte) id;
+      System.arraycopy(value, 0, bytes, 3, value.length);
+      return new BAMByteArray(bytes).readTag();
+    }
+
+    /**
+     * Sets the mate fields and template length of the records whose mate is in the slice
+     */
+    private void resolveMates(CRAMRecord[] records, int[] mates) {
+      boolean[] done = new boolean[records.length];
+      for (int i = 0; i < records.length; i++) {
+        if (done[i] || mates[i] == -1)
+          continue;
+        ArrayList<Integer> chain = new ArrayList<>();
+        for (int j = i; j != -1 && j < records.length && !done[j]; j = mates[j]) {
+          chain.add(j);
+          done[j] = true;
+        }
+        CRAMRecord first = records[chain.get(0)];
+        boolean sameRefMapped = true;
+        int leftmost = Integer.MAX_VALUE;
+        int rightmost = Integer.MIN_VALUE;
+        for (int k = 0; k < chain.size(); k++) {
+          CRAMRecord a = records[chain.get(k)];
+          CRAMRecord b = records[chain.get((k + 1) % chain.size())];
+          a.nextRefID = b.refID;
+          a.nextPos = b.pos;
+          if ((b.flag & CRAMRecord.FLAG_UNMAPPED) != 0)
+            a.flag |= CRAMRecord.FLAG_MATE_UNMAPPED;
+          if ((b.flag & CRAMRecord.FLAG_REVERSE) != 0)
+            a.flag |= CRAMRecord.FLAG_MATE_REVERSE;
+          if (a.queryName == null)
+            a.queryName = first.queryName;
+          if ((a.flag & CRAMRecord.FLAG_UNMAPPED) != 0 || a.refID != first.refID)
+            sameRefMapped = false;
+          leftmost = Math.min(leftmost, a.pos);
+          rightmost = Math.max(rightmost, a.pos + a.cigar.getReferenceLength() - 1);
+        }
+        if (sameRefMapped) {
+          int tlen = rightmost - leftmost + 1;
+          boolean positive = true;
+          for (int j : chain) {
+            CRAMRecord a = records[j];
+            if (positive && a.pos == leftmost) {
+              a.templateLength = tlen;
+              positive = false;
+            } else
+              a.templateLength = -tlen;
+          }
+        }
+      }
+      for (int i = 0; i < records.length; i++)
+        if (records[i].queryName == null)
+          records[i].queryName = String.valueOf(recordCounter + i + 1);
+    }
+  }
+
+  private static String basesToString(byte[] bases) {
+    if (bases.length == 0)
+      return "*";
+    return new String(bases, StandardCharsets.ISO_8859_1);
+  }
+
+  private static String qualityToString(byte[] quality) {
+    boolean known = false;
+    for (byte q : quality)
+      if (q != UNKNOWN_QUALITY) {
+        known = true;
+        break;
+      }
+    if (!known)
+      return "*";
+    char[] ret = new char[quality.length];
+    for (int i = 0; i < quality.length; i++)
+      ret[i] = (char) ((quality[i] == UNKNOWN_QUALITY ? DEFAULT_QUALITY : quality[i]) + 33);
+    return new String(ret);
+  }
+
+  private static byte[] upperCase(byte[] bases) {
+    byte[] ret = new byte[bases.length];
+    for (int i = 0; i < bases.length; i++)
+      ret[i] = (byte) Character.toUpperCase(bases[i]);
+    return ret;
+  }
+}
@@ -0,0 +1,219 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.SAMLineFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Cigar;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes the per-base depth of an indexed BAM/CRAM file over regions of a reference.<br/>
+ * The alignments are read with IndexedAlignmentProducer.readRecords() and their CIGAR is walked : each M/=/X block increments the depth at its
+ * start and decrements it after its end, in a circular int[] window. As the alignments are sorted, the positions before the
+ * start of the current alignment are final, the depth is accumulated over them and given to the consumer as runs of
+ * constant depth. Deletions, skipped regions (N) and unmapped alignments don't count.<br/>
+ * Each call to compute() has its own window and stream, so that references can be processed in parallel
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CoverageEngine {
+  private static final int INITIAL_WINDOW = 1 << 16;
+  private static final int FLAG_UNMAPPED = 0x4;
+
+  private final IndexedAlignmentProducer alignments;
+  private final List<SAMLineFilter> filters;
+
+  /**
+   * @param alignments the indexed BAM/CRAM file
+   * @param filters the alignments that don't pass those filters are ignored
+   */
+  public CoverageEngine(IndexedAlignmentProducer alignments, List<SAMLineFilter> filters) {
+    this.alignments = alignments;
+    this.filters = filters;
+  }
+
+  /**
+   * Receives the depth, as runs of consecutive positions with the same depth, in increasing order.
+   * Every position of the regions is given exactly once
+   */
+  public interface DepthConsumer {
+    /**
+     * @param start first position of the run (1-based)
+     * @param end last position of the run (1-based, included)
+     * @param depth the depth at each position of the run
+     */
+    void run(int start, int end, int depth);
+  }
+
+  /**
+   * Computes the depth over the regions of a reference
+   * @param ref the index of the reference in the BAM/CRAM file
+   * @param regions the regions on this reference (they will be sorted and merged)
+   * @param consumer the consumer receiving the depth
+   * @throws IOException if the file can't be read
+   * @throws SAMException if an alignment can't be read
+   * @throws InterruptedException if the consumer was interrupted
+   */
+  public void compute(int ref, List<Region> regions, DepthConsumer consumer) throws IOException, SAMException, InterruptedException {
+    List<Region> merged = merge(regions);
+    if (merged.isEmpty())
+      return;
+    Window window = new Window(merged, consumer);
+    alignments.readRecords(ref, merged, record -> {
+      if (pass(record))
+        window.add(record.getPos(), record.getCigar());
+    });
+    window.finish();
+  }
+
+  private boolean pass(AlignmentRecord record) {
+    if ((record.getFlag() & FLAG_UNMAPPED) != 0)
+      return false;
+    for (SAMLineFilter filter : filters)
+      if (!filter.pass(record))
+        return false;
+    return true;
+  }
+
+  /**
+   * @return copies of the regions, sorted, overlapping and touching regions merged
+   */
+  private static List<Region> merge(List<Region> regions) {
+    ArrayList<Region> sorted = new ArrayList<>(regions);
+    sorted.sort(Comparator.comparingInt(Region::getStart1Based));
+    ArrayList<Region> ret = new ArrayList<>();
+    for (Region region : sorted) {
+      Region last = ret.isEmpty() ? null : ret.get(ret.size() - 1);
+      if (last != null && region.getStart1Based() <= last.getEnd1Based() + 1)
+        last.setEnd1Based(Math.max(last.getEnd1Based(), region.getEnd1Based()));
+      else
+        ret.add(new Region(region));
+    }
+    return ret;
+  }
+
+  /**
+   * Circular window of depth differences. diff[p & mask] holds the change of depth between positions p-1 and p,
+   * for positions in [next, next + diff.length)
+   */
+  private static class Window {
+    private final List<Region> regions;
+    private final DepthConsumer consumer;
+    private int[] diff = new int[INITIAL_WINDOW];
+    private int mask = INITIAL_WINDOW - 1;
+    /** first position that is not final yet */
+    private int next = 1;
+    /** depth at position next - 1 */
+    private int depth = 0;
+    /** after this position, there are no pending changes */
+    private int lastChange = 0;
+    /** first region that can contain the position next */
+    private int region = 0;
+
+    private int runStart = -1;
+    private int runEnd = -1;
+    private int runDepth = 0;
+
+    Window(List<Region> regions, DepthConsumer consumer) {
+      this.regions = regions;
+      this.consumer = consumer;
+    }
+
+    void add(int pos, Cigar cigar) {
+      flush(pos);
+      int p = pos;
+      for (int i = 0; i < cigar.getNumberOfOperations(); i++) {
+        int type = cigar.getType(i);
+        int length = cigar.getLength(i);
+        if (Cigar.isAligned(type))
+          addBlock(p, p + length - 1);
+        if (Cigar.isAligned(type) || type == Cigar.D || type == Cigar.N)
+          p += length;
+      }
+    }
+
+    /**
+     * Adds 1 to the depth of the positions [start, end]
+     */
+    private void addBlock(int start, int end) {
+      start = Math.max(start, next); //the final positions can't be modified (only for an unsorted file)
+      if (end < start)
+        return;
+      ensureCapacity(end + 1);
+      diff[start & mask]++;
+      diff[(end + 1) & mask]--;
+      lastChange = Math.max(lastChange, end + 1);
+    }
+
+    private void ensureCapacity(int pos) {
+      if (pos - next < diff.length)
+        return;
+      int length = diff.length;
+      while (pos - next >= length)
+        length <<= 1;
+      int[] grown = new int[length];
+      int grownMask = length - 1;
+      for (int p = next; p < next + diff.length; p++)
+        grown[p & grownMask] = diff[p & mask];
+      diff = grown;
+      mask = grownMask;
+    }
+
+    /**
+     * Accumulates the depth over the positions before target, and gives those in the regions to the consumer
+     */
+    private void flush(int target) {
+      while (next < target) {
+        while (region < regions.size() && regions.get(region).getEnd1Based() < next) {
+          closeRun();
+          region++;
+        }
+        Region r = region < regions.size() ? regions.get(region) : null;
+        if (next > lastChange) { //no pending changes : the depth is constant up to target
+          if (r == null)
+            next = target;
+          else if (next < r.getStart1Based())
+            next = Math.min(target, r.getStart1Based());
+          else {
+            int end = Math.min(target - 1, r.getEnd1Based());
+            extend(next, end, depth);
+            next = end + 1;
+          }
+          continue;
+        }
+        int i = next & mask;
+        depth += diff[i];
+        diff[i] = 0;
+        if (r != null && next >= r.getStart1Based())
+          extend(next, next, depth);
+        next++;
+      }
+    }
+
+    private void extend(int start, int end, int d) {
+      if (runEnd == start - 1 && runDepth == d)
+        runEnd = end;
+      else {
+        closeRun();
+        runStart = start;
+        runEnd = end;
+        runDepth = d;
+      }
+    }
+
+    private void closeRun() {
+      if (runStart != -1)
+        consumer.run(runStart, runEnd, runDepth);
+      runStart = -1;
+      runEnd = -1;
+    }
+
+    void finish() {
+      flush(regions.get(regions.size() - 1).getEnd1Based() + 1);
+      closeRun();
+    }
+  }
+}
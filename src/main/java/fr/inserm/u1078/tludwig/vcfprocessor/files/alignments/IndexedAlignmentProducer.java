@@ -0,0 +1,33 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An alignment file with an index (BAM/BAI, CRAM/CRAI), that can be queried by regions.<br/>
+ * Each call to readRecords() uses its own stream, so that several threads can query the same file
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public interface IndexedAlignmentProducer extends AlignmentProducer {
+
+  /**
+   * Receives the records read by readRecords()
+   */
+  interface RecordHandler {
+    void handle(AlignmentRecord record) throws SAMException, InterruptedException;
+  }
+
+  /**
+   * Gives to the handler every record of a reference that overlaps at least one of the regions, in the order of the file
+   * @param ref the index of the reference
+   * @param regions the regions on this reference
+   * @param handler the handler receiving the records
+   * @throws IOException if the file can't be read
+   * @throws SAMException if a record can't be built or handled
+   * @throws InterruptedException if the handler was interrupted
+   */
+  void readRecords(int ref, List<Region> regions, RecordHandler handler) throws IOException, SAMException, InterruptedException;
+}
@@ -0,0 +1,186 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
+
+/**
+ * Decoder for the rANS 4x8 codec of CRAM 3.0 (order-0 and order-1, 4 interleaved states, 12-bit frequencies, byte-wise renormalization)
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class RANS4x8 {
+  private static final int TF_SHIFT = 12;
+  private static final int TOTFREQ = 1 << TF_SHIFT;
+  private static final int MASK = TOTFREQ - 1;
+  private static final int RANS_BYTE_L = 1 << 23;
+  private static final int HEADER_SIZE = 9;
+
+  private final byte[] in;
+  private int pointer;
+
+  private RANS4x8(byte[] in) {
+    this.in = in;
+    this.pointer = 0;
+  }
+
+  /**
+   * Uncompresses data compressed with rANS 4x8
+   * @param in the compressed data : order (1 byte), compressed size (uint32), uncompressed size (uint32), frequencies, states and data
+   * @return the uncompressed data
+   * @throws CRAMException if the data are not valid
+   */
+  public static byte[] uncompress(byte[] in) throws CRAMException {
+    if (in.length < HEADER_SIZE)
+      throw new CRAMException("rANS data too short (" + in.length + " bytes)");
+    RANS4x8 rans = new RANS4x8(in);
+    int order = rans.readByte();
+    int compressedSize = rans.readUInt32();
+    int size = rans.readUInt32();
+    if (compressedSize != in.length - HEADER_SIZE)
+      throw new CRAMException("rANS compressed size [" + compressedSize + "] does not match data length [" + (in.length - HEADER_SIZE) + "]");
+    byte[] out = new byte[size];
+    if (size == 0)
+      return out;
+    try {
+      switch (order) {
+        case 0:
+          rans.uncompressOrder0(out);
+          break;
+        case 1:
+          rans.uncompressOrder1(out);
+          break;
+        default:
+          throw new CRAMException("Unknown rANS order [" + order + "]");
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new CRAMException("Corrupted rANS data", e);
+    }
+    return out;
+  }
+
+  private int readByte() {
+    return in[pointer++] & 0xff;
+  }
+
+  private int readUInt32() {
+    return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+  }
+
+  /**
+   * Reads a frequency, on 1 byte, or 2 bytes if the first is >= 128
+   */
+  private int readFrequency() {
+    int f = readByte();
+    if (f >= 128)
+      f = ((f & 0x7f) << 8) | readByte();
+    return f;
+  }
+
+  /**
+   * Reads a frequency table : symbols (run-length encoded when consecutive) and their frequencies, until the symbol 0
+   * @param freq the frequencies of each symbol
+   * @param cumulative the cumulative frequencies of each symbol
+   * @param lookup the symbol for each value in [0;TOTFREQ)
+   */
+  private void readFrequencies(int[] freq, int[] cumulative, byte[] lookup) throws CRAMException {
+    int rle = 0;
+    int total = 0;
+    int sym = readByte();
+    do {
+      int f = readFrequency();
+      if (total + f > TOTFREQ)
+        throw new CRAMException("rANS frequencies exceed " + TOTFREQ);
+      freq[sym] = f;
+      cumulative[sym] = total;
+      for (int i = 0; i < f; i++)
+        lookup[total + i] = (byte) sym;
+      total += f;
+
+      if (rle == 0 && sym + 1 == (in[pointer] & 0xff)) {
+        sym = readByte();
+        rle = readByte();
+      } else if (rle > 0) {
+        rle--;
+        sym++;
+      } else
+        sym = readByte();
+    } while (sym != 0);
+  }
+
+  private int renormalize(int r) {
+    while (r < RANS_BYTE_L)
+      r = (r << 8) | readByte();
+    return r;
+  }
+
+  private void uncompressOrder0(byte[] out) throws CRAMException {
+    int[] freq = new int[256];
+    int[] cumulative = new int[256];
+    byte[] lookup = new byte[TOTFREQ];
+    readFrequencies(freq, cumulative, lookup);
+
+    int[] r = new int[4];
+    for (int j = 0; j < 4; j++)
+      r[j] = readUInt32();
+
+    int end = out.length & ~3;
+    for (int i = 0; i < end; i += 4)
+      for (int j = 0; j < 4; j++) {
+        int m = r[j] & MASK;
+        int s = lookup[m] & 0xff;
+        out[i + j] = (byte) s;
+        r[j] = renormalize(freq[s] * (r[j] >>> TF_SHIFT) + m - cumulative[s]);
+      }
+    for (int j = 0; end + j < out.length; j++) {
+      int m = r[j] & MASK;
+      int s = lookup[m] & 0xff;
+      out[end + j] = (byte) s;
+      r[j] = renormalize(freq[s] * (r[j] >>> TF_SHIFT) + m - cumulative[s]);
+    }
+  }
+
+  private void uncompressOrder1(byte[] out) throws CRAMException {
+    int[][] freq = new int[256][];
+    int[][] cumulative = new int[256][];
+    byte[][] lookup = new byte[256][];
+
+    int rle = 0;
+    int context = readByte();
+    do {
+      freq[context] = new int[256];
+      cumulative[context] = new int[256];
+      lookup[context] = new byte[TOTFREQ];
+      readFrequencies(freq[context], cumulative[context], lookup[context]);
+
+      if (rle == 0 && context + 1 == (in[pointer] & 0xff)) {
+        context = readByte();
+        rle = readByte();
+      } else if (rle > 0) {
+        rle--;
+        context++;
+      } else
+        context = readByte();
+    } while (context != 0);
+
+    int[] r = new int[4];
+    for (int j = 0; j < 4; j++)
+      r[j] = readUInt32();
+
+    int quarter = out.length >> 2;
+    int[] last = new int[4];
+    int[] index = {0, quarter, 2 * quarter, 3 * quarter};
+    for (int i = 0; i < quarter; i++)
+      for (int j = 0; j < 4; j++)
+        r[j] = decodeOrder1(out, index[j] + i, r[j], last, j, freq, cumulative, lookup);
+    for (int i = 4 * quarter; i < out.length; i++)
+      r[3] = decodeOrder1(out, i, r[3], last, 3, freq, cumulative, lookup);
+  }
+
+  private int decodeOrder1(byte[] out, int i, int r, int[] last, int j, int[][] freq, int[][] cumulative, byte[][] lookup) throws CRAMException {
+    int c = last[j];
+    if (lookup[c] == null)
+      throw new CRAMException("No rANS frequencies for context [" + c + "]");
+    int m = r & MASK;
+    int s = lookup[c][m] & 0xff;
+    out[i] = (byte) s;
+    last[j] = s;
+    return renormalize(freq[c][s] * (r >>> TF_SHIFT) + m - cumulative[c][s]);
+  }
+}
@@ -1,32 +1,31 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.files.alignments;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.BAMByteArray;
-import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.CRAMByteArray;
 
 public class RawAlignmentRecordData {
   private final String line;
   private final BAMByteArray bamBytes;
-  private final CRAMByteArray cramBytes;
+  private final CRAMRecord cramRecord;
   private final long pointer;
 
   public RawAlignmentRecordData(String line) {
     this.line = line;
     this.bamBytes = null;
-    this.cramBytes = null;
+    this.cramRecord = null;
     this.pointer = -1;
   }
 
   public RawAlignmentRecordData(BAMByteArray bytes, long pointer) {
     this.line = null;
     this.bamBytes = bytes;
-    this.cramBytes = null;
+    this.cramRecord = null;
     this.pointer = pointer;
   }
 
-  public RawAlignmentRecordData(CRAMByteArray bytes) {
+  public RawAlignmentRecordData(CRAMRecord record) {
     this.line = null;
     this.bamBytes = null;
-    this.cramBytes = bytes;
+    this.cramRecord = record;
     this.pointer = -1;
   }
 
@@ -42,7 +41,7 @@ public class RawAlignmentRecordData {
     return pointer;
   }
 
-  public CRAMByteArray getCRAMBytes() {
-    return cramBytes;
+  public CRAMRecord getCRAMRecord() {
+    return cramRecord;
   }
 }
@@ -6,6 +6,7 @@ import fr.inserm.u1078.tludwig.maok.tools.DateTools;
 import fr.inserm.u1078.tludwig.vcfprocessor.Main;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.Bed;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 
 import java.io.IOException;
@@ -39,6 +40,7 @@ public class SAM implements AlignmentProducer {
     //this.step = step;
     this.readLock = new ReentrantLock();
     this.commandParser = Main.getCommandParser();
+    this.commandParser.processSAMArguments();
 
     BAM tmpBAM=null;
     CRAM tmpCRAM=null;
@@ -49,10 +51,12 @@ public class SAM implements AlignmentProducer {
       //nothing
     }
 
-    try {
-      tmpCRAM = new CRAM(this.filename, this);
-    } catch(CRAMException ignore){
-      //nothing
+    if(tmpBAM == null) {
+      try {
+        tmpCRAM = new CRAM(this.filename, this);
+      } catch (CRAMException ignore) {
+        //nothing
+      }
     }
 
     this.bam = tmpBAM;
@@ -106,6 +110,10 @@ public class SAM implements AlignmentProducer {
     return this.bam;
   }
 
+  public CRAM getCRAM() {
+    return this.cram;
+  }
+
   private RawAlignmentRecordData readRecordFromUnderlyingStructure() throws SAMException, IOException {
     if(in != null) {
       String line = in.readLine();
@@ -251,7 +259,7 @@ public class SAM implements AlignmentProducer {
       } catch (InterruptedException ignore) { }
 
       read--;//overshot by 1 in the for loop
-      for (int i = 0; i < QUEUE_DEPTH / 2; i++)
+      for (int i = 0; i < Math.max(QUEUE_DEPTH / 2, ThreadConfiguration.getWorkers()); i++)
         try {
           this.queue.put(new SAM.IndexedRecord(read + 1, null)); //Pack with trailing null to given one to each Worker
         } catch (InterruptedException ignore) { }
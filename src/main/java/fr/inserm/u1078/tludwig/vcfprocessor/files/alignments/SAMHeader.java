@@ -25,27 +25,56 @@ public class SAMHeader {
     UniversalReader in = new UniversalReader(filename);
     while((line = in.readLine()).startsWith("@")){
       samHeaders.add(new HeaderRecord(line));
-      if(line.startsWith("@SQ")){
-        String name = "";
-        int length = -1;
-        for(String field : line.split("\t")){
-          String[] f = field.split(":");
-          switch(f[0]){
-            case "SN":
-              name = f[1];
-              break;
-            case "LN":
-              length = Integer.parseInt(f[1]);
-              break;
-          }
-        }
-        refs.add(new Reference(name, length));
-      }
+      if(line.startsWith("@SQ"))
+        refs.add(parseReference(line));
     }
     in.close();
     this.references = refs.toArray(new Reference[0]);
   }
 
+  private SAMHeader(ArrayList<HeaderRecord> samHeaders, Reference[] references, int byteLength) {
+    this.samHeaders = samHeaders;
+    this.references = references;
+    this.byteLength = byteLength;
+  }
+
+  /**
+   * Builds the header from its text (as embedded in a CRAM file)
+   * @param text the lines of the header
+   * @return the header
+   */
+  public static SAMHeader fromText(String text) {
+    ArrayList<HeaderRecord> samHeaders = new ArrayList<>();
+    ArrayList<Reference> refs = new ArrayList<>();
+    for(String line : text.split("\n")) {
+      if(!line.startsWith("@"))
+        continue;
+      samHeaders.add(new HeaderRecord(line));
+      if(line.startsWith("@SQ"))
+        refs.add(parseReference(line));
+    }
+    return new SAMHeader(samHeaders, refs.toArray(new Reference[0]), text.length());
+  }
+
+  /**
+   * Gets the value of a field in a header line
+   * @param line the header line
+   * @param key the key of the field (SN, LN, UR, ID, ...)
+   * @return the value, or null if the field is absent
+   */
+  public static String getField(String line, String key) {
+    for(String field : line.split("\t"))
+      if(field.startsWith(key + ":"))
+        return field.substring(key.length() + 1);
+    return null;
+  }
+
+  private static Reference parseReference(String line) {
+    String name = getField(line, "SN");
+    String length = getField(line, "LN");
+    return new Reference(name == null ? "" : name, length == null ? -1 : Integer.parseInt(length));
+  }
+
   public SAMHeader(InputStream in) throws IOException {
 
     int nbBytes= ByteBuffer.wrap(in.readNBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getInt();
@@ -1,6 +1,8 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
 
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.BGZF;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.ParallelBGZFInputStream;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -20,7 +22,7 @@ public class BCF implements VariantProducer {
   private int majorVersion = -1;
   private int minorVersion = -1 ;
   private final BCFHeader header;
-  private final BufferedInputStream in;
+  private BufferedInputStream in;
   private final VCF vcf;
 
   /**
@@ -46,7 +48,9 @@ public class BCF implements VariantProducer {
    */
   private BufferedInputStream checkValid(String filename) throws IOException, BCFException {
     try {
-      BufferedInputStream in = new BufferedInputStream(new GZIPInputStream(new FileInputStream(filename)));
+      BufferedInputStream in = BGZF.isBGZF(filename)
+          ? new BufferedInputStream(new ParallelBGZFInputStream(filename))
+          : new BufferedInputStream(new GZIPInputStream(new FileInputStream(filename)));
       String magic = readString(in, 3);
       if (!magic.equals(BCF_MAGIC_STRING))
         throw new BCFException(BCFException.BCFE_NO_MAGIC);
@@ -62,6 +66,28 @@ public class BCF implements VariantProducer {
     }
   }
 
+  /**
+   * Replaces the stream of records (the header must have been read) by a stream covering only some chunks of the file
+   * @param records the uncompressed records (see BGZFChunkInputStream)
+   * @throws IOException if the current stream can't be closed
+   */
+  public void setRecordStream(InputStream records) throws IOException {
+    this.in.close();
+    this.in = new BufferedInputStream(records, 4 * 65536);
+  }
+
+  public int getMajorVersion() {
+    return majorVersion;
+  }
+
+  public int getMinorVersion() {
+    return minorVersion;
+  }
+
+  public BCFHeader getHeader() {
+    return header;
+  }
+
   public String getVersion() {
     return BCF_MAGIC_STRING+"v"+majorVersion+"."+minorVersion;
   }
@@ -85,6 +111,16 @@ public class BCF implements VariantProducer {
    * @throws IOException if the file can't be read
    */
   public RawVariantRecordData readNext() throws IOException {
+    return readRecord(in);
+  }
+
+  /**
+   * Reads the next BCF Record Line from a stream positioned at the start of a record
+   * @param in the uncompressed stream
+   * @return the BCF Record, null at the end of the stream
+   * @throws IOException if the stream can't be read
+   */
+  public static RawVariantRecordData readRecord(InputStream in) throws IOException {
     try {
       final int leftSize = read32Uint(in);
       final int rightSize = read32Uint(in);
@@ -373,19 +373,24 @@ public class BCFByteArray extends ByteArray {
    * @param l - the number of arrays
    */
   public void skip(ArrayDescription ad, int l){
-    int s;
-    switch(ad.getType()){
+    getPointerAndAdd(ad.getLength() * getSize(ad.getType()) * l);
+  }
+
+  /**
+   * Gets the number of bytes used to encode a value of the given type
+   * @param type - the type of value
+   * @return the number of bytes
+   */
+  public static int getSize(DataType type){
+    switch(type){
       case INT8:
       case CHAR:
-        s = 1;
-        break;
+        return 1;
       case INT16:
-        s = 2;
-        break;
+        return 2;
       default :
-        s = 4;
+        return 4;
     }
-    getPointerAndAdd(ad.getLength() * s * l);
   }
 
   /**
@@ -10,6 +10,7 @@ public class BCFException extends FileFormatException {
   public static final String BCFE_NOT_GZIP= "Not a valid BCF2 file (not GZIP format)";
 
   public static final String BCFE_UNEXPECTED_TYPE = "Unexpected type";
+  public static final String BCFE_MODIFIED_RECORD = "Modified record can't be written as raw BCF";
 
   public BCFException() {
   }
@@ -0,0 +1,99 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
+
+/**
+ * One FORMAT field of a BCF Record, left encoded in the record's byte array.
+ * The values are only decoded, sample by sample, when they are accessed, and decoded values are cached.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class BCFFormatField {
+  private static final String MISSING = ".";
+
+  private final String name;
+  private final boolean gt;
+  private final boolean kept;
+  private final BCFByteArray in;
+  private final BCFByteArray.ArrayDescription ad;
+  private final int offset;
+  private final int sampleSize;
+  private final int nSample;
+  private String[] values;
+
+  /**
+   * Describes the field starting at the current position of the array, and moves the pointer after the values of all the samples
+   * @param in the FORMAT/GENOTYPES array of the record
+   * @param name the name of the FORMAT field
+   * @param gt true if this is the GT field
+   * @param kept false if the values must be replaced by "." (see --ignore-format/--conserve-format)
+   * @param nSample the number of samples
+   * @throws BCFException if the array description can't be read, or if the GT values are not integers
+   */
+  BCFFormatField(BCFByteArray in, String name, boolean gt, boolean kept, int nSample) throws BCFException {
+    this.in = in;
+    this.name = name;
+    this.gt = gt;
+    this.kept = kept;
+    this.nSample = nSample;
+    this.ad = in.readArrayDescription();
+    if (gt && nSample > 0 && ad.getLength() > 0 && !isInt(ad.getType()))
+      throw new BCFException.UnexpectedTypeException(ad.getType());
+    this.sampleSize = ad.getLength() * BCFByteArray.getSize(ad.getType());
+    this.offset = in.getPointer();
+    if (sampleSize * nSample > 0)
+      in.skip(ad, nSample);
+  }
+
+  private static boolean isInt(BCFByteArray.DataType type) {
+    return type == BCFByteArray.DataType.INT8 || type == BCFByteArray.DataType.INT16 || type == BCFByteArray.DataType.INT32;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isKept() {
+    return kept;
+  }
+
+  /**
+   * Gets the value of a sample, decoding it on first access
+   * @param sample the index of the sample in the BCF file (0-based)
+   * @return the value as in a VCF file, "." if missing or not kept
+   */
+  public String get(int sample) {
+    String value = values == null ? null : values[sample];
+    if (value != null)
+      return value;
+    if (!kept)
+      return MISSING;
+    if (values == null)
+      values = new String[nSample];
+    value = decode(sample);
+    values[sample] = value;
+    return value;
+  }
+
+  /**
+   * Replaces the value of a sample
+   * @param sample the index of the sample in the BCF file (0-based)
+   * @param value the new value
+   */
+  public void set(int sample, String value) {
+    if (values == null)
+      values = new String[nSample];
+    values[sample] = value;
+  }
+
+  private String decode(int sample) {
+    if (sampleSize == 0)
+      return MISSING;
+    synchronized (in) { //the pointer of the array is shared
+      in.setPointer(offset + sample * sampleSize);
+      try {
+        return gt ? in.readGTValues(ad) : in.readValuesFromSampleField(ad);
+      } catch (BCFException e) { //types are checked in the constructor
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
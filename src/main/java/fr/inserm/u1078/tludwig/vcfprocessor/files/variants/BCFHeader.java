@@ -2,7 +2,6 @@ package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.BCFArguments;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
-import fr.inserm.u1078.tludwig.vcfprocessor.filters.LineFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 
 import java.io.IOException;
@@ -10,6 +9,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Representation of the BCF File Header
@@ -24,6 +24,7 @@ public class BCFHeader {
   private final ArrayList<String> values;
   private final ArrayList<String> contigs;
   private final String[] headerLines;
+  private final String rawHeader;
 
   private int gtIndex = 0;
 
@@ -32,7 +33,6 @@ public class BCFHeader {
 
   private final VCF vcf;
   private final CommandParser commandParser;
-  private final ArrayList<LineFilter> lineFilters;
 
   private String[] rawSampleNames;
   private Sample[] rawSamples;
@@ -52,6 +52,7 @@ public class BCFHeader {
     // Read the header length
     final int headerLength = BCF.read32Uint(in);
     final String header = BCF.readString(in, headerLength);
+    this.rawHeader = header;
     this.headerLines = header.split("\n", -1);
     removeExplicitIndexes(this.headerLines);
     // Decode the header as needed
@@ -91,7 +92,6 @@ public class BCFHeader {
     this.keepFormat = new boolean[values.size()];
     Arrays.fill(this.keepInfo, true);
     Arrays.fill(this.keepFormat, true);
-    this.lineFilters = new ArrayList<>();
     this.parseCommandLine();
   }
 
@@ -119,17 +119,9 @@ public class BCFHeader {
   }
 
   private void parseCommandLine(){
-    parseLineArgument();
     parseBCFArguments();
   }
 
-  private void parseLineArgument(){
-    lineFilters.clear();
-    for(LineFilter lineFilter : commandParser.getLineFilters())
-      if(lineFilter.leftColumnsOnly())
-        lineFilters.add(lineFilter);
-  }
-
   private void parseBCFArguments(){
     HashMap<String, String[]> bcfArguments = this.commandParser.getBCFArguments();
     for(String key : bcfArguments.keySet()) {
@@ -151,7 +143,7 @@ public class BCFHeader {
    * @param ss - the list of field names ("ALL" to keep all fields)
    */
   private void keepFormat(boolean keep, String... ss){
-    if("all".equalsIgnoreCase(ss[0]))
+    if(ss.length > 0 && "all".equalsIgnoreCase(ss[0]))
       Arrays.fill(this.keepFormat, keep);
     else {
       Arrays.fill(this.keepFormat, !keep);
@@ -170,7 +162,7 @@ public class BCFHeader {
    * @param ss - the list of field names ("ALL" to keep all fields)
    */
   private void keepInfo(boolean keep, String... ss){
-    if("all".equalsIgnoreCase(ss[0]))
+    if(ss.length > 0 && "all".equalsIgnoreCase(ss[0]))
       Arrays.fill(this.keepInfo, keep);
     else {
       Arrays.fill(this.keepInfo, !keep);
@@ -182,6 +174,25 @@ public class BCFHeader {
     }
   }
 
+  /**
+   * Gets the header text as found in the file (with explicit IDX and NUL terminator), needed to write BCF records unchanged
+   * @return the raw header
+   */
+  public String getRawHeader() {
+    return rawHeader;
+  }
+
+  /**
+   * Checks that no FORMAT/INFO field is ignored (see --conserve-format/--ignore-format/--conserve-info/--ignore-info)
+   * @return true if every field is kept
+   */
+  public boolean isEverythingKept() {
+    for(int i = 0; i < keepFormat.length; i++)
+      if(!keepFormat[i] || !keepInfo[i])
+        return false;
+    return true;
+  }
+
   /**
    * Checks if the given FORMAT is kept
    * @param idx - the index of the FORMAT in the header
@@ -224,6 +235,8 @@ public class BCFHeader {
    */
   public String getContig(int key) { return this.contigs.get(key); }
 
+  public List<String> getContigs() { return this.contigs; }
+
   /**
    * Get the index of the GT field
    * @return the index of the GT field
@@ -247,11 +260,4 @@ public class BCFHeader {
         ? headerLines[next++]
         : null;
   }
-
-  public boolean pass(BCFRecord r){
-    for(LineFilter filter: lineFilters)
-      if(!filter.pass(r))
-        return false;
-    return true;
-  }
 }
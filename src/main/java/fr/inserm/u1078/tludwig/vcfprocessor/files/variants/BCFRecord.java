@@ -20,11 +20,20 @@ public class BCFRecord extends VariantRecord {
   private String qual;
   private String[] filters;
   private String[][] info; //TODO replace with HashMap ???
+  /** index of the INFO fields, built on first access, dropped when they are modified */
+  private InfoIndex infoIndex = null;
 
-  private final String[][] genoValues;
+  private final BCFFormatField[] formats;
+  private final String[] formatNames;
+  private final int nSample;
 
   private final ArrayList<IndexedSample> selectedSamples;
 
+  private final BCFByteArray inCommon;
+  private final BCFByteArray inFormatGeno;
+  private boolean modified = false;
+  private final int rLen;
+
   /**
    * Parses a BCF Record from 2 byte array
    * @param header - the header of the BCF file
@@ -34,6 +43,8 @@ public class BCFRecord extends VariantRecord {
    */
   public BCFRecord(BCFHeader header, BCFByteArray inCommon, BCFByteArray inFormatGeno) throws BCFException {
     this.header = header;
+    this.inCommon = inCommon;
+    this.inFormatGeno = inFormatGeno;
 
     // Parse Chrom
     this.chrom = readChrom(inCommon);
@@ -41,7 +52,7 @@ public class BCFRecord extends VariantRecord {
     this.pos = readPos(inCommon);
 
     // Length of the record as projected onto the reference sequence.
-    final int rLen = inCommon.readLittleEndianSInt32();
+    this.rLen = inCommon.readLittleEndianSInt32();
     // Parse Qual
     this.qual = readQual(inCommon);
 
@@ -62,7 +73,9 @@ public class BCFRecord extends VariantRecord {
     // Parse INFO fields
     this.info = readInfo(inCommon, nInfo);
     // Parse genotypes
-    this.genoValues = readFormatGenotypes(inFormatGeno, nFormat, nSample);
+    this.nSample = nSample;
+    this.formats = readFormatGenotypes(inFormatGeno, nFormat, nSample);
+    this.formatNames = getFormatNames(formats);
     this.selectedSamples = new ArrayList<>();
     Sample[] rawSamples = header.getRawSamples();
 
@@ -73,6 +86,28 @@ public class BCFRecord extends VariantRecord {
       this.selectedSamples.add(new IndexedSample(i, rawSamples[i]));
   }
 
+  /**
+   * Checks if the record can be written as the original bytes read from the file
+   * @return true if nothing was changed in the record (including the list of samples and the FORMAT/INFO fields kept)
+   */
+  public boolean isUnmodified() {
+    return !modified && header.isEverythingKept();
+  }
+
+  /**
+   * @return the original bytes of the columns CHROM through INFO
+   */
+  public byte[] getRawCommon() {
+    return inCommon.getData();
+  }
+
+  /**
+   * @return the original bytes of the columns FORMAT and GENOTYPES
+   */
+  public byte[] getRawFormatGeno() {
+    return inFormatGeno.getData();
+  }
+
   /**
    * Reads a chromosome of the variant
    * @param in the array to parse
@@ -191,47 +226,51 @@ public class BCFRecord extends VariantRecord {
   }
 
   /**
-   * Reads the FORMAT/GENOTYPES fields
+   * Reads the FORMAT/GENOTYPES fields. Only the position of each field in the array is read, values are decoded when accessed
    * @param in the array to parse
    * @param nFormat the number of format fields
    * @param nSample the number of samples
-   * @return null if variants is field, String[][nSample + 1][nFormat] otherwise<br/>
-   * return[0] is the array of FORMAT names<br/>
-   * return[X] is the array of values for the Xth samples (1-based)<br/>
-   * Missing/filtered values are stored as "."
+   * @return null if variants is filtered, the FORMAT fields otherwise<br/>
+   * Missing/filtered values are read as "."
    * @throws BCFException if the byte array can't be parsed
    */
-  private String[][] readFormatGenotypes(BCFByteArray in, int nFormat, int nSample) throws BCFException {
-    if (in == null || !header.pass(this)) {
+  private BCFFormatField[] readFormatGenotypes(BCFByteArray in, int nFormat, int nSample) throws BCFException {
+    if (in == null || this.applyLeftColumnsFilters(header.getVCF())) {
       this.filter(header.getVCF());
       return null;
     }
 
-    //first line = keys
-    //next lines = values, one line per sample
-    String[][] ret = new String[nSample + 1][nFormat];
-    // Parse FORMAT fields
+    BCFFormatField[] ret = new BCFFormatField[nFormat];
     for (int i = 0; i < nFormat; i++) {
       int key = in.readTypedInt();
-      ret[0][i] = header.getKeyName(key);
-      BCFByteArray.ArrayDescription ad = in.readArrayDescription();
-
-      //Always read GT, might skip others
-      if(key == header.getGTIndex())
-        for (int s = 0; s < nSample; s++)
-          ret[1 + s][i] = in.readGTValues(ad);
-      else if(header.isFormatKept(key))
-        for (int s = 0; s < nSample; s++)
-          ret[1 + s][i] = in.readValuesFromSampleField(ad);
-      else {
-        for (int s = 0; s < nSample; s++)
-          ret[1 + s][i] = ".";
-        in.skip(ad, nSample);
-      }
+      //Always keep GT, might skip others
+      boolean gt = key == header.getGTIndex();
+      ret[i] = new BCFFormatField(in, header.getKeyName(key), gt, gt || header.isFormatKept(key), nSample);
     }
     return ret;
   }
 
+  private static String[] getFormatNames(BCFFormatField[] formats) {
+    if (formats == null)
+      return null;
+    String[] names = new String[formats.length];
+    for (int i = 0; i < formats.length; i++)
+      names[i] = formats[i].getName();
+    return names;
+  }
+
+  /**
+   * Gets all the FORMAT values of a sample
+   * @param s the index of the sample in the file (0-based)
+   * @return the values, one per FORMAT field
+   */
+  private String[] getRawGenotype(int s) {
+    String[] values = new String[formats.length];
+    for (int f = 0; f < formats.length; f++)
+      values[f] = formats[f].get(s);
+    return values;
+  }
+
   /**
    * Return the Leftmost columns of the Record (CHROM through INFO)
    * @return the columns as a String Array
@@ -255,10 +294,10 @@ public class BCFRecord extends VariantRecord {
    */
   private String[] getRightColumns() {
     String[] right = new String[1 + selectedSamples.size()];
-    right[0] = String.join(":", genoValues[0]);
+    right[0] = getFormatString();
     for(int i = 0; i < selectedSamples.size(); i++){
       int s = selectedSamples.get(i).getIndex();
-      right[i + 1] = String.join(":", genoValues[s]);
+      right[i + 1] = String.join(":", getRawGenotype(s - 1));
     }
     return right;
   }
@@ -293,7 +332,7 @@ public class BCFRecord extends VariantRecord {
 
   @Override
   public String[] getFormats() {
-    return this.genoValues[0];
+    return this.formatNames;
   }
 
   @Override
@@ -309,13 +348,14 @@ public class BCFRecord extends VariantRecord {
   @Override
   public String summary(int max) {
     StringBuilder sb = new StringBuilder(String.join(AbstractRecord.T, getLeftColumns()));
-    if(genoValues == null)
+    if(formats == null)
       sb.append("\t").append("----");
     else {
-      int nbSample = genoValues.length - 1;
+      int nbSample = nSample;
       int lim = Math.min(max, nbSample);
-      for (int i = 0; i <= lim; i++)
-        sb.append("\t").append(String.join(":", getFormatAndGenotypes()[i]));
+      sb.append("\t").append(getFormatString());
+      for (int i = 0; i < lim; i++)
+        sb.append("\t").append(String.join(":", getRawGenotype(i)));
       if (lim < nbSample)
         sb.append("\t").append("...and [").append(nbSample - lim).append("] others");
     }
@@ -325,16 +365,15 @@ public class BCFRecord extends VariantRecord {
   public Variant createVariant(VCF vcf) throws VCFException {
     if(this.isFiltered())
       return null;
-    NavigableSet<Sample> sampleIndices = vcf.getSampleIndices().navigableKeySet();
-    int nbSamples = sampleIndices.size();
+    int nbSamples = vcf.getSampleIndex().size();
     if (nbSamples == 0) //TODO allow this somehow
       throw new VCFException(vcf, "Could not create variant (list of selected sample is empty)", this);
-    if (genoValues.length < 1 + nbSamples)
-      throw new VCFException(vcf, "Could not create variant (not enough fields " + (genoValues.length - 1) + "/" + nbSamples + " samples)", this);
+    if (nSample < nbSamples)
+      throw new VCFException(vcf, "Could not create variant (not enough fields " + nSample + "/" + nbSamples + " samples)", this);
     try {
       List<Integer> kept = getKeptFormatIndices();
       GenotypeFormat format = getFormat(vcf, kept);
-      Genotype[] genotypes = getGenotypes(vcf, format, kept);
+      GenotypeBlock genotypes = getGenotypes(vcf, format, kept);
       return new Variant(chrom, pos, id, ref, String.join(",", alts), qual, String.join(",", filters), getInfo(vcf), format, genotypes);
     } catch (Exception e) {
       throw new VCFException(vcf, "Could not create variant", this, e);
@@ -366,6 +405,9 @@ public class BCFRecord extends VariantRecord {
       if (replacedAC && replacedAN && replacedAF)
         break;
     }
+    modified |= replacedAC || replacedAN || replacedAF;
+    if (replacedAC || replacedAN || replacedAF)
+      infoIndex = null;
     return new boolean[]{replacedAC, replacedAN, replacedAF};
   }
 
@@ -383,7 +425,7 @@ public class BCFRecord extends VariantRecord {
   }
 
   private int[] getAC(int s){
-    String geno = this.genoValues[s][0];
+    String geno = this.formats[0].get(s - 1);
     int[] acs = new int[alts.length + 1];
     if (geno != null && !geno.isEmpty()) {
       int[] alleles = Genotype.getAlleles(geno);
@@ -408,18 +450,18 @@ public class BCFRecord extends VariantRecord {
 
   @Override
   public void applySampleFilters(VCF vcf) throws VCFException {
-    if(genoValues == null)
+    if(formats == null)
       return;
     if ((vcf.getCommandParser().getSampleFilters().isEmpty()))
       return;
     final TreeMap<Sample , Integer> sampleIndices = vcf.getSampleIndices();
+    this.modified = true;
     this.selectedSamples.clear();
     NavigableSet<Sample> samples = sampleIndices.navigableKeySet();
-    int max = genoValues.length;
     for (Sample sample : samples) {
       int idx = sampleIndices.get(sample);
-      if(idx >= max)
-        throw new VCFException(vcf, "Could not Filter Samples (not enough fields: " + (genoValues.length - 1) + " samples)", this);
+      if(idx >= nSample)
+        throw new VCFException(vcf, "Could not Filter Samples (not enough fields: " + nSample + " samples)", this);
 
       selectedSamples.add(new IndexedSample(idx, sample));
     }
@@ -437,6 +479,7 @@ public class BCFRecord extends VariantRecord {
   @Override
   public void setChrom(String chrom) {
     this.chrom = chrom;
+    this.modified = true;
   }
 
   /**
@@ -447,9 +490,18 @@ public class BCFRecord extends VariantRecord {
     return pos;
   }
 
+  /**
+   * Gets the length of the record as projected onto the reference sequence
+   * @return the length read from the BCF file
+   */
+  public int getRLen() {
+    return rLen;
+  }
+
   @Override
   public void setPos(int pos) {
     this.pos = pos;
+    this.modified = true;
   }
 
   /**
@@ -463,6 +515,7 @@ public class BCFRecord extends VariantRecord {
   @Override
   public void setID(String id) {
     this.id = id;
+    this.modified = true;
   }
 
   /**
@@ -476,16 +529,19 @@ public class BCFRecord extends VariantRecord {
   @Override
   public void setRef(String ref) {
     this.ref = ref;
+    this.modified = true;
   }
 
   @Override
   public void setAlt(String alts) {
     this.alts = alts.split(",");
+    this.modified = true;
   }
 
   @Override
   public void setQual(String qual) {
     this.qual = qual;
+    this.modified = true;
   }
 
   @Override
@@ -525,6 +581,7 @@ public class BCFRecord extends VariantRecord {
   @Override
   public void clearFilters() {
     this.filters = new String[0];
+    this.modified = true;
   }
 
   @Override
@@ -537,11 +594,13 @@ public class BCFRecord extends VariantRecord {
     System.arraycopy(filters, 0, newFilters, 0, filters.length);
     newFilters[filters.length] = filter;
     this.filters = newFilters;
+    this.modified = true;
   }
 
   @Override
   public void setFilters(String filters) {
     this.filters = filters.split(";");
+    this.modified = true;
   }
 
   /**
@@ -558,10 +617,14 @@ public class BCFRecord extends VariantRecord {
    * @return the value for the key
    */
   public String getInfo(String key) {
-    for(String[] kv : info)
-      if(key.equalsIgnoreCase(kv[0]))
-        return kv[1];
-    return null;
+    return getInfoIndex().get(key);
+  }
+
+  @Override
+  public InfoIndex getInfoIndex() {
+    if (infoIndex == null)
+      infoIndex = new InfoIndex(info, header.getVCF());
+    return infoIndex;
   }
 
   /**
@@ -570,7 +633,7 @@ public class BCFRecord extends VariantRecord {
    * @return the Info object
    */
   public Info getInfo(VCF vcf){
-    return new Info(info, vcf);
+    return new Info(getInfoIndex(), vcf);
   }
 
   @Override
@@ -579,32 +642,36 @@ public class BCFRecord extends VariantRecord {
     System.arraycopy(info, 0, newInfo, 0, info.length);
     newInfo[info.length] = new String[]{key, value};
     this.info = newInfo;
+    this.infoIndex = null;
+    this.modified = true;
   }
 
   @Override
   public void clearInfo() {
     this.info = new String[0][0];
+    this.infoIndex = null;
+    this.modified = true;
   }
 
-  /**
-   * Gets the FORMAT and GENOTYPES values for the variant
-   * @return an array of String[nSample + 1][nFormat]<br/>
-   * return[0] is the array of FORMAT names<br/>
-   * return[X] is the array of values for the Xth samples (1-based)<br/>
-   * Missing/filtered values are stored as "."
-   */
-  public String[][] getFormatAndGenotypes() {
-    return genoValues;
+  @Override
+  public String getGenotypeValue(int sample, int field) {
+    return formats[field].get(selectedSamples.get(sample).getIndex() - 1);
   }
 
+  /**
+   * Decodes only the requested fields of the sample, from their typed arrays, the other fields are not read
+   */
   @Override
-  public String getGenotypeValue(int sample, int field) {
-    return genoValues[selectedSamples.get(sample).getIndex()][field];
+  public void fillGenotypeValues(int sample, int[] fields, String[] values) {
+    int s = selectedSamples.get(sample).getIndex() - 1;
+    for (int k = 0; k < fields.length; k++)
+      values[k] = fields[k] < formats.length ? formats[fields[k]].get(s) : null;
   }
 
   @Override
   public void updateGT(int sample, String value) {
-    genoValues[selectedSamples.get(sample).getIndex()][0] = value;
+    formats[0].set(selectedSamples.get(sample).getIndex() - 1, value);
+    this.modified = true;
   }
 
   @Override
@@ -614,12 +681,15 @@ public class BCFRecord extends VariantRecord {
 
   @Override
   public String[] getGenotypeSplit(int sample) {
-    return genoValues[selectedSamples.get(sample).getIndex()];
+    return getRawGenotype(selectedSamples.get(sample).getIndex() - 1);
   }
 
   @Override
   public void setGenotypeToMissing(int sample) {
-    Arrays.fill(genoValues[selectedSamples.get(sample).getIndex()], ".");
+    int s = selectedSamples.get(sample).getIndex() - 1;
+    for (BCFFormatField format : formats)
+      format.set(s, ".");
+    this.modified = true;
   }
 
   @Override
@@ -640,8 +710,8 @@ public class BCFRecord extends VariantRecord {
 
   public List<Integer> getKeptFormatIndices() throws BCFException {
     ArrayList<Integer> ret = new ArrayList<>();
-    for(int i = 0 ; i < genoValues[0].length; i++)
-      if (header.isFormatKept(genoValues[0][i]))
+    for(int i = 0 ; i < formats.length; i++)
+      if (formats[i].isKept())
         ret.add(i);
     return ret;
   }
@@ -651,36 +721,33 @@ public class BCFRecord extends VariantRecord {
       return new GenotypeFormat("GT");
     String[] keptFormat = new String[keptFormatIndices.size()];
     for(int i = 0 ; i < keptFormatIndices.size(); i++)
-      keptFormat[i] = genoValues[0][keptFormatIndices.get(i)];
+      keptFormat[i] = formatNames[keptFormatIndices.get(i)];
     return new GenotypeFormat(keptFormat);
   }
 
-  public Genotype[] getGenotypes(VCF vcf, GenotypeFormat format, List<Integer> keptFormatIndices) throws BCFException {
-    Genotype[] genotypes = new Genotype[this.selectedSamples.size()];
-
-    for(int i = 0; i < this.selectedSamples.size(); i++){
-      Sample sample = this.selectedSamples.get(i).getSample();
-      if(sample == null)
-        Message.die("Sample is null for i=" + i +" -> "+this.selectedSamples.get(i)+"\nVariants\n"+this.summary(10));
+  public GenotypeBlock getGenotypes(VCF vcf, GenotypeFormat format, List<Integer> keptFormatIndices) throws BCFException {
+    SampleIndex samples = vcf.getSampleIndex();
+    String[] genotypes = new String[samples.size()];
 
-      int s = this.selectedSamples.get(i).getIndex();
+    for(int i = 0; i < samples.size(); i++){
+      int s = samples.getColumn(i) + 1; //genotypes are laid out in the order of the shared sample index
+      if(s > nSample)
+        throw new BCFException.NullGenotypeException(samples.getSample(i).toString());
       String geno;
       if (vcf.checkMode(VCF.MODE_QUICK_GENOTYPING))
-        geno = genoValues[s][0];
+        geno = formats[0].get(s - 1);
       else {
         StringBuilder sb = new StringBuilder();
         for (Integer keptFormatIndex : keptFormatIndices)
-          sb.append(":").append(genoValues[s][keptFormatIndex]);
+          sb.append(":").append(formats[keptFormatIndex].get(s - 1));
         if(sb.length() > 0)
           geno = sb.substring(1);
         else
           geno = "";
       }
-      genotypes[i] = new Genotype(geno, format, sample);//right index, because samples has already been reduces
-      if(genotypes[i] == null) //TODO how can it be null ?
-        throw new BCFException.NullGenotypeException(sample == null ? "null" : sample.toString());
+      genotypes[i] = geno;
     }
-    return genotypes;
+    return new GenotypeBlock(format, samples, genotypes);
   }
 
   private static class IndexedSample {
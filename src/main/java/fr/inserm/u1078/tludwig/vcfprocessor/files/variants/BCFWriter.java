@@ -0,0 +1,90 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Writes BCF Records as the original bytes read from a BCF file, without any conversion to text.<br/>
+ * The header is the one of the input file, so that the dictionary of strings (and thus the encoded records) is unchanged.
+ * The output stream is expected to be BGZF compressed.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class BCFWriter {
+  private static final String SAMPLE_HEADER = "#CHROM";
+
+  private final OutputStream out;
+  private final byte[] sizes = new byte[8];
+
+  /**
+   * Constructor
+   * @param out - the (BGZF) OutputStream to write to
+   */
+  public BCFWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes the magic string, the version and the header of the input BCF file
+   * @param bcf - the input BCF file
+   * @param headers - the headers of the output (as VCF lines), those absent from the input are added just before the #CHROM line
+   * @throws IOException if the header can't be written
+   */
+  public void writeHeader(BCF bcf, List<String> headers) throws IOException {
+    BCFHeader header = bcf.getHeader();
+    HashSet<String> existing = new HashSet<>(Arrays.asList(header.getHeaderLines()));
+    ArrayList<String> extra = new ArrayList<>();
+    for(String line : headers)
+      if(!existing.contains(line) && !line.startsWith(SAMPLE_HEADER))
+        extra.add(line);
+
+    String text = header.getRawHeader();
+    if(!extra.isEmpty()) {
+      int idx = text.startsWith(SAMPLE_HEADER) ? 0 : text.indexOf("\n" + SAMPLE_HEADER) + 1;
+      if(idx == 0 && !text.startsWith(SAMPLE_HEADER))
+        throw new IOException("No " + SAMPLE_HEADER + " line in the header of the BCF file");
+      text = text.substring(0, idx) + String.join("\n", extra) + "\n" + text.substring(idx);
+    }
+    byte[] bytes = text.getBytes();
+
+    out.write(BCF.BCF_MAGIC_STRING.getBytes());
+    out.write(bcf.getMajorVersion());
+    out.write(bcf.getMinorVersion());
+    writeLittleEndianInt32(bytes.length, sizes, 0);
+    out.write(sizes, 0, 4);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes a Record as it was read from the input file
+   * @param record - the record
+   * @throws IOException if the record can't be written
+   * @throws BCFException if the record has been modified since it was read, and can't be copied
+   */
+  public void write(BCFRecord record) throws IOException, BCFException {
+    if(!record.isUnmodified())
+      throw new BCFException(BCFException.BCFE_MODIFIED_RECORD + " " + record.getChrom() + ":" + record.getPos());
+    byte[] common = record.getRawCommon();
+    byte[] formatGeno = record.getRawFormatGeno();
+    writeLittleEndianInt32(common.length, sizes, 0);
+    writeLittleEndianInt32(formatGeno.length, sizes, 4);
+    out.write(sizes);
+    out.write(common);
+    out.write(formatGeno);
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private static void writeLittleEndianInt32(int value, byte[] array, int offset) {
+    array[offset] = (byte) value;
+    array[offset + 1] = (byte) (value >>> 8);
+    array[offset + 2] = (byte) (value >>> 16);
+    array[offset + 3] = (byte) (value >>> 24);
+  }
+}
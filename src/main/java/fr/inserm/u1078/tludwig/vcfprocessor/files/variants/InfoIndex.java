@@ -0,0 +1,392 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF.InfoFormatHeader;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Info;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.InfoValues;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.IntegerEvaluator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Index of the INFO column of a record, built once, on first access : the keys are mapped to the span of their value in the
+ * column, values are only extracted, split and converted to numbers when they are read, and the conversions are cached.<br/>
+ * The typed accessors use the ##INFO headers of the VCF file (if any) : the Type tells if values are parsed as integers,
+ * the Number tells which value belongs to which allele.<br/>
+ * The typed accessors (getInt(), getIntArray(), getDouble()...) match keys exactly. get() and the InfoValues methods (used by
+ * InfoExpression) match keys exactly, or regardless of case if there is no exact match. For duplicate keys, the first one is used.<br/>
+ * An index belongs to a single record, and is not thread-safe. Arrays returned are cached : they must not be modified
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class InfoIndex implements InfoValues {
+  private final String info;
+  private final VCF vcf;
+
+  private String[] keys = null;
+  private int[] valueStarts;
+  private int[] valueEnds;
+  private HashMap<String, Integer> positions;
+  private HashMap<String, Integer> lowerCasePositions = null;
+
+  private String[] values;
+  private String[][] parts;
+  private int[][] ints;
+  private double[][] doubles;
+
+  /**
+   * @param info the INFO column
+   * @param vcf the VCF file, for the ##INFO headers (can be null)
+   */
+  public InfoIndex(String info, VCF vcf) {
+    this.info = info;
+    this.vcf = vcf;
+  }
+
+  /**
+   * Builds an index on already split fields (as read from a BCF file)
+   * @param fields an array of {KEY, VALUE}, VALUE can be null
+   * @param vcf the VCF file, for the ##INFO headers (can be null)
+   */
+  public InfoIndex(String[][] fields, VCF vcf) {
+    this.info = null;
+    this.vcf = vcf;
+    String[] k = new String[fields.length];
+    String[] v = new String[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      k[i] = fields[i][0];
+      v[i] = fields[i].length > 1 ? fields[i][1] : null;
+    }
+    init(k);
+    this.values = v;
+  }
+
+  /**
+   * Indexes the column in a single pass, only the keys are materialized
+   */
+  private void index() {
+    if (keys != null)
+      return;
+    if (info == null || info.isEmpty()) {
+      init(new String[0]);
+      return;
+    }
+    int nb = 1;
+    for (int i = info.indexOf(';'); i > -1; i = info.indexOf(';', i + 1))
+      nb++;
+    String[] k = new String[nb];
+    int[] starts = new int[nb];
+    int[] ends = new int[nb];
+    int n = 0;
+    int start = 0;
+    while (start <= info.length() && n < nb) {
+      int end = info.indexOf(';', start);
+      if (end == -1)
+        end = info.length();
+      int equals = info.indexOf('=', start);
+      if (equals == -1 || equals > end) {
+        k[n] = info.substring(start, end);
+        starts[n] = -1;
+      } else {
+        k[n] = info.substring(start, equals);
+        starts[n] = equals + 1;
+      }
+      ends[n] = end;
+      n++;
+      start = end + 1;
+    }
+    while (nb > 1 && k[nb - 1].isEmpty()) //trailing ';', as String.split()
+      nb--;
+    if (nb < k.length) {
+      k = Arrays.copyOf(k, nb);
+      starts = Arrays.copyOf(starts, nb);
+      ends = Arrays.copyOf(ends, nb);
+    }
+    this.valueStarts = starts;
+    this.valueEnds = ends;
+    init(k);
+  }
+
+  private void init(String[] k) {
+    this.keys = k;
+    this.positions = new HashMap<>(2 * k.length);
+    for (int i = k.length - 1; i >= 0; i--)
+      positions.put(k[i], i);
+    this.values = new String[k.length];
+    this.parts = new String[k.length][];
+    this.ints = new int[k.length][];
+    this.doubles = new double[k.length][];
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the index of this exact key, -1 if absent
+   */
+  public int indexOf(String key) {
+    index();
+    Integer i = positions.get(key);
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the index of the key, matched exactly, or regardless of case if there is no exact match, -1 if absent
+   */
+  public int indexOfIgnoreCase(String key) {
+    int k = indexOf(key);
+    if (k != -1)
+      return k;
+    if (lowerCasePositions == null) {
+      lowerCasePositions = new HashMap<>(2 * keys.length);
+      for (int i = keys.length - 1; i >= 0; i--)
+        lowerCasePositions.put(keys[i].toLowerCase(Locale.ROOT), i);
+    }
+    Integer i = lowerCasePositions.get(key.toLowerCase(Locale.ROOT));
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * @param key the INFO key
+   * @return true if this exact key is in the INFO column
+   */
+  public boolean contains(String key) {
+    index();
+    return positions.containsKey(key);
+  }
+
+  /**
+   * @return the number of fields in the INFO column
+   */
+  public int size() {
+    index();
+    return keys.length;
+  }
+
+  public String getKey(int k) {
+    index();
+    return keys[k];
+  }
+
+  /**
+   * @param k the index of the field
+   * @return the value of the field, null if it has no value
+   */
+  public String getValue(int k) {
+    index();
+    if (values[k] == null && valueStarts != null && valueStarts[k] != -1)
+      values[k] = info.substring(valueStarts[k], valueEnds[k]);
+    return values[k];
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the value of the key (matched regardless of case if there is no exact match), null if the key is absent or has no value
+   */
+  public String get(String key) {
+    int k = indexOfIgnoreCase(key);
+    return k == -1 ? null : getValue(k);
+  }
+
+  /**
+   * @return the fields of the INFO column, as an array of {KEY, VALUE}. VALUE can be null
+   */
+  public String[][] toArray() {
+    index();
+    String[][] ret = new String[keys.length][2];
+    for (int k = 0; k < keys.length; k++) {
+      ret[k][0] = keys[k];
+      ret[k][1] = getValue(k);
+    }
+    return ret;
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the ##INFO header of the key, null if unknown
+   */
+  public InfoFormatHeader getHeader(String key) {
+    return vcf == null ? null : vcf.getInfoHeader(key);
+  }
+
+  /**
+   * @param key the INFO key (a Flag)
+   * @return true if the key is present
+   */
+  public boolean getFlag(String key) {
+    return indexOf(key) != -1;
+  }
+
+  @Override
+  public String[] getValues(String key) {
+    return getValues(indexOfIgnoreCase(key));
+  }
+
+  @Override
+  public int[] getIntegers(String key) {
+    return getIntegers(indexOfIgnoreCase(key));
+  }
+
+  @Override
+  public double[] getDecimals(String key) {
+    return getDecimals(indexOfIgnoreCase(key));
+  }
+
+  private String[] getValues(int k) {
+    if (k == -1 || getValue(k) == null)
+      return null;
+    if (parts[k] == null)
+      parts[k] = getValue(k).split(",");
+    return parts[k];
+  }
+
+  private int[] getIntegers(int k) {
+    if (k == -1 || getValue(k) == null)
+      return null;
+    if (ints[k] == null) {
+      String[] p = getValues(k);
+      int[] ret = new int[p.length];
+      for (int i = 0; i < p.length; i++) {
+        ret[i] = IntegerEvaluator.MISSING_INTEGER;
+        if (!p[i].isEmpty() && !".".equals(p[i]))
+          try {
+            ret[i] = Integer.parseInt(p[i]);
+          } catch (NumberFormatException ignore) { }
+      }
+      ints[k] = ret;
+    }
+    return ints[k];
+  }
+
+  private double[] getDecimals(int k) {
+    if (k == -1 || getValue(k) == null)
+      return null;
+    if (doubles[k] == null) {
+      double[] ret;
+      InfoFormatHeader header = getHeader(keys[k]);
+      if (header != null && Info.INFO_TYPE_INTEGER.equals(header.getType())) { //parsed once, as integers
+        int[] in = getIntegers(k);
+        ret = new double[in.length];
+        for (int i = 0; i < in.length; i++)
+          ret[i] = in[i] == IntegerEvaluator.MISSING_INTEGER ? Double.NaN : in[i];
+      } else {
+        String[] p = getValues(k);
+        ret = new double[p.length];
+        for (int i = 0; i < p.length; i++) {
+          ret[i] = Double.NaN;
+          if (!p[i].isEmpty() && !".".equals(p[i]))
+            try {
+              ret[i] = Double.parseDouble(p[i]);
+            } catch (NumberFormatException ignore) { }
+        }
+      }
+      doubles[k] = ret;
+    }
+    return doubles[k];
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the values of the key as integers, null if the key is absent, or if a value is missing or is not an integer
+   */
+  public int[] getIntArray(String key) {
+    int[] ret = getIntegers(indexOf(key));
+    if (ret != null)
+      for (int v : ret)
+        if (v == IntegerEvaluator.MISSING_INTEGER)
+          return null;
+    return ret;
+  }
+
+  /**
+   * @param key the INFO key
+   * @param defaultValue the value returned if the key is absent, missing, not an integer, or has several values
+   * @return the value of the key as an integer
+   */
+  public int getInt(String key, int defaultValue) {
+    int[] ret = getIntegers(indexOf(key));
+    return ret == null || ret.length != 1 || ret[0] == IntegerEvaluator.MISSING_INTEGER ? defaultValue : ret[0];
+  }
+
+  /**
+   * @param key the INFO key
+   * @param allele the allele (0 for ref, 1 to N for the alternate alleles)
+   * @param defaultValue the value returned if the key is absent, or the value missing or not an integer
+   * @return the value of the key for the allele, as an integer
+   */
+  public int getInt(String key, int allele, int defaultValue) {
+    int k = indexOf(key);
+    int[] ret = getIntegers(k);
+    if (ret == null)
+      return defaultValue;
+    int i = getValueIndex(k, allele, ret.length);
+    return i < 0 || i >= ret.length || ret[i] == IntegerEvaluator.MISSING_INTEGER ? defaultValue : ret[i];
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the values of the key as decimals (NaN for missing values), null if the key is absent or has no value
+   */
+  public double[] getDoubleArray(String key) {
+    return getDecimals(indexOf(key));
+  }
+
+  /**
+   * @param key the INFO key
+   * @param defaultValue the value returned if the key is absent, missing, not a number, or has several values
+   * @return the value of the key as a decimal
+   */
+  public double getDouble(String key, double defaultValue) {
+    double[] ret = getDecimals(indexOf(key));
+    return ret == null || ret.length != 1 || Double.isNaN(ret[0]) ? defaultValue : ret[0];
+  }
+
+  /**
+   * @param key the INFO key
+   * @param allele the allele (0 for ref, 1 to N for the alternate alleles)
+   * @param defaultValue the value returned if the key is absent, or the value missing or not a number
+   * @return the value of the key for the allele, as a decimal
+   */
+  public double getDouble(String key, int allele, double defaultValue) {
+    int k = indexOf(key);
+    double[] ret = getDecimals(k);
+    if (ret == null)
+      return defaultValue;
+    int i = getValueIndex(k, allele, ret.length);
+    return i < 0 || i >= ret.length || Double.isNaN(ret[i]) ? defaultValue : ret[i];
+  }
+
+  /**
+   * Gets the position of the value of an allele, from the Number of the ##INFO header : A (one per alternate allele),
+   * R (one per allele) or 1. Without header, a single value is shared by all the alleles, otherwise there is one per alternate allele
+   * @param k the index of the key
+   * @param allele the allele (0 for ref, 1 to N for the alternate alleles)
+   * @param length the number of values
+   * @return the position of the value
+   */
+  private int getValueIndex(int k, int allele, int length) {
+    InfoFormatHeader header = getHeader(keys[k]);
+    if (header != null)
+      switch (header.getNumber()) {
+        case InfoFormatHeader.NUMBER_ALLELES:
+          return allele;
+        case InfoFormatHeader.NUMBER_ALTS:
+          return allele - 1;
+        case 1:
+          return 0;
+        default:
+          break;
+      }
+    return length == 1 ? 0 : allele - 1;
+  }
+
+  @Override
+  public String toString() {
+    if (info != null)
+      return info;
+    String[] fields = new String[size()];
+    for (int k = 0; k < fields.length; k++)
+      fields[k] = getValue(k) == null ? keys[k] : keys[k] + "=" + getValue(k);
+    return String.join(";", fields);
+  }
+}
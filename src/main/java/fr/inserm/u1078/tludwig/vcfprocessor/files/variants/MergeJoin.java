@@ -0,0 +1,530 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
+
+import fr.inserm.u1078.tludwig.maok.UniversalReader;
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.PedException;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streaming N-way sorted merge-join between the records of a VCF file and several sorted reference files (VCF/BCF/TSV).<br/>
+ * The records of each batch are joined in the order of the file (batches are joined one after the other, in rank order),
+ * so each reference file is read once, sequentially, and only keeps in memory the lines that can overlap the current record
+ * (from its position, minus the longest reference allele seen in the file, to the end of its reference allele).<br/>
+ * Each reference file must be sorted (contiguous contigs, increasing positions), in its own contig order. Contig names are compared
+ * with or without the "chr" prefix. If the input goes backwards (or follows another contig order), the reference files are reopened
+ * and read again from the start.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class MergeJoin {
+  private static final String CONTIG_HEADER = "##contig=<ID=";
+
+  private final Source[] sources;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition turn = lock.newCondition();
+  private int lastBatch = 0;
+
+  public MergeJoin(Source... sources) {
+    this.sources = sources;
+  }
+
+  public int getNumberOfSources() {
+    return sources.length;
+  }
+
+  /**
+   * Joins the records of a batch with every reference file.<br/>
+   * Waits until the previous batch has been joined, so that the reference files are read in order.
+   * @param n the rank of the batch (starting at 1)
+   * @param records the records of the batch (null for the records that are filtered out)
+   * @return for each record, its matches in each reference file (null for the null records)
+   */
+  public Match[] join(int n, VariantRecord[] records) {
+    lock.lock();
+    try {
+      while (lastBatch != n - 1)
+        turn.await();
+      Match[] matches = new Match[records.length];
+      for (int i = 0; i < records.length; i++)
+        if (records[i] != null)
+          matches[i] = join(records[i]);
+      lastBatch = n;
+      turn.signalAll();
+      return matches;
+    } catch (InterruptedException e) {
+      Message.fatal("Interrupted while joining batch " + n, e, true);
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Joins a single record with every reference file. The records must be given in the order of the file
+   * @param record the record
+   * @return the lines of each reference file that overlap the record (from its position to the end of its reference allele)
+   */
+  public Match join(VariantRecord record) {
+    String chrom = record.getChrom();
+    int start = record.getPos();
+    int end = start + Math.max(1, record.getRef().length());
+    Match match = new Match(sources.length);
+    for (int s = 0; s < sources.length; s++)
+      try {
+        match.entries.set(s, sources[s].get(chrom, start, end));
+      } catch (IOException e) {
+        Message.fatal("Unable to read reference file " + sources[s].filename, e, true);
+      }
+    return match;
+  }
+
+  public void close() {
+    for (Source source : sources)
+      source.close();
+  }
+
+  /**
+   * Opens a sorted reference file, by extension : .bcf and .vcf(.gz) files are read as VCF files, other files as TSV
+   * files with the chromosome and position in the first two columns
+   * @param filename the name of the file
+   * @return the Source
+   */
+  public static Source open(String filename) {
+    String lower = filename.toLowerCase();
+    if (lower.endsWith(".bcf"))
+      return new BCFSource(filename);
+    if (lower.endsWith(".vcf") || lower.endsWith(".vcf.gz"))
+      return new TextSource(filename, VCF.IDX_CHROM, VCF.IDX_POS, VCF.IDX_REF);
+    return new TextSource(filename, 0, 1, -1);
+  }
+
+  /**
+   * Opens a sorted file of variants in canonical notation (chr:pos:length:allele in the first column, after a header line)
+   * @param filename the name of the file
+   * @return the Source
+   */
+  public static Source openCanonical(String filename) {
+    return new CanonicalSource(filename);
+  }
+
+  /**
+   * A line of a reference file
+   */
+  public static class Entry {
+    private final String contig;
+    private final int pos;
+    /** the end of the reference allele (a canonical variant of this line is between pos and end) */
+    private final int end;
+    private final String line;
+    private String[] fields;
+
+    Entry(String contig, int pos, String line) {
+      this(contig, pos, pos, line);
+    }
+
+    Entry(String contig, int pos, String ref, String line) {
+      this(contig, pos, pos + Math.max(1, ref.length()), line);
+    }
+
+    private Entry(String contig, int pos, int end, String line) {
+      this.contig = contig;
+      this.pos = pos;
+      this.end = end;
+      this.line = line;
+    }
+
+    public int getPos() {
+      return pos;
+    }
+
+    public String getLine() {
+      return line;
+    }
+
+    public String[] getFields() {
+      if (fields == null)
+        fields = line.split("\t", -1);
+      return fields;
+    }
+  }
+
+  /**
+   * The lines matched to a record, in each reference file
+   */
+  public static class Match {
+    private final ArrayList<List<Entry>> entries;
+
+    Match(int size) {
+      this.entries = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    /**
+     * @param source the index of the reference file
+     * @return the lines of the reference file that overlap the record (they can start before the record)
+     */
+    public List<Entry> get(int source) {
+      return entries.get(source);
+    }
+
+    /**
+     * @param source the index of the reference file
+     * @param pos a position
+     * @return the lines of the reference file at exactly this position
+     */
+    public List<Entry> get(int source, int pos) {
+      ArrayList<Entry> ret = new ArrayList<>();
+      for (Entry entry : entries.get(source))
+        if (entry.getPos() == pos)
+          ret.add(entry);
+      return ret;
+    }
+  }
+
+  /**
+   * A sorted reference file, read forward, with a small window of lines.<br/>
+   * The contigs are expected in the order of the file itself (the order in which they first appear), positions must increase
+   * within each contig. When the input asks for a contig (or a position) that has already been passed, the file is read again
+   * from the start. The contigs declared in ##contig headers (if any) tell which contigs are absent from the file
+   */
+  public abstract static class Source {
+    final String filename;
+    /** the lines of the current contig, from the start of the last range minus maxSpan */
+    private final ArrayDeque<Entry> window = new ArrayDeque<>();
+    /** the longest span (end - pos) of the lines read so far, a line overlapping a range can start this far before the range */
+    private int maxSpan = 0;
+    /** the rank of each contig, in the order of the file */
+    private final HashMap<String, Integer> ranks = new HashMap<>();
+    /** the contigs declared in the headers */
+    private final HashSet<String> declared = new HashSet<>();
+    /** true once every contig of the file is in ranks */
+    private boolean allContigs = false;
+    /** the next line, not yet in the window (null at the end of the file) */
+    private Entry next = null;
+    private String contig = null;
+    private int lastStart = -1;
+    private boolean opened = false;
+    private boolean warned = false;
+
+    Source(String filename) {
+      this.filename = filename;
+    }
+
+    /**
+     * Opens (or reopens) the file, from the beginning
+     */
+    abstract void open() throws IOException;
+
+    /**
+     * @return the next line of the file, or null at the end of the file
+     */
+    abstract Entry read() throws IOException;
+
+    abstract void close();
+
+    /**
+     * @param chrom the chromosome of a record
+     * @return the name of the contig, as used by the entries of this file
+     */
+    String contigOf(String chrom) {
+      return Variant.normalizeChrom(chrom);
+    }
+
+    /**
+     * Registers the contig of a ##contig=&lt;ID=...&gt; header line, other lines are ignored
+     * @param header a header line
+     */
+    void readHeader(String header) {
+      if (!header.startsWith(CONTIG_HEADER))
+        return;
+      int end = CONTIG_HEADER.length();
+      while (end < header.length() && header.charAt(end) != ',' && header.charAt(end) != '>')
+        end++;
+      declared.add(contigOf(header.substring(CONTIG_HEADER.length(), end)));
+    }
+
+    /**
+     * @param chrom the chromosome of the range
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the lines on the same chromosome that overlap the range
+     */
+    List<Entry> get(String chrom, int start, int end) throws IOException {
+      if (!opened)
+        rewind();
+      String c = contigOf(chrom);
+      if (!c.equals(contig) || start < lastStart) {
+        if (isAbsent(c))
+          return Collections.emptyList();
+        seek(c, start);
+      }
+      lastStart = start;
+
+      while (!window.isEmpty() && window.peekFirst().pos < start - maxSpan)
+        window.pollFirst();
+      while (next != null && next.contig.equals(c) && next.pos <= end) {
+        if (next.end >= start)
+          window.addLast(next);
+        next = advance();
+      }
+
+      List<Entry> ret = null;
+      for (Entry entry : window) {
+        if (entry.pos > end)
+          break;
+        if (entry.end < start)
+          continue;
+        if (ret == null)
+          ret = new ArrayList<>();
+        ret.add(entry);
+      }
+      return ret == null ? Collections.emptyList() : ret;
+    }
+
+    /**
+     * @param c a contig
+     * @return true if the contig is known to be absent from the file
+     */
+    private boolean isAbsent(String c) {
+      if (ranks.containsKey(c))
+        return false;
+      return allContigs || (!declared.isEmpty() && !declared.contains(c));
+    }
+
+    /**
+     * Moves to the first line of the contig, reading the file again from the start if the contig (or the position) has already been passed
+     */
+    private void seek(String c, int start) throws IOException {
+      Integer rank = ranks.get(c);
+      boolean passed;
+      if (c.equals(contig))
+        passed = start < lastStart;
+      else if (next == null)
+        passed = rank != null;
+      else
+        passed = rank != null && !c.equals(next.contig) && rank < ranks.get(next.contig);
+      if (passed)
+        rewind();
+      contig = c;
+      window.clear();
+      while (next != null && !next.contig.equals(c))
+        next = advance();
+    }
+
+    /**
+     * Reads the next line, and checks that the file is sorted
+     */
+    private Entry advance() throws IOException {
+      Entry entry = read();
+      if (entry == null) {
+        allContigs = true;
+        return null;
+      }
+      maxSpan = Math.max(maxSpan, entry.end - entry.pos);
+      Integer rank = ranks.get(entry.contig);
+      if (rank == null)
+        ranks.put(entry.contig, ranks.size());
+      else if (next == null)
+        return entry;
+      else if (!entry.contig.equals(next.contig)) {
+        if (rank != ranks.get(next.contig) + 1) //already seen before the previous contig
+          Message.die("Reference file " + filename + " is not sorted, lines on " + entry.contig + " are found after lines on " + next.contig);
+      } else if (entry.pos < next.pos)
+        Message.die("Reference file " + filename + " is not sorted at " + entry.contig + ":" + entry.pos);
+      return entry;
+    }
+
+    private void rewind() throws IOException {
+      if (opened) {
+        if (!warned)
+          Message.warning("The input file is not sorted as " + filename + ", which will be read again from the start (this can be slow)");
+        warned = true;
+        close();
+      }
+      window.clear();
+      contig = null;
+      lastStart = -1;
+      next = null;
+      open();
+      opened = true;
+      next = advance();
+    }
+  }
+
+  /**
+   * A text file (VCF, TSV, gzipped or not), with the chromosome, the position and (optionally) the reference allele in given columns.
+   * Lines starting with # are skipped
+   */
+  private static class TextSource extends Source {
+    private final int chromCol;
+    private final int posCol;
+    private final int refCol;
+    UniversalReader in;
+
+    TextSource(String filename, int chromCol, int posCol, int refCol) {
+      super(filename);
+      this.chromCol = chromCol;
+      this.posCol = posCol;
+      this.refCol = refCol;
+    }
+
+    @Override
+    void open() throws IOException {
+      in = new UniversalReader(filename);
+    }
+
+    @Override
+    Entry read() throws IOException {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.isEmpty())
+          continue;
+        if (line.charAt(0) == '#') {
+          readHeader(line);
+          continue;
+        }
+        String[] f = line.split("\t", Math.max(Math.max(chromCol, posCol), refCol) + 2);
+        try {
+          if (refCol > -1)
+            return new Entry(contigOf(f[chromCol]), Integer.parseInt(f[posCol]), f[refCol], line);
+          return new Entry(contigOf(f[chromCol]), Integer.parseInt(f[posCol]), line);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          Message.warning("Skipping line from " + filename + " [" + line + "]");
+        }
+      }
+      return null;
+    }
+
+    @Override
+    void close() {
+      try {
+        if (in != null)
+          in.close();
+      } catch (IOException e) {
+        Message.warning("Unable to close " + filename);
+      }
+    }
+  }
+
+  /**
+   * A file of variants in canonical notation (with a header line), keyed by the position of the canonical variant
+   */
+  private static class CanonicalSource extends TextSource {
+    /** canonical positions are shifted from the original positions, so the file can be slightly unsorted */
+    private static final int MAX_SHIFT = 1000;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private boolean header = true;
+
+    CanonicalSource(String filename) {
+      super(filename, 0, 0, -1);
+    }
+
+    @Override
+    void open() throws IOException {
+      super.open();
+      header = true;
+      pending.clear();
+    }
+
+    /**
+     * Canonical variants are keyed by chromosome number (see Variant.chromToNumber())
+     */
+    @Override
+    String contigOf(String chrom) {
+      return "" + Variant.chromToNumber(chrom);
+    }
+
+    /**
+     * Reads ahead, and returns the lines in the order of their canonical positions, as long as the shift is less than MAX_SHIFT
+     */
+    @Override
+    Entry read() throws IOException {
+      Entry next;
+      while ((next = readCanonical()) != null) {
+        insert(next);
+        Entry first = pending.peekFirst();
+        Entry last = pending.peekLast();
+        if (!last.contig.equals(first.contig) || last.pos > first.pos + MAX_SHIFT)
+          break;
+      }
+      return pending.pollFirst();
+    }
+
+    private void insert(Entry entry) {
+      ArrayList<Entry> after = new ArrayList<>();
+      while (!pending.isEmpty() && pending.peekLast().contig.equals(entry.contig) && pending.peekLast().pos > entry.pos)
+        after.add(0, pending.pollLast());
+      pending.addLast(entry);
+      pending.addAll(after);
+    }
+
+    private Entry readCanonical() throws IOException {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (header) {
+          header = false;
+          continue;
+        }
+        if (line.isEmpty())
+          continue;
+        String canonical = line.split("\t", 2)[0];
+        String[] f = canonical.split(":");
+        try {
+          return new Entry(contigOf(f[0]), Integer.parseInt(f[1]), line);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          Message.warning("Skipping line from " + filename + " [" + line + "]");
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * A BCF file, read through VCF, the records are converted to VCF lines
+   */
+  private static class BCFSource extends Source {
+    private VCF vcf;
+    private VCF.Reader reader;
+
+    BCFSource(String filename) {
+      super(filename);
+    }
+
+    @Override
+    void open() throws IOException {
+      try {
+        vcf = new VCF(filename, VCF.MODE_NORMAL, VCF.STEP_OFF, CommandParser.withoutArguments()); //the user's filters don't apply to references
+        for (String header : vcf.getFullHeaders())
+          readHeader(header);
+        reader = vcf.getReaderAndStart();
+      } catch (VCFException | PedException e) {
+        throw new IOException("Unable to open " + filename, e);
+      }
+    }
+
+    @Override
+    Entry read() {
+      VCF.IndexedRecord next = reader.nextIndexedRecord();
+      VariantRecord record = next == null ? null : next.getRecord();
+      if (record == null)
+        return null;
+      return new Entry(contigOf(record.getChrom()), record.getPos(), record.getRef(), record.toString());
+    }
+
+    @Override
+    void close() {
+      if (vcf != null)
+        vcf.close();
+    }
+  }
+}
@@ -4,6 +4,8 @@ import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF.Reader;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ReorderWindow;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 
 import java.util.ArrayList;
@@ -17,8 +19,8 @@ public class MultiVCFReader {
   private final VCF vcf1;
   private final VCF vcf2;
   private final ArrayList<String> commonsSamples;
-  private final Reader reader1;
-  private final Reader reader2;
+  private final ReorderWindow<VCF.IndexedRecord> parsed1;
+  private final ReorderWindow<VCF.IndexedRecord> parsed2;
   private boolean finished = false;
   
   private final LinkedBlockingQueue<RecordPair> queue = new LinkedBlockingQueue<>(1000);
@@ -28,13 +30,39 @@ public class MultiVCFReader {
     this.vcf2 = vcf2;
     this.commonsSamples = Sample.getCommonIDs(vcf1.getSortedSamples(), vcf2.getSortedSamples());
 
-    this.reader1 = vcf1.getReaderWithoutStarting();
-    new ReaderWrapper(reader1, vcf1.getFilename()).start();
-    this.reader2 = vcf2.getReaderWithoutStarting();
-    new ReaderWrapper(reader2, vcf2.getFilename()).start();
+    this.parsed1 = startParsers(vcf1);
+    this.parsed2 = startParsers(vcf2);
     new Synchronizer(new SyncReader()).start();
   }
 
+  /**
+   * Starts the Reader of the VCF file, and the threads that parse/filter its records (as many as the number of reader threads)
+   * @param vcf the VCF file
+   * @return the window, from which the parsed records can be taken in order
+   */
+  private static ReorderWindow<VCF.IndexedRecord> startParsers(VCF vcf) {
+    Reader reader = vcf.getReaderWithoutStarting();
+    new ReaderWrapper(reader, vcf.getFilename()).start();
+    int parsers = ThreadConfiguration.getReaders();
+    ReorderWindow<VCF.IndexedRecord> parsed = new ReorderWindow<>(Math.max(VCF.QUEUE_DEPTH, 2 * parsers));
+    for (int i = 0; i < parsers; i++)
+      new ReaderWrapper(() -> {
+        boolean running = true;
+        while (running && !Thread.interrupted()) {
+          VCF.IndexedRecord record = reader.nextIndexedRecord();
+          if (record == null) //interrupted while waiting for the Reader
+            return;
+          try {
+            parsed.put(record.index, record);
+          } catch (InterruptedException e) {
+            return;
+          }
+          running = !record.isEOF();
+        }
+      }, "parser for " + vcf.getFilename()).start();
+    return parsed;
+  }
+
   public ArrayList<String> getCommonsSamples() {
     return commonsSamples;
   }
@@ -55,14 +83,14 @@ public class MultiVCFReader {
     @Override
     public void doRun() {
       try{
-        Data data1 = nextRecord(reader1);
-        Data data2 = nextRecord(reader2);
+        Data data1 = nextRecord(parsed1);
+        Data data2 = nextRecord(parsed2);
         while (data1.record != null && data2.record != null) {
           int compare = Variant.compare(data1.chrom, data1.pos, data2.chrom, data2.pos);
           if (compare < 0) {
-            data1 = nextRecord(reader1);
+            data1 = nextRecord(parsed1);
           } else if (compare > 0) {
-            data2 = nextRecord(reader2);
+            data2 = nextRecord(parsed2);
           } else {
             //Both files can have multiple lines for the same position
             ArrayList<VariantRecord> lines1 = new ArrayList<>();
@@ -70,12 +98,12 @@ public class MultiVCFReader {
             //Message.debug("Match "+pos);
             while (pos == data1.pos) {
               lines1.add(data1.record);
-              data1 = nextRecord(reader1);
+              data1 = nextRecord(parsed1);
             }
             ArrayList<VariantRecord> lines2 = new ArrayList<>();
             while (pos == data2.pos) {
               lines2.add(data2.record);
-              data2 = nextRecord(reader2);
+              data2 = nextRecord(parsed2);
             }
             try {
               queue.put(new RecordPair(lines1, lines2));
@@ -96,11 +124,15 @@ public class MultiVCFReader {
       } catch (InterruptedException ignore) { }
     }
 
-    private Data nextRecord(Reader reader) throws VCFException{
-      VariantRecord record = reader.nextIndexedRecord().getRecord();
-      while(record.isFiltered())
-        record = reader.nextIndexedRecord().getRecord();
-      return new Data(record);
+    private Data nextRecord(ReorderWindow<VCF.IndexedRecord> parsed) throws VCFException{
+      try {
+        VariantRecord record = parsed.take().getRecord();
+        while(record != null && record.isFiltered())
+          record = parsed.take().getRecord();
+        return new Data(record);
+      } catch (InterruptedException e) {
+        return new Data(null); //stops the synchronization, as if the end of the file was reached
+      }
     }
   }
   
@@ -0,0 +1,447 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
+
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.ParallelBGZFOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a Tabix (.tbi) or CSI (.csi) index while a sorted VCF/BCF file is written through a ParallelBGZFOutputStream.<br/>
+ * The records are given with their position in the uncompressed stream, and are converted to virtual offsets when the
+ * blocks holding them are written. The index is written when the stream is closed, unless the records were not sorted.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class TabixIndexer implements ParallelBGZFOutputStream.BlockListener {
+  private static final int MIN_SHIFT = 14;
+  private static final int TBI_DEPTH = 5;
+  public static final long TBI_MAX_LENGTH = 1L << (MIN_SHIFT + 3 * TBI_DEPTH);
+  private static final int TBI_FORMAT_VCF = 2;
+  private static final int TBI_COL_SEQ = 1;
+  private static final int TBI_COL_BEG = 2;
+  private static final int TBI_COL_END = 0;
+  private static final int TBI_META = '#';
+  private static final String CONTIG_HEADER = "##contig=<";
+  private static final String LENGTH = "length=";
+  private static final String END = "END=";
+
+  private final String filename;
+  private final boolean csi;
+  private final int depth;
+  private final long maxLength;
+  private final Map<String, Integer> dictionary;
+  private final ArrayList<String> names;
+  private final ArrayList<Reference> references;
+  private final HashSet<Integer> seen;
+  private final ArrayDeque<Entry> pending;
+  private int lastTid = -1;
+  private long lastBeg = -1;
+  private String invalid = null;
+  private long nbRecords = 0;
+
+  /**
+   * @param filename the name of the index file to write
+   * @param csi true for a CSI index, false for a Tabix index
+   * @param maxLength the length of the longest contig (0 if unknown), CSI indexes get enough levels to reach it
+   * @param contigs the contig dictionary of a BCF file, null for a VCF file (the names are then stored in the index)
+   */
+  public TabixIndexer(String filename, boolean csi, long maxLength, List<String> contigs) {
+    this.filename = filename;
+    this.csi = csi;
+    int d = TBI_DEPTH;
+    if (csi)
+      while ((1L << (MIN_SHIFT + 3 * d)) < maxLength)
+        d++;
+    this.depth = d;
+    this.maxLength = 1L << (MIN_SHIFT + 3 * d);
+    this.names = new ArrayList<>();
+    this.references = new ArrayList<>();
+    this.seen = new HashSet<>();
+    this.pending = new ArrayDeque<>();
+    if (contigs == null)
+      this.dictionary = null;
+    else {
+      this.dictionary = new HashMap<>();
+      for (String contig : contigs) {
+        this.dictionary.put(contig, names.size());
+        this.names.add(contig);
+        this.references.add(new Reference());
+      }
+    }
+  }
+
+  /**
+   * Gets the length of the longest contig declared in the headers
+   * @param headers the header lines of a VCF file
+   * @return the length, 0 if no length is declared
+   */
+  public static long getMaxContigLength(List<String> headers) {
+    long max = 0;
+    for (String header : headers)
+      if (header.startsWith(CONTIG_HEADER)) {
+        int idx = header.indexOf(LENGTH);
+        if (idx > -1) {
+          int end = idx + LENGTH.length();
+          while (end < header.length() && Character.isDigit(header.charAt(end)))
+            end++;
+          try {
+            max = Math.max(max, Long.parseLong(header.substring(idx + LENGTH.length(), end)));
+          } catch (NumberFormatException ignore) { }
+        }
+      }
+    return max;
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * Adds a VCF line (header lines are ignored)
+   * @param line the line
+   * @param start the position of the line in the uncompressed stream
+   * @param end the position after the line in the uncompressed stream
+   */
+  public void add(String line, long start, long end) {
+    if (invalid != null || line.isEmpty() || line.charAt(0) == '#')
+      return;
+    int t1 = line.indexOf('\t');
+    int t2 = line.indexOf('\t', t1 + 1);
+    int t3 = line.indexOf('\t', t2 + 1);
+    int t4 = line.indexOf('\t', t3 + 1);
+    if (t4 < 0) {
+      setInvalid("malformed line [" + line + "]");
+      return;
+    }
+    String chrom = line.substring(0, t1);
+    int pos;
+    try {
+      pos = Integer.parseInt(line.substring(t1 + 1, t2));
+    } catch (NumberFormatException e) {
+      setInvalid("malformed position in line [" + line + "]");
+      return;
+    }
+    long beg = pos - 1;
+    long stop = beg + (t4 - t3 - 1);
+    long infoEnd = getInfoEnd(line, t4);
+    if (infoEnd > stop)
+      stop = infoEnd;
+    add(chrom, beg, stop, start, end);
+  }
+
+  /**
+   * @return the value of END in the INFO column, -1 if absent
+   */
+  private static long getInfoEnd(String line, int t4) {
+    int info = t4;
+    for (int i = 0; i < 3 && info > -1; i++) //ALT, QUAL, FILTER
+      info = line.indexOf('\t', info + 1);
+    if (info < 0)
+      return -1;
+    int infoEnd = line.indexOf('\t', info + 1);
+    if (infoEnd < 0)
+      infoEnd = line.length();
+    int idx = info + 1;
+    while (idx < infoEnd) {
+      if (line.startsWith(END, idx)) {
+        int stop = idx + END.length();
+        while (stop < infoEnd && Character.isDigit(line.charAt(stop)))
+          stop++;
+        try {
+          return Long.parseLong(line.substring(idx + END.length(), stop));
+        } catch (NumberFormatException e) {
+          return -1;
+        }
+      }
+      idx = line.indexOf(';', idx);
+      if (idx < 0 || idx > infoEnd)
+        break;
+      idx++;
+    }
+    return -1;
+  }
+
+  /**
+   * Adds a record
+   * @param chrom the chromosome
+   * @param beg the 0-based start of the record, included
+   * @param end the 0-based end of the record, excluded
+   * @param start the position of the record in the uncompressed stream
+   * @param stop the position after the record in the uncompressed stream
+   */
+  public void add(String chrom, long beg, long end, long start, long stop) {
+    if (invalid != null)
+      return;
+    Integer tid = dictionary != null ? dictionary.get(chrom) : getTid(chrom);
+    if (tid == null) {
+      setInvalid("contig [" + chrom + "] not found in the header");
+      return;
+    }
+    if (tid != lastTid) {
+      if (!seen.add(tid)) {
+        setInvalid("the records are not sorted (" + chrom + " found again after " + names.get(lastTid) + ")");
+        return;
+      }
+      lastTid = tid;
+    } else if (beg < lastBeg) {
+      setInvalid("the records are not sorted (" + chrom + ":" + (beg + 1) + " after " + chrom + ":" + (lastBeg + 1) + ")");
+      return;
+    }
+    if (end > maxLength) {
+      setInvalid("position " + chrom + ":" + end + " is beyond the maximum of the index (" + maxLength + "), declare the contig lengths in the header");
+      return;
+    }
+    lastBeg = beg;
+    pending.add(new Entry(tid, beg, Math.max(end, beg + 1), start, stop));
+  }
+
+  private Integer getTid(String chrom) {
+    int n = names.size();
+    if (n > 0 && names.get(lastTid).equals(chrom))
+      return lastTid;
+    int idx = names.indexOf(chrom);
+    if (idx > -1)
+      return idx;
+    names.add(chrom);
+    references.add(new Reference());
+    return n;
+  }
+
+  private void setInvalid(String reason) {
+    invalid = reason;
+    pending.clear();
+    Message.warning("No index will be written to [" + filename + "] : " + reason);
+  }
+
+  @Override
+  public void blockWritten(long uncompressedStart, int uncompressedLength, long address) {
+    if (invalid != null)
+      return;
+    long blockEnd = uncompressedStart + uncompressedLength;
+    for (Entry entry : pending) {
+      if (entry.start >= blockEnd)
+        break;
+      if (entry.vStart < 0 && entry.start >= uncompressedStart)
+        entry.vStart = TabixReader.makeFilePointer(address, (int) (entry.start - uncompressedStart));
+      if (entry.vEnd < 0 && entry.stop >= uncompressedStart && entry.stop < blockEnd)
+        entry.vEnd = TabixReader.makeFilePointer(address, (int) (entry.stop - uncompressedStart));
+    }
+    push();
+  }
+
+  @Override
+  public void closed(long uncompressedEnd, long eofAddress) throws IOException {
+    if (invalid != null)
+      return;
+    long eof = TabixReader.makeFilePointer(eofAddress, 0);
+    for (Entry entry : pending) {
+      if (entry.vStart < 0)
+        entry.vStart = eof;
+      if (entry.vEnd < 0)
+        entry.vEnd = eof;
+    }
+    push();
+    write();
+    Message.info("Index written to [" + filename + "] for " + nbRecords + " records");
+  }
+
+  /**
+   * Adds the records whose virtual offsets are known to the index
+   */
+  private void push() {
+    while (!pending.isEmpty() && pending.peek().vEnd >= 0) {
+      Entry entry = pending.poll();
+      references.get(entry.tid).add(entry, depth);
+      nbRecords++;
+    }
+  }
+
+  private void write() throws IOException {
+    try (OutputStream out = new ParallelBGZFOutputStream(filename, ParallelBGZFOutputStream.DEFAULT_COMPRESSION_LEVEL)) {
+      byte[] nameBytes = getNameBytes();
+      if (csi) {
+        out.write("CSI\1".getBytes());
+        writeInt(out, MIN_SHIFT);
+        writeInt(out, depth);
+        if (dictionary != null) //BCF : the names are in the header of the file
+          writeInt(out, 0);
+        else {
+          writeInt(out, 28 + nameBytes.length);
+          writeTabixHeader(out, nameBytes);
+        }
+      } else {
+        out.write("TBI\1".getBytes());
+        writeInt(out, names.size());
+        writeTabixHeader(out, nameBytes);
+      }
+      if (csi)
+        writeInt(out, names.size());
+      int pseudoBin = ((1 << ((depth + 1) * 3)) - 1) / 7 + 1;
+      for (Reference reference : references) {
+        TabixReader.TIndex index = reference.toTIndex(depth, pseudoBin);
+        writeInt(out, index.b.size());
+        for (Map.Entry<Integer, TabixReader.TPair64[]> bin : index.b.entrySet()) {
+          writeInt(out, bin.getKey());
+          if (csi)
+            writeLong(out, bin.getKey() == pseudoBin ? 0 : reference.getBinOffset(bin.getKey(), depth));
+          writeInt(out, bin.getValue().length);
+          for (TabixReader.TPair64 chunk : bin.getValue()) {
+            writeLong(out, chunk.u);
+            writeLong(out, chunk.v);
+          }
+        }
+        if (!csi) {
+          writeInt(out, index.l.length);
+          for (long offset : index.l)
+            writeLong(out, offset);
+        }
+      }
+    }
+  }
+
+  private byte[] getNameBytes() {
+    StringBuilder sb = new StringBuilder();
+    if (dictionary == null)
+      for (String name : names)
+        sb.append(name).append('\0');
+    return sb.toString().getBytes();
+  }
+
+  private static void writeTabixHeader(OutputStream out, byte[] nameBytes) throws IOException {
+    writeInt(out, TBI_FORMAT_VCF);
+    writeInt(out, TBI_COL_SEQ);
+    writeInt(out, TBI_COL_BEG);
+    writeInt(out, TBI_COL_END);
+    writeInt(out, TBI_META);
+    writeInt(out, 0); //skip
+    writeInt(out, nameBytes.length);
+    out.write(nameBytes);
+  }
+
+  private static void writeInt(OutputStream out, int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  private static void writeLong(OutputStream out, long value) throws IOException {
+    writeInt(out, (int) value);
+    writeInt(out, (int) (value >>> 32));
+  }
+
+  /**
+   * A record waiting for the blocks holding it to be written
+   */
+  private static class Entry {
+    private final int tid;
+    private final long beg;
+    private final long end;
+    private final long start;
+    private final long stop;
+    private long vStart = -1;
+    private long vEnd = -1;
+
+    private Entry(int tid, long beg, long end, long start, long stop) {
+      this.tid = tid;
+      this.beg = beg;
+      this.end = end;
+      this.start = start;
+      this.stop = stop;
+    }
+  }
+
+  /**
+   * The binning and linear indexes of a reference sequence, while they are built
+   */
+  private static class Reference {
+    private final HashMap<Integer, ArrayList<TabixReader.TPair64>> bins = new HashMap<>();
+    private long[] linear = new long[0];
+    private int currentBin = -1;
+    private long chunkStart;
+    private long chunkEnd;
+    private long offBeg = -1;
+    private long offEnd = 0;
+    private long nMapped = 0;
+
+    private void add(Entry entry, int depth) {
+      int bin = TabixReader.reg2bin(entry.beg, entry.end, MIN_SHIFT, depth);
+      if (bin != currentBin) {
+        closeChunk();
+        currentBin = bin;
+        chunkStart = entry.vStart;
+      }
+      chunkEnd = entry.vEnd;
+
+      int first = (int) (entry.beg >> MIN_SHIFT);
+      int last = (int) ((entry.end - 1) >> MIN_SHIFT);
+      if (last >= linear.length) {
+        int size = linear.length;
+        linear = Arrays.copyOf(linear, Math.max(last + 1, 2 * size));
+        Arrays.fill(linear, size, linear.length, -1);
+      }
+      for (int w = first; w <= last; w++)
+        if (linear[w] == -1)
+          linear[w] = entry.vStart;
+
+      if (offBeg < 0)
+        offBeg = entry.vStart;
+      offEnd = entry.vEnd;
+      nMapped++;
+    }
+
+    private void closeChunk() {
+      if (currentBin < 0)
+        return;
+      bins.computeIfAbsent(currentBin, k -> new ArrayList<>()).add(new TabixReader.TPair64(chunkStart, chunkEnd));
+      currentBin = -1;
+    }
+
+    private TabixReader.TIndex toTIndex(int depth, int pseudoBin) {
+      closeChunk();
+      TabixReader.TIndex index = new TabixReader.TIndex();
+      index.b = new HashMap<>();
+      for (Map.Entry<Integer, ArrayList<TabixReader.TPair64>> bin : bins.entrySet())
+        index.b.put(bin.getKey(), bin.getValue().toArray(new TabixReader.TPair64[0]));
+      if (nMapped > 0)
+        index.b.put(pseudoBin, new TabixReader.TPair64[]{new TabixReader.TPair64(offBeg, offEnd), new TabixReader.TPair64(nMapped, 0)});
+      int size = linear.length;
+      while (size > 0 && linear[size - 1] == -1)
+        size--;
+      index.l = Arrays.copyOf(linear, size);
+      long previous = offBeg < 0 ? 0 : offBeg;
+      for (int w = 0; w < size; w++) //holes get the offset of the previous window
+        if (index.l[w] == -1)
+          index.l[w] = previous;
+        else
+          previous = index.l[w];
+      linear = index.l;
+      return index;
+    }
+
+    /**
+     * @return the smallest virtual offset of a record overlapping the start of the bin (CSI loffset)
+     */
+    private long getBinOffset(int bin, int depth) {
+      int level = 0;
+      int t = 0;
+      while (level < depth && bin >= t + (1 << (level * 3))) {
+        t += 1 << (level * 3);
+        level++;
+      }
+      long start = ((long) (bin - t)) << (MIN_SHIFT + 3 * (depth - level));
+      int window = (int) (start >> MIN_SHIFT);
+      if (linear.length == 0)
+        return offBeg < 0 ? 0 : offBeg;
+      return linear[Math.min(window, linear.length - 1)];
+    }
+  }
+}
@@ -32,6 +32,16 @@ public class TabixReader {
   private Map<String, Integer> mChr2tid;
 
   private static final int MAX_BIN = 37450;
+  public static final String TBI_EXTENSION = ".tbi";
+  public static final String CSI_EXTENSION = ".csi";
+  private static final String TBI_MAGIC = "TBI\1";
+  private static final String CSI_MAGIC = "CSI\1";
+  private static final int TBI_MIN_SHIFT = 14;
+  private static final int TBI_DEPTH = 5;
+
+  private int minShift = TBI_MIN_SHIFT;
+  private int depth = TBI_DEPTH;
+  private boolean csi = false;
 
   /**
    * Gets the number of variant lines for the given chromosome
@@ -40,16 +50,23 @@ public class TabixReader {
    * @return - the number of variant lines for this chromosome
    */
   public int getVariantCount(String chr) {
-    return (int) this.mIndex[this.chr2tid(chr)].b.get(MAX_BIN)[1].u;
+    return (int) this.mIndex[this.chr2tid(chr)].b.get(getPseudoBin())[1].u;
   }
 
-  private static class TPair64 implements Comparable<TPair64> {
+  /**
+   * @return the bin holding the metadata of each reference sequence (not a real bin)
+   */
+  private int getPseudoBin() {
+    return csi ? ((1 << ((depth + 1) * 3)) - 1) / 7 + 1 : MAX_BIN;
+  }
+
+  static class TPair64 implements Comparable<TPair64> {
     final long u;
-    //long v;
+    final long v;
 
-    TPair64(final long _u/*, final long _v*/) {
+    TPair64(final long _u, final long _v) {
       u = _u;
-      //v = _v;
+      v = _v;
     }
 
     @Override
@@ -58,10 +75,11 @@ public class TabixReader {
     }
   }
 
-  private static class TIndex {
+  static class TIndex {
 
     HashMap<Integer, TPair64[]> b; // binning index
-    long[] l; // linear index
+    long[] l; // linear index (tbi only)
+    HashMap<Integer, Long> lo; // smallest offset of each bin (csi only)
   }
 
   private TIndex[] mIndex;
@@ -80,13 +98,40 @@ public class TabixReader {
    * @throws IOException if something went wrong
    */
   public TabixReader(final String filePath, final String indexPath) throws IOException {
+    this(filePath, indexPath, null);
+  }
+
+  /**
+   * @param filePath  path to the of the data file/uri
+   * @param indexPath Full path to the index file (.tbi or .csi). Auto-generated if null
+   * @param contigs   the names of the reference sequences, in the order of the file's dictionary, used when the index doesn't
+   *                  contain them (CSI index of a BCF file)
+   * @throws IOException if something went wrong
+   */
+  public TabixReader(final String filePath, final String indexPath, final List<String> contigs) throws IOException {
     mFilePath = filePath;
     try(BlockCompressedInputStream mFp = new BlockCompressedInputStream(filePath)){
     if (indexPath == null)
-      mIndexPath = filePath + ".tbi";
+      mIndexPath = filePath + TBI_EXTENSION;
     else
       mIndexPath = indexPath;
-    readIndex();}
+    readIndex(mIndexPath, contigs);}
+  }
+
+  /**
+   * Looks for the index of a file
+   * @param filePath path to the data file
+   * @param bcf true if the data file is a BCF file (only CSI indexes exist for BCF files)
+   * @return the path to the .tbi or .csi index, null if there is none
+   */
+  public static String findIndex(final String filePath, final boolean bcf) {
+    String[] candidates = bcf ? new String[]{CSI_EXTENSION} : new String[]{TBI_EXTENSION, CSI_EXTENSION};
+    for (String extension : candidates) {
+      File index = new File(filePath + extension);
+      if (index.exists() && index.lastModified() >= new File(filePath).lastModified())
+        return index.getPath();
+    }
+    return null;
   }
 
   private static int readInt(final InputStream is) throws IOException {
@@ -104,58 +149,76 @@ public class TabixReader {
   }
 
   /**
-   * Read the Tabix index from a file
+   * Read the Tabix (TBI) or CSI index from a file
    */
-  private void readIndex(final String filename) throws IOException {
+  private void readIndex(final String filename, final List<String> contigs) throws IOException {
 
     final BlockCompressedInputStream is = new BlockCompressedInputStream(filename, 128000);
     byte[] buf = new byte[4];
 
     @SuppressWarnings("unused")
-    int skip = is.read(buf, 0, 4); // read "TBI\1"
-    mSeq = new String[readInt(is)]; // # sequences
-    mChr2tid = new HashMap<>(this.mSeq.length);
-    /*int mPreset =*/ readInt(is);
-    /*int mSc =*/ readInt(is);
-    /*int mBc =*/ readInt(is);
-    /*int mEc =*/ readInt(is);
-    /*int mMeta =*/ readInt(is);
-    readInt(is);//unused
-    // read sequence dictionary
-    int i, j, k, l = readInt(is);
-    buf = new byte[l];
-
-    skip = is.read(buf);
-    for (i = j = k = 0; i < buf.length; ++i)
-      if (buf[i] == 0) {
-        byte[] b = new byte[i - j];
-        System.arraycopy(buf, j, b, 0, b.length);
-        final String contig = new String(b);
-        mChr2tid.put(contig, k);
-        mSeq[k++] = contig;
-        j = i + 1;
-      }
+    int skip = is.read(buf, 0, 4); // read "TBI\1" or "CSI\1"
+    String magic = new String(buf);
+    int nSeq;
+    if (CSI_MAGIC.equals(magic)) {
+      csi = true;
+      minShift = readInt(is);
+      depth = readInt(is);
+      int lAux = readInt(is);
+      byte[] aux = new byte[lAux];
+      skip = is.read(aux);
+      nSeq = readInt(is);
+      if (lAux >= 28) // tabix-like header (VCF) : 7 int32, then the names
+        readNames(Arrays.copyOfRange(aux, 28, aux.length), nSeq);
+      else if (contigs != null)
+        readNames(contigs, nSeq);
+      else
+        throw new IOException("No sequence names in CSI index " + filename);
+    } else if (TBI_MAGIC.equals(magic)) {
+      nSeq = readInt(is); // # sequences
+      /*int mPreset =*/ readInt(is);
+      /*int mSc =*/ readInt(is);
+      /*int mBc =*/ readInt(is);
+      /*int mEc =*/ readInt(is);
+      /*int mMeta =*/ readInt(is);
+      readInt(is);//unused
+      // read sequence dictionary
+      buf = new byte[readInt(is)];
+      skip = is.read(buf);
+      readNames(buf, nSeq);
+    } else
+      throw new IOException("Not a TBI/CSI index " + filename);
+
     // read the index
+    int i, j, k;
     mIndex = new TIndex[mSeq.length];
     for (i = 0; i < mSeq.length; ++i) {
       // the binning index
       int n_bin = readInt(is);
       mIndex[i] = new TIndex();
       mIndex[i].b = new HashMap<>(n_bin);
+      if (csi)
+        mIndex[i].lo = new HashMap<>(n_bin);
       for (j = 0; j < n_bin; ++j) {
         int bin = readInt(is);
+        if (csi)
+          mIndex[i].lo.put(bin, readLong(is));
         TPair64[] chunks = new TPair64[readInt(is)];
         for (k = 0; k < chunks.length; ++k) {
           long u = readLong(is);
-          /*long v = */readLong(is);
-          chunks[k] = new TPair64(u/*, v*/); // in C, this is inefficient
+          long v = readLong(is);
+          chunks[k] = new TPair64(u, v); // in C, this is inefficient
         }
         mIndex[i].b.put(bin, chunks);
       }
       // the linear index
-      mIndex[i].l = new long[readInt(is)];
-      for (k = 0; k < mIndex[i].l.length; ++k)
-        mIndex[i].l[k] = readLong(is);
+      if (csi)
+        mIndex[i].l = new long[0];
+      else {
+        mIndex[i].l = new long[readInt(is)];
+        for (k = 0; k < mIndex[i].l.length; ++k)
+          mIndex[i].l[k] = readLong(is);
+      }
     }
     // close
     is.close();
@@ -163,10 +226,139 @@ public class TabixReader {
   }
 
   /**
-   * Read the Tabix index from the default file.
+   * Reads the sequence dictionary (NUL-terminated names)
    */
-  private void readIndex() throws IOException {
-    readIndex(mIndexPath);
+  private void readNames(final byte[] buf, final int nSeq) throws IOException {
+    ArrayList<String> names = new ArrayList<>(nSeq);
+    for (int i = 0, j = 0; i < buf.length && names.size() < nSeq; ++i)
+      if (buf[i] == 0) {
+        names.add(new String(buf, j, i - j));
+        j = i + 1;
+      }
+    readNames(names, nSeq);
+  }
+
+  private void readNames(final List<String> names, final int nSeq) throws IOException {
+    if (names.size() < nSeq)
+      throw new IOException("Index has " + nSeq + " sequences, but only " + names.size() + " names are known");
+    mSeq = new String[nSeq];
+    mChr2tid = new HashMap<>(nSeq);
+    for (int k = 0; k < nSeq; k++) {
+      mSeq[k] = names.get(k);
+      mChr2tid.put(mSeq[k], k);
+    }
+  }
+
+  /**
+   * Gets the bins that may hold records overlapping [beg;end[ (see reg2bins() in htslib)
+   * @param beg 0-based start, included
+   * @param end 0-based end, excluded
+   * @return the list of bins
+   */
+  private List<Integer> reg2bins(long beg, long end) {
+    ArrayList<Integer> bins = new ArrayList<>();
+    int s = minShift + depth * 3;
+    if (beg >= end)
+      return bins;
+    if (end >= 1L << s)
+      end = 1L << s;
+    --end;
+    for (int l = 0, t = 0; l <= depth; s -= 3, t += 1 << (l * 3), ++l) {
+      int b = t + (int) (beg >> s);
+      int e = t + (int) (end >> s);
+      for (int i = b; i <= e; ++i)
+        bins.add(i);
+    }
+    return bins;
+  }
+
+  /**
+   * Gets the smallest bin that contains [beg;end[ (see reg2bin() in htslib)
+   * @param beg 0-based start, included
+   * @param end 0-based end, excluded
+   * @param minShift the number of bits of the smallest bins (14 for tbi)
+   * @param depth the number of levels (5 for tbi)
+   * @return the bin
+   */
+  static int reg2bin(long beg, long end, int minShift, int depth) {
+    int s = minShift;
+    int t = ((1 << (depth * 3)) - 1) / 7;
+    --end;
+    for (int l = depth; l > 0; --l, s += 3, t -= 1 << (l * 3))
+      if (beg >> s == end >> s)
+        return (int) (t + (beg >> s));
+    return 0;
+  }
+
+  /**
+   * Gets the smallest virtual offset of a record overlapping position beg
+   */
+  private long getMinOffset(final TIndex index, final long beg) {
+    if (!csi) {
+      if (index.l.length == 0)
+        return 0;
+      int i = (int) Math.min(beg >> minShift, index.l.length - 1);
+      return index.l[i];
+    }
+    int first = ((1 << (depth * 3)) - 1) / 7; // first bin of the last level
+    int bin = first + (int) (beg >> minShift);
+    while (bin > 0) {
+      Long lo = index.lo.get(bin);
+      if (lo != null)
+        return lo;
+      bin = (bin - 1) >> 3;
+    }
+    Long lo = index.lo.get(0);
+    return lo == null ? 0 : lo;
+  }
+
+  /**
+   * Gets the chunks of the file holding the records that overlap the given region
+   * @param chr the name of the chromosome
+   * @param beg 0-based start, included
+   * @param end 0-based end, excluded
+   * @return the chunks as {start, end} virtual offsets, unsorted and unmerged (empty if the chromosome is not indexed)
+   */
+  public List<long[]> getChunks(final String chr, final long beg, final long end) {
+    ArrayList<long[]> ret = new ArrayList<>();
+    int tid = chr2tid(chr);
+    if (tid < 0)
+      return ret;
+    TIndex index = mIndex[tid];
+    long minOffset = getMinOffset(index, beg);
+    int pseudo = getPseudoBin();
+    for (int bin : reg2bins(beg, end)) {
+      if (bin == pseudo)
+        continue;
+      TPair64[] chunks = index.b.get(bin);
+      if (chunks != null)
+        for (TPair64 chunk : chunks)
+          if (Long.compareUnsigned(chunk.v, minOffset) > 0)
+            ret.add(new long[]{Long.compareUnsigned(chunk.u, minOffset) < 0 ? minOffset : chunk.u, chunk.v});
+    }
+    return ret;
+  }
+
+  /**
+   * Sorts and merges chunks, chunks that overlap, touch, or end and start in the same BGZF block are merged
+   * @param chunks the {start, end} virtual offsets
+   * @return disjoint chunks, in the order of the file
+   */
+  public static List<long[]> mergeChunks(final List<long[]> chunks) {
+    ArrayList<long[]> sorted = new ArrayList<>(chunks);
+    sorted.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+    ArrayList<long[]> merged = new ArrayList<>();
+    long[] current = null;
+    for (long[] chunk : sorted) {
+      if (current != null && (Long.compareUnsigned(chunk[0], current[1]) <= 0 || (chunk[0] >>> SHIFT_AMOUNT) == (current[1] >>> SHIFT_AMOUNT))) {
+        if (Long.compareUnsigned(chunk[1], current[1]) > 0)
+          current[1] = chunk[1];
+      } else {
+        current = new long[]{chunk[0], chunk[1]};
+        merged.add(current);
+      }
+    }
+    return merged;
   }
 
   /**
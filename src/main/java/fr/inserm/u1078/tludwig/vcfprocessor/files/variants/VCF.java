@@ -5,23 +5,38 @@ import fr.inserm.u1078.tludwig.maok.tools.DateTools;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.Main;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.BGZF;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.BGZFChunkInputStream;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.ParallelBGZFInputStream;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.Ped;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.PedException;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.LineFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.OrderedLineFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.SampleFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.VariantFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.line.PositionFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.sample.FamFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.sample.MaxSampleFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.SampleIndex;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPFormat;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.RingBuffer;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.StageMonitor;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -45,6 +60,7 @@ public class VCF implements VariantProducer {
   private static final String INFO_HEADER = "##INFO=";
   private static final String FORMAT_HEADER = "##FORMAT=";
   private static final String CHROM_HEADER = "#CHROM";
+  private static final String CONTIG_HEADER = "##contig=<";
 
   public static final int QUEUE_DEPTH = 200;
 
@@ -54,10 +70,13 @@ public class VCF implements VariantProducer {
   private final String filename;
   private final CommandParser commandParser;
   private final UniversalReader in;
+  private final BufferedReader bgzfIn;
+  private BufferedReader regionIn = null;
   private final BCF bcf;
   private VEPFormat vepFormat;
   private final TreeMap<Sample, Integer> sampleIndices;
   private final TreeMap<String, Sample> samplesByID;
+  private volatile SampleIndex sampleIndex;
   private final AtomicInteger nbVariantsRead = new AtomicInteger(0);
   private final AtomicInteger nbVariantsFiltered = new AtomicInteger(0);
 
@@ -90,6 +109,18 @@ public class VCF implements VariantProducer {
   }
 
   public VCF(String filename, int mode, int step) throws VCFException, PedException {
+    this(filename, mode, step, Main.getCommandParser());
+  }
+
+  /**
+   * @param filename the name of the file
+   * @param mode the mode (VCF.MODE_*)
+   * @param step the number of records between two progression messages
+   * @param commandParser the arguments (and filters) applied to this file
+   * @throws VCFException if the file can't be read
+   * @throws PedException if the ped file can't be read
+   */
+  public VCF(String filename, int mode, int step, CommandParser commandParser) throws VCFException, PedException {
     //Message.printDebuggingTrace("New VCF ["+filename+"]");
     this.readLock = new ReentrantLock();
     this.infoHeaders = new HashMap<>();
@@ -102,7 +133,7 @@ public class VCF implements VariantProducer {
     this.samplesByID = new TreeMap<>();
 
     //Process command line arguments
-    this.commandParser = Main.getCommandParser();//TODO, a new commandParser is returned for each VCF files, see how it al plays out when there are filters and multiple VCF
+    this.commandParser = commandParser;//TODO, the same commandParser is used for each VCF files, see how it al plays out when there are filters and multiple VCF
     this.commandParser.processSampleArguments();
     this.commandParser.processPositionArguments();
     this.commandParser.processGenotypeArguments();
@@ -120,13 +151,22 @@ public class VCF implements VariantProducer {
 
     if(bcf == null) {
       try {
-        in = new UniversalReader(this.filename);
+        if(BGZF.isBGZF(this.filename)) {
+          in = null;
+          bgzfIn = new BufferedReader(new InputStreamReader(new ParallelBGZFInputStream(this.filename)), 4 * 65536);
+        } else {
+          in = new UniversalReader(this.filename);
+          bgzfIn = null;
+        }
       } catch (IOException e) {
         throw new VCFException(this, "Could not Read VCF File", e);
       }
-    } else
+    } else {
       in = null;
+      bgzfIn = null;
+    }
     readHeaders();
+    this.openIndexedRegions();
     this.initSamples();
     this.filterSamples();
     this.commandParser.processSampleDependantArguments(this, this.getPed());
@@ -205,6 +245,13 @@ public class VCF implements VariantProducer {
       //throw new VCFException("No sample remaining after filtering");
   }
 
+  /**
+   * @return the underlying BCF file, or null if this is a VCF file
+   */
+  public BCF getBCF() {
+    return bcf;
+  }
+
   public String getFilename() {
     return this.filename;
   }
@@ -216,6 +263,7 @@ public class VCF implements VariantProducer {
     this.ped = new Ped(this.originalSampleHeader.split("\t"));
     this.sampleIndices.clear();
     this.samplesByID.clear();
+    this.sampleIndex = null;
     for (int i = 0; i < this.ped.getSampleSize(); i++) {
       Sample sample = this.ped.getSample(i);
       this.sampleIndices.put(sample, i);
@@ -256,14 +304,153 @@ public class VCF implements VariantProducer {
       if (excluded.contains(sample)) {
         this.sampleIndices.remove(sample);
         this.samplesByID.remove(sample.getId());
+        this.sampleIndex = null;
       }
     ped.keepOnly(this.sampleIndices.navigableKeySet()); //ped is never null
   }
 
 
+  /**
+   * Reads a line from the text VCF, BGZF files are inflated in parallel
+   * @return the next line, or null at the end of the file
+   * @throws IOException if the file can't be read
+   */
+  private String readLine() throws IOException {
+    if(regionIn != null)
+      return regionIn.readLine();
+    if(bgzfIn != null)
+      return bgzfIn.readLine();
+    return in.readLine();
+  }
+
+  /**
+   * When only some regions are kept (--pos, --positions, --bed...) and the file has a Tabix/CSI index, the records are only read
+   * from the chunks of the file that overlap those regions. The PositionFilter still applies to the records read
+   * @throws VCFException if the index or the file can't be read
+   */
+  private void openIndexedRegions() throws VCFException {
+    if(bcf == null && bgzfIn == null)
+      return;
+    PositionFilter positions = getKeepPositionFilter();
+    if(positions == null)
+      return;
+    String indexFilename = TabixReader.findIndex(this.filename, bcf != null);
+    if(indexFilename == null) {
+      Message.verbose("No index found for [" + this.filename + "], the whole file will be read");
+      return;
+    }
+    try {
+      TabixReader index = new TabixReader(this.filename, indexFilename, bcf == null ? null : bcf.getHeader().getContigs());
+      ArrayList<long[]> chunks = new ArrayList<>();
+      int nbRegions = 0;
+      for(String chr : index.getChromosomes()) {
+        ArrayList<Region> regions = positions.getBed().getRegions(chr);
+        if(regions != null)
+          for(Region region : regions) {
+            chunks.addAll(index.getChunks(chr, region.getStart0Based(), region.getEnd1Based()));
+            nbRegions++;
+          }
+      }
+      List<long[]> merged = TabixReader.mergeChunks(chunks);
+      Message.info("Using index [" + indexFilename + "] : " + merged.size() + " chunks to read for " + nbRegions + " regions");
+      BGZFChunkInputStream records = new BGZFChunkInputStream(this.filename, merged);
+      if(bcf == null) {
+        bgzfIn.close();
+        regionIn = new BufferedReader(new InputStreamReader(records), 4 * 65536);
+      } else
+        bcf.setRecordStream(records);
+    } catch (IOException e) {
+      throw new VCFException(this, "Could not read index [" + indexFilename + "]", e);
+    }
+  }
+
+  /**
+   * @return the first PositionFilter that keeps positions, null if there is none
+   */
+  private PositionFilter getKeepPositionFilter() {
+    for(LineFilter filter : commandParser.getLineFilters())
+      if(filter instanceof PositionFilter && filter.isKeep())
+        return (PositionFilter) filter;
+    return null;
+  }
+
+  /**
+   * Splits the file into shards that can be read and processed independently, using the Tabix/CSI index of the file.
+   * Only the parts of the shards that overlap the kept positions (--pos, --bed...) are read
+   * @param shardSize 0 for one shard per contig, otherwise the maximal length (in bp) of each shard. Contigs without a length in the header are a single shard
+   * @return the non-empty shards, in the order of the file, or null if the file is not bgzipped or has no index
+   * @throws VCFException if the index can't be read
+   */
+  public List<Shard> getShards(int shardSize) throws VCFException {
+    if(bcf == null && bgzfIn == null)
+      return null;
+    String indexFilename = TabixReader.findIndex(this.filename, bcf != null);
+    if(indexFilename == null)
+      return null;
+    PositionFilter positions = getKeepPositionFilter();
+    HashMap<String, Integer> lengths = getContigLengths();
+    ArrayList<Shard> shards = new ArrayList<>();
+    try {
+      TabixReader index = new TabixReader(this.filename, indexFilename, bcf == null ? null : bcf.getHeader().getContigs());
+      List<String> chromosomes = index.getChromosomes();
+      for(int tid = 0; tid < chromosomes.size(); tid++) {
+        String chr = chromosomes.get(tid);
+        ArrayList<Region> regions = positions == null ? null : positions.getBed().getRegions(chr);
+        if(positions != null && regions == null)
+          continue;
+        Integer length = lengths.get(chr);
+        int size = shardSize < 1 || length == null ? Integer.MAX_VALUE : shardSize;
+        int last = length == null ? Integer.MAX_VALUE : length;
+        for(long start = 1; start <= last; start += size) {
+          int end = (int) Math.min(Integer.MAX_VALUE, start + size - 1);
+          ArrayList<long[]> chunks = new ArrayList<>();
+          if(regions == null)
+            chunks.addAll(index.getChunks(chr, start - 1, end));
+          else
+            for(Region region : regions) {
+              long beg = Math.max(start - 1, region.getStart0Based());
+              long stop = Math.min(end, (long) region.getEnd1Based());
+              if(beg < stop)
+                chunks.addAll(index.getChunks(chr, beg, stop));
+            }
+          if(!chunks.isEmpty())
+            shards.add(new Shard(chr, tid, (int) start, end, TabixReader.mergeChunks(chunks)));
+        }
+      }
+    } catch (IOException e) {
+      throw new VCFException(this, "Could not read index [" + indexFilename + "]", e);
+    }
+    shards.sort((a, b) -> Long.compareUnsigned(a.chunks.get(0)[0], b.chunks.get(0)[0])); //contigs in the order of the file
+    Message.info("Using index [" + indexFilename + "] : " + shards.size() + " shards");
+    return shards;
+  }
+
+  /**
+   * @return the length of each contig declared in the headers (##contig=&lt;ID=...,length=...&gt;)
+   */
+  private HashMap<String, Integer> getContigLengths() {
+    HashMap<String, Integer> lengths = new HashMap<>();
+    for(String header : this.headers)
+      if(header.startsWith(CONTIG_HEADER)) {
+        String id = null;
+        Integer length = null;
+        for(String kv : header.substring(CONTIG_HEADER.length(), header.length() - 1).split(",")) {
+          if(kv.startsWith("ID="))
+            id = kv.substring(3);
+          else if(kv.startsWith("length="))
+            try {
+              length = Integer.parseInt(kv.substring(7));
+            } catch (NumberFormatException ignore) { }
+        }
+        if(id != null && length != null)
+          lengths.put(id, length);
+      }
+    return lengths;
+  }
+
   private String getNextHeaderLine() throws IOException {
     if(bcf == null)
-      return in.readLine();
+      return readLine();
     else
       return bcf.getNextHeaderLine();
   }
@@ -285,8 +472,11 @@ public class VCF implements VariantProducer {
         }
 
         if (line.startsWith(VEP_HEADER))
-          if (VEPFormat.isValid(line))
+          if (VEPFormat.isValid(line)) {
             vepFormat = VEPFormat.createVepFormat(line);
+            if (vepFormat != null)
+              vepFormat.setProjection(commandParser.getRequiredVEPFields());
+          }
 
         if (line.startsWith(CHROM_HEADER)) {
           this.headers.add(getStamp());
@@ -317,7 +507,7 @@ public class VCF implements VariantProducer {
 
   @Override
   public RawVariantRecordData readNext() throws IOException {
-    String line = in.readLine();
+    String line = readLine();
     if(line == null)
       return null;
     return new RawVariantRecordData(line);
@@ -483,7 +673,10 @@ public class VCF implements VariantProducer {
 
   public void close() {
     try {
-      in.close();
+      if(bgzfIn != null)
+        bgzfIn.close();
+      else if(in != null)
+        in.close();
     } catch (IOException e) {
       //Nothing
     }
@@ -515,21 +708,8 @@ public class VCF implements VariantProducer {
   }*/
 
   public List<Sample> getSortedSamples(){
-    ArrayList<Sample> ret = new ArrayList<>();
-    for(Sample sample : sampleIndices.navigableKeySet()){
-      int index = sampleIndices.get(sample);
-      boolean added = false;
-      for(int i = 0 ; i < ret.size(); i++){
-        Sample current = ret.get(i);
-        if(index < sampleIndices.get(current)){
-          added = true;
-          ret.add(i, sample);
-          break;
-        }
-      }
-      if(!added)
-        ret.add(sample);
-    }
+    ArrayList<Sample> ret = new ArrayList<>(sampleIndices.navigableKeySet());
+    ret.sort(Comparator.comparingInt(sampleIndices::get));
     return ret;
   }
 
@@ -542,13 +722,34 @@ public class VCF implements VariantProducer {
   }
 
   public int indexOfSample(String sampleID){
-    int i = 0;
-    for(Sample sample : this.sampleIndices.navigableKeySet()){
-      if(sample.getId().equals(sampleID))
-        return i;
-      i++;
+    return this.getSampleIndex().indexOf(sampleID);
+  }
+
+  /**
+   * Gets the dense index of the kept samples, shared by all the Variants of this file : the i-th sample of the index is the sample
+   * of the i-th genotype of each Variant
+   * @return the sample index
+   */
+  public SampleIndex getSampleIndex() {
+    SampleIndex index = this.sampleIndex;
+    if (index == null) {
+      synchronized (this.sampleIndices) {
+        index = this.sampleIndex;
+        if (index == null) {
+          Sample[] samples = new Sample[this.sampleIndices.size()];
+          int[] columns = new int[samples.length];
+          int i = 0;
+          for (Map.Entry<Sample, Integer> entry : this.sampleIndices.entrySet()) {
+            samples[i] = entry.getKey();
+            columns[i] = entry.getValue();
+            i++;
+          }
+          index = new SampleIndex(samples, columns);
+          this.sampleIndex = index;
+        }
+      }
     }
-    return -1;
+    return index;
   }
 
   public boolean has1kGAnnotation() {
@@ -674,19 +875,135 @@ public class VCF implements VariantProducer {
     return reader;
   }
 
+  /**
+   * Gets the Reader, and starts it, records are published by batches
+   * @param batchSize the number of records in each batch
+   * @return the started Reader
+   */
+  public Reader getBatchReaderAndStart(int batchSize) {
+    Reader reader = this.getReaderWithoutStarting(batchSize);
+    reader.start();
+    return reader;
+  }
+
   public Reader getReaderWithoutStarting() {
+    return this.getReaderWithoutStarting(0);
+  }
+
+  /**
+   * Gets the unique Reader of this VCF, created on the first call
+   * @param batchSize the number of records in each batch (0 for a Reader publishing records one by one)
+   * @return the Reader
+   * @throws IllegalStateException if the Reader was already created with another batch size
+   */
+  private Reader getReaderWithoutStarting(int batchSize) {
     if (this.uniqLineReader == null) {
       readLock.lock();
       try {
         if (this.uniqLineReader == null)
-          this.uniqLineReader = new Reader();
+          this.uniqLineReader = new Reader(batchSize);
       } finally {
         readLock.unlock();
       }
     }
+    if (this.uniqLineReader.batchSize != batchSize)
+      throw new IllegalStateException("The Reader of [" + getFilename() + "] was already created with batch size " + this.uniqLineReader.batchSize + ", " + batchSize + " requested");
     return this.uniqLineReader;
   }
 
+  /**
+   * A region of the file (a whole contig or a part of it), read through its own stream from the chunks given by the index
+   */
+  public class Shard {
+    private final String chrom;
+    private final int tid;
+    private final int start;
+    private final int end;
+    private final List<long[]> chunks;
+    private BufferedReader lines;
+    private BGZFChunkInputStream records;
+
+    /**
+     * @param chrom the contig
+     * @param tid the index of the contig in the dictionary of the BCF file
+     * @param start the first position of the shard (1-based)
+     * @param end the last position of the shard (1-based)
+     * @param chunks the chunks of the file holding the records of the shard
+     */
+    private Shard(String chrom, int tid, int start, int end, List<long[]> chunks) {
+      this.chrom = chrom;
+      this.tid = tid;
+      this.start = start;
+      this.end = end;
+      this.chunks = chunks;
+    }
+
+    /**
+     * Gets a new Reader (with its own stream on the file), and starts it, records are published by batches
+     * @param batchSize the number of records in each batch
+     * @return the started Reader
+     * @throws IOException if the file can't be opened
+     */
+    public Reader getBatchReaderAndStart(int batchSize) throws IOException {
+      this.records = new BGZFChunkInputStream(VCF.this.filename, chunks);
+      if(bcf == null)
+        this.lines = new BufferedReader(new InputStreamReader(records), 4 * 65536);
+      Reader reader = new Reader(batchSize, this);
+      reader.start();
+      return reader;
+    }
+
+    /**
+     * Reads the next record of the shard. The chunks may hold records that are outside the shard (other contig or position),
+     * those are skipped, so that each record belongs to a single shard
+     * @return the next record, null at the end of the shard
+     * @throws IOException if the file can't be read
+     */
+    private RawVariantRecordData readNext() throws IOException {
+      while(true) {
+        RawVariantRecordData record;
+        int pos;
+        if(bcf == null) {
+          String line = lines.readLine();
+          if(line == null)
+            break;
+          int t1 = line.indexOf('\t');
+          if(t1 != chrom.length() || !line.startsWith(chrom))
+            continue;
+          pos = Integer.parseInt(line.substring(t1 + 1, line.indexOf('\t', t1 + 1)));
+          record = new RawVariantRecordData(line);
+        } else {
+          record = BCF.readRecord(records);
+          if(record == null)
+            break;
+          byte[] common = record.getInCommon().getData();
+          if(readInt32(common, 0) != tid)
+            continue;
+          pos = readInt32(common, 4) + 1;
+        }
+        if(pos > end)
+          break; //the file is sorted
+        if(pos >= start)
+          return record;
+      }
+      close();
+      return null;
+    }
+
+    private void close() throws IOException {
+      records.close();
+    }
+
+    private int readInt32(byte[] b, int offset) {
+      return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public String toString() {
+      return chrom + ":" + start + "-" + (end == Integer.MAX_VALUE ? "" : end);
+    }
+  }
+
   public boolean hasSample(String id) {
     for (Sample sample : this.getSortedSamples())
       if (sample.getId().equals(id))
@@ -744,22 +1061,68 @@ public class VCF implements VariantProducer {
   public class Reader extends WellBehavedThread {
 
     private final LinkedBlockingQueue<IndexedRecord> queue;
+    private final RingBuffer<RecordBatch> batches;
+    private final int batchSize;
+    private final StageMonitor monitor = new StageMonitor("Reader", 1);
     private int read = 0;
-    private int consumed = 0;
+    private final AtomicInteger consumed = new AtomicInteger(0);
     private long start = -1;
     private boolean stop = false;
+    private final Shard shard;
+    private final ArrayList<OrderedLineFilter> orderedLineFilters = commandParser.newOrderedLineFilters();
+    private final ReentrantLock orderedLock = new ReentrantLock();
+    private final Condition orderedTurn = orderedLock.newCondition();
+    private int lastOrdered = 0;
 
     public Reader() {
-      queue = new LinkedBlockingQueue<>(QUEUE_DEPTH);
+      this(0);
+    }
+
+    public Reader(int batchSize) {
+      this(batchSize, null);
+    }
+
+    /**
+     * @param batchSize if greater than 0, records are published by batches of batchSize records, that must be consumed with nextBatch()
+     * @param shard the shard to read, null to read the whole file
+     */
+    public Reader(int batchSize, Shard shard) {
+      this.batchSize = batchSize;
+      this.shard = shard;
+      if (batchSize > 0) {
+        queue = null;
+        batches = new RingBuffer<>(Math.max(2, QUEUE_DEPTH / batchSize));
+      } else {
+        queue = new LinkedBlockingQueue<>(QUEUE_DEPTH);
+        batches = null;
+      }
     }
 
     @Override
     public String toString() {
-      return this.getClass().getSimpleName() + "[" + VCF.this.getFilename() + "]";
+      return this.getClass().getSimpleName() + "[" + VCF.this.getFilename() + (shard == null ? "" : " " + shard) + "]";
+    }
+
+    /**
+     * @return the time spent reading and the time spent waiting for the consumers of this Reader
+     */
+    public StageMonitor getMonitor() {
+      return monitor;
+    }
+
+    public boolean isBatched() {
+      return batchSize > 0;
     }
 
     @Override
     public void doRun() {
+      if (isBatched())
+        readBatches();
+      else
+        readRecords();
+    }
+
+    private void readRecords() {
       RawVariantRecordData record;
       try {
         for (read = 1; (record = VCF.this.readNextPhysicalRecord()) != null; read++)
@@ -769,12 +1132,56 @@ public class VCF implements VariantProducer {
       } catch (InterruptedException ignore) { }
 
       read--;//overshot by 1 in the for loop
-      for (int i = 0; i < QUEUE_DEPTH / 2; i++)
+      for (int i = 0; i < Math.max(QUEUE_DEPTH / 2, ThreadConfiguration.getWorkers()); i++)
         try {
           this.queue.put(new IndexedRecord(read + 1, null)); //Pack with trailing null to given one to each Worker
         } catch (InterruptedException ignore) { }
     }
 
+    private void readBatches() {
+      int n = 1;
+      try {
+        RawVariantRecordData[] raws = new RawVariantRecordData[batchSize];
+        int size = 0;
+        RawVariantRecordData record;
+        long time = StageMonitor.now();
+        while ((record = this.readNextPhysicalRecord()) != null) {
+          raws[size++] = record;
+          if (size == batchSize) {
+            time = monitor.busy(time);
+            this.batches.put(new RecordBatch(n++, read + 1, raws, size));
+            time = monitor.waited(time);
+            read += size;
+            raws = new RawVariantRecordData[batchSize];
+            size = 0;
+          }
+        }
+        if (size > 0) {
+          this.batches.put(new RecordBatch(n++, read + 1, raws, size));
+          read += size;
+        }
+      } catch (VCFException e) {
+        Message.fatal("Unable to read from file [" + getFilename() + "]", e, true);
+      } catch (InterruptedException ignore) { }
+
+      try {
+        this.batches.put(new RecordBatch(n, read + 1, null, 0)); //single EOF batch, handed back by each Worker that takes it
+      } catch (InterruptedException ignore) { }
+    }
+
+    private RawVariantRecordData readNextPhysicalRecord() throws VCFException {
+      if (shard == null)
+        return VCF.this.readNextPhysicalRecord();
+      try {
+        RawVariantRecordData record = shard.readNext();
+        if (record != null)
+          VCF.this.nbVariantsRead.incrementAndGet();
+        return record;
+      } catch (IOException | RuntimeException e) {
+        throw new VCFException(VCF.this, "Could not read shard " + shard + " of BCF/VCF file", e);
+      }
+    }
+
     public VariantRecord nextRecord() {
       IndexedRecord n = nextIndexedRecord();
       if(n == null)
@@ -783,20 +1190,76 @@ public class VCF implements VariantProducer {
     }
 
     public IndexedRecord nextIndexedRecord() {
+      if (isBatched())
+        throw new IllegalStateException(this + " publishes records by batches, use nextBatch()");
+      IndexedRecord next = null;
+      try {
+        next = prepare(queue.take());
+        if (!next.isEOF())
+          applyOrderedLineFilters(next.index, next);
+      } catch (InterruptedException ignore) { }
+      return next;
+    }
+
+    /**
+     * Gets the next batch of records, only available if the Reader was created with a batch size.
+     * The records are not prepared, each one has to be passed to prepare() by the caller
+     * @return the next batch, or the EOF batch (which stays available for the other callers)
+     */
+    public RecordBatch nextBatch() {
+      if (!isBatched())
+        throw new IllegalStateException(this + " publishes records one by one, use nextIndexedRecord()");
+      RecordBatch next = null;
+      try {
+        next = batches.take();
+        if (next.isEOF())
+          batches.put(next);
+      } catch (InterruptedException ignore) { }
+      return next;
+    }
+
+    /**
+     * Applies the order-dependent line filters (OrderedLineFilter) to prepared records, with the copies of this Reader.<br/>
+     * Waits until the records of the previous rank have been filtered, so that the filters see the records in the order of the
+     * file, whichever thread prepared them
+     * @param n the rank of the records (the rank of the batch for a batched Reader, the index of the record otherwise), starting at 1
+     * @param records the prepared records, in the order of the file
+     */
+    public void applyOrderedLineFilters(int n, IndexedRecord... records) {
+      if (orderedLineFilters.isEmpty())
+        return;
+      orderedLock.lock();
+      try {
+        while (lastOrdered != n - 1)
+          orderedTurn.await();
+        for (IndexedRecord record : records)
+          if (!record.isEOF())
+            record.getRecord().applyOrderedLineFilters(VCF.this, orderedLineFilters);
+        lastOrdered = n;
+        orderedTurn.signalAll();
+      } catch (InterruptedException e) {
+        Message.fatal("Interrupted while filtering records " + n, e, true);
+      } finally {
+        orderedLock.unlock();
+      }
+    }
+
+    /**
+     * Applies the non-variant filters to the record, and logs the progression
+     * @param next the record read
+     * @return the same record
+     */
+    public IndexedRecord prepare(IndexedRecord next) {
       if (start < 0)
         start = new Date().getTime();
-      IndexedRecord next = null;
-     /* if(start > -2)
-        throw new RuntimeException("Vas te faire enculer bien comme il faut !");*/
       try {
-        next = queue.take();
         if (next.raw != null) {
-          this.consumed++;
+          int c = this.consumed.incrementAndGet();
           VariantRecord record = next.getRecord();
-          if (step > 0 && this.consumed % step == 0) {
+          if (step > 0 && c % step == 0) {
             double dur = DateTools.duration(start);
-            int speed = (int) (consumed / dur);
-            Message.info(consumed + "/" + read + " variants read from " + filename + " in " + dur + "s (" + speed + " v/s)");
+            int speed = (int) (c / dur);
+            Message.info(c + "/" + read + " variants read from " + filename + " in " + dur + "s (" + speed + " v/s)");
           }
           record.applyNonVariantFilters(VCF.this);
         } else {
@@ -805,8 +1268,9 @@ public class VCF implements VariantProducer {
             if (!stop) {
               stop = true;
               double dur = DateTools.duration(start);
-              int speed = (int) (consumed / dur);
-              Message.info(consumed + "/" + read + " variants read from " + filename + " in " + dur + "s (" + speed + " v/s)");
+              int c = this.consumed.get();
+              int speed = (int) (c / dur);
+              Message.info(c + "/" + read + " variants read from " + filename + " in " + dur + "s (" + speed + " v/s)");
             }
           } finally {
             readLock.unlock();
@@ -814,12 +1278,55 @@ public class VCF implements VariantProducer {
         }
       } catch(VCFException ve) {
         Message.fatal("Could not apply filter to VariantRecord\n"+next.raw, ve, true);
-      } catch (InterruptedException ignore) { }
-
+      }
       return next;
     }
   }
 
+  /**
+   * A block of consecutive raw records, as published by a batched Reader
+   */
+  public class RecordBatch {
+    /** the rank of this batch (starts at 1) */
+    public final int n;
+    /** the index of the first record in the batch */
+    public final int first;
+    private final RawVariantRecordData[] raws;
+    private final int size;
+    private final AtomicBoolean eofClaimed = new AtomicBoolean(false);
+
+    private RecordBatch(int n, int first, RawVariantRecordData[] raws, int size) {
+      this.n = n;
+      this.first = first;
+      this.raws = raws;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public IndexedRecord getIndexedRecord(int i) {
+      return new IndexedRecord(first + i, raws[i]);
+    }
+
+    public boolean isEOF() {
+      return raws == null;
+    }
+
+    /**
+     * @return true for the first caller only, so that the end of the file is signaled once
+     */
+    public boolean claimEOF() {
+      return isEOF() && eofClaimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public String toString() {
+      return "RecordBatch["+n+"]";
+    }
+  }
+
   public static class InfoFormatHeader {
 
     private final String name;
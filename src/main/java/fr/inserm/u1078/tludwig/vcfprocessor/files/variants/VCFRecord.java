@@ -6,65 +6,162 @@ import fr.inserm.u1078.tludwig.vcfprocessor.genetics.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.NavigableSet;
 import java.util.TreeMap;
 
 public class VCFRecord extends VariantRecord {
-  private final String[] left;
-  private final ArrayList<String> right;
+  /** the original line, only parsed on demand */
+  private final String line;
+  /** positions of the tabulations in the line, computed on first access */
+  private int[] tabs = null;
+  /** the 8 leftmost columns, materialized on first access */
+  private String[] left = null;
+  /** FORMAT + samples columns, only materialized when they are filtered or modified */
+  private ArrayList<String> right = null;
 
-  private final String missing;
+  /** index of the INFO column, built on first access, dropped when the INFO column is modified */
+  private InfoIndex infoIndex = null;
+  private final VCF vcf;
+
+  private String missing = null;
+
+  private static final String[] AC_AN_AF = {"AC", "AN", "AF"};
 
   public VCFRecord(String line, VCF vcf) throws VCFException {
     if (line.charAt(0) == '#')
       throw new VCFException(vcf, "Could not create VCFRecord from the following line\n" + line);
-    String[] f = line.split(AbstractRecord.T);
-    right = new ArrayList<>();
-    left = new String[VCF.IDX_FORMAT]; //format is outside the boundaries
-    System.arraycopy(f, 0, left, 0, VCF.IDX_FORMAT);
-    right.addAll(Arrays.asList(f).subList(VCF.IDX_FORMAT, f.length));
-    this.missing = buildMissing();
+    this.line = line;
+    this.vcf = vcf;
+  }
+
+  /**
+   * Indexes the positions of the tabulations, in a single pass, without creating any String
+   * @return the positions of the tabulations
+   */
+  private int[] tabs() {
+    if (tabs == null) {
+      int nb = 0;
+      for (int i = line.indexOf('\t'); i > -1; i = line.indexOf('\t', i + 1))
+        nb++;
+      int[] t = new int[nb];
+      int n = 0;
+      for (int i = line.indexOf('\t'); i > -1; i = line.indexOf('\t', i + 1))
+        t[n++] = i;
+      tabs = t;
+    }
+    return tabs;
+  }
+
+  private int fieldStart(int field) {
+    return field == 0 ? 0 : tabs()[field - 1] + 1;
+  }
+
+  private int fieldEnd(int field) {
+    int[] t = tabs();
+    return field < t.length ? t[field] : line.length();
+  }
+
+  /**
+   * @return the number of columns in the original line
+   */
+  private int originalFieldCount() {
+    return tabs().length + 1;
+  }
+
+  private String originalField(int field) {
+    return line.substring(fieldStart(field), fieldEnd(field));
+  }
+
+  private String[] left() {
+    if (left == null) {
+      String[] l = new String[VCF.IDX_FORMAT]; //format is outside the boundaries
+      for (int i = 0; i < l.length; i++)
+        l[i] = originalField(i);
+      left = l;
+    }
+    return left;
+  }
+
+  /**
+   * Materializes the FORMAT and samples columns, only needed when they are about to be filtered or modified
+   * @return the FORMAT and samples columns
+   */
+  private ArrayList<String> right() {
+    if (right == null) {
+      int nb = Math.max(0, originalFieldCount() - VCF.IDX_FORMAT);
+      ArrayList<String> r = new ArrayList<>(nb);
+      for (int i = 0; i < nb; i++)
+        r.add(originalField(VCF.IDX_FORMAT + i));
+      right = r;
+    }
+    return right;
+  }
+
+  /**
+   * @param i the index in right (0 : FORMAT, 1+ : samples)
+   * @return the value of the column, without materializing the other columns
+   */
+  private String rightField(int i) {
+    if (right != null)
+      return right.get(i);
+    if (VCF.IDX_FORMAT + i >= originalFieldCount())
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + getRightSize());
+    return originalField(VCF.IDX_FORMAT + i);
+  }
+
+  private int getRightSize() {
+    if (right != null)
+      return right.size();
+    return Math.max(0, originalFieldCount() - VCF.IDX_FORMAT);
   }
 
   @Override
   public String toString() {
-    return String.join(AbstractRecord.T, left) + AbstractRecord.T + String.join(AbstractRecord.T, right);
+    if (left == null && right == null)
+      return line;
+    if (right == null) {
+      if (originalFieldCount() <= VCF.IDX_FORMAT)
+        return String.join(AbstractRecord.T, left);
+      return String.join(AbstractRecord.T, left) + AbstractRecord.T + line.substring(fieldStart(VCF.IDX_FORMAT));
+    }
+    return String.join(AbstractRecord.T, left()) + AbstractRecord.T + String.join(AbstractRecord.T, right);
   }
 
   @Override
   public String summary(int max) {
-    int lim = Math.min(max, right.size() - 1);
+    int lim = Math.min(max, getRightSize() - 1);
     String[] summary = new String[1 + lim];
     for (int i = 0; i <= lim; i++){
-      summary[i] = right.get(i);
+      summary[i] = rightField(i);
     }
-    return String.join(AbstractRecord.T, left) + AbstractRecord.T + String.join(AbstractRecord.T, summary);
+    return String.join(AbstractRecord.T, left()) + AbstractRecord.T + String.join(AbstractRecord.T, summary);
   }
 
   @Override
   public String[] asFields() {
-    String[] ret = new String[left.length + right.size()];
-    System.arraycopy(left, 0, ret, 0, left.length);
+    String[] l = left();
+    int nbRight = getRightSize();
+    String[] ret = new String[l.length + nbRight];
+    System.arraycopy(l, 0, ret, 0, l.length);
 
-    for(int i = 0; i < right.size(); i++)
-      ret[left.length + i] = right.get(i);
+    for(int i = 0; i < nbRight; i++)
+      ret[l.length + i] = rightField(i);
     return ret;
   }
 
   @Override
   public String getChrom() {
-    return left[VCF.IDX_CHROM];
+    return left()[VCF.IDX_CHROM];
   }
 
   @Override
   public void setChrom(String chrom) {
-    left[VCF.IDX_CHROM] = chrom;
+    left()[VCF.IDX_CHROM] = chrom;
   }
 
   @Override
   public int getPos() {
     try {
-      return Integer.parseInt(left[VCF.IDX_POS]);
+      return Integer.parseInt(left()[VCF.IDX_POS]);
     } catch(NumberFormatException e) {
       Message.error("Unable to parse Position in VCF Line:\n"+this.summary(5));
       return -1;
@@ -73,37 +170,37 @@ public class VCFRecord extends VariantRecord {
 
   @Override
   public void setPos(int pos) {
-    left[VCF.IDX_POS] = ""+pos;
+    left()[VCF.IDX_POS] = ""+pos;
   }
 
   @Override
   public String getID() {
-    return left[VCF.IDX_ID];
+    return left()[VCF.IDX_ID];
   }
 
   @Override
   public void setID(String id) {
-    left[VCF.IDX_ID] = id;
+    left()[VCF.IDX_ID] = id;
   }
 
   @Override
   public String getRef() {
-    return left[VCF.IDX_REF];
+    return left()[VCF.IDX_REF];
   }
 
   @Override
   public void setRef(String ref) {
-    left[VCF.IDX_REF] = ref;
+    left()[VCF.IDX_REF] = ref;
   }
 
   @Override
   public String getAltString() {
-    return left[VCF.IDX_ALT];
+    return left()[VCF.IDX_ALT];
   }
 
   @Override
   public void setAlt(String alts) {
-    left[VCF.IDX_ALT] = alts;
+    left()[VCF.IDX_ALT] = alts;
   }
 
   @Override
@@ -113,12 +210,12 @@ public class VCFRecord extends VariantRecord {
 
   @Override
   public String getQual() {
-    return left[VCF.IDX_QUAL];
+    return left()[VCF.IDX_QUAL];
   }
 
   @Override
   public void setQual(String qual) {
-    left[VCF.IDX_QUAL] = qual;
+    left()[VCF.IDX_QUAL] = qual;
   }
 
   @Override
@@ -128,42 +225,47 @@ public class VCFRecord extends VariantRecord {
 
   @Override
   public String getFiltersString() {
-    return left[VCF.IDX_FILTER];
+    return left()[VCF.IDX_FILTER];
   }
 
   @Override
   public void clearFilters() {
-    left[VCF.IDX_FILTER] = "";
+    left()[VCF.IDX_FILTER] = "";
   }
 
   @Override
   public void addFilter(String filter) {
-    for(String f : left[VCF.IDX_FILTER].split(";"))
+    for(String f : left()[VCF.IDX_FILTER].split(";"))
       if(f.equals(filter))
         return;
-    left[VCF.IDX_FILTER] += ";"+filter;
+    left()[VCF.IDX_FILTER] += ";"+filter;
   }
 
   @Override
   public void setFilters(String filters) {
-    left[VCF.IDX_FILTER] = filters;
+    left()[VCF.IDX_FILTER] = filters;
   }
 
   @Override
   public String getInfoString() {
-    return left[VCF.IDX_INFO];
+    return left()[VCF.IDX_INFO];
+  }
+
+  private void setInfoString(String info) {
+    left()[VCF.IDX_INFO] = info;
+    this.infoIndex = null;
+  }
+
+  @Override
+  public InfoIndex getInfoIndex() {
+    if (infoIndex == null)
+      infoIndex = new InfoIndex(getInfoString(), vcf);
+    return infoIndex;
   }
 
   @Override
   public String[][] getInfo() {
-    String[] f = getInfoString().split(";");
-    String[][] ret = new String[f.length][2];
-    for(int i = 0 ; i < f.length; i++) {
-      String[] kv = f[i].split("=");
-      ret[i][0] = kv[0];
-      ret[i][1] = kv.length > 1 ? kv[1] : null;
-    }
-    return ret;
+    return getInfoIndex().toArray();
   }
 
   /**
@@ -172,12 +274,7 @@ public class VCFRecord extends VariantRecord {
    * @return the value for the key
    */
   public String getInfo(String key) {
-    for (String f : getInfoString().split(";")) {
-      String[] kv = f.split("=");
-      if (key.equalsIgnoreCase(kv[0]))
-        return kv.length > 1 ? kv[1] : null;
-    }
-    return null;
+    return getInfoIndex().get(key);
   }
 
   @Override
@@ -186,14 +283,14 @@ public class VCFRecord extends VariantRecord {
     if(value != null)
       newInfo += "=" + value;
     if(getInfoString().isEmpty())
-      left[VCF.IDX_INFO] = newInfo;
+      setInfoString(newInfo);
     else
-      left[VCF.IDX_INFO] += ";" + newInfo;
+      setInfoString(getInfoString() + ";" + newInfo);
   }
 
   @Override
   public void clearInfo() {
-    left[VCF.IDX_INFO] = ""; //TODO "" or "." ?
+    setInfoString(""); //TODO "" or "." ?
   }
 
   @Override
@@ -203,14 +300,14 @@ public class VCFRecord extends VariantRecord {
 
   @Override
   public String getFormatString() {
-    if(right.isEmpty())
+    if(getRightSize() == 0)
       return ""; //TODO might have VCF without format/genotypes (ie gnomAD)
-    return right.get(0);
+    return rightField(0);
   }
 
   @Override
   public int getNumberOfSamples() {
-    return Math.max(right.size() - 1, 0);
+    return Math.max(getRightSize() - 1, 0);
   }
 
   @Override
@@ -218,8 +315,7 @@ public class VCFRecord extends VariantRecord {
     if(this.isFiltered())
       return null;
     String filename = vcf.getFilename();
-    NavigableSet<Sample> sampleIndices = vcf.getSampleIndices().navigableKeySet();
-    int nbSamples = sampleIndices.size();
+    int nbSamples = vcf.getSampleIndex().size();
     if (nbSamples == 0) //TODO allow this somehow
       throw new VCFException(vcf, "Could not create variant (list of selected sample is empty)", this);
 
@@ -227,6 +323,7 @@ public class VCFRecord extends VariantRecord {
       throw new VCFException(vcf, "Could not create variant (not enough fields " + this.getNumberOfSamples() + "/" + nbSamples + " samples)", this);
 
     try {
+      String[] left = left();
       String chrom = left[VCF.IDX_CHROM];
       int pos = Integer.parseInt(left[VCF.IDX_POS]);
       String id = left[VCF.IDX_ID];
@@ -234,21 +331,24 @@ public class VCFRecord extends VariantRecord {
       String alt = left[VCF.IDX_ALT];
       String qual = left[VCF.IDX_QUAL];
       String filter = left[VCF.IDX_FILTER];
-      Info info = new Info(getInfo(), vcf);
-      GenotypeFormat format = vcf.checkMode(VCF.MODE_QUICK_GENOTYPING) ? new GenotypeFormat("GT") : new GenotypeFormat(right.get(0));
+      Info info = new Info(getInfoIndex(), vcf);
+      GenotypeFormat format = vcf.checkMode(VCF.MODE_QUICK_GENOTYPING) ? new GenotypeFormat("GT") : new GenotypeFormat(rightField(0));
 
       //limit to selected samples : in fact, there is nothing to do because de input line has already been altered by SampleFilters
-      Genotype[] genotypes = new Genotype[nbSamples];
-      int i = 0;
-      for(Sample sample : sampleIndices){
-        int index = 1 + i;
-        String geno = right.get(index);//right index, because line has already been cut
-        if (vcf.checkMode(VCF.MODE_QUICK_GENOTYPING))
-          geno = geno.split(":")[0];
-        genotypes[i] = new Genotype(geno, format, sample);//right index, because samples has already been reduces
-        i++;
+      SampleIndex samples = vcf.getSampleIndex();
+      boolean cut = !vcf.getCommandParser().getSampleFilters().isEmpty();
+      String[] genos = new String[nbSamples];
+      for (int i = 0; i < nbSamples; i++) {
+        int index = 1 + (cut ? i : samples.getColumn(i));
+        String geno = rightField(index);//when the line has been cut by the SampleFilters, only the kept samples remain, in the index order
+        if (vcf.checkMode(VCF.MODE_QUICK_GENOTYPING)) {
+          int colon = geno.indexOf(':');
+          if (colon > -1)
+            geno = geno.substring(0, colon);
+        }
+        genos[i] = geno;
       }
-      return new Variant(chrom, pos, id, ref, alt, qual, filter, info, format, genotypes);
+      return new Variant(chrom, pos, id, ref, alt, qual, filter, info, format, new GenotypeBlock(format, samples, genos));
     } catch (VariantException | NumberFormatException e) {
       throw new VCFException(vcf, "Could not create variant ("+ e.getMessage()+")", this, e);
     }
@@ -260,57 +360,54 @@ public class VCFRecord extends VariantRecord {
       return;
 
     final TreeMap<Sample , Integer> sampleIndices = vcf.getSampleIndices();
-    final ArrayList<String> newRight = new ArrayList<>();
+    final ArrayList<String> newRight = new ArrayList<>(sampleIndices.size() + 1);
     newRight.add(getFormatString()); //Adding format
+    final int size = getRightSize();
     for (Sample sample : sampleIndices.navigableKeySet()) {
       int idx = sampleIndices.get(sample) + 1;
-      if(idx >= right.size())
-        throw new VCFException(vcf, "Could not create variant (not enough fields: "+(right.size() - 1)+" samples)", this);
-      newRight.add(right.get(idx));
+      if(idx >= size)
+        throw new VCFException(vcf, "Could not create variant (not enough fields: "+(size - 1)+" samples)", this);
+      newRight.add(rightField(idx)); //only the kept samples are materialized
     }
 
-    right.clear();
-    right.addAll(newRight);
+    right = newRight;
   }
 
   @Override
   public boolean[] updateACANAF(String newAC, String newAN, String newAF) {
-    String[] info = left[VCF.IDX_INFO].split(";");
-    boolean replacedAC = false;
-    boolean replacedAN = false;
-    boolean replacedAF = false;
-    for (int i = 0; i < info.length; i++) {
-      String[] kv = info[i].split("=");
-      switch (kv[0]) {
-        case "AC":
-          replacedAC = true;
-          info[i] = "AC=" + newAC;
-          break;
-        case "AF":
-          replacedAF = true;
-          info[i] = "AF=" + newAF;
-          break;
-        case "AN":
-          replacedAN = true;
-          info[i] = newAN;
-          break;
-        default:
-          break;
-      }
-      if (replacedAC && replacedAN && replacedAF) {
-        left[VCF.IDX_INFO] = String.join(";", info);
-        break;
+    InfoIndex index = getInfoIndex();
+    String[] newValues = {newAC, newAN, newAF};
+    boolean[] replaced = new boolean[AC_AN_AF.length];
+    String[] values = null;
+    for (int i = 0; i < AC_AN_AF.length; i++)
+      if (index.contains(AC_AN_AF[i])) {
+        if (values == null) {
+          values = new String[index.size()];
+          for (int k = 0; k < values.length; k++)
+            values[k] = index.getValue(k);
+        }
+        values[index.indexOf(AC_AN_AF[i])] = newValues[i];
+        replaced[i] = true;
       }
+    if (values != null) {
+      String[] fields = new String[values.length];
+      for (int k = 0; k < fields.length; k++)
+        fields[k] = values[k] == null ? index.getKey(k) : index.getKey(k) + "=" + values[k];
+      setInfoString(String.join(";", fields));
     }
-    return new boolean[]{replacedAC, replacedAN, replacedAF};
+    return replaced;
   }
 
   @Override
   public int[] getAllACs() {
-    int[] acs = new int[1 + left[VCF.IDX_ALT].split(",").length];
-
-    for (int i = 1; i < right.size(); i++) {
-      String geno = right.get(i).split(":")[0];
+    int[] acs = new int[1 + left()[VCF.IDX_ALT].split(",").length];
+
+    final int size = getRightSize();
+    for (int i = 1; i < size; i++) {
+      String geno = rightField(i);
+      int colon = geno.indexOf(':');
+      if (colon > -1)
+        geno = geno.substring(0, colon);
       if (geno != null && !geno.isEmpty()) {
         int[] alleles = Genotype.getAlleles(geno);
         if(alleles != null)
@@ -330,16 +427,18 @@ public class VCFRecord extends VariantRecord {
   public void updateGT(int sample, String value) {
     String[] g = getGenotypeString(sample).split(":");
     g[0] = value;
-    right.set(sample + 1, String.join(":", g));
+    right().set(sample + 1, String.join(":", g));
   }
 
   @Override
   public void setGenotypeToMissing(int sample) {
-    right.set(sample + 1, this.missing);
+    if (this.missing == null)
+      this.missing = buildMissing();
+    right().set(sample + 1, this.missing);
   }
 
   private String buildMissing(){
-    if(right.isEmpty())
+    if(getRightSize() == 0)
       return ".";
 
     String[] f = new String[getFormats().length];
@@ -349,7 +448,7 @@ public class VCFRecord extends VariantRecord {
 
   @Override
   public String getGenotypeString(int s) {
-    return right.get(s + 1);
+    return rightField(s + 1);
   }
 
   @Override
@@ -357,6 +456,31 @@ public class VCFRecord extends VariantRecord {
     return getGenotypeString(sample).split(":");
   }
 
+  /**
+   * Gets some values of a sample, in a single pass over the genotype, without splitting it
+   * @param sample the index of the sample
+   * @param fields the positions of the fields in the FORMAT, in increasing order
+   * @param values receives the value of each field (null if absent)
+   */
+  @Override
+  public void fillGenotypeValues(int sample, int[] fields, String[] values) {
+    String genotype = getGenotypeString(sample);
+    int field = 0;
+    int start = 0;
+    int k = 0;
+    while (k < fields.length && start <= genotype.length()) {
+      int end = genotype.indexOf(':', start);
+      if (end == -1)
+        end = genotype.length();
+      if (field == fields[k])
+        values[k++] = genotype.substring(start, end);
+      field++;
+      start = end + 1;
+    }
+    for (; k < fields.length; k++)
+      values[k] = null;
+  }
+
   @Override
   public String[] getGenotypeValues(int field) {
     String[] ret = new String[this.getNumberOfSamples()];
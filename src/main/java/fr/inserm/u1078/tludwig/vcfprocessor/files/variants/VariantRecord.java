@@ -3,12 +3,16 @@ package fr.inserm.u1078.tludwig.vcfprocessor.files.variants;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.maok.tools.StringTools;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.AbstractRecord;
-import fr.inserm.u1078.tludwig.vcfprocessor.filters.GenotypeFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.GenotypeFilterPlan;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.LineFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.OrderedLineFilter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 
+import java.util.List;
+
 public abstract class VariantRecord extends AbstractRecord {
 
+  private boolean leftColumnsFiltersApplied = false;
 
   public abstract Variant createVariant(VCF vcf) throws VCFException;
 
@@ -16,6 +20,10 @@ public abstract class VariantRecord extends AbstractRecord {
     //Already filtered
     if(isFiltered())
       return true;
+    //filters on the 8 leftmost columns don't need the samples : apply them first, unless AC/AN/AF are about to be updated
+    final boolean mayUpdateInfo = !vcf.getCommandParser().getSampleFilters().isEmpty() || !vcf.getCommandParser().getGenotypeFilters().isEmpty();
+    if (!mayUpdateInfo && this.applyLeftColumnsFilters(vcf))
+      return true;
     //removing unwanted individuals
     this.applySampleFilters(vcf);
 
@@ -32,23 +40,48 @@ public abstract class VariantRecord extends AbstractRecord {
 
   public abstract void applySampleFilters(VCF vcf) throws VCFException;
 
+  /**
+   * Applies the genotype filters, compiled for the FORMAT of this record : the needed values of each sample are extracted once
+   * and given to all the filters
+   * @param vcf the VCF file
+   * @return true if at least one genotype was set to missing
+   */
   public boolean applyGenotypeFilters(VCF vcf) {
     //apply genotype filters ++ Must be called before lineFilter (max missing geno is part of line filters)
     boolean hasFilteredGenotypes = false;
     if (!vcf.getCommandParser().getGenotypeFilters().isEmpty()) {
-      String[] formatFields = this.getFormats();
-      for (GenotypeFilter filter : vcf.getCommandParser().getGenotypeFilters()) {
-        filter.setFormat(formatFields);
-        for (int i = 1; i < this.getNumberOfSamples(); i++)
-          if (!filter.pass(this.getGenotypeSplit(i))) { //TODO only send the relevant values (if DP and GQ, everything will be split and send twice)
-            this.setGenotypeToMissing(i);
-            hasFilteredGenotypes = true;
-          }
+      GenotypeFilterPlan plan = vcf.getCommandParser().getGenotypeFilterPlan(this.getFormatString());
+      int[] positions = plan.getPositions();
+      String[] values = new String[positions.length];
+      String[][] buffers = plan.newBuffers();
+      for (int i = 0; i < this.getNumberOfSamples(); i++) {
+        this.fillGenotypeValues(i, positions, values);
+        if (!plan.pass(values, buffers)) {
+          this.setGenotypeToMissing(i);
+          hasFilteredGenotypes = true;
+        }
       }
     }
     return hasFilteredGenotypes;
   }
 
+  /**
+   * Applies the line filters that only rely on the 8 leftmost columns (they won't be applied again by applyLineFilters())
+   * @param vcf the VCF file
+   * @return true if the variant is filtered
+   */
+  public final boolean applyLeftColumnsFilters(VCF vcf) {
+    if (leftColumnsFiltersApplied)
+      return isFiltered();
+    leftColumnsFiltersApplied = true;
+    for (LineFilter filter : vcf.getCommandParser().getLineFilters())
+      if (filter.leftColumnsOnly() && !filter.pass(this)) {
+        this.filter(vcf);
+        return true;
+      }
+    return false;
+  }
+
   /**
    *
    * @param vcf
@@ -60,7 +93,7 @@ public abstract class VariantRecord extends AbstractRecord {
       /*if (f == null)
         f = filteredLine.split(T);*/
       for (LineFilter filter : vcf.getCommandParser().getLineFilters())
-        if (!filter.pass(this)) {
+        if (!(leftColumnsFiltersApplied && filter.leftColumnsOnly()) && !filter.pass(this)) {
           this.filter(vcf);
           return true;
         }
@@ -68,6 +101,23 @@ public abstract class VariantRecord extends AbstractRecord {
     return false;
   }
 
+  /**
+   * Applies the order-dependent line filters. Must be called in the order of the file, after the other filters (see VCF.Reader)
+   * @param vcf the VCF file
+   * @param filters the ordered line filters of the Reader
+   * @return true if the variant is filtered
+   */
+  public final boolean applyOrderedLineFilters(VCF vcf, List<OrderedLineFilter> filters) {
+    if (isFiltered())
+      return true;
+    for (OrderedLineFilter filter : filters)
+      if (!filter.pass(this)) {
+        this.filter(vcf);
+        return true;
+      }
+    return false;
+  }
+
   /**
    * Updates AC, AN and AF fields after genotype examination
    * @return true if all SUM(ALT_ACs) == 0
@@ -81,7 +131,7 @@ public abstract class VariantRecord extends AbstractRecord {
       an += a;
 
     //replace old values of AC/AN/AF if present
-    String newAN = "AN=" + an;
+    String newAN = "" + an;
 
     int sumAC = 0;
     for (int alt = 1; alt < ac.length; alt++) {
@@ -154,6 +204,11 @@ public abstract class VariantRecord extends AbstractRecord {
   public abstract String getFiltersString();
   public abstract String getInfoString();
   public abstract String[][] getInfo();
+
+  /**
+   * @return the index of the INFO column, shared by everything that reads the INFO fields of this record
+   */
+  public abstract InfoIndex getInfoIndex();
   public abstract String getInfo(String key);
   public abstract void addInfo(String key, String value);
   public void addInfo(String[] kv){
@@ -175,6 +230,17 @@ public abstract class VariantRecord extends AbstractRecord {
 
   public abstract String[] getGenotypeSplit(int sample);
 
+  /**
+   * Gets some values of a sample
+   * @param sample the index of the sample
+   * @param fields the positions of the fields in the FORMAT, in increasing order
+   * @param values receives the value of each field (null if absent)
+   */
+  public void fillGenotypeValues(int sample, int[] fields, String[] values) {
+    for (int k = 0; k < fields.length; k++)
+      values[k] = getGenotypeValue(sample, fields[k]);
+  }
+
   public final String[] getGTs(){
     return getGenotypeValues(0);
   }
@@ -10,5 +10,10 @@ public abstract class GenotypeFilter extends Filter<String[]> {
     super(keep);
   }
 
-  public abstract void setFormat(String[] format);
+  /**
+   * The filter doesn't depend on the FORMAT of the records : the positions of its fields are resolved by GenotypeFilterPlan,
+   * so a filter has no mutable state and can be used by several threads at once
+   * @return the FORMAT fields read by the filter. Their values are given to pass() in this order (null if a field is absent)
+   */
+  public abstract String[] getFields();
 }
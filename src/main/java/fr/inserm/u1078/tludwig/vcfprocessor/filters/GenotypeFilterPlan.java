@@ -0,0 +1,96 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The genotype filters, compiled for one FORMAT string : the position of every field read by the filters is resolved once,
+ * so that the values of each sample can be extracted in a single pass, and given to every filter.<br/>
+ * Immutable, so it can be shared by all the threads (see CommandParser.getGenotypeFilterPlan())
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class GenotypeFilterPlan {
+  private final GenotypeFilter[] filters;
+  /** the positions, in the FORMAT, of the fields read by at least one filter, in increasing order */
+  private final int[] positions;
+  /** for each filter, for each of its fields : the index in positions, or -1 if the field is not in the FORMAT */
+  private final int[][] slots;
+
+  /**
+   * @param filters the genotype filters
+   * @param format the FORMAT string (keys separated by ':')
+   */
+  public GenotypeFilterPlan(List<GenotypeFilter> filters, String format) {
+    this.filters = filters.toArray(new GenotypeFilter[0]);
+    String[] keys = format.isEmpty() ? new String[0] : format.split(":");
+
+    boolean[] used = new boolean[keys.length];
+    int[][] filterPositions = new int[this.filters.length][];
+    for (int f = 0; f < this.filters.length; f++) {
+      String[] fields = this.filters[f].getFields();
+      filterPositions[f] = new int[fields.length];
+      for (int k = 0; k < fields.length; k++) {
+        filterPositions[f][k] = indexOf(keys, fields[k]);
+        if (filterPositions[f][k] != -1)
+          used[filterPositions[f][k]] = true;
+      }
+    }
+
+    ArrayList<Integer> list = new ArrayList<>();
+    int[] slotOfPosition = new int[keys.length];
+    for (int p = 0; p < keys.length; p++)
+      if (used[p]) {
+        slotOfPosition[p] = list.size();
+        list.add(p);
+      }
+    this.positions = list.stream().mapToInt(Integer::intValue).toArray();
+
+    this.slots = new int[this.filters.length][];
+    for (int f = 0; f < this.filters.length; f++) {
+      slots[f] = new int[filterPositions[f].length];
+      for (int k = 0; k < slots[f].length; k++)
+        slots[f][k] = filterPositions[f][k] == -1 ? -1 : slotOfPosition[filterPositions[f][k]];
+    }
+  }
+
+  private static int indexOf(String[] keys, String field) {
+    for (int i = 0; i < keys.length; i++)
+      if (field.equalsIgnoreCase(keys[i]))
+        return i;
+    return -1;
+  }
+
+  /**
+   * @return the positions, in the FORMAT, of the fields to extract for each sample, in increasing order
+   */
+  public int[] getPositions() {
+    return positions;
+  }
+
+  /**
+   * @return one buffer per filter, to give to pass(). They can be reused for all the samples of a record, but not shared between threads
+   */
+  public String[][] newBuffers() {
+    String[][] buffers = new String[filters.length][];
+    for (int f = 0; f < filters.length; f++)
+      buffers[f] = new String[slots[f].length];
+    return buffers;
+  }
+
+  /**
+   * @param values the values of the sample, for each of the positions given by getPositions() (null if absent)
+   * @param buffers the buffers from newBuffers()
+   * @return true if the genotype passes every filter
+   */
+  public boolean pass(String[] values, String[][] buffers) {
+    for (int f = 0; f < filters.length; f++) {
+      String[] buffer = buffers[f];
+      for (int k = 0; k < buffer.length; k++)
+        buffer[k] = slots[f][k] == -1 ? null : values[slots[f][k]];
+      if (!filters[f].pass(buffer))
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,24 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.filters;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
+
+/**
+ * Line filters whose result depends on the records seen before (distance to the previous record, windows...).<br/>
+ * They are not applied by the workers with the other line filters, but on the records that passed every other line filter,
+ * in the order of the file, one batch after the other (see VCF.Reader.applyOrderedLineFilters()). Each Reader uses its own
+ * copies of the filters (see copy()), so the state of a filter is only modified under the lock of a single Reader, and
+ * the results do not depend on the number of threads
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public abstract class OrderedLineFilter extends Filter<VariantRecord> {
+
+  public OrderedLineFilter(boolean keep) {
+    super(keep);
+  }
+
+  /**
+   * @return a new filter, with the same parameters and an empty state
+   */
+  public abstract OrderedLineFilter copy();
+}
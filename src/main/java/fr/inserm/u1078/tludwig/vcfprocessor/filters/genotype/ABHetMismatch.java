@@ -13,15 +13,12 @@ import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
  * Unit Test defined on   XXXX-XX-XX
  */
 public class ABHetMismatch extends GenotypeFilter {
+  public static final String GT = "GT";
   public static final String AD = "AD";
 
   private final double min;
   private final double max;
 
-  String[] format;
-  private int adPos = -1;
-
-
   public ABHetMismatch(double deviation) {
     super(true);
     this.min = 0.5-deviation;
@@ -29,13 +26,8 @@ public class ABHetMismatch extends GenotypeFilter {
   }
 
   @Override
-  public void setFormat(String[] format) {
-    this.format = format;
-    for (int i = 0; i < format.length; i++)
-      if (AD.equalsIgnoreCase(this.format[i])){
-        this.adPos = i;
-        break;
-      }
+  public String[] getFields() {
+    return new String[]{GT, AD};
   }
 
   @Override
@@ -46,7 +38,7 @@ public class ABHetMismatch extends GenotypeFilter {
         return true;
       if(alleles[0] == alleles[1])
         return true;
-      String[] ads = f[this.adPos].split(",");
+      String[] ads = f[1].split(",");
       int ad1 = Integer.parseInt(ads[alleles[0]]);
       int ad2 = Integer.parseInt(ads[alleles[1]]);
       double sum = ad1 + ad2;
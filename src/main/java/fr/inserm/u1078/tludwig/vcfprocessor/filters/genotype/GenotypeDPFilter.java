@@ -11,8 +11,6 @@ public class GenotypeDPFilter extends GenotypeFilter {
   
   private final int min;
   private final int max;
-  String[] format;
-  int dpPos = -1;
 
   public GenotypeDPFilter(int min, int max) {
     super(true);
@@ -21,21 +19,16 @@ public class GenotypeDPFilter extends GenotypeFilter {
   }
 
   @Override
-  public void setFormat(String[] format) {
-    this.format = format;
-    for (int i = 0; i < format.length; i++)
-      if (DP.equalsIgnoreCase(this.format[i])){//TODO fallback one SUM(AD) if DP=.
-        this.dpPos = i;
-        break;
-      }
+  public String[] getFields() {
+    return new String[]{DP}; //TODO fallback one SUM(AD) if DP=.
   }
 
   @Override
   public boolean pass(String[] f) {
     int dp = 0;
     try {
-      dp = Integer.parseInt(f[this.dpPos]);
-    } catch (Exception ignore) { //ArrayIndex
+      dp = Integer.parseInt(f[0]);
+    } catch (Exception ignore) { //Missing
       //Ignore
     }
     return (min <= dp && dp <= max);
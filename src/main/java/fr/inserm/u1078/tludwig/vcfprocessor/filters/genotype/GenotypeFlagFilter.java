@@ -12,8 +12,6 @@ public class GenotypeFlagFilter extends GenotypeFilter {
   public static final String FT = "FT";
 
   private final ArrayList<String> flags;
-  String[] format;
-  int filterPos = -1;
 
   public GenotypeFlagFilter(boolean keep) {
     super(keep);
@@ -21,13 +19,8 @@ public class GenotypeFlagFilter extends GenotypeFilter {
   }
 
   @Override
-  public void setFormat(String[] format) {
-    this.format = format;
-    for (int i = 0; i < format.length; i++)
-      if (FT.equalsIgnoreCase(this.format[i])){
-        this.filterPos = i;
-        break;
-      }
+  public String[] getFields() {
+    return new String[]{FT};
   }
 
   public void add(String flag) {
@@ -36,13 +29,8 @@ public class GenotypeFlagFilter extends GenotypeFilter {
 
   @Override
   public boolean pass(String[] f) {
-    String flag = ".";
-
-    try {
-      flag = f[this.filterPos];
-    } catch (Exception ignore) { }
-
-    if(flag.isEmpty() || flag.equals("."))
+    String flag = f[0];
+    if(flag == null || flag.isEmpty() || flag.equals("."))
       return true;
     
     for(String fl : flag.split(",")){
@@ -11,8 +11,6 @@ public class GenotypeGQFilter extends GenotypeFilter {
 
   private final int min;
   private final int max;
-  String[] format;
-  int gqPos = -1;
 
   public GenotypeGQFilter(int min, int max) {
     super(true);
@@ -21,21 +19,16 @@ public class GenotypeGQFilter extends GenotypeFilter {
   }
 
   @Override
-  public void setFormat(String[] format) {
-    this.format = format;
-    for (int i = 0; i < format.length; i++)
-      if (GQ.equalsIgnoreCase(this.format[i])){
-        this.gqPos = i;
-        break;
-      }
+  public String[] getFields() {
+    return new String[]{GQ};
   }
 
   @Override
   public boolean pass(String[] f) {
     int gq = 0;
     try {
-      gq = Integer.parseInt(f[this.gqPos]);
-    } catch (Exception ignore) { //ArrayIndex
+      gq = Integer.parseInt(f[0]);
+    } catch (Exception ignore) { //Missing
       //Number
     }
     return (min <= gq && gq <= max);
@@ -12,13 +12,11 @@ import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
  * Unit Test defined on   XXXX-XX-XX
  */
 public class GenotypeISKSVAFFilter extends GenotypeFilter {
+  public static final String GT = "GT";
   public static final String AD = "AD";
   public static final String DP = "DP";
   final double min;
   final double max;
-  String[] format;
-  int adPos = -1;
-  int dpPos = -1;
 
   public GenotypeISKSVAFFilter(double min, double max) {
     super(true);
@@ -27,17 +25,14 @@ public class GenotypeISKSVAFFilter extends GenotypeFilter {
   }
 
   @Override
-  public void setFormat(String[] format) {
-    this.format = format;
-    for (int i = 0; i < format.length; i++)
-      if (DP.equalsIgnoreCase(this.format[i]))
-        this.dpPos = i;
-      else if (AD.equalsIgnoreCase(this.format[i]))
-        this.adPos = i;
+  public String[] getFields() {
+    return new String[]{GT, AD, DP};
   }
 
   @Override
   public boolean pass(String[] geno) {
+    if(geno[0] == null || geno[1] == null || geno[2] == null)
+      return true;
     int[] alleles = Genotype.getAlleles(geno[0]);
     if(alleles == null)
       return true;
@@ -45,17 +40,15 @@ public class GenotypeISKSVAFFilter extends GenotypeFilter {
     int s = alleles[1];
     if(f == s)
       return true;
-    String[] ads = geno[adPos].split(",");
-    double dp = Integer.parseInt(geno[dpPos]);
-    if(f > 0 && s > 0){
-      int ad = Math.max(Integer.parseInt(ads[f]), Integer.parseInt(ads[s]));
+    String[] ads = geno[1].split(",");
+    try {
+      double dp = Integer.parseInt(geno[2]);
+      int ad = f > 0 && s > 0 ? Math.max(Integer.parseInt(ads[f]), Integer.parseInt(ads[s])) : Integer.parseInt(ads[f > 0 ? f : s]);
       double ratio = dp == 0 ? 0 : ad/dp;
       return (min <= ratio && ratio <= max);
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignore) { //Missing DP/AD
+      return true;
     }
-
-    int ad = Integer.parseInt(ads[f > 0 ? f : s]);
-    double ratio = dp == 0 ? 0 : ad/dp;
-    return (min <= ratio && ratio <= max);
   }
 
   @Override
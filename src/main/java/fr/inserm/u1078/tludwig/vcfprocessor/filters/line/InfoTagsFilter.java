@@ -1,6 +1,7 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.filters.line;
 
 import fr.inserm.u1078.tludwig.maok.tools.StringTools;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.InfoIndex;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.filters.LineFilter;
 import java.util.ArrayList;
@@ -26,34 +27,15 @@ public class InfoTagsFilter extends LineFilter {
 
   @Override
   public boolean pass(VariantRecord record) {
-    String[][] f = record.getInfo();
-    ArrayList<String> keys = new ArrayList<>();
-    for (String[] info : f)
-      keys.add(info[0]);
-
-    if (isKeep())
-      if (and) { //All field must be present to keep
-        for (String field : fields)
-          if (!keys.contains(field))
-            return false;
-        return true;
-      } else { //Any field must be present to exclude
-        for (String field : fields)
-          if (keys.contains(field))
-            return true;
-        return false;
-      }
-    else if (and) { //All field must be present to exclude
-      for (String field : fields)
-        if (!keys.contains(field))
-          return true;
-      return false;
-    } else { //Any field must be present to exclude
-      for (String field : fields)
-        if (keys.contains(field))
-          return false;
-      return true;
-    }
+    InfoIndex index = record.getInfoIndex();
+    int present = 0;
+    for (String field : fields)
+      if (index.contains(field))
+        present++;
+    boolean matches = and ? present == fields.size() : present > 0;
+
+    //Keep : All/Any field must be present to keep, Remove : All/Any field must be present to exclude
+    return matches == isKeep();
   }
 
   @Override
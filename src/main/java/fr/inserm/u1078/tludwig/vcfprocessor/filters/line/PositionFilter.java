@@ -173,6 +173,11 @@ public class PositionFilter extends LineFilter {
 
   public void add(Region r) { this.bed.addRegion(r); }
 
+  /**
+   * @return the regions of this filter
+   */
+  public Bed getBed() { return bed; }
+
   @Override
   public boolean pass(VariantRecord record) {
     if (overlap) {
@@ -1,13 +1,15 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.filters.line;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
-import fr.inserm.u1078.tludwig.vcfprocessor.filters.LineFilter;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.OrderedLineFilter;
 
 /**
+ * Keeps only one record within each window of the given distance : the kept record is compared to the previous kept record,
+ * so this filter is applied in the order of the file (see OrderedLineFilter)
  *
  * @author Thomas E. Ludwig (INSERM - U1078) 2018-11-21
  */
-public class ThinFilter extends LineFilter { //TODO bugs due to parallelism
+public class ThinFilter extends OrderedLineFilter {
 
   private final int distance;
 
@@ -34,8 +36,8 @@ public class ThinFilter extends LineFilter { //TODO bugs due to parallelism
   }
 
   @Override
-  public boolean leftColumnsOnly() {
-    return true;
+  public ThinFilter copy() {
+    return new ThinFilter(distance);
   }
 
   @Override
@@ -0,0 +1,28 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.filters.sam;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.AlignmentRecord;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.SAMLineFilter;
+
+/**
+ * Keeps the alignments with a mapping quality of at least minMapQ
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class MappingQualityFilter extends SAMLineFilter {
+  private final int minMapQ;
+
+  public MappingQualityFilter(int minMapQ) {
+    super(true);
+    this.minMapQ = minMapQ;
+  }
+
+  @Override
+  public boolean pass(AlignmentRecord record) {
+    return record.getMappingQuality() >= minMapQ;
+  }
+
+  @Override
+  public String getDetails() {
+    return "MAPQ >= " + this.minMapQ;
+  }
+}
@@ -0,0 +1,30 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.filters.sam;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.AlignmentRecord;
+import fr.inserm.u1078.tludwig.vcfprocessor.filters.SAMLineFilter;
+
+/**
+ * Filters the alignments on their FLAG value.<br/>
+ * With keep, the alignments must have all the bits of the mask set, otherwise they must have none of them
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class SAMFlagFilter extends SAMLineFilter {
+  private final int mask;
+
+  public SAMFlagFilter(boolean keep, int mask) {
+    super(keep);
+    this.mask = mask;
+  }
+
+  @Override
+  public boolean pass(AlignmentRecord record) {
+    int flag = record.getFlag() & mask;
+    return this.isKeep() ? flag == mask : flag == 0;
+  }
+
+  @Override
+  public String getDetails() {
+    return (this.isKeep() ? "required" : "excluded") + " FLAG bits " + this.mask;
+  }
+}
@@ -1,5 +1,7 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions;
 
+import fr.inserm.u1078.tludwig.vcfprocessor.files.ParallelBGZFOutputStream;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.ParameterException;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.OutputParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.Parameter;
@@ -8,7 +10,6 @@ import fr.inserm.u1078.tludwig.maok.tools.JavaTools;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.Main;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
-import fr.inserm.u1078.tludwig.maok.BgzipOutputStream;
 import fr.inserm.u1078.tludwig.maok.LineBuilder;
 import fr.inserm.u1078.tludwig.vcfprocessor.commandline.CommandParser;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.GzParameter;
@@ -32,7 +33,14 @@ import java.util.Date;
  * @author Thomas E. Ludwig (INSERM - U1078) Started : 20 mai 2015
  */
 public abstract class Function {
-  private static boolean isMonoThread = false;
+  public static final int DEFAULT_BATCH_SIZE = 16;
+  private static int batchSize = DEFAULT_BATCH_SIZE;
+  public static final int DEFAULT_REORDER_WINDOW = 256;
+  private static int reorderWindow = DEFAULT_REORDER_WINDOW;
+  private static int compressionLevel = ParallelBGZFOutputStream.DEFAULT_COMPRESSION_LEVEL;
+  public static final String SHARD_BY_CONTIG = "contig";
+  public static final int NO_SHARDS = -1;
+  private static int shardSize = NO_SHARDS;
 
   public static final String OPT_REF = "--ref"; //TODO OPT as enum ? why, less flexible
   public static final String OPT_CPU = "--cpu";
@@ -105,6 +113,7 @@ public abstract class Function {
 
   public static final String OUT_LOG = "log";
   public static final String OUT_VCF = "vcf";
+  public static final String OUT_BCF = "bcf";
   public static final String OUT_BED = "bed";
   public static final String OUT_PED = "ped";
   public static final String OUT_TSV = "tsv";
@@ -114,6 +123,7 @@ public abstract class Function {
   public static final String OUT_TXT = "txt";
   public static final String OUT_SQL = "sql";
   public static final String OUT_PNG = "png";
+  public static final String OUT_ANNOT = "annot";
 
   public static final String T = "\t";
 
@@ -174,6 +184,8 @@ public abstract class Function {
   private static boolean FIRST_CALL_OUTPUT_BGZIPPED = true;
   private static boolean BGZIPPED_OUTPUT = false;
   private PrintStream outStream = null;
+  private ParallelBGZFOutputStream bgzfOutput = null;
+  private String bgzfFilename = null;
   private PrintStream errStream = null;
   private static final PrintStream STD_OUT = System.out;
   private static final PrintStream STD_ERR = System.err;
@@ -194,8 +206,51 @@ public abstract class Function {
     return BGZIPPED_OUTPUT;
   }
 
-  public static void setMonoThread(){ isMonoThread = true; }
-  public static boolean isMonoThread(){ return isMonoThread; }
+  public static void setMonoThread(){ ThreadConfiguration.setMonoThread(); }
+  public static boolean isMonoThread(){ return ThreadConfiguration.isMonoThread(); }
+
+  public static void setBatchSize(int size){
+    if(size < 1)
+      Message.die("Batch size must be at least 1, found ["+size+"]");
+    batchSize = size;
+  }
+  public static int getBatchSize(){ return batchSize; }
+
+  public static void setReorderWindow(int size){
+    if(size < 1)
+      Message.die("Reorder window must be at least 1, found ["+size+"]");
+    reorderWindow = size;
+  }
+  public static int getReorderWindow(){ return reorderWindow; }
+
+  public static void setCompressionLevel(int level){
+    if(level < 0 || level > 9)
+      Message.die("Compression level must be between 0 and 9, found ["+level+"]");
+    compressionLevel = level;
+  }
+  public static int getCompressionLevel(){ return compressionLevel; }
+
+  /**
+   * Sets the size of the shards, for functions that can process indexed files by shards (--shards)
+   * @param value either "contig" for one shard per contig, or the length of each shard in bp
+   */
+  public static void setShards(String value){
+    if(SHARD_BY_CONTIG.equalsIgnoreCase(value))
+      shardSize = 0;
+    else
+      try {
+        shardSize = Integer.parseInt(value);
+        if(shardSize < 1)
+          Message.die("Shard size must be at least 1, found ["+value+"]");
+      } catch (NumberFormatException e) {
+        Message.die("Shard size must be ["+SHARD_BY_CONTIG+"] or a length in bp, found ["+value+"]");
+      }
+  }
+
+  /**
+   * @return the length of the shards, 0 for one shard per contig, NO_SHARDS if the files are not processed by shards
+   */
+  public static int getShardSize(){ return shardSize; }
 
   public final boolean start(String[] args) { //TODO not called, except through reflect... hard to debug
     StringBuilder msg = new StringBuilder();
@@ -221,15 +276,17 @@ public abstract class Function {
     try {
       String out = outFilename.getStringValue();
       if (out != null) {
-        if(BGZIPPED_OUTPUT || out.endsWith(".gz"))
-          outStream = new PrintStream(new BgzipOutputStream(out.endsWith(".gz") ? out : out+".gz"));
-        else
+        if(isBCFOutput() || BGZIPPED_OUTPUT || out.endsWith(".gz")) { //BCF files are always BGZF compressed
+          bgzfFilename = isBCFOutput() || out.endsWith(".gz") ? out : out + ".gz";
+          bgzfOutput = new ParallelBGZFOutputStream(bgzfFilename, compressionLevel);
+          outStream = new PrintStream(bgzfOutput);
+        } else
           outStream = new PrintStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(out))));
         
         System.setOut(outStream);
       } else {
         if(BGZIPPED_OUTPUT){
-          outStream = new PrintStream(new BgzipOutputStream(STD_OUT));
+          outStream = new PrintStream(new ParallelBGZFOutputStream(STD_OUT, compressionLevel));
           System.setOut(outStream);
         }
       }
@@ -246,6 +303,28 @@ public abstract class Function {
     return true;
   }
 
+  /**
+   * @return the BGZF stream of the output file, null if the output is not a bgzipped file
+   */
+  public ParallelBGZFOutputStream getBGZFOutput() {
+    return bgzfOutput;
+  }
+
+  /**
+   * @return the name of the bgzipped output file, null if the output is not a bgzipped file
+   */
+  public String getBGZFFilename() {
+    return bgzfFilename;
+  }
+
+  /**
+   * @return true if the output file is a BCF file (.bcf extension)
+   */
+  public boolean isBCFOutput() {
+    String out = outFilename.getStringValue();
+    return out != null && out.toLowerCase().endsWith("." + OUT_BCF);
+  }
+
   public OutputParameter getOutFilename() {
     return outFilename;
   }
@@ -504,7 +583,7 @@ public abstract class Function {
   
   public static PrintWriter getPrintWriter(String filename, boolean bgzip) throws IOException{
     if(bgzip)
-      return new PrintWriter(new BgzipOutputStream(filename.endsWith(".gz") ? filename : filename + ".gz"));
+      return new PrintWriter(new ParallelBGZFOutputStream(filename.endsWith(".gz") ? filename : filename + ".gz", compressionLevel));
     return new PrintWriter(new FileWriter(filename));
   }
 
@@ -22,6 +22,11 @@ public abstract class ParallelVCFFilterFunction extends ParallelVCFFunction<Inte
   
   public abstract String[] processInputRecordForFilter(VariantRecord record);
 
+  @Override
+  public boolean isOutputtingInputRecords() {
+    return true;
+  }
+
   @Override
   public final String getOutputExtension() {
     return OUT_VCF;
@@ -1,17 +1,37 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions;
 
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.Main;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.ParallelBGZFOutputStream;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.PedException;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.BCFException;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.BCFRecord;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.BCFWriter;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.MergeJoin;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.TabixIndexer;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.TabixReader;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF.Reader;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCFException;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ReorderWindow;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.StageMonitor;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThreadFactory;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -30,9 +50,17 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
   public static final String[] NO_OUTPUT = new String[]{};
 
   private VCF vcf;
-  private LinkedBlockingQueue<Output> outputLines;
+  private ReorderWindow<OutputBatch> outputBatches;
+  private StageMonitor workerMonitor;
+  private StageMonitor consumerMonitor;
 
   private Analyzer analyzer;
+  private BCFWriter bcfWriter;
+  private TabixIndexer indexer;
+  private ParallelBGZFOutputStream bgzf;
+  private final ThreadLocal<PartialAnalysis<T>> partialAnalyses = new ThreadLocal<>();
+  private MergeJoin mergeJoin;
+  private final ThreadLocal<MergeJoin.Match> joined = new ThreadLocal<>();
 
   public void processOutput(String line) {
     println(line);
@@ -56,6 +84,14 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
 
   public final void printHeaders() { //can't move begin/headers/execute/end/footers be moved to Function, getHeaders might need to production differents headers for different output
     String[] headers = this.getHeaders();
+    if (bcfWriter != null) {
+      try {
+        bcfWriter.writeHeader(getVCF().getBCF(), Arrays.asList(headers == null ? new String[0] : headers));
+      } catch (IOException e) {
+        Message.fatal("Could not write BCF header", e, true);
+      }
+      return;
+    }
     if (headers != null)
       for (String header : headers)
         println(header);
@@ -83,9 +119,53 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
   }
 
   public void openVCF() throws VCFException, PedException {
+    Main.getCommandParser().setRequiredFields(getVCFPolicies().getRequiredFormats(), getVCFPolicies().getRequiredInfos());
+    Main.getCommandParser().setRequiredVEPFields(getVCFPolicies().getRequiredVEPFields());
     this.setVCF(this.vcfFile.getVCF(VCF.STEP_OFF));
   }
 
+  /**
+   * Functions that only output, unchanged, some of the input records (filters) can have their results written as raw BCF
+   * @return true if each record produces either no output or its own line, unchanged
+   */
+  public boolean isOutputtingInputRecords() {
+    return false;
+  }
+
+  /**
+   * When the output file is a BCF file, checks that the records can be copied, and prepares the BCFWriter
+   */
+  private void openBCFOutput() {
+    if (!isBCFOutput())
+      return;
+    if (!isOutputtingInputRecords())
+      Message.die("BCF output is only available for functions that filter records, use a ." + OUT_VCF + " output file");
+    if (getVCF().getBCF() == null)
+      Message.die("BCF output is only available for BCF input files");
+    if (!getVCF().getCommandParser().getSampleFilters().isEmpty() || !getVCF().getCommandParser().getGenotypeFilters().isEmpty())
+      Message.die("BCF output is not available with sample or genotype filters, as the records are modified");
+    if (!getVCF().getBCF().getHeader().isEverythingKept())
+      Message.die("BCF output is not available when FORMAT/INFO fields are ignored");
+    this.bcfWriter = new BCFWriter(System.out);
+    Message.info("Kept records are copied unchanged to the BCF output");
+  }
+
+  /**
+   * When the output is a bgzipped VCF/BCF file, prepares the index (.tbi, or .csi for BCF files and contigs longer than 2^29)
+   * that is built while the records are written
+   */
+  private void openIndexer() {
+    bgzf = getBGZFOutput();
+    if (bgzf == null || (bcfWriter == null && !OUT_VCF.equals(getOutputExtension())))
+      return;
+    long maxLength = TabixIndexer.getMaxContigLength(getVCF().getFullHeaders());
+    boolean csi = bcfWriter != null || maxLength > TabixIndexer.TBI_MAX_LENGTH;
+    String filename = getBGZFFilename() + (csi ? TabixReader.CSI_EXTENSION : TabixReader.TBI_EXTENSION);
+    indexer = new TabixIndexer(filename, csi, maxLength, bcfWriter == null ? null : getVCF().getBCF().getHeader().getContigs());
+    bgzf.setBlockListener(indexer);
+    Message.verbose("The output will be indexed in [" + filename + "]");
+  }
+
   public final void setVCF(VCF vcf) {
     this.vcf = vcf;
   }
@@ -101,29 +181,42 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
   @SuppressWarnings("unused")
   @Override
   public final void executeFunction() throws Exception {
-    final int workers = isMonoThread() ? 1 : Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 3));//Number of workers, there must be one consumer and one reader
+    final int workers = ThreadConfiguration.getWorkers();
+    final int batchSize = getBatchSize();
     this.openVCF();
+    this.openBCFOutput();
+    this.openIndexer();
 
     this.begin();
+    this.mergeJoin = this.getMergeJoin();
     this.printHeaders();
-    this.outputLines = new LinkedBlockingQueue<>(20 * workers);
+    this.outputBatches = new ReorderWindow<>(Math.max(2 * workers, getReorderWindow()));
 
-    ExecutorService threadPool = Executors.newFixedThreadPool(workers + 2, new WellBehavedThreadFactory());
+    Message.verbose("Threads : " + ThreadConfiguration.getDescription());
+    this.workerMonitor = new StageMonitor("Workers", workers);
+    this.consumerMonitor = new StageMonitor("Consumer", 1);
+    Reader reader = null;
 
 
     analyzer = new Analyzer();
     analyzer.start();
 
+    List<VCF.Shard> shards = this.getShards();
     try {
-      Reader reader = getVCF().getReaderAndStart();
-      threadPool.submit(new Consumer());
+      if (shards != null)
+        this.executeShards(shards, batchSize, workers);
+      else {
+        ExecutorService threadPool = Executors.newFixedThreadPool(workers + 1, new WellBehavedThreadFactory());
+        reader = getVCF().getBatchReaderAndStart(batchSize);
+        threadPool.submit(new Consumer());
 
-      for (int i = 0; i < workers; i++)
-        threadPool.submit(new Worker(reader));
+        for (int i = 0; i < workers; i++)
+          threadPool.submit(new Worker(reader));
 
-      threadPool.shutdown();
+        threadPool.shutdown();
 
-      Message.error(!threadPool.awaitTermination(300, TimeUnit.DAYS), "Thread reached its timeout");
+        Message.error(!threadPool.awaitTermination(300, TimeUnit.DAYS), "Thread reached its timeout");
+      }
     } catch (InterruptedException ignore) { }
 
     analyzer.willEnd();
@@ -132,48 +225,203 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
       TimeUnit.MILLISECONDS.sleep(10);
 
     this.vcf.printVariantsKept();
+    if (reader != null)
+      Message.info("Utilisation " + reader.getMonitor());
+    if (shards == null) {
+      Message.info("Utilisation " + workerMonitor);
+      Message.info("Utilisation " + consumerMonitor);
+    }
     end();
-    this.printFooters();
+    if (mergeJoin != null)
+      mergeJoin.close();
+    if (bcfWriter != null)
+      bcfWriter.flush();
+    else
+      this.printFooters();
   }
 
-  public void putOutput(int n, String[] lines) {
-    try {
-      this.outputLines.put(new Output(n, lines));
-    } catch (InterruptedException ignore) { }
+  /**
+   * Functions that compare their input to sorted reference files can stream them in a single pass, instead of loading
+   * them in memory. The join is made in the order of the file, and the matches of the record being processed are available
+   * from getJoined()
+   * @return the join with the reference files (created in begin()), or null (default)
+   */
+  public MergeJoin getMergeJoin() {
+    return null;
+  }
+
+  /**
+   * @return the lines of the reference files matching the record being processed by the calling thread
+   */
+  public final MergeJoin.Match getJoined() {
+    return joined.get();
+  }
+
+  /**
+   * Functions that can process the shards of an indexed file independently (--shards). Their records must be processable in
+   * any order, and their analyses must either be order-independent (processed by the Analyzer) or aggregated by newPartialAnalysis()
+   * @return false by default
+   */
+  public boolean isShardable() {
+    return false;
   }
 
-  public void putEOFOutput(Output output) {
+  /**
+   * When processing by shards, each shard can aggregate its analyses in its own partial state, merged at the end of the shard
+   * @return a new empty partial state, or null to send the analyses to processAnalysis() (default)
+   */
+  public PartialAnalysis<T> newPartialAnalysis() {
+    return null;
+  }
+
+  /**
+   * @return the shards of the input file, or null if the file is not processed by shards
+   */
+  private List<VCF.Shard> getShards() {
+    if (getShardSize() == NO_SHARDS)
+      return null;
+    if (!isShardable()) {
+      Message.warning(Main.KEY_SHARDS + " is ignored, " + this.getClass().getSimpleName() + " can't process a file by shards");
+      return null;
+    }
+    if (bcfWriter != null) {
+      Message.warning(Main.KEY_SHARDS + " is ignored for BCF outputs");
+      return null;
+    }
+    if (!getVCF().getCommandParser().getOrderedLineFilters().isEmpty()) {
+      Message.warning(Main.KEY_SHARDS + " is ignored, some filters depend on the previous records and need the whole file in order");
+      return null;
+    }
     try {
-      this.outputLines.put(output);
-    } catch (InterruptedException ignore) { }
+      List<VCF.Shard> shards = getVCF().getShards(getShardSize());
+      if (shards == null)
+        Message.warning(Main.KEY_SHARDS + " is ignored, [" + getVCF().getFilename() + "] is not bgzipped or has no index");
+      return shards;
+    } catch (VCFException e) {
+      Message.warning(Main.KEY_SHARDS + " is ignored, " + e.getMessage());
+      return null;
+    }
   }
 
+  /**
+   * Processes each shard with its own reader and worker, several shards at a time.
+   * The outputs and the partial analyses of the shards are merged in the order of the file, by the calling thread
+   * @param shards the shards, in the order of the file
+   * @param batchSize the number of records in each batch read
+   * @param workers the number of shards processed at the same time
+   * @throws InterruptedException if interrupted while waiting for a shard
+   */
+  private void executeShards(List<VCF.Shard> shards, int batchSize, int workers) throws InterruptedException {
+    Message.info("Processing " + shards.size() + " shards, " + workers + " at a time");
+    long start = new Date().getTime();
+    ExecutorService shardPool = Executors.newFixedThreadPool(workers, new WellBehavedThreadFactory());
+    ArrayList<ShardWorker> shardWorkers = new ArrayList<>();
+    for (VCF.Shard shard : shards) {
+      ShardWorker worker = new ShardWorker(shard, batchSize);
+      shardWorkers.add(worker);
+      shardPool.submit(worker);
+    }
+    shardPool.shutdown();
+    int processed = 0;
+    for (ShardWorker worker : shardWorkers) {
+      worker.done.await();
+      if (worker.partial != null)
+        worker.partial.merge();
+      worker.replayOutput();
+      processed += worker.processed;
+    }
+    Message.error(!shardPool.awaitTermination(300, TimeUnit.DAYS), "Thread reached its timeout");
+    Message.info(progression("variants", processed, vcf.getFilename(), start));
+  }
 
   /**
-   * Gets an indexedRecord and return an indexOutput (the output is the result of the processedinput)
-   * @param indexedRecord the input to process
-   * return false if InputRecord is EOF
+   * Writes an output line, and adds it to the index of the output if needed
+   * @param line the line
    */
-  public boolean processInputAndPushOutput(VCF.IndexedRecord indexedRecord) {
-    int index = indexedRecord.index;
+  private void output(String line) {
+    if (indexer == null)
+      processOutput(line);
+    else {
+      long position = bgzf.getPosition();
+      processOutput(line);
+      indexer.add(line, position, bgzf.getPosition());
+    }
+  }
+
+  public void putOutputBatch(OutputBatch output) {
+    try {
+      this.outputBatches.put(output.n, output);
+    } catch (InterruptedException ignore) { }
+  }
 
-    if (indexedRecord.isEOF()) {
-      this.putEOFOutput(Output.eofOutput(index));
+  /**
+   * Processes every record of a batch, and pushes the outputs, in the same order, as a single OutputBatch
+   * @param reader the reader that produced the batch
+   * @param batch the input batch to process
+   * @return false if the batch is EOF
+   */
+  public boolean processBatchAndPushOutput(VCF.Reader reader, VCF.RecordBatch batch) {
+    if (batch.isEOF()) {
+      if (batch.claimEOF())
+        this.putOutputBatch(OutputBatch.eofOutput(batch.n, batch.first));
       return false;
     }
+    long time = StageMonitor.now();
+    String[][] lines = new String[batch.size()][];
+    VariantRecord[] records = bcfWriter == null ? null : new VariantRecord[lines.length];
+    VCF.IndexedRecord[] indexedRecords = new VCF.IndexedRecord[lines.length];
+    for (int i = 0; i < lines.length; i++)
+      indexedRecords[i] = reader.prepare(batch.getIndexedRecord(i));
+    reader.applyOrderedLineFilters(batch.n, indexedRecords);
+    MergeJoin.Match[] matches = mergeJoin == null ? null : this.join(batch.n, indexedRecords);
+    for (int i = 0; i < lines.length; i++) {
+      VCF.IndexedRecord indexedRecord = indexedRecords[i];
+      if (matches != null)
+        joined.set(matches[i]);
+      lines[i] = this.processInput(indexedRecord);
+      if (records != null)
+        records[i] = indexedRecord.getRecord();
+    }
+    time = workerMonitor.busy(time);
+    this.putOutputBatch(new OutputBatch(batch.n, batch.first, lines, records));
+    workerMonitor.waited(time);
+    return true;
+  }
+
+  /**
+   * Joins the unfiltered records of a batch with the reference files
+   * @param n the rank of the batch
+   * @param indexedRecords the prepared records of the batch
+   * @return the matches of each record
+   */
+  private MergeJoin.Match[] join(int n, VCF.IndexedRecord[] indexedRecords) {
+    VariantRecord[] records = new VariantRecord[indexedRecords.length];
+    for (int i = 0; i < records.length; i++) {
+      VariantRecord record = indexedRecords[i].getRecord();
+      records[i] = record.isFiltered() ? null : record;
+    }
+    return mergeJoin.join(n, records);
+  }
+
+  /**
+   * Gets an indexedRecord and return its output (the output is the result of the processed input)
+   * @param indexedRecord the input to process
+   * @return the output lines
+   */
+  private String[] processInput(VCF.IndexedRecord indexedRecord) {
     VariantRecord record = indexedRecord.getRecord();
     try {
       String[] output =
            record.isFiltered()
            ? new String[0]
-           : this.processInputRecord(indexedRecord.getRecord());
+           : this.processInputRecord(record);
       if(output == null)
-        throw new RuntimeException("Trying to push an empty output for "+index+"th Record");
-      this.putOutput(indexedRecord.index, output);
+        throw new RuntimeException("Trying to push an empty output for "+indexedRecord.index+"th Record");
+      return output;
     } catch (Exception e) {
-      Message.fatal("Unable to process record \n" + indexedRecord.getRecord(), e, true);
+      Message.fatal("Unable to process record \n" + record, e, true);
     }
-    return true;
+    return NO_OUTPUT;
   }
 
   public abstract String[] processInputRecord(VariantRecord record);
@@ -188,7 +436,13 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
 
     @Override
     public void doRun() {
-        while (processInputAndPushOutput(reader.nextIndexedRecord()));
+      boolean running = true;
+      while (running) {
+        long time = StageMonitor.now();
+        VCF.RecordBatch batch = reader.nextBatch();
+        workerMonitor.waited(time);
+        running = processBatchAndPushOutput(reader, batch);
+      }
     }
   }
 
@@ -201,7 +455,95 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
   public void processAnalysis(T analysis) {}
 
   public final void pushAnalysis(T analysis) {
-    this.analyzer.push(new AnalysisWrapper<>(analysis));
+    PartialAnalysis<T> partial = partialAnalyses.get();
+    if (partial != null) //the thread is processing a shard
+      partial.processAnalysis(analysis);
+    else
+      this.analyzer.push(new AnalysisWrapper<>(analysis));
+  }
+
+  /**
+   * The analyses of a single shard, aggregated by the thread processing the shard
+   */
+  public interface PartialAnalysis<T> {
+    /**
+     * Same as processAnalysis(), for the analyses of the shard (called by a single thread)
+     * @param analysis the analysis result to process
+     */
+    void processAnalysis(T analysis);
+
+    /**
+     * Adds this partial state to the state of the function. Called once per shard, in the order of the file, by a single thread
+     */
+    void merge();
+  }
+
+  /**
+   * Reads a shard with its own Reader, processes its records in order, and keeps its output in a temporary file until it is
+   * its turn to be written
+   */
+  public class ShardWorker extends WellBehavedThread {
+    private final VCF.Shard shard;
+    private final int batchSize;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private PartialAnalysis<T> partial;
+    private File spool;
+    private int processed = 0;
+
+    public ShardWorker(VCF.Shard shard, int batchSize) {
+      this.shard = shard;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void doRun() {
+      partial = newPartialAnalysis();
+      partialAnalyses.set(partial);
+      BufferedWriter out = null;
+      try {
+        VCF.Reader reader = shard.getBatchReaderAndStart(batchSize);
+        VCF.RecordBatch batch;
+        while (!(batch = reader.nextBatch()).isEOF())
+          for (int i = 0; i < batch.size(); i++) {
+            String[] lines = processInput(reader.prepare(batch.getIndexedRecord(i)));
+            processed++;
+            if (lines.length > 0 && out == null) {
+              spool = File.createTempFile(ParallelVCFFunction.class.getSimpleName() + ".shard.", ".txt");
+              spool.deleteOnExit();
+              out = Files.newBufferedWriter(spool.toPath(), StandardCharsets.UTF_8);
+            }
+            for (String line : lines) {
+              out.write(line);
+              out.newLine();
+            }
+          }
+        if (out != null)
+          out.close();
+        Message.verbose("Shard " + shard + " : " + processed + " variants processed");
+      } catch (IOException e) {
+        Message.fatal("Could not process shard " + shard + " of [" + vcf.getFilename() + "]", e, true);
+      } finally {
+        partialAnalyses.remove();
+        done.countDown();
+      }
+    }
+
+    /**
+     * Writes the output of the shard, and deletes the temporary file
+     */
+    private void replayOutput() {
+      if (spool == null)
+        return;
+      try (BufferedReader in = Files.newBufferedReader(spool.toPath(), StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = in.readLine()) != null)
+          output(line);
+      } catch (IOException e) {
+        Message.fatal("Could not read the output of shard " + shard + " from [" + spool.getAbsolutePath() + "]", e, true);
+      }
+      if (!spool.delete())
+        Message.warning("Could not delete temporary file [" + spool.getAbsolutePath() + "]");
+    }
   }
 
   /**
@@ -295,60 +637,108 @@ public abstract class ParallelVCFFunction<T> extends VCFFunction {
     }
   }
 
-  public class Consumer extends WellBehavedThread {
-    private final ArrayList<Output> dequeuedOutput;
-    private long start;
+  public static class OutputBatch {
+    public final int n;
+    public final int first;
+    public final String[][] lines;
+    public final VariantRecord[] records;
+
+    /**
+     * Output of a whole batch of records
+     * @param n the rank of the batch
+     * @param first the index of the first record of the batch
+     * @param lines the output lines, for each record
+     */
+    public OutputBatch(int n, int first, String[][] lines) {
+      this(n, first, lines, null);
+    }
+
+    /**
+     * Output of a whole batch of records, along with the input records (to be written as raw BCF)
+     * @param n the rank of the batch
+     * @param first the index of the first record of the batch
+     * @param lines the output lines, for each record
+     * @param records the input records, null if not needed
+     */
+    public OutputBatch(int n, int first, String[][] lines, VariantRecord[] records) {
+      this.n = n;
+      this.first = first;
+      if(lines == null)
+        throw new RuntimeException("Trying to create a null OutputBatch");
+      this.lines = lines;
+      this.records = records;
+    }
+
+    private OutputBatch(int n, int first) {
+      this.n = n;
+      this.first = first;
+      this.lines = null;
+      this.records = null;
+    }
+
+    public static OutputBatch eofOutput(int n, int first){
+      return new OutputBatch(n, first);
+    }
+
+    public boolean isEOF() {
+      return lines == null;
+    }
+  }
 
-    public Consumer() {
-      this.dequeuedOutput = new ArrayList<>();
+  /**
+   * Copies the record to the BCF output, if it produced an output
+   * @param record the input record
+   * @param lines the output lines for this record
+   */
+  private void writeBCF(VariantRecord record, String[] lines) {
+    if (lines.length == 0)
+      return;
+    try {
+      BCFRecord bcfRecord = (BCFRecord) record;
+      long position = indexer == null ? 0 : bgzf.getPosition();
+      bcfWriter.write(bcfRecord);
+      if (indexer != null)
+        indexer.add(bcfRecord.getChrom(), bcfRecord.getPos() - 1L, bcfRecord.getPos() - 1L + bcfRecord.getRLen(), position, bgzf.getPosition());
+    } catch (IOException | BCFException e) {
+      Message.fatal("Could not write record to BCF output", e, true);
     }
+  }
 
-    private boolean process(Output out) {
-      Message.info(out.n % STEP == 0, progression("variants", out.n, vcf.getFilename(), start));
+  public class Consumer extends WellBehavedThread {
+    private long start;
 
+    private boolean process(OutputBatch out) {
       if(out.isEOF()){
-        Message.info(progression("variants", out.n-1, vcf.getFilename(), start));
+        Message.info(progression("variants", out.first-1, vcf.getFilename(), start));
+        Message.info("Peak reorder depth : " + outputBatches.getPeakDepth() + "/" + outputBatches.getWindow() + " batches");
         return false;
       }
 
       //Process output
-      for (String line : out.lines)
-        processOutput(line);
+      for (int i = 0; i < out.lines.length; i++) {
+        int n = out.first + i;
+        Message.info(n % STEP == 0, progression("variants", n, vcf.getFilename(), start));
+        if (out.records != null)
+          writeBCF(out.records[i], out.lines[i]);
+        else
+          for (String line : out.lines[i])
+            output(line);
+      }
 
       return true;
     }
 
-    private Output remove(int nb) {
-      for (int i = 0; i < this.dequeuedOutput.size(); i++)
-        if (this.dequeuedOutput.get(i).n == nb)
-          return this.dequeuedOutput.remove(i);
-
-      return null;
-    }
-
     @Override
     public void doRun() {
       start = new Date().getTime();
-      boolean running = true;
-      int nb = 1;
       try {
+        boolean running = true;
         while (running) {
-          Output out = outputLines.take();
-          if (out.n == nb) {
-            if (!process(out)) {
-              running = false;//Don't simplify with running = !process(), reactivation
-            }
-            nb++;
-          } else { //out.n > nb
-            this.dequeuedOutput.add(out);
-            Output lines;// = this.dequeuedOutput.remove(nb);
-            while ((lines = remove(nb)) != null) {
-              if (!process(lines)) {
-                running = false;//Don't simplify with running = !process(), reactivation
-              }
-              nb++;
-            }
-          }
+          long time = StageMonitor.now();
+          OutputBatch out = outputBatches.take();
+          time = consumerMonitor.waited(time);
+          running = process(out);
+          consumerMonitor.busy(time);
         }
       } catch (InterruptedException ignore) { }
     }
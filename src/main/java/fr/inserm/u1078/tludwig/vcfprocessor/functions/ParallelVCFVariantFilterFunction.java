@@ -35,6 +35,11 @@ public abstract class ParallelVCFVariantFilterFunction extends ParallelVCFVarian
     Message.info("Total input lines : "+inputLines + " | Total output lines : " + outputLines + " | Dropped lines : "+(inputLines-outputLines));
   }
 
+  @Override
+  public boolean isOutputtingInputRecords() {
+    return true;
+  }
+
   @Override
   public final String getOutputExtension() {
     return OUT_VCF;
@@ -1,5 +1,6 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions;
 
+import fr.inserm.u1078.tludwig.vcfprocessor.Main;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.Ped;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.PedException;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
@@ -13,6 +14,7 @@ public abstract class ParallelVCFVariantFilterPedFunction extends ParallelVCFVar
 
   @Override
   public void openVCF() throws VCFException, PedException { //TODO why, should be the same in VCFPedFunction and ParallelVCFLinePedFunction ? should avoid also direct contact with this.pedFile and get ped through the VCF ?
+    Main.getCommandParser().setRequiredVEPFields(getVCFPolicies().getRequiredVEPFields());
     this.setVCF(new VCF(this.vcfFile.getFilename(), VCF.STEP_OFF));
     this.setPed(pedFile.getPed());
   }
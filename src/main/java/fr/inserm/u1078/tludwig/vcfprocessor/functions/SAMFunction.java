@@ -9,6 +9,8 @@ import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.SAMException;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.SAMHeader;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.SAMFileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ReorderWindow;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThreadFactory;
 
@@ -27,7 +29,7 @@ public abstract class SAMFunction<T> extends Function {
   private SAM sam;
   public static final int STEP1000000 = 1000000;
   public static final int QUEUE_DEPTH = 200;
-  private LinkedBlockingQueue<SAMFunction.Output> outputLines;
+  private ReorderWindow<SAMFunction.Output> outputLines;
   private Analyzer analyzer;
 
   public void processOutput(String line) {
@@ -41,13 +43,13 @@ public abstract class SAMFunction<T> extends Function {
   @SuppressWarnings("unused")
   @Override
   public final void executeFunction() throws Exception {
-    final int workers = isMonoThread() ? 1 : Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 3));//Number of workers, there must be one consumer and one reader
+    final int workers = ThreadConfiguration.getWorkers();
     Bed bed = null; //TODO fetch
     this.openBAM(bed);
 
     this.begin();
     this.printHeaders();
-    this.outputLines = new LinkedBlockingQueue<>(20 * workers);
+    this.outputLines = new ReorderWindow<>(Math.max(20 * workers, getReorderWindow()));
 
     ExecutorService threadPool = Executors.newFixedThreadPool(workers + 2, new WellBehavedThreadFactory());
 
@@ -78,13 +80,13 @@ public abstract class SAMFunction<T> extends Function {
 
   public void putOutput(int n, String[] lines) {
     try {
-      this.outputLines.put(new SAMFunction.Output(n, lines));
+      this.outputLines.put(n, new SAMFunction.Output(n, lines));
     } catch (InterruptedException ignore) { }
   }
 
   public void putEOFOutput(SAMFunction.Output output) {
     try {
-      this.outputLines.put(output);
+      this.outputLines.put(output.n, output);
     } catch (InterruptedException ignore) { }
   }
 
@@ -278,18 +280,14 @@ public abstract class SAMFunction<T> extends Function {
   }
 
   public class Consumer extends WellBehavedThread {
-    private final ArrayList<SAMFunction.Output> dequeuedOutput;
     private long start;
 
-    public Consumer() {
-      this.dequeuedOutput = new ArrayList<>();
-    }
-
     private boolean process(SAMFunction.Output out) {
       Message.info(out.n % STEP1000000 == 0, progression("alignments", out.n, sam.getFilename(), start));
 
       if(out.isEOF()){
         Message.info(progression("alignments", out.n-1, sam.getFilename(), start));
+        Message.info("Peak reorder depth : " + outputLines.getPeakDepth() + "/" + outputLines.getWindow() + " alignments");
         return false;
       }
 
@@ -300,38 +298,11 @@ public abstract class SAMFunction<T> extends Function {
       return true;
     }
 
-    private SAMFunction.Output remove(int nb) {
-      for (int i = 0; i < this.dequeuedOutput.size(); i++)
-        if (this.dequeuedOutput.get(i).n == nb)
-          return this.dequeuedOutput.remove(i);
-
-      return null;
-    }
-
     @Override
     public void doRun() {
       start = new Date().getTime();
-      boolean running = true;
-      int nb = 1;
       try {
-        while (running) {
-          SAMFunction.Output out = outputLines.take();
-          if (out.n == nb) {
-            if (!process(out)) {
-              running = false;//Don't simplify with running = !process(), reactivation
-            }
-            nb++;
-          } else { //out.n > nb
-            this.dequeuedOutput.add(out);
-            SAMFunction.Output lines;// = this.dequeuedOutput.remove(nb);
-            while ((lines = remove(nb)) != null) {
-              if (!process(lines)) {
-                running = false;//Don't simplify with running = !process(), reactivation
-              }
-              nb++;
-            }
-          }
-        }
+        while (process(outputLines.take()));
       } catch (InterruptedException ignore) { }
     }
   }
@@ -1,9 +1,14 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions;
 
+import java.util.Arrays;
+
 public class VCFPolicies {
   private final boolean needVEP;
   private final String[] customRequirements;
   private final MultiAllelicPolicy multiAllelicPolicies;
+  private String[] requiredFormats = null;
+  private String[] requiredInfos = null;
+  private String[] requiredVEPFields = null;
   public VCFPolicies(MultiAllelicPolicy multiAllelicPolicies, boolean needVEP, String... customRequirements) {
     this.multiAllelicPolicies = multiAllelicPolicies;
     this.needVEP = needVEP;
@@ -13,6 +18,60 @@ public class VCFPolicies {
   public static VCFPolicies nothing(MultiAllelicPolicy multiAllelicPolicies) { return new VCFPolicies(multiAllelicPolicies, false); }
   public static VCFPolicies onlyVEP(MultiAllelicPolicy multiAllelicPolicies) { return new VCFPolicies(multiAllelicPolicies, true); }
 
+  /**
+   * Declares the only FORMAT fields read by the function, so that the other fields of BCF files are never decoded.
+   * Must not be used by functions that output the records, as undeclared fields are replaced by "."
+   * @param keys the FORMAT keys (GT is always read)
+   * @return this VCFPolicies
+   */
+  public VCFPolicies requireFormats(String... keys) {
+    this.requiredFormats = keys;
+    return this;
+  }
+
+  /**
+   * Declares the only INFO fields read by the function (CSQ is implied if the function needs VEP), so that the other fields of BCF files are never decoded.
+   * Must not be used by functions that output the records, as undeclared fields are dropped
+   * @param keys the INFO keys
+   * @return this VCFPolicies
+   */
+  public VCFPolicies requireInfos(String... keys) {
+    this.requiredInfos = keys;
+    return this;
+  }
+
+  /**
+   * Declares the VEP fields (VEPFormat.KEY_*) mostly read by the function, they are the only columns of the CSQ annotations
+   * extracted when they are parsed (with ALLELE_NUM and Consequence). Undeclared fields remain available, but are slower to access
+   * @param keys the VEP keys
+   * @return this VCFPolicies
+   */
+  public VCFPolicies requireVEPFields(String... keys) {
+    this.requiredVEPFields = keys;
+    return this;
+  }
+
+  /**
+   * @return the FORMAT fields read by the function, null if undeclared (all fields are read)
+   */
+  public String[] getRequiredFormats() { return requiredFormats; }
+
+  /**
+   * @return the INFO fields read by the function, null if undeclared (all fields are read)
+   */
+  public String[] getRequiredInfos() {
+    if (requiredInfos == null || !needVEP)
+      return requiredInfos;
+    String[] ret = Arrays.copyOf(requiredInfos, requiredInfos.length + 1);
+    ret[requiredInfos.length] = "CSQ";
+    return ret;
+  }
+
+  /**
+   * @return the VEP fields mostly read by the function, null if undeclared
+   */
+  public String[] getRequiredVEPFields() { return requiredVEPFields; }
+
   public boolean isNeedVEP() { return needVEP; }
   public String[] getCustomRequirements() { return customRequirements; }
   public MultiAllelicPolicy getMultiAllelicPolicies() { return multiAllelicPolicies; }
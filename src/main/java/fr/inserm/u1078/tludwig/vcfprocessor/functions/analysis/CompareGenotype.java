@@ -29,6 +29,8 @@ public class CompareGenotype extends VCFPedFunction {//TODO parallelize like in
 
   private final VCFFileParameter vcfFile2 = new VCFFileParameter(OPT_VCF + 2, "File2.vcf(.gz)", "the second input VCF file (can be bgzipped)");
   private ArrayList<Sample> samples;
+  private int[] positions1;
+  private int[] positions2;
   private int[] totals;
   private int[] matches;
   private int[] mismatches;
@@ -82,6 +84,13 @@ public class CompareGenotype extends VCFPedFunction {//TODO parallelize like in
     VCF vcf2 = this.vcfFile2.getVCF(VCF.MODE_QUICK_GENOTYPING, VCF.STEP_OFF);//VCF vcf2 = this.vcfFile2.getVCF(ped, VCF.MODE_QUICK_GENOTYPING, VCF.STEP_OFF);
     
     Message.debug("Opened");
+
+    this.positions1 = new int[this.samples.size()];
+    this.positions2 = new int[this.samples.size()];
+    for (int s = 0; s < this.samples.size(); s++) {
+      this.positions1[s] = vcf1.indexOfSample(this.samples.get(s));
+      this.positions2[s] = vcf2.indexOfSample(this.samples.get(s));
+    }
     
     vcf1.getReaderAndStart();
     vcf2.getReaderAndStart();
@@ -153,9 +162,8 @@ public class CompareGenotype extends VCFPedFunction {//TODO parallelize like in
 
   private void evaluateVariant(Variant v1, Variant v2) {
     for (int s = 0; s < this.samples.size(); s++) {
-      Sample sample = this.samples.get(s);
-      Genotype g1 = v1.getGenotype(sample);
-      Genotype g2 = v2.getGenotype(sample);
+      Genotype g1 = v1.getGenotype(this.positions1[s]);
+      Genotype g2 = v2.getGenotype(this.positions2[s]);
 
       totals[s]++;
       if (g1.isMissing())
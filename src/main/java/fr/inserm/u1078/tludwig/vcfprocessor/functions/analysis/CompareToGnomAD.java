@@ -2,21 +2,23 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions.analysis;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
-import fr.inserm.u1078.tludwig.maok.UniversalReader;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.AnnotationStore;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.InfoIndex;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.MergeJoin;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Canonical;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Info;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPAnnotation;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPConsequence;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPFormat;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -29,7 +31,8 @@ import java.util.Map;
  */
 public class CompareToGnomAD extends ParallelVCFVariantFunction {
 
-  HashMap<String, String> gnomadData;
+  private MergeJoin gnomadData;
+  private AnnotationStore store;
 
   private final FileParameter gnomad = new FileParameter(OPT_FILE, "GnomAD.site.vcf.gz", "GnomAD VCF File (can be gzipped)");
 
@@ -45,12 +48,14 @@ public class CompareToGnomAD extends ParallelVCFVariantFunction {
   public Description getDesc() {
     return new Description(this.getSummary())
             .addLine("Output format will be:")
-            .addColumns(HEADER);
+            .addColumns(HEADER)
+            .addLine("The input file and the GnomAD file must be sorted in the same order, the GnomAD file is read once, along the input file.")
+            .addLine("The GnomAD file can also be an annotation store created by "+Description.code("BuildAnnotationIndex")+" (type "+Description.code(AnnotationStore.TYPE_GNOMAD)+"), which avoids loading the whole GnomAD file in memory.");
   }
 
   @SuppressWarnings("unused")
   @Override
-  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.IGNORE_STAR_ALLELE_AS_LINE); }
+  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.IGNORE_STAR_ALLELE_AS_LINE).requireVEPFields(VEPFormat.KEY_SYMBOL); }
 
   @Override
   public String getOutputExtension() {
@@ -66,56 +71,58 @@ public class CompareToGnomAD extends ParallelVCFVariantFunction {
   @SuppressWarnings("unused")
   @Override
   public void begin() {
-    gnomadData = new HashMap<>();
-    try(UniversalReader in = this.gnomad.getReader();) {
-      Message.info("Loading data from GnomAD");
-      String line;
-      long start = new Date().getTime();
-      int read = 0;
-      while ((line = in.readLine()) != null)
-        if (line.charAt(0) != '#') {
-          read++;
-          if (read % 10000 == 0) {
-            double dur = (new Date().getTime() - start) / 1000.0;
-            Message.progressInfo(read + " variants in " + dur + "s. (" + (int)(read / dur) + " variant/s)");
-          }
-          String[] f = line.split(T);
-          int chr = Variant.chromToNumber(f[VCF.IDX_CHROM]);//TODO convert to VCF
-          int pos = Integer.parseInt(f[VCF.IDX_POS]);
-          String ref = f[VCF.IDX_REF];
-          String[] alts = f[VCF.IDX_ALT].split(",");
-          String[] infos = f[VCF.IDX_INFO].split(";");
-          int[] acs = getACs(infos);
-          int an = getAN(infos);
-          for (int i = 0; i < alts.length; i++) {
-            String canonical = new Canonical(chr, pos, ref, alts[i]).toString();
-            int ac = acs[i];
-            double af = (1.0*ac) / an;
-            gnomadData.put(canonical, ac + T + af + T + an);
-          }
+    if (AnnotationStore.isAnnotationStore(this.gnomad.getFilename())) {
+      try {
+        store = new AnnotationStore(this.gnomad.getFilename(), AnnotationStore.TYPE_GNOMAD);
+        Message.info("Using annotation store " + this.gnomad.getFilename() + ". Start reading VCF file");
+      } catch (IOException e) {
+        Message.fatal("Unable to open gnomAD annotation store " + this.gnomad.getFilename(), e, true);
+      }
+      return;
+    }
+    gnomadData = new MergeJoin(MergeJoin.open(this.gnomad.getFilename()));
+  }
+
+  @SuppressWarnings("unused")
+  @Override
+  public MergeJoin getMergeJoin() {
+    return gnomadData;
+  }
+
+  /**
+   * @param canonical a variant of the input file
+   * @return the AC/AF/AN of the same variant in the GnomAD lines joined to the current record, or null if absent
+   */
+  private String getJoinedGnomAD(Canonical canonical) {
+    String ret = null;
+    for (MergeJoin.Entry entry : getJoined().get(0)) {
+      String[] f = entry.getFields();
+      String[] alts = f[VCF.IDX_ALT].split(",");
+      for (int i = 0; i < alts.length; i++)
+        if (canonical.equals(new Canonical(canonical.getChr(), entry.getPos(), f[VCF.IDX_REF], alts[i]))) {
+          InfoIndex infos = new InfoIndex(f[VCF.IDX_INFO], null);
+          ret = getGnomADValue(getACs(infos)[i], getAN(infos));
         }
-      double dur = (new Date().getTime() - start) / 1000.0;
-      Message.info(read + " variants in " + dur + "s. (" + (int)(read / dur) + " variant/s)");
-      Message.info("GnomAD data loaded (" + gnomadData.size() + " variants). Start reading VCF file");
-    } catch (IOException | NumberFormatException e) {
-      Message.fatal("Unable to read gnomAD file "+this.gnomad.getFilename(), e, true);
     }
+    return ret;
   }
 
   @Override
   public String[] processInputVariant(Variant variant) {
     try {
-      String[] infos = variant.getInfo().toString().split(";");
-      int[] acs = getACs(infos);
-      int an = getAN(infos);
+      Info info = variant.getInfo();
+      int[] acs = info.getIntArray("AC");
+      if (acs == null)
+        throw new NumberFormatException("Missing or invalid AC");
+      int an = info.getInt("AN", -1);
       int[] nonStars = variant.getNonStarAltAllelesAsArray();
       String[] outs = new String[nonStars.length];
       for (int i = 0 ; i < nonStars.length; i++) {
         int a = nonStars[i];
         int ac = acs[i];
         double af = (1.0 * ac) / an;
-        String canonical = new Canonical(variant.getChromNumber(), variant.getPos(), variant.getRef(), variant.getAllele(a)).toString();
-        String gnom = gnomadData.get(canonical);
+        Canonical canonical = new Canonical(variant.getChromNumber(), variant.getPos(), variant.getRef(), variant.getAllele(a));
+        String gnom = store != null ? store.get(canonical) : getJoinedGnomAD(canonical);
         if (gnom == null)
           gnom = T + T;
         String qual = variant.getFilter();
@@ -138,23 +145,43 @@ public class CompareToGnomAD extends ParallelVCFVariantFunction {
     }
   }
   
-  private static int[] getACs(String[] infos){
-    for(String info : infos)
-      if(info.startsWith("AC=")){
-        String[] acs = info.substring(3).split(",");
-        int[] ret = new int[acs.length];
-        for(int i = 0 ; i < acs.length; i++)
-          ret[i] = Integer.parseInt(acs[i]);
-        return ret;
-    }
-    return new int[]{-1};
+  @SuppressWarnings("unused")
+  @Override
+  public void end() {
+    if (store != null)
+      try {
+        store.close();
+      } catch (IOException e) {
+        Message.warning("Unable to close gnomAD annotation store " + this.gnomad.getFilename());
+      }
+    super.end();
   }
-  
-  private static int getAN(String[] infos){
-    for(String info : infos)
-      if(info.startsWith("AN="))
-        return Integer.parseInt(info.substring(3));
-    return -1;
+
+  /**
+   * @param ac allele count
+   * @param an allele number
+   * @return the AC/AF/AN columns stored for a GnomAD variant
+   */
+  public static String getGnomADValue(int ac, int an){
+    double af = (1.0*ac) / an;
+    return ac + T + af + T + an;
+  }
+
+  /**
+   * @param infos the INFO index of a GnomAD line
+   * @return the values of AC, {-1} if absent or invalid
+   */
+  public static int[] getACs(InfoIndex infos){
+    int[] acs = infos.getIntArray("AC");
+    return acs == null ? new int[]{-1} : acs;
+  }
+
+  /**
+   * @param infos the INFO index of a GnomAD line
+   * @return the value of AN, -1 if absent or invalid
+   */
+  public static int getAN(InfoIndex infos){
+    return infos.getInt("AN", -1);
   }
   
   @Override
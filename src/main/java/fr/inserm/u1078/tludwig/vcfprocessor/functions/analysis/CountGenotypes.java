@@ -4,7 +4,8 @@ import fr.inserm.u1078.tludwig.maok.LineBuilder;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantPedFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
-import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeBlock;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeFormat;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPAnnotation;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
@@ -39,7 +40,7 @@ public class CountGenotypes extends ParallelVCFVariantPedFunction<Override> {
 
   @SuppressWarnings("unused")
   @Override
-  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.IGNORE_STAR_ALLELE_AS_LINE); }
+  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.IGNORE_STAR_ALLELE_AS_LINE).requireFormats(GenotypeFormat.GT).requireInfos(); }
 
   @Override
   public String getOutputExtension() {
@@ -70,12 +71,16 @@ public class CountGenotypes extends ParallelVCFVariantPedFunction<Override> {
   public String[] processInputVariant(Variant variant) {
     int[] nonStars = variant.getNonStarAltAllelesAsArray();
     String[] outs = new String[nonStars.length - 1];
+    GenotypeBlock genotypes = variant.getGenotypeBlock();
+    int[] groupIndices = new int[genotypes.size()];
+    for (int g = 0; g < genotypes.size(); g++)
+      groupIndices[g] = getPed().getGroups().indexOf(genotypes.getSample(g).getGroup());
     for (int a = 1; a < nonStars.length; a++) {
       int[][] counts = new int[GRP + 1][3];
 
-      for (Genotype g : variant.getGenotypes()) {
-        int d = g.getCount(a);
-        int i = getPed().getGroups().indexOf(g.getSample().getGroup());
+      for (int g = 0; g < genotypes.size(); g++) {
+        int d = genotypes.getCount(g, a);
+        int i = groupIndices[g];
         counts[i + 1][d]++;
         counts[0][d]++;
       }
@@ -102,6 +102,42 @@ public class CountVariants extends ParallelVCFVariantPedFunction<int[]> {
   public void processAnalysis(int[] idx) {
     this.counts.get(idx[0])[idx[1]]++;
   }
+
+  @Override
+  public boolean isShardable() {
+    return true;
+  }
+
+  @Override
+  public PartialAnalysis<int[]> newPartialAnalysis() {
+    return new PartialCounts();
+  }
+
+  /**
+   * Counts of a single shard
+   */
+  private class PartialCounts implements PartialAnalysis<int[]> {
+    private final int[][] partial = new int[groups.size()][];
+
+    private PartialCounts() {
+      for (int ig = 0; ig < partial.length; ig++)
+        partial[ig] = new int[counts.get(ig).length];
+    }
+
+    @Override
+    public void processAnalysis(int[] idx) {
+      partial[idx[0]][idx[1]]++;
+    }
+
+    @Override
+    public void merge() {
+      for (int ig = 0; ig < partial.length; ig++) {
+        int[] count = counts.get(ig);
+        for (int is = 0; is < count.length; is++)
+          count[is] += partial[ig][is];
+      }
+    }
+  }
   
   @SuppressWarnings("unused")
   @Override
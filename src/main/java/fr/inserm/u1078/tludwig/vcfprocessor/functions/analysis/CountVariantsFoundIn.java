@@ -3,6 +3,7 @@ package fr.inserm.u1078.tludwig.vcfprocessor.functions.analysis;
 import fr.inserm.u1078.tludwig.maok.UniversalReader;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.MergeJoin;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
@@ -14,8 +15,6 @@ import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 
 public class CountVariantsFoundIn extends ParallelVCFVariantFunction<CountVariantsFoundIn.Analysis> {
   final FileParameter referenceFiles = new FileParameter(OPT_REF, "gnomad.2.1.canonical", "File containing list of files with List of variants found in the reference file (in canonical format)");
@@ -24,9 +23,9 @@ public class CountVariantsFoundIn extends ParallelVCFVariantFunction<CountVarian
   public static final int IS_IN_REFERENCE = 4;
 
   /**
-   * Variants found in the reference
+   * Join with the reference files
    */
-  final HashMap<Integer, HashSet<String>> referenceVariants = new HashMap<>();
+  private MergeJoin referenceVariants;
   /**
    * The counts for each chrom/sample/type
    */
@@ -43,7 +42,8 @@ public class CountVariantsFoundIn extends ParallelVCFVariantFunction<CountVarian
 
   @Override
   public Description getDesc() {
-    return new Description("Variants are filtered than, the count is made by category");
+    return new Description("Variants are filtered than, the count is made by category")
+        .addLine("The reference files must be sorted in the same order as the input file, they are read once, along the input file.");
   }
 
   @Override
@@ -57,36 +57,35 @@ public class CountVariantsFoundIn extends ParallelVCFVariantFunction<CountVarian
 
   private void loadReferenceVariants() {
     Message.info("Listing reference files from "+referenceFiles.getFilename());
+    ArrayList<MergeJoin.Source> sources = new ArrayList<>();
     try (UniversalReader in = this.referenceFiles.getReader()) {
       String line;
       while((line = in.readLine()) != null)
         if(!line.isEmpty())
-          this.loadReferenceVariants(line);
+          sources.add(MergeJoin.openCanonical(line));
     } catch(IOException e) {
       Message.fatal("Could not read reference file ["+referenceFiles+"]", e, true);
     }
+    this.referenceVariants = new MergeJoin(sources.toArray(new MergeJoin.Source[0]));
   }
 
-  private void loadReferenceVariants(String referenceFile) {
-
-    Message.info("Loading known variants from "+referenceFile);
-    int read = 0;
-    try (UniversalReader in = new UniversalReader(referenceFile)) {
-      String line = in.readLine();
-      while((line = in.readLine()) != null) {
-        read++;
-        String canon = line.split(T)[0];
-        int chrom = Integer.parseInt(canon.split(":")[0]);
-        HashSet<String> variants = referenceVariants.computeIfAbsent(chrom, ignored -> new HashSet<>());
-
-        variants.add(canon);
-        if(read % 100000 == 0)
-          Message.progressInfo("Known variants in ["+referenceFile+"] loaded : "+read);
-      }
-    } catch(IOException e) {
-      Message.fatal("Could not read reference file ["+referenceFile+"]", e, true);
-    }
-    Message.info("Known variants in ["+referenceFile+"] loaded : "+read);
+  @Override
+  public MergeJoin getMergeJoin() {
+    return referenceVariants;
+  }
+
+  /**
+   * @param canonical a variant of the input file
+   * @return true if the variant is found in at least one of the reference files
+   */
+  private boolean isInReference(Canonical canonical) {
+    String key = canonical.toString();
+    MergeJoin.Match match = getJoined();
+    for (int s = 0; s < referenceVariants.getNumberOfSources(); s++)
+      for (MergeJoin.Entry entry : match.get(s, canonical.getPos()))
+        if (key.equals(entry.getFields()[0]))
+          return true;
+    return false;
   }
 
   @Override
@@ -145,8 +144,7 @@ public class CountVariantsFoundIn extends ParallelVCFVariantFunction<CountVarian
         int type = 0;
         if (canonical.isSNP())
           type += IS_SNP;
-        HashSet<String> variants = referenceVariants.get(chrom);
-        if (variants != null && variants.contains(canonical.toString()))
+        if (isInReference(canonical))
           type += IS_IN_REFERENCE;
         Genotype[] genotypes = variant.getGenotypes();
         boolean[] present = new boolean[genotypes.length];
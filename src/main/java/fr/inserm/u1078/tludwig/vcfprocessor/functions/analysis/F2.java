@@ -6,7 +6,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.StringParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantPedFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.OutputDirectoryParameter;
-import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeBlock;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 import java.io.IOException;
@@ -82,16 +82,17 @@ public class F2 extends ParallelVCFVariantPedFunction<F2.F2Analysis> {
     int found = 0;
     int first = -1;
     int second = -1;
-    for (Genotype geno : variant.getGenotypes()) {
-      int c = geno.getCount(a);
+    GenotypeBlock genotypes = variant.getGenotypeBlock();
+    for (int g = 0; g < genotypes.size(); g++) {
+      int c = genotypes.getCount(g, a);
       if (c > 1)
         return; //two allele in the same person -> not f2
       if (c == 1) {
         found++;
         if (found == 1)
-          first = this.groups.indexOf(geno.getSample().getGroup());
+          first = this.groups.indexOf(genotypes.getSample(g).getGroup());
         else
-          second = this.groups.indexOf(geno.getSample().getGroup());
+          second = this.groups.indexOf(genotypes.getSample(g).getGroup());
       }
 
       if (found > 2) //more than two allele -> not f2
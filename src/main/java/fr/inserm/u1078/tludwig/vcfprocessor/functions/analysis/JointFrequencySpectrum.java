@@ -167,6 +167,37 @@ public class JointFrequencySpectrum extends ParallelVCFVariantPedFunction<int[]>
   public void processAnalysis(int[] n) {
     count[n[0]][n[1]][n[2]][n[3]]++;
   }
+
+  @Override
+  public boolean isShardable() {
+    return true;
+  }
+
+  @Override
+  public PartialAnalysis<int[]> newPartialAnalysis() {
+    return new PartialCount();
+  }
+
+  /**
+   * Joint counts of a single shard
+   */
+  private class PartialCount implements PartialAnalysis<int[]> {
+    private final int[][][][] partial = new int[nb][nb][size][size];
+
+    @Override
+    public void processAnalysis(int[] n) {
+      partial[n[0]][n[1]][n[2]][n[3]]++;
+    }
+
+    @Override
+    public void merge() {
+      for (int ga = 0; ga < nb; ga++)
+        for (int gb = ga; gb < nb; gb++)
+          for (int ca = 0; ca < size; ca++)
+            for (int cb = 0; cb < size; cb++)
+              count[ga][gb][ca][cb] += partial[ga][gb][ca][cb];
+    }
+  }
   
   @Override
   public TestingScript[] getScripts() {
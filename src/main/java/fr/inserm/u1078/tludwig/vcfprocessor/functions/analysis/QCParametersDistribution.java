@@ -34,6 +34,7 @@ import static fr.inserm.u1078.tludwig.vcfprocessor.functions.vcffilter.QC.*;
 public class QCParametersDistribution extends ParallelVCFVariantPedFunction<QCParametersDistribution.Analysis> {
 
   HashMap<String, ArrayList<String>> samples;
+  private int[][] positions;
   private FisherExactTest fisherET;
 
   private NumberSeries callrateSB;
@@ -191,6 +192,16 @@ public class QCParametersDistribution extends ParallelVCFVariantPedFunction<QCPa
       }
     }
 
+    this.positions = new int[this.samples.size()][];
+    int g = 0;
+    for (String group : this.samples.keySet()) {
+      ArrayList<String> ids = this.samples.get(group);
+      this.positions[g] = new int[ids.size()];
+      for (int s = 0; s < ids.size(); s++)
+        this.positions[g][s] = getVCF().indexOfSample(ids.get(s));
+      g++;
+    }
+
     fisherET = new FisherExactTest(getVCF().getNumberOfSamples());
 
     for (String key : KEYS) {
@@ -255,8 +266,8 @@ public class QCParametersDistribution extends ParallelVCFVariantPedFunction<QCPa
       total[i] = this.samples.get(group).size();
       double[] numHets = new double[variant.getAlleleCount()];
       double[] denomHets = new double[variant.getAlleleCount()];
-      for (String sample : this.samples.get(group)) {
-        Genotype g = variant.getGenotype(sample);
+      for (int position : this.positions[i]) {
+        Genotype g = variant.getGenotype(position);
         
         if (!g.isMissing()){
           a.sumADs.add(g.getSumADOrElseDP());
@@ -275,8 +286,8 @@ public class QCParametersDistribution extends ParallelVCFVariantPedFunction<QCPa
         if (g.isHeterozygousDiploid()) {
           final int[] ad = g.getAD();
           if (ad != null) {
-            int gt1 = g.getAlleles()[0];
-            int gt2 = g.getAlleles()[1];
+            int gt1 = g.getAllele(0);
+            int gt2 = g.getAllele(1);
             numHets[gt1] += ad[gt1];
             numHets[gt2] += ad[gt2];
             denomHets[gt1] += ad[gt1] + ad[gt2];
@@ -4,6 +4,7 @@ import fr.inserm.u1078.tludwig.maok.SortedList;
 import fr.inserm.u1078.tludwig.maok.UniversalReader;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.AnnotationStore;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantPedFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.format.PrepareGnomADFile;
@@ -11,6 +12,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.StringParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.TSVFileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Canonical;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.CanonicalMap;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
@@ -27,16 +29,18 @@ public class RAVAQOutput extends ParallelVCFVariantPedFunction<RAVAQOutput.Varia
   private final FileParameter variantList = new FileParameter(OPT_FILE, "RAVAQ/run.step4.RARE.genefile.txt", "List of variants and their genes");
   private final TSVFileParameter gnomadFiles = new TSVFileParameter(OPT_FILES, "gnomad.list", "A list of gnomAD file, created with "+ PrepareGnomADFile.class.getSimpleName()+" the 1st column is exome/genome, the 2nd is the chrom(as CHR17) and the 3rd is the filename");
   private final StringParameter gnomadSubpop = new StringParameter(OPT_POP, "NFE", "A gnomAD Population");
-  private final HashMap<Canonical, String> variantNames = new HashMap<>();
-  private final HashMap<Canonical, String> genesByVariants = new HashMap<>();
+  private final CanonicalMap<String> variantNames = new CanonicalMap<>();
+  private final CanonicalMap<String> genesByVariants = new CanonicalMap<>();
   private final SortedList<String> geneList = new SortedList<>(new ArrayList<>(), SortedList.Strategy.ADD_INSERT_SORT);
   private final ArrayList<String> groups = new ArrayList<>();
   private final ArrayList<Double> ANS = new ArrayList<>();
   private HashMap<String, ArrayList<String>> results = new HashMap<>();
   private final AtomicInteger counter = new AtomicInteger(0);
 
-  private final HashMap<Canonical, PrepareGnomADFile.GnomAD> gnomadExome = new HashMap<>();
-  private final HashMap<Canonical, PrepareGnomADFile.GnomAD> gnomadGenome = new HashMap<>();
+  private final CanonicalMap<PrepareGnomADFile.GnomAD> gnomadExome = new CanonicalMap<>();
+  private final CanonicalMap<PrepareGnomADFile.GnomAD> gnomadGenome = new CanonicalMap<>();
+  private final ArrayList<AnnotationStore> gnomadExomeStores = new ArrayList<>();
+  private final ArrayList<AnnotationStore> gnomadGenomeStores = new ArrayList<>();
 
   @Override
   public String getSummary() {
@@ -109,16 +113,21 @@ public class RAVAQOutput extends ParallelVCFVariantPedFunction<RAVAQOutput.Varia
       String filename = f[2];
       switch (type) {
         case "exomes":
-        case "exome" : loadGnomAD(filename, gnomadExome); break;
+        case "exome" : loadGnomAD(filename, gnomadExome, gnomadExomeStores); break;
         case "genomes":
-        case "genome" : loadGnomAD(filename, gnomadGenome); break;
+        case "genome" : loadGnomAD(filename, gnomadGenome, gnomadGenomeStores); break;
         default: System.err.println("Unknown GnomAD type ["+type+"]");
       }
     }
     in.close();
   }
 
-  private void loadGnomAD(String filename, HashMap<Canonical, PrepareGnomADFile.GnomAD> gnomad) throws IOException {
+  private void loadGnomAD(String filename, CanonicalMap<PrepareGnomADFile.GnomAD> gnomad, ArrayList<AnnotationStore> stores) throws IOException {
+    if(AnnotationStore.isAnnotationStore(filename)) {
+      stores.add(new AnnotationStore(filename, AnnotationStore.TYPE_PREPARED_GNOMAD));
+      Message.info("Using annotation store " + filename);
+      return;
+    }
     UniversalReader in = new UniversalReader(filename);
     String line;
     int count = 0;
@@ -126,9 +135,9 @@ public class RAVAQOutput extends ParallelVCFVariantPedFunction<RAVAQOutput.Varia
     while((line = in.readLine()) != null){
       count++;
       Message.info(count%10000 == 0, "Loaded " + kept+"/"+count + " GnomAD variants from " + filename);
-      PrepareGnomADFile.GnomAD gnomAD = new PrepareGnomADFile.GnomAD(line);
-      if(variantNames.containsKey(gnomAD.getCanonical())) {
-        gnomad.put(gnomAD.getCanonical(), gnomAD);
+      Canonical canonical = PrepareGnomADFile.GnomAD.getCanonical(line);
+      if(variantNames.containsKey(canonical)) {
+        gnomad.put(canonical, new PrepareGnomADFile.GnomAD(line));
         kept++;
       }
     }
@@ -140,6 +149,8 @@ public class RAVAQOutput extends ParallelVCFVariantPedFunction<RAVAQOutput.Varia
   public void end() {
     super.end();
     Message.info("VCF done");
+    closeStores(gnomadExomeStores);
+    closeStores(gnomadGenomeStores);
 
     Message.info("Genes existing ["+geneList.size()+"] genes with variants ["+results.size()+"] processed variants ["+counter+"]");
 
@@ -227,10 +238,30 @@ public class RAVAQOutput extends ParallelVCFVariantPedFunction<RAVAQOutput.Varia
     return NO_OUTPUT;
   }
 
+  private static void closeStores(ArrayList<AnnotationStore> stores) {
+    for(AnnotationStore store : stores)
+      try {
+        store.close();
+      } catch (IOException e) {
+        Message.warning("Unable to close gnomAD annotation store");
+      }
+  }
+
+  private static PrepareGnomADFile.GnomAD getGnomAD(Canonical canonical, CanonicalMap<PrepareGnomADFile.GnomAD> gnomad, ArrayList<AnnotationStore> stores) {
+    PrepareGnomADFile.GnomAD ret = gnomad.get(canonical);
+    if(ret == null)
+      for(AnnotationStore store : stores) {
+        String line = store.get(canonical);
+        if(line != null)
+          return new PrepareGnomADFile.GnomAD(line);
+      }
+    return ret;
+  }
+
   private String[] getGnomADInfo(Canonical canonical) {
     String[] ret = {"", "", "", "", "", "", "0", ""};
-    PrepareGnomADFile.GnomAD genome = gnomadGenome.get(canonical);
-    PrepareGnomADFile.GnomAD exome = gnomadExome.get(canonical);
+    PrepareGnomADFile.GnomAD genome = getGnomAD(canonical, gnomadGenome, gnomadGenomeStores);
+    PrepareGnomADFile.GnomAD exome = getGnomAD(canonical, gnomadExome, gnomadExomeStores);
     if(genome != null) {
       ret[0] = genome.getAF();
       ret[1] = genome.getAF(gnomadSubpop.getStringValue());
@@ -5,7 +5,8 @@ import fr.inserm.u1078.tludwig.maok.tools.StringTools;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantPedFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
-import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeBlock;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeFormat;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
@@ -23,19 +24,10 @@ import java.util.HashMap;
 public class SampleStats extends ParallelVCFVariantPedFunction<SampleStats.Analysis> {
 
   private int S;
-  private int nbSites = 0;
-  private int[] depths;
-  private int[] depthPresent;
-  private int[] missings;
-  private int[] singletons;
-  private int[] tss;
-  private int[] tvs;
-  private int[] hets;
-  private int[] homAlts;
-  private int[] haploids;
-  private int[] variants;
+  private Counts counts;
 
   private ArrayList<Sample> samples;
+  private int[] positions;
 
   public static final String[] HEADERS = {"Sample", "Group", "Sites", "Genotyped", "Missing", "%Missing", "MeanDepths", "Variants", "Singletons", "TS", "TV", "TS/TV", "Het", "HetRatio", "HomAlt", "Haploid"};
 
@@ -53,7 +45,7 @@ public class SampleStats extends ParallelVCFVariantPedFunction<SampleStats.Analy
 
   @SuppressWarnings("unused")
   @Override
-  public VCFPolicies getVCFPolicies() { return VCFPolicies.nothing(VCFPolicies.MultiAllelicPolicy.ALLELE_AS_LINE); }
+  public VCFPolicies getVCFPolicies() { return VCFPolicies.nothing(VCFPolicies.MultiAllelicPolicy.ALLELE_AS_LINE).requireFormats(GenotypeFormat.GT, GenotypeFormat.DP).requireInfos(); }
 
   @Override
   public String getOutputExtension() {
@@ -67,41 +59,39 @@ public class SampleStats extends ParallelVCFVariantPedFunction<SampleStats.Analy
   @Override
   public void begin() {
     S = getVCF().getNumberOfSamples();
-    depths = new int[S];
-    depthPresent = new int[S];
-    missings = new int[S];
-    singletons = new int[S];
-    tss = new int[S];
-    tvs = new int[S];
-    hets = new int[S];
-    homAlts = new int[S];
-    haploids = new int[S];
-    variants = new int[S];
+    counts = new Counts();
     samples = getPed().getSamples();
+    positions = new int[S];
+    for (int s = 0; s < S; s++)
+      positions[s] = getVCF().indexOfSample(samples.get(s));
   }
 
   @Override
   public String[] getFooters() {
     ArrayList<String> out = new ArrayList<>();
+    int nbSites = counts.nbSites;
+    int[] missings = counts.missings;
+    int[] tss = counts.tss;
+    int[] tvs = counts.tvs;
     for (int s = 0; s < S; s++) {
       Sample sample = this.samples.get(s);
-      int genotyped = nbSites - this.missings[s];
+      int genotyped = nbSites - missings[s];
       String[] values = {sample.getId(),
           sample.getGroup(),
           nbSites+"",
           genotyped+"",
-          this.missings[s]+"",
-          StringTools.formatRatio(100*this.missings[s], nbSites, 4)+"%",
-          StringTools.formatRatio(this.depths[s],this.depthPresent[s],4),
-          this.variants[s]+"",
-          this.singletons[s]+"",
-          this.tss[s]+"",
-          this.tvs[s]+"",
-          this.tvs[s] != 0 ? StringTools.formatRatio(this.tss[s], tvs[s], 4) : "0",
-          this.hets[s]+"",
-          genotyped != 0 ? StringTools.formatRatio(this.hets[s], genotyped, 4) : "0",
-          this.homAlts[s]+"",
-          this.haploids[s]+""
+          missings[s]+"",
+          StringTools.formatRatio(100*missings[s], nbSites, 4)+"%",
+          StringTools.formatRatio(counts.depths[s],counts.depthPresent[s],4),
+          counts.variants[s]+"",
+          counts.singletons[s]+"",
+          tss[s]+"",
+          tvs[s]+"",
+          tvs[s] != 0 ? StringTools.formatRatio(tss[s], tvs[s], 4) : "0",
+          counts.hets[s]+"",
+          genotyped != 0 ? StringTools.formatRatio(counts.hets[s], genotyped, 4) : "0",
+          counts.homAlts[s]+"",
+          counts.haploids[s]+""
       };
 
       out.add(String.join(T, values));
@@ -131,24 +121,25 @@ public class SampleStats extends ParallelVCFVariantPedFunction<SampleStats.Analy
       tstv.put(a,variant.getVariantType(a));
 
 
+    GenotypeBlock genotypes = variant.getGenotypeBlock();
     for (int s = 0; s < S; s++) {
-      Sample sample = samples.get(s);
-      Genotype geno = variant.getGenotype(sample);
-      Message.asserts(geno != null, "No genotype found for [" + samples.get(s).getId() + "] " + variant.shortString());
+      int g = positions[s];
+      Message.asserts(g > -1, "No genotype found for [" + samples.get(s).getId() + "] " + variant.shortString());
 
-      lDepths[s] = geno.getDP(); //changed to get the same results as vcftools and bcftools (take dp of missing genotype, but if dp itself is missing does not fall back on sumAD)
-      if (geno.isMissing())
+      lDepths[s] = genotypes.getDP(g); //changed to get the same results as vcftools and bcftools (take dp of missing genotype, but if dp itself is missing does not fall back on sumAD)
+      if (genotypes.isMissing(g))
         lMissings[s] = true;
       else {
         // lDepths[s] = Math.max(geno.getSumAD(), geno.getDP()); // changed to get the same results as vcftools and bcftools
-        if(geno.isHeterozygousDiploid())
+        if(genotypes.isHeterozygousDiploid(g))
           lHets[s]++;
-        if(geno.isHaploid() && geno.hasAlternate())
+        boolean hasAlternate = genotypes.hasAlternate(g);
+        if(genotypes.isHaploid(g) && hasAlternate)
           lHaploids[s]++;
-        if(geno.isHomozygousToAlt())
+        if(genotypes.isHomozygous(g) && hasAlternate)
           lHomAlts[s]++;
         for (int a : nonStar)
-          if (geno.hasAllele(a)) {
+          if (genotypes.hasAllele(g, a)) {
             lVariants[s]++;
             if (1== acs[a])
             // if (geno.getCount(a) == acs[a]) // check is 1/1 is indeed a singleton
@@ -167,21 +158,74 @@ public class SampleStats extends ParallelVCFVariantPedFunction<SampleStats.Analy
   @SuppressWarnings("unused")
   @Override
   public void processAnalysis(Analysis a) {
-    nbSites++;
-    for (int s = 0; s < S; s++) {
-      tss[s] += a.lTransitions[s];
-      tvs[s] += a.lTransversions[s];
-      homAlts[s] += a.lHomAlts[s];
-      variants[s] += a.lVariants[s];
-      hets[s] += a.lHets[s];
-      haploids[s] += a.lHaploids[s];
-      singletons[s] += a.lSingletons[s];
-      if(a.lDepths[s] > -1) {
-        depths[s] += a.lDepths[s];
-        depthPresent[s]++;
+    counts.add(a);
+  }
+
+  @Override
+  public boolean isShardable() {
+    return true;
+  }
+
+  @Override
+  public PartialAnalysis<Analysis> newPartialAnalysis() {
+    return new Counts();
+  }
+
+  /**
+   * Sums of the statistics of each sample, for the whole file or for a shard
+   */
+  private class Counts implements PartialAnalysis<Analysis> {
+    private int nbSites = 0;
+    private final int[] depths = new int[S];
+    private final int[] depthPresent = new int[S];
+    private final int[] missings = new int[S];
+    private final int[] singletons = new int[S];
+    private final int[] tss = new int[S];
+    private final int[] tvs = new int[S];
+    private final int[] hets = new int[S];
+    private final int[] homAlts = new int[S];
+    private final int[] haploids = new int[S];
+    private final int[] variants = new int[S];
+
+    private void add(Analysis a) {
+      nbSites++;
+      for (int s = 0; s < S; s++) {
+        tss[s] += a.lTransitions[s];
+        tvs[s] += a.lTransversions[s];
+        homAlts[s] += a.lHomAlts[s];
+        variants[s] += a.lVariants[s];
+        hets[s] += a.lHets[s];
+        haploids[s] += a.lHaploids[s];
+        singletons[s] += a.lSingletons[s];
+        if(a.lDepths[s] > -1) {
+          depths[s] += a.lDepths[s];
+          depthPresent[s]++;
+        }
+        if(a.lMissings[s])
+          missings[s]++;
+      }
+    }
+
+    @Override
+    public void processAnalysis(Analysis a) {
+      add(a);
+    }
+
+    @Override
+    public void merge() {
+      counts.nbSites += nbSites;
+      for (int s = 0; s < S; s++) {
+        counts.depths[s] += depths[s];
+        counts.depthPresent[s] += depthPresent[s];
+        counts.missings[s] += missings[s];
+        counts.singletons[s] += singletons[s];
+        counts.tss[s] += tss[s];
+        counts.tvs[s] += tvs[s];
+        counts.hets[s] += hets[s];
+        counts.homAlts[s] += homAlts[s];
+        counts.haploids[s] += haploids[s];
+        counts.variants[s] += variants[s];
       }
-      if(a.lMissings[s])
-        missings[s]++;
     }
   }
 
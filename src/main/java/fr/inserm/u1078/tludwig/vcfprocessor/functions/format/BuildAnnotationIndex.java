@@ -0,0 +1,110 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.functions.format;
+
+import fr.inserm.u1078.tludwig.maok.UniversalReader;
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.AnnotationStore;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.InfoIndex;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.Function;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.analysis.CompareToGnomAD;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.analysis.RAVAQOutput;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.EnumParameter;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.vcfannotate.AddDbSNP;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Canonical;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
+import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
+
+import java.util.Date;
+
+/**
+ * Builds a memory-mapped annotation store from a dbSNP/gnomAD file, to be used instead of the original file by
+ * AddDbSNP, CompareToGnomAD and RAVAQOutput
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class BuildAnnotationIndex extends Function {
+
+  private final FileParameter source = new FileParameter(OPT_FILE, "dbsnp.vcf.gz", "Annotation source file (can be gzipped)");
+  private final EnumParameter type = new EnumParameter(OPT_TYPE, new String[]{AnnotationStore.TYPE_DBSNP, AnnotationStore.TYPE_GNOMAD, AnnotationStore.TYPE_PREPARED_GNOMAD}, AnnotationStore.TYPE_DBSNP, "Type of the source file");
+
+  @Override
+  public String getSummary() {
+    return "Builds a memory-mapped annotation store from a dbSNP/gnomAD file";
+  }
+
+  @SuppressWarnings("unused")
+  @Override
+  public Description getDescription() {
+    return new Description(this.getSummary())
+            .addLine("The store is built once, and can then be given instead of the source file to :")
+            .addItemize(
+                Description.code(AddDbSNP.class.getSimpleName()) + " (type " + Description.code(AnnotationStore.TYPE_DBSNP) + ", from a dbSNP VCF file)",
+                Description.code(CompareToGnomAD.class.getSimpleName()) + " (type " + Description.code(AnnotationStore.TYPE_GNOMAD) + ", from a gnomAD VCF file)",
+                Description.code(RAVAQOutput.class.getSimpleName()) + " (type " + Description.code(AnnotationStore.TYPE_PREPARED_GNOMAD) + ", from a file created by " + Description.code(PrepareGnomADFile.class.getSimpleName()) + ")")
+            .addLine("Annotations are read from the store as they are needed, so the functions start immediately, and their memory usage does not depend on the size of the annotation source.")
+            .addLine("The source file is expected to be sorted. The output file must not be compressed.");
+  }
+
+  @Override
+  public String getOutputExtension() {
+    return OUT_ANNOT;
+  }
+
+  @SuppressWarnings("unused")
+  @Override
+  public void executeFunction() throws Exception {
+    if (isOutputBgzipped() || (this.outFilename.getStringValue() != null && this.outFilename.getStringValue().endsWith(".gz")))
+      Message.die("The annotation store can't be compressed");
+    String storeType = this.type.getStringValue();
+    AnnotationStore.Builder builder = new AnnotationStore.Builder(System.out, storeType);
+    long start = new Date().getTime();
+    int read = 0;
+    try (UniversalReader in = this.source.getReader()) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.isEmpty() || line.charAt(0) == '#')
+          continue;
+        read++;
+        Message.progressInfo(read % 100000 == 0, progression("lines", read, this.source.getFilename(), start));
+        switch (storeType) {
+          case AnnotationStore.TYPE_DBSNP:
+            addDbSNP(builder, line);
+            break;
+          case AnnotationStore.TYPE_GNOMAD:
+            addGnomAD(builder, line);
+            break;
+          default:
+            builder.add(new PrepareGnomADFile.GnomAD(line).getCanonical(), line);
+        }
+      }
+    }
+    builder.close();
+    Message.info(progression("lines", read, this.source.getFilename(), start));
+    Message.info(builder.getNbKeys() + " annotations written");
+  }
+
+  private static void addDbSNP(AnnotationStore.Builder builder, String line) throws java.io.IOException {
+    String[] f = line.split(T, VCF.IDX_INFO + 2);
+    builder.add(f[VCF.IDX_CHROM], Integer.parseInt(f[VCF.IDX_POS]), "", AddDbSNP.getDbSNPValue(f[VCF.IDX_INFO]));
+  }
+
+  private static void addGnomAD(AnnotationStore.Builder builder, String line) throws java.io.IOException {
+    String[] f = line.split(T, VCF.IDX_INFO + 2);
+    int chr = Variant.chromToNumber(f[VCF.IDX_CHROM]);
+    int pos = Integer.parseInt(f[VCF.IDX_POS]);
+    String ref = f[VCF.IDX_REF];
+    String[] alts = f[VCF.IDX_ALT].split(",");
+    InfoIndex infos = new InfoIndex(f[VCF.IDX_INFO], null);
+    int[] acs = CompareToGnomAD.getACs(infos);
+    int an = CompareToGnomAD.getAN(infos);
+    for (int i = 0; i < alts.length; i++)
+      builder.add(new Canonical(chr, pos, ref, alts[i]), CompareToGnomAD.getGnomADValue(acs[i], an));
+  }
+
+  @Override
+  public TestingScript[] getScripts() {
+    return TestingScript.getEmpty();
+  }
+}
@@ -1,6 +1,7 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions.format;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.InfoIndex;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
@@ -39,7 +40,7 @@ public class PrepareGnomADFile extends ParallelVCFFunction<PrepareGnomADFile.Gno
   public String[] processInputRecord(VariantRecord record) {
     String[] ret = new String[record.getAlts().length];
     String filter = record.getFiltersString();
-    String info = record.getInfoString();
+    InfoIndex info = record.getInfoIndex();
     for(int a = 0 ; a < record.getAlts().length; a++) {
       ret[a] = new GnomAD(new Canonical(record.getChrom(), record.getPos(), record.getRef(), record.getAlts()[a]), filter, info, a).toString();
     }
@@ -84,108 +85,35 @@ public class PrepareGnomADFile extends ParallelVCFFunction<PrepareGnomADFile.Gno
       af_sas = f[10];
     }
 
-    public GnomAD(Canonical canonical, String filter, String info, int alt){
+    /**
+     * @param canonical the variant
+     * @param filter the FILTER column
+     * @param info the INFO index of the record
+     * @param alt the index of the alternate allele (0 to N-1)
+     */
+    public GnomAD(Canonical canonical, String filter, InfoIndex info, int alt){
       this.canonical = canonical;
       this.filter = filter;
-      String[] f = info.split(";");
-      double ac = 0;
-      double ac_afr = 0;
-      double ac_amr = 0;
-      double ac_asj = 0;
-      double ac_eas = 0;
-      double ac_fin = 0;
-      double ac_mid = 0;
-      double ac_nfe = 0;
-      double ac_sas = 0;
-      double an = 0;
-      double an_afr = 0;
-      double an_amr = 0;
-      double an_asj = 0;
-      double an_eas = 0;
-      double an_fin = 0;
-      double an_mid = 0;
-      double an_nfe = 0;
-      double an_sas = 0;
-      for(String field : f){
-          String[] kv = field.split("=");
-          switch(kv[0].toLowerCase()){
-            case "ac":
-              ac = parse(kv[1], alt);
-              break;
-            case "ac_afr":
-              ac_afr = parse(kv[1], alt);
-              break;
-            case "ac_amr":
-              ac_amr = parse(kv[1], alt);
-              break;
-            case "ac_asj":
-              ac_asj = parse(kv[1], alt);
-              break;
-            case "ac_eas":
-              ac_eas = parse(kv[1], alt);
-              break;
-            case "ac_fin":
-              ac_fin = parse(kv[1], alt);
-              break;
-            case "ac_mid":
-              ac_mid = parse(kv[1], alt);
-              break;
-            case "ac_nfe":
-              ac_nfe = parse(kv[1], alt);
-              break;
-            case "ac_sas":
-              ac_sas = parse(kv[1], alt);
-              break;
-            case "an":
-              an = parse(kv[1], alt);
-              break;
-            case "an_afr":
-              an_afr = parse(kv[1], alt);
-              break;
-            case "an_amr":
-              an_amr = parse(kv[1], alt);
-              break;
-            case "an_asj":
-              an_asj = parse(kv[1], alt);
-              break;
-            case "an_eas":
-              an_eas = parse(kv[1], alt);
-              break;
-            case "an_fin":
-              an_fin = parse(kv[1], alt);
-              break;
-            case "an_mid":
-              an_mid = parse(kv[1], alt);
-              break;
-            case "an_nfe":
-              an_nfe = parse(kv[1], alt);
-              break;
-            case "an_sas":
-              an_sas = parse(kv[1], alt);
-              break;
-          }
-      }
-
-      af = divide(ac, an);
-      af_afr =  divide(ac_afr, an_afr);
-      af_amr = divide(ac_amr, an_amr);
-      af_asj = divide(ac_asj, an_asj);
-      af_eas = divide(ac_eas, an_eas);
-      af_fin = divide(ac_fin, an_fin);
-      af_mid = divide(ac_mid, an_mid);
-      af_nfe = divide(ac_nfe, an_nfe);
-      af_sas = divide(ac_sas, an_sas);
+      int allele = alt + 1;
+      af = frequency(info, "", allele);
+      af_afr = frequency(info, "_afr", allele);
+      af_amr = frequency(info, "_amr", allele);
+      af_asj = frequency(info, "_asj", allele);
+      af_eas = frequency(info, "_eas", allele);
+      af_fin = frequency(info, "_fin", allele);
+      af_mid = frequency(info, "_mid", allele);
+      af_nfe = frequency(info, "_nfe", allele);
+      af_sas = frequency(info, "_sas", allele);
     }
 
-    private double parse(String value, int alt){
-      if(value == null || value.isEmpty())
-        return 0;
-      String[] values =  value.split(",");
-      try {
-        return Double.parseDouble(values[alt]);
-      } catch(Exception e){
-        return 0;
-      }
+    /**
+     * @param info the INFO index of the record
+     * @param suffix the suffix of the population
+     * @param allele the alternate allele (1 to N)
+     * @return AC/AN for the allele and the population
+     */
+    private String frequency(InfoIndex info, String suffix, int allele) {
+      return divide(info.getDouble("AC" + suffix, allele, 0), info.getDouble("AN" + suffix, allele, 0));
     }
 
     private String divide(double ac, double an) {
@@ -217,5 +145,14 @@ public class PrepareGnomADFile extends ParallelVCFFunction<PrepareGnomADFile.Gno
     public Canonical getCanonical() {
       return canonical;
     }
+
+    /**
+     * @param line a line of a file created by PrepareGnomADFile
+     * @return the canonical variant of the line, without parsing the frequencies
+     */
+    public static Canonical getCanonical(String line) {
+      int tab = line.indexOf('\t');
+      return Canonical.deserialize(tab < 0 ? line : line.substring(0, tab));
+    }
   }
 }
@@ -1,102 +1,281 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions.other;
 
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.maok.tools.StringTools;
+import fr.inserm.u1078.tludwig.vcfprocessor.commandline.SAMArguments;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.Bed;
-import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.AlignmentRecord;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.CoverageEngine;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.IndexedAlignmentProducer;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.SAM;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.SAMException;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.alignments.SAMHeader;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.Function;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.BedFileParameter;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.EnumParameter;
+import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.ListParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.SAMFileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Region;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.ThreadConfiguration;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThread;
 import fr.inserm.u1078.tludwig.vcfprocessor.utils.WellBehavedThreadFactory;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
-public class BAMCoverage  extends Function {
-  SAMFileParameter samFile = new SAMFileParameter(OPT_BAM, "sample1.bam", "The bam file to process");
-  BedFileParameter bedFile = new BedFileParameter(OPT_BED, "regions.bed", "Regions");
+/**
+ * Computes the depth of coverage of a BAM/CRAM file, each reference being processed by its own worker
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class BAMCoverage extends Function {
+  public static final String MODE_BEDGRAPH = "bedgraph";
+  public static final String MODE_REGIONS = "regions";
 
-  private SAM sam;
-  LinkedBlockingQueue<AlignmentRecord> records = new LinkedBlockingQueue<>(50);
+  private final SAMFileParameter samFile = new SAMFileParameter(OPT_BAM, "sample1.bam", "The bam/cram file to process (must be indexed)");
+  private final BedFileParameter bedFile = new BedFileParameter(OPT_BED, "regions.bed", "Regions (\"null\" for the whole references)");
+  private final EnumParameter mode = new EnumParameter(OPT_MODE, new String[]{MODE_BEDGRAPH, MODE_REGIONS}, MODE_REGIONS, "Output the depth as a BED-graph, or summary statistics for each region");
+  private final ListParameter thresholds = new ListParameter(OPT_THRESHOLD, "1,10,20,30", "Depths for which the fraction of bases covered at least at this depth is given (in regions mode)");
+
+  private int[] depths;
 
   @Override
   public String getSummary() {
-    return "Print the info from of a BAM file to compute coverage";
+    return "Computes the depth of coverage of a BAM/CRAM file, as a BED-graph or as summary statistics over regions";
   }
 
+  @SuppressWarnings("unused")
   @Override
   public Description getDescription() {
-    return new Description("TODO set");
+    return new Description(this.getSummary())
+        .addLine("The depth at each position is the number of alignments with a M/=/X CIGAR operation on it. Deletions, skipped regions (N) and unmapped alignments are not counted.")
+        .addLine("The alignments can be filtered with " + Description.code(SAMArguments.MIN_MAPQ.getKey()) + ", " + Description.code(SAMArguments.REQUIRE_FLAGS.getKey()) + " and " + Description.code(SAMArguments.EXCLUDE_FLAGS.getKey()) + ".")
+        .addLine("Use " + Description.code(SAMArguments.EXCLUDE_FLAGS.getKey() + " 1796") + " to reproduce the default behaviour of samtools depth/mosdepth.")
+        .addLine("Modes :")
+        .addItemize(
+            Description.code(MODE_BEDGRAPH) + " : chrom, start (0-based), end, depth; consecutive positions with the same depth are merged",
+            Description.code(MODE_REGIONS) + " : chrom, start (0-based), end, name, mean/min/max depth, and the fraction of bases covered at least at each threshold")
+        .addLine("The references are processed in parallel, each worker reading the BAM/CRAM file with its own stream. The output is in the order of the references of the file.")
+        .addLine("CRAM files are decoded with the reference given by " + Description.code("--cramref") + " (or the local file in the UR field of the header).");
   }
 
   @Override
   public String getOutputExtension() {
-    return OUT_SAM;
+    return OUT_BED;
   }
 
   @Override
   public void executeFunction() throws Exception {
-    sam = samFile.getSAM();
+    SAM sam = samFile.getSAM();
+    IndexedAlignmentProducer alignments = sam.getBAM() != null ? sam.getBAM() : sam.getCRAM();
+    if (alignments == null)
+      Message.die("[" + samFile.getFilename() + "] is not an indexed BAM/CRAM file");
+    boolean regionsMode = MODE_REGIONS.equals(mode.getStringValue());
+    if (regionsMode)
+      depths = parseThresholds();
+
+    Bed bed = "null".equals(bedFile.getFilename()) ? null : bedFile.getBed();
+    CoverageEngine engine = new CoverageEngine(alignments, sam.getCommandParser().getSAMLineFilters());
+
+    ArrayList<ReferenceWorker> workers = new ArrayList<>();
+    SAMHeader.Reference[] references = alignments.getHeaders().getReferences();
+    for (int ref = 0; ref < references.length; ref++) {
+      List<Region> regions = getRegions(bed, references[ref]);
+      if (!regions.isEmpty())
+        workers.add(new ReferenceWorker(engine, ref, references[ref].getName(), regions, regionsMode));
+    }
 
-    ExecutorService threadPool = Executors.newFixedThreadPool(2, new WellBehavedThreadFactory());
+    if (regionsMode) {
+      StringBuilder header = new StringBuilder("#chrom\tstart\tend\tname\tmean\tmin\tmax");
+      for (int depth : depths)
+        header.append("\t>=").append(depth);
+      println(header);
+    }
 
+    ExecutorService threadPool = Executors.newFixedThreadPool(ThreadConfiguration.getWorkers(), new WellBehavedThreadFactory());
+    for (ReferenceWorker worker : workers)
+      threadPool.submit(worker);
+    threadPool.shutdown();
     try {
-      threadPool.submit(new Printer());
-      threadPool.submit(new Producer());
+      for (ReferenceWorker worker : workers) {
+        worker.done.await();
+        worker.replayOutput();
+      }
+    } catch (InterruptedException e) {
+      Message.fatal("Interrupted while waiting for the workers", e, true);
+    }
+    if (sam.getCRAM() != null)
+      sam.getCRAM().close();
+  }
 
-      threadPool.shutdown();
+  private int[] parseThresholds() {
+    String[] values = thresholds.getList();
+    int[] ret = new int[values.length];
+    for (int i = 0; i < values.length; i++)
+      try {
+        ret[i] = Integer.parseInt(values[i].trim());
+      } catch (NumberFormatException e) {
+        Message.die("Invalid threshold [" + values[i] + "] for " + OPT_THRESHOLD);
+      }
+    return ret;
+  }
 
-      Message.error(!threadPool.awaitTermination(300, TimeUnit.DAYS), "Thread reached its timeout");
-    } catch (InterruptedException ignore) { }
+  /**
+   * @return the regions of the bed on this reference, or the whole reference if there is no bed
+   */
+  private static List<Region> getRegions(Bed bed, SAMHeader.Reference reference) {
+    String name = reference.getName();
+    ArrayList<Region> ret = new ArrayList<>();
+    if (bed == null) {
+      ret.add(new Region(name, 1, reference.getLength(), Region.Format.FULL_1_BASED));
+      return ret;
+    }
+    List<Region> regions = bed.getRegions(Variant.chromToNumber(name));
+    if (regions != null)
+      for (Region region : regions) //other contigs all have the same number
+        if (Variant.isSameChrom(region.getChrom(), name))
+          ret.add(region);
+    ret.sort(Comparator.comparingInt(Region::getStart1Based));
+    return ret;
   }
 
+  /**
+   * Computes the depth for a reference, and stores the output in a temporary file
+   */
+  private class ReferenceWorker extends WellBehavedThread {
+    private final CoverageEngine engine;
+    private final int ref;
+    private final String name;
+    private final List<Region> regions;
+    private final boolean regionsMode;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private File spool;
+
+    ReferenceWorker(CoverageEngine engine, int ref, String name, List<Region> regions, boolean regionsMode) {
+      this.engine = engine;
+      this.ref = ref;
+      this.name = name;
+      this.regions = regions;
+      this.regionsMode = regionsMode;
+    }
 
-  public class Printer extends WellBehavedThread {
     @Override
     public void doRun() {
-      AlignmentRecord record;
-      for(SAMHeader.HeaderRecord header :  sam.getHeaders().getHeaderRecords())
-        println(header);
       try {
-        while (!AlignmentRecord.EOF.equals(record = records.take())) {
-          try {
-            println(record.createAlignment(sam));
-          } catch (SAMException e) {
-            Message.fatal("Can't Create Alignment from record \n" + record, e, true);
-          }
+        spool = File.createTempFile(BAMCoverage.class.getSimpleName() + "." + ref + ".", ".bed");
+        spool.deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(spool.toPath(), StandardCharsets.UTF_8)) {
+          if (regionsMode) {
+            RegionStats stats = new RegionStats(regions);
+            engine.compute(ref, regions, stats);
+            stats.write(name, out);
+          } else
+            engine.compute(ref, regions, (start, end, depth) -> writeRun(out, start, end, depth));
         }
-      } catch(InterruptedException ignore) {Message.fatal("Interrupted", true);}
+        Message.verbose("Reference [" + name + "] processed");
+      } catch (IOException | SAMException e) {
+        Message.fatal("Could not compute the depth on reference [" + name + "] of [" + samFile.getFilename() + "]", e, true);
+      } catch (InterruptedException e) {
+        Message.fatal("Thread was interrupted", e, true);
+      } finally {
+        done.countDown();
+      }
+    }
+
+    private void writeRun(BufferedWriter out, int start, int end, int depth) {
+      try {
+        out.write(name + T + (start - 1) + T + end + T + depth);
+        out.newLine();
+      } catch (IOException e) {
+        Message.fatal("Could not write to [" + spool.getAbsolutePath() + "]", e, true);
+      }
+    }
+
+    /**
+     * Writes the output of the reference, and deletes the temporary file
+     */
+    private void replayOutput() {
+      if (spool == null)
+        return;
+      try (BufferedReader in = Files.newBufferedReader(spool.toPath(), StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = in.readLine()) != null)
+          println(line);
+      } catch (IOException e) {
+        Message.fatal("Could not read the output of reference [" + name + "] from [" + spool.getAbsolutePath() + "]", e, true);
+      }
+      if (!spool.delete())
+        Message.warning("Could not delete temporary file [" + spool.getAbsolutePath() + "]");
     }
   }
 
-  public class Producer extends WellBehavedThread {
+  /**
+   * Summary statistics of the depth over each region (regions can overlap)
+   */
+  private class RegionStats implements CoverageEngine.DepthConsumer {
+    private final List<Region> regions;
+    private final long[] sum;
+    private final int[] min;
+    private final int[] max;
+    private final long[][] atLeast;
+    /** first region that can overlap the next runs */
+    private int first = 0;
+
+    RegionStats(List<Region> regions) {
+      this.regions = regions;
+      this.sum = new long[regions.size()];
+      this.min = new int[regions.size()];
+      this.max = new int[regions.size()];
+      this.atLeast = new long[regions.size()][depths.length];
+      Arrays.fill(min, Integer.MAX_VALUE);
+    }
+
     @Override
-    public void doRun() {
-      try{
-        Bed bed = bedFile.getBed();
-        bed.simplify();
-        for(int chr : bed.getChromosomes()) {
-          int ref = sam.getBAM().getHeaders().getRefFor("" + chr);
-          if (ref != -1) {
-            Message.debug("Looking for regions on ref[" + ref + "]");
-            for(Region region : bed.getRegions(chr))
-              sam.getBAM().populateRecords(ref, region, records);
-            records.put(AlignmentRecord.EOF);
-          }
-        }
-      } catch(InterruptedException e) {
-        Message.fatal("Thread was interrupted", e, true);
-      } catch(SAMException | IOException ioe) {
-        Message.fatal("Can't get alignments", ioe, true);
+    public void run(int start, int end, int depth) {
+      while (first < regions.size() && regions.get(first).getEnd1Based() < start)
+        first++;
+      for (int r = first; r < regions.size() && regions.get(r).getStart1Based() <= end; r++) {
+        Region region = regions.get(r);
+        int length = Math.min(end, region.getEnd1Based()) - Math.max(start, region.getStart1Based()) + 1;
+        if (length <= 0)
+          continue;
+        sum[r] += (long) length * depth;
+        min[r] = Math.min(min[r], depth);
+        max[r] = Math.max(max[r], depth);
+        for (int t = 0; t < depths.length; t++)
+          if (depth >= depths[t])
+            atLeast[r][t] += length;
+      }
+    }
+
+    void write(String name, BufferedWriter out) throws IOException {
+      for (int r = 0; r < regions.size(); r++) {
+        Region region = regions.get(r);
+        int size = region.getSize();
+        StringBuilder line = new StringBuilder(name)
+            .append(T).append(region.getStart0Based())
+            .append(T).append(region.getEnd1Based())
+            .append(T).append(region.getAnnotation() == null ? "." : region.getAnnotation())
+            .append(T).append(StringTools.formatDouble(sum[r] / (double) size, 2))
+            .append(T).append(min[r])
+            .append(T).append(max[r]);
+        for (int t = 0; t < depths.length; t++)
+          line.append(T).append(StringTools.formatDouble(atLeast[r][t] / (double) size, 4));
+        out.write(line.toString());
+        out.newLine();
       }
     }
   }
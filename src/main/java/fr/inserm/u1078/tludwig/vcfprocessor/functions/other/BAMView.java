@@ -10,7 +10,7 @@ public class BAMView extends SAMFunction<Object> {
 
   @Override
   public String getSummary() {
-    return "Print the content of a BAM file";
+    return "Print the content of a BAM/CRAM file";
   }
 
   @Override
@@ -25,6 +25,8 @@ public class BAMView extends SAMFunction<Object> {
 
   @Override
   public String[] processInputRecord(AlignmentRecord record) {
+    if(!(record instanceof BAMRecord))
+      return new String[]{record.toString()};
     BAMRecord bamRecord = (BAMRecord)record;
     String string = bamRecord.getPointer()+T+bamRecord.getRefId()+T+bamRecord.getPos()+T+"bin["+bamRecord.getBin()+"]";
     return new String[]{string};
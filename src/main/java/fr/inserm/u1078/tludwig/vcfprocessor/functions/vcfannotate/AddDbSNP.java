@@ -1,8 +1,9 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions.vcfannotate;
 
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
-import fr.inserm.u1078.tludwig.maok.UniversalReader;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.AnnotationStore;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.MergeJoin;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFFunction;
@@ -10,7 +11,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.List;
 
 /**
  * Adds/updates dbSNP information to the VCF from a dbSNP release file
@@ -33,7 +34,8 @@ public class AddDbSNP extends ParallelVCFFunction<Object> {
 
   private final FileParameter refFile = new FileParameter(OPT_REF, "dbsnp.vcf", "dbSNP reference VCF File (can be gzipped)");
 
-  private HashMap<String, String[]> dbsnp;
+  private MergeJoin dbsnp;
+  private AnnotationStore store;
 
   @Override
   public String getSummary() {
@@ -44,7 +46,9 @@ public class AddDbSNP extends ParallelVCFFunction<Object> {
   @Override
   public Description getDesc() {
     return new Description("Adds dbSNP RS in ID field and INFO field")
-            .addLine("Adds "+Description.code(KEY_RS)+" and "+Description.code(KEY_BUILD)+" in INFO field from the input file "+Description.code(refFile.getKey())+".");
+            .addLine("Adds "+Description.code(KEY_RS)+" and "+Description.code(KEY_BUILD)+" in INFO field from the input file "+Description.code(refFile.getKey())+".")
+            .addLine("The input file and the dbSNP file must be sorted in the same order, the dbSNP file is read once, along the input file.")
+            .addLine("The input file can also be an annotation store created by "+Description.code("BuildAnnotationIndex")+" (type "+Description.code(AnnotationStore.TYPE_DBSNP)+"), which avoids loading the whole dbSNP file in memory.");
   }
 
   @SuppressWarnings("unused")
@@ -60,39 +64,51 @@ public class AddDbSNP extends ParallelVCFFunction<Object> {
   @Override
   public void begin() {
     super.begin();
-    dbsnp = new HashMap<>();
-    try (UniversalReader in = this.refFile.getReader()){
-      String line;
-      Message.progressInfo("Loading");
-      int read = 0;
-      while ((line = in.readLine()) != null) {
-        if (line.startsWith("#"))
-          continue;
-
-        read++;
-        if ((read % 10000) == 0)
-          Message.progressInfo("Loading : " + read);
-
-        String[] f = line.split(T);
-        String key = f[VCF.IDX_CHROM] + "_" + f[VCF.IDX_POS];
-        String[] info = f[VCF.IDX_INFO].split(";");
-
-        String rs = "";
-        String build = "";
-
-        for (String inf : info) {
-          if (inf.startsWith(KEY_RS))
-            rs = inf.substring(KEY_RS.length());
-          if (inf.startsWith(KEY_BUILD))
-            build = inf.substring(KEY_BUILD.length());
-        }
-        dbsnp.put(key, new String[]{rs,build});
+    if (AnnotationStore.isAnnotationStore(this.refFile.getFilename())) {
+      try {
+        store = new AnnotationStore(this.refFile.getFilename(), AnnotationStore.TYPE_DBSNP);
+        Message.info("Using annotation store " + this.refFile.getFilename());
+      } catch (IOException e) {
+        Message.fatal("Unable to open dbSNP annotation store " + this.refFile.getFilename(), e, true);
       }
-    } catch (IOException e) {
-      Message.die("Unable to read dbSNP file " + this.refFile.getFilename());
+      return;
     }
+    dbsnp = new MergeJoin(MergeJoin.open(this.refFile.getFilename()));
+  }
+
+  @SuppressWarnings("unused")
+  @Override
+  public MergeJoin getMergeJoin() {
+    return dbsnp;
+  }
+
+  @SuppressWarnings("unused")
+  @Override
+  public void end() {
+    if (store != null)
+      try {
+        store.close();
+      } catch (IOException e) {
+        Message.warning("Unable to close dbSNP annotation store " + this.refFile.getFilename());
+      }
+    super.end();
+  }
 
-    Message.info(("Loading done"));
+  /**
+   * Extracts the RS and the dbSNP build from the INFO field of a dbSNP release file
+   * @param info the INFO field
+   * @return rs + TAB + build
+   */
+  public static String getDbSNPValue(String info) {
+    String rs = "";
+    String build = "";
+    for (String inf : info.split(";")) {
+      if (inf.startsWith(KEY_RS))
+        rs = inf.substring(KEY_RS.length());
+      if (inf.startsWith(KEY_BUILD))
+        build = inf.substring(KEY_BUILD.length());
+    }
+    return rs + T + build;
   }
 
   @SuppressWarnings("unused")
@@ -103,8 +119,14 @@ public class AddDbSNP extends ParallelVCFFunction<Object> {
 
   @Override
   public String[] processInputRecord(VariantRecord record) {
-    String key = record.getChrom() + "_" + record.getPos();
-    String[] value = dbsnp.get(key);
+    String[] value;
+    if (store != null) {
+      String stored = store.get(record.getChrom(), record.getPos(), "");
+      value = stored == null ? null : stored.split(T, -1);
+    } else {
+      List<MergeJoin.Entry> entries = getJoined().get(0, record.getPos());
+      value = entries.isEmpty() ? null : getDbSNPValue(entries.get(entries.size() - 1).getFields()[VCF.IDX_INFO]).split(T, -1);
+    }
     if (value != null) {
       record.setID("rs" + value[0]);
       record.addInfo(RS_KEY, value[0]);
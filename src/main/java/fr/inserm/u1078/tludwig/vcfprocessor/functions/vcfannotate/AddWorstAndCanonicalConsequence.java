@@ -6,6 +6,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Info;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPAnnotation;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.VEPFormat;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 
 /**
@@ -47,7 +48,7 @@ public class AddWorstAndCanonicalConsequence extends ParallelVCFFunction<Object>
 
   @SuppressWarnings("unused")
   @Override
-  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.ANNOTATION_FOR_ALL); }
+  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.ANNOTATION_FOR_ALL).requireVEPFields(VEPFormat.KEY_SYMBOL, VEPFormat.KEY_CANONICAL); }
 
   @Override
   public String getOutputExtension() {
@@ -57,7 +58,7 @@ public class AddWorstAndCanonicalConsequence extends ParallelVCFFunction<Object>
   @Override
   public String[] processInputRecord(VariantRecord record) {
     int nbAllele = 1 + record.getAlts().length;
-    Info info = new Info(record.getInfo(), getVCF());
+    Info info = new Info(record.getInfoIndex(), getVCF());
     StringBuilder worstCsq = new StringBuilder();
     StringBuilder canonicalCsq = new StringBuilder();
     StringBuilder worstGene = new StringBuilder();
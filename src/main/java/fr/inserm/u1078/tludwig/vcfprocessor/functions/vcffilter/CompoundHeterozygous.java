@@ -55,12 +55,12 @@ public class CompoundHeterozygous extends AbstractCompoundFunction {
     if (this.controls.length == 0)
       Message.die("No control sample present");
     int i = 0;
-    ArrayList<Sample> samples = new ArrayList<>(this.getVCF().getSortedSamples());
+    //positions in the shared sample index, that is in Variant.getGenotypes()
     for (Sample cas : ped.getCases())
-      cases[i++] = samples.indexOf(cas);
+      cases[i++] = this.getVCF().indexOfSample(cas);
     i = 0;
     for (Sample control : ped.getControls())
-      controls[i++] = samples.indexOf(control);
+      controls[i++] = this.getVCF().indexOfSample(control);
   }
 
   /**
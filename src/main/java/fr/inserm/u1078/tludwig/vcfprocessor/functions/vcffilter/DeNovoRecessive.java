@@ -6,7 +6,6 @@ import fr.inserm.u1078.tludwig.vcfprocessor.files.Ped;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFVariantFilterPedFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
-import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
 
@@ -19,9 +18,9 @@ import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
  * Unit Test defined on   2020-08-07
   */
 public class DeNovoRecessive extends ParallelVCFVariantFilterPedFunction {
-  private Sample p1;
-  private Sample p2;
-  private Sample child;
+  private int p1;
+  private int p2;
+  private int child;
 
   @Override
   public String getSummary() {
@@ -50,9 +49,9 @@ public class DeNovoRecessive extends ParallelVCFVariantFilterPedFunction {
     if (ped.getControls().size() != 2)
       Message.die("There should be exactly 2 controls (parents of the case)");
 
-    p1 = ped.getControls().get(0);
-    p2 = ped.getControls().get(1);
-    child =ped.getCases().get(0);
+    p1 = getVCF().indexOfSample(ped.getControls().get(0));
+    p2 = getVCF().indexOfSample(ped.getControls().get(1));
+    child = getVCF().indexOfSample(ped.getCases().get(0));
   }
 
   @Override
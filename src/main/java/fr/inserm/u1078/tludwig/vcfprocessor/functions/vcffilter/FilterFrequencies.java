@@ -37,7 +37,7 @@ public class FilterFrequencies extends ParallelVCFVariantFilterFunction {
 
   @SuppressWarnings("unused")
   @Override
-  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.KEEP_IF_ONE_SATISFY); }
+  public VCFPolicies getVCFPolicies() { return VCFPolicies.onlyVEP(VCFPolicies.MultiAllelicPolicy.KEEP_IF_ONE_SATISFY).requireVEPFields(VEPFormat.FREQUENCY_KEYS); }
 
   private boolean kept(Variant v, int a){
     for(String pop : pops.getList())
@@ -1,15 +1,19 @@
 package fr.inserm.u1078.tludwig.vcfprocessor.functions.vcffilter;
 
+import fr.inserm.u1078.tludwig.maok.tools.Message;
 import fr.inserm.u1078.tludwig.vcfprocessor.documentation.Description;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.ParallelVCFFilterFunction;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.StringParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.testing.TestingScript;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.EvaluatorParsingException;
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.InfoExpression;
 
 public class FilterNumericInfo extends ParallelVCFFilterFunction {
   private final StringParameter query = new StringParameter(OPT_QUERY, "\"VALUE1>0|VALUE2>0\"", "A query describing the variants to filter out");
-  //TODO implement
+
+  private InfoExpression expression;
 
   @Override
   public String getSummary() {
@@ -19,7 +23,9 @@ public class FilterNumericInfo extends ParallelVCFFilterFunction {
   @Override
   public Description getDesc() {
     return new Description("Provide a logical definition for variants to remove. Example:")
-        .addItemize("\"VALUE=17.5\"","\"VALUE1>0|VALUE2>0\"","\"VALUE>20&VALUE<50\"");
+        .addItemize("\"VALUE=17.5\"","\"VALUE1>0|VALUE2>0\"","\"VALUE>20&VALUE<50\"")
+        .addLine("Operators are = != < <= > >=, conditions can be combined with & (or &&), | (or ||) and parentheses, & has precedence over |.")
+        .addLine("For INFO fields with several values, a condition is true if it is true for at least one of the values.");
   }
 
   @SuppressWarnings("unused")
@@ -29,12 +35,19 @@ public class FilterNumericInfo extends ParallelVCFFilterFunction {
   @Override
   public void begin() {
     super.begin();
-    throw new UnsupportedOperationException("Function not yet available");
+    String q = query.getStringValue();
+    if (q.length() > 1 && q.startsWith("\"") && q.endsWith("\""))
+      q = q.substring(1, q.length() - 1);
+    try {
+      expression = InfoExpression.compileNumeric(q);
+    } catch (EvaluatorParsingException e) {
+      Message.die("Could not parse query [" + q + "]. " + e.getMessage());
+    }
   }
 
   @Override
   public String[] processInputRecordForFilter(VariantRecord record) {
-    return new String[0];
+    return expression.evaluate(record.getInfoIndex()) ? NO_OUTPUT : new String[]{record.toString()};
   }
 
   @Override
@@ -42,14 +55,4 @@ public class FilterNumericInfo extends ParallelVCFFilterFunction {
     return new TestingScript[0];
   }
 
-  private static class Condition {
-    final String info;
-    final double value;
-
-    public Condition(String info, double value) {
-      this.info = info;
-      this.value = value;
-    }
-  }
-
 }
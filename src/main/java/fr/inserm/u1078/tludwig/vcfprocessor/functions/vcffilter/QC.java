@@ -13,6 +13,7 @@ import fr.inserm.u1078.tludwig.vcfprocessor.functions.VCFPolicies;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.FileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.functions.parameters.TSVFileParameter;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Genotype;
+import fr.inserm.u1078.tludwig.vcfprocessor.genetics.GenotypeBlock;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Info;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Sample;
 import fr.inserm.u1078.tludwig.vcfprocessor.genetics.Variant;
@@ -125,6 +126,7 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
   private final int[] count = new int[14];
 
   HashMap<String, ArrayList<String>> samples;
+  private int[][] positions;
   private FisherExactTest fisherET;
 
   private Ped ped = null;
@@ -422,15 +424,16 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
     int[][] ac = new int[groups.size()][v.getAlleleCount()];
     int[] an = new int[groups.size()];
 
-    for (Genotype g : v.getGenotypes()) {
-      int i = groups.indexOf(g.getSample().getGroup());
-      int[] as = g.getAlleles();
-      if (as != null) //null indicates missing
-        for (int a : as)
-          if (a > -1) {
-            an[i]++;
-            ac[i][a]++;
-          }
+    GenotypeBlock genotypes = v.getGenotypeBlock();
+    for (int g = 0; g < genotypes.size(); g++) {
+      int i = groups.indexOf(genotypes.getSample(g).getGroup());
+      for (int c = 0; c < genotypes.getNbChrom(g); c++) {//0 chromosome indicates missing
+        int a = genotypes.getAllele(g, c);
+        if (a > -1) {
+          an[i]++;
+          ac[i][a]++;
+        }
+      }
     }
     for (int i = 0; i < groups.size(); i++) {
       String group = groups.get(i);
@@ -525,6 +528,16 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
       }
     }
 
+    this.positions = new int[this.samples.size()][];
+    int g = 0;
+    for (String group : this.samples.keySet()) {
+      ArrayList<String> ids = this.samples.get(group);
+      this.positions[g] = new int[ids.size()];
+      for (int s = 0; s < ids.size(); s++)
+        this.positions[g][s] = getVCF().indexOfSample(ids.get(s));
+      g++;
+    }
+
     fisherET = new FisherExactTest(getVCF().getNumberOfSamples());
 
     for (String key : KEYS) {
@@ -575,33 +588,26 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
     StringBuilder theAB = new StringBuilder();
 
     //DONE Qual by depth (QD) ≥ 2
-    if (this.enableMinQD)
-      try {
-        double d = Double.parseDouble(info.getAnnot(KEY_QD));
-        if (d < this.minQD)
-          export.qualByDepth = d + "";
-      } catch (NullPointerException | NumberFormatException e) {
+    if (this.enableMinQD) {
+      double d = info.getDouble(KEY_QD, Double.NaN);
+      if (Double.isNaN(d))
         export.qualByDepth = MISSING;
-      }
+      else if (d < this.minQD)
+        export.qualByDepth = d + "";
+    }
 
     //DONE Inbreeding coefficient (InbreedingCoeff) either ≥(-0.8) or not calculated
-    if (this.enableMinInbreeding)
-      try {
-        double d = Double.parseDouble(info.getAnnot(KEY_INBREEDING));
-        if (d < this.minInbreeding)
-          export.inbreedingCoef = d + "";
-      } catch (NullPointerException | NumberFormatException e) {
-        //Nothing
-      }
+    if (this.enableMinInbreeding) {
+      double d = info.getDouble(KEY_INBREEDING, Double.NaN);
+      if (!Double.isNaN(d) && d < this.minInbreeding)
+        export.inbreedingCoef = d + "";
+    }
     //DONE MQRankSum (Z-score From Wilcoxon rank sum test of Alt vs. Ref read mapping qualities) either ≥(-12.5) or not calculated
-    if (this.enableMinMQRankSum)
-      try {
-        double d = Double.parseDouble(info.getAnnot(KEY_MQRANKSUM));
-        if (d < this.minMQRankSum)
-          export.mqRankSum = d + "";
-      } catch (NullPointerException | NumberFormatException e) {
-        //Nothing
-      }
+    if (this.enableMinMQRankSum) {
+      double d = info.getDouble(KEY_MQRANKSUM, Double.NaN);
+      if (!Double.isNaN(d) && d < this.minMQRankSum)
+        export.mqRankSum = d + "";
+    }
 
     //The following annotations have different threshold values for SNPs and INDEL, but there is only one value per line, so :
     //-if only SNP -> SNP
@@ -609,78 +615,66 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
     //-if SNP&INDEL -> SNP
     if (variant.hasSNP()) {
       //FS (phred-scaled p-value using Fisher's exact test to detect strand bias) ≤60 for SNPs or ≤200 for indels
-      if (enableMaxFSSNP)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_FS));
-          if (d > this.maxFS_SNP)
-            export.fs = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMaxFSSNP) {
+        double d = info.getDouble(KEY_FS, Double.NaN);
+        if (Double.isNaN(d))
           export.fs = MISSING;
-        }
+        else if (d > this.maxFS_SNP)
+          export.fs = d + "";
+      }
       //SOR (Symmetric Odds Ratio of 2x2 contingency table to detect strand bias) ≤3 for SNPs or ≤10 for indels
-      if (enableMaxSORSNP)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_SOR));
-          if (d > this.maxSOR_SNP)
-            export.sor = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMaxSORSNP) {
+        double d = info.getDouble(KEY_SOR, Double.NaN);
+        if (Double.isNaN(d))
           export.sor = MISSING;
-        }
+        else if (d > this.maxSOR_SNP)
+          export.sor = d + "";
+      }
       //MQ (overall mapping quality of reads supporting a variant call) ≥40 for SNPs or ≥10 for indels
-      if (enableMinMQSNP)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_MQ));
-          if (d < minMQ_SNP)
-            export.mq = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMinMQSNP) {
+        double d = info.getDouble(KEY_MQ, Double.NaN);
+        if (Double.isNaN(d))
           export.mq = MISSING;
-        }
+        else if (d < minMQ_SNP)
+          export.mq = d + "";
+      }
       //ReadPosRankSum (Z-score from Wilcoxon rank sum test of Alt vs. Ref read position bias) either ≥(-8) for SNP or ≥(-20) for indels, or not calculated
-      if (enableMinRPRSSNP)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_READPOSRANKSUM));
-          if (d < minRPRS_SNP)
-            export.readPosRankSum = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
-          //Nothing
-        }
+      if (enableMinRPRSSNP) {
+        double d = info.getDouble(KEY_READPOSRANKSUM, Double.NaN);
+        if (!Double.isNaN(d) && d < minRPRS_SNP)
+          export.readPosRankSum = d + "";
+      }
     } else {
       //FS (phred-scaled p-value using Fisher's exact test to detect strand bias) ≤60 for SNPs or ≤200 for indels
-      if (enableMaxFSIndel)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_FS));
-          if (d > maxFS_Indel)
-            export.fs = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMaxFSIndel) {
+        double d = info.getDouble(KEY_FS, Double.NaN);
+        if (Double.isNaN(d))
           export.fs = MISSING;
-        }
+        else if (d > maxFS_Indel)
+          export.fs = d + "";
+      }
       //SOR (Symmetric Odds Ratio of 2x2 contingency table to detect strand bias) ≤3 for SNPs or ≤10 for indels
-      if (enableMaxSORIndel)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_SOR));
-          if (d > maxSOR_Indel)
-            export.sor = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMaxSORIndel) {
+        double d = info.getDouble(KEY_SOR, Double.NaN);
+        if (Double.isNaN(d))
           export.sor = MISSING;
-        }
+        else if (d > maxSOR_Indel)
+          export.sor = d + "";
+      }
       //MQ (overall mapping quality of reads supporting a variant call) ≥40 for SNPs or ≥10 for indels
-      if (enableMinMQIndel)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_MQ));
-          if (d < minMQ_Indel)
-            export.mq = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
+      if (enableMinMQIndel) {
+        double d = info.getDouble(KEY_MQ, Double.NaN);
+        if (Double.isNaN(d))
           export.mq = MISSING;
-        }
+        else if (d < minMQ_Indel)
+          export.mq = d + "";
+      }
       //ReadPosRankSum (Z-score from Wilcoxon rank sum test of Alt vs. Ref read position bias) either ≥(-8) for SNP or ≥(-20) for indels, or not calculated
-      if (enableMinRPRSIndel)
-        try {
-          double d = Double.parseDouble(info.getAnnot(KEY_READPOSRANKSUM));
-          if (d < minRPRS_Indel)
-            export.readPosRankSum = d + "";
-        } catch (NullPointerException | NumberFormatException e) {
-          //Nothing
-        }
+      if (enableMinRPRSIndel) {
+        double d = info.getDouble(KEY_READPOSRANKSUM, Double.NaN);
+        if (!Double.isNaN(d) && d < minRPRS_Indel)
+          export.readPosRankSum = d + "";
+      }
     }
 
     //FS (phred-scaled p-value using Fisher's exact test to detect strand bias) ≤60 for SNPs or ≤200 for indels
@@ -721,8 +715,8 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
       total[i] = this.samples.get(group).size();
       double[] numHets = new double[variant.getAlleleCount()];
       double[] denomHets = new double[variant.getAlleleCount()];
-      for (String sample : this.samples.get(group)) {
-        Genotype g = variant.getGenotype(sample);
+      for (int position : this.positions[i]) {
+        Genotype g = variant.getGenotype(position);
 
         if (!g.isMissing()) {
           if ((this.enableMinDP && g.getSumADOrElseDP() < this.minDP) ||
@@ -739,8 +733,8 @@ public class QC extends ParallelVCFVariantPedFunction<QC.Export> {
 
         }
         if (g.isHeterozygousDiploid()) {
-          int gt1 = g.getAlleles()[0];
-          int gt2 = g.getAlleles()[1];
+          int gt1 = g.getAllele(0);
+          int gt2 = g.getAllele(1);
           final int[] ad = g.getAD();
           if (ad != null) {
             numHets[gt1] += ad[gt1];
@@ -91,6 +91,11 @@ public class ApplyCorrespondenceTable extends ParallelVCFFilterFunction {
     return ret;
   }
 
+  @Override
+  public boolean isOutputtingInputRecords() {
+    return false; //the INFO field is rewritten
+  }
+
   @Override
   public String[] processInputRecordForFilter(VariantRecord record) {
     String[] f = record.asFields();
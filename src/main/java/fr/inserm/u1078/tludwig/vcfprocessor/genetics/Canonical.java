@@ -10,16 +10,64 @@ import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VariantRecord;
 public class Canonical implements Comparable<Canonical> {
 //TODO read https://genome.sph.umich.edu/wiki/Variant_Normalization and other doc on left alignment and normalization
 
+  /** Returned by getKey() for the variants that can't be packed in 64 bits */
+  public static final long NOT_PACKED = -1;
+
+  private static final int CHR_BITS = 5;
+  private static final int POS_BITS = 28;
+  private static final int LENGTH_BITS = 8;
+  private static final int ALLELE_LENGTH_BITS = 4;
+  private static final int MAX_PACKED_ALLELE = 9;
+  private static final String BASES = "ACGT";
+
   private final int chr;
   private final int pos;
   private final int length;
   private final String allele;
+  private final long key;
 
   private Canonical(int chr, int pos, int length, String allele) {
     this.chr = chr;
     this.pos = pos;
     this.length = length;
     this.allele = allele;
+    this.key = pack(chr, pos, length, allele);
+  }
+
+  /**
+   * Packs a canonical variant in a positive long : chr (5 bits), pos (28 bits), length (8 bits), allele length (4 bits)
+   * and the bases of the allele (2 bits each, at most 9 bases). The key orders variants by chromosome then position
+   * @return the packed key, or NOT_PACKED if a value doesn't fit (long indels, symbolic alleles, positions after 2^28...)
+   */
+  private static long pack(int chr, int pos, int length, String allele) {
+    if (chr < 0 || chr >= 1 << CHR_BITS || pos < 0 || pos >= 1 << POS_BITS || length < 0 || length >= 1 << LENGTH_BITS)
+      return NOT_PACKED;
+    int n = "-".equals(allele) ? 0 : allele.length();
+    if (n > MAX_PACKED_ALLELE)
+      return NOT_PACKED;
+    long bases = 0;
+    for (int i = 0; i < n; i++) {
+      int b = BASES.indexOf(allele.charAt(i));
+      if (b < 0)
+        return NOT_PACKED;
+      bases = (bases << 2) | b;
+    }
+    long key = chr;
+    key = (key << POS_BITS) | pos;
+    key = (key << LENGTH_BITS) | length;
+    key = (key << ALLELE_LENGTH_BITS) | n;
+    return (key << (2 * MAX_PACKED_ALLELE)) | bases;
+  }
+
+  /**
+   * @return the variant packed in a long, or NOT_PACKED if it doesn't fit
+   */
+  public long getKey() {
+    return key;
+  }
+
+  public boolean isPacked() {
+    return key != NOT_PACKED;
   }
 
   public int getChr() {
@@ -134,6 +182,7 @@ public class Canonical implements Comparable<Canonical> {
     this.pos = x;
     this.length = l;
     this.allele = a;
+    this.key = pack(chr, x, l, a);
   }
 
   @Override
@@ -145,12 +194,16 @@ public class Canonical implements Comparable<Canonical> {
   public boolean equals(Object o) {
     if (o == null || getClass() != o.getClass()) return false;
     Canonical canonical = (Canonical) o;
-    return this.toString().equals(canonical.toString());
+    if (this.isPacked())
+      return this.key == canonical.key;
+    return this.chr == canonical.chr && this.pos == canonical.pos && this.length == canonical.length && this.allele.equals(canonical.allele);
   }
 
   @Override
   public int hashCode() {
-    return this.toString().hashCode();
+    if (this.isPacked())
+      return Long.hashCode(this.key);
+    return ((this.chr * 31 + this.pos) * 31 + this.length) * 31 + this.allele.hashCode();
   }
 
   public boolean isSNP() {
@@ -0,0 +1,41 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
+
+import fr.inserm.u1078.tludwig.vcfprocessor.utils.LongHashMap;
+
+import java.util.HashMap;
+
+/**
+ * Map with Canonical variants as keys. The variants that can be packed in a long are stored in a primitive LongHashMap,
+ * the others (long indels, symbolic alleles...) in a HashMap. Not thread-safe.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class CanonicalMap<V> {
+  private final LongHashMap<V> packed = new LongHashMap<>();
+  private final HashMap<Canonical, V> others = new HashMap<>();
+
+  public V get(Canonical canonical) {
+    return canonical.isPacked() ? packed.get(canonical.getKey()) : others.get(canonical);
+  }
+
+  public boolean containsKey(Canonical canonical) {
+    return get(canonical) != null;
+  }
+
+  /**
+   * @param canonical the variant
+   * @param value the value (not null)
+   * @return the previous value associated to the variant, or null
+   */
+  public V put(Canonical canonical, V value) {
+    return canonical.isPacked() ? packed.put(canonical.getKey(), value) : others.put(canonical, value);
+  }
+
+  public int size() {
+    return packed.size() + others.size();
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+}
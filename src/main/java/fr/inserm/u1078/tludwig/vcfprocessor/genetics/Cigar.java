@@ -58,6 +58,26 @@ public class Cigar {
       this.types[i] = types.get(i);
   }
 
+  public int getNumberOfOperations() {
+    return types.length;
+  }
+
+  public int getLength(int i) {
+    return lengths[i];
+  }
+
+  public int getType(int i) {
+    return types[i];
+  }
+
+  /**
+   * @param type the type of the operation
+   * @return true if the operation aligns a base of the read to a base of the reference (M, = or X)
+   */
+  public static boolean isAligned(int type) {
+    return type == M || type == EQ || type == X;
+  }
+
   /**
    * @return The number of reference bases that the read covers, excluding padding.
    */
@@ -6,36 +6,34 @@ import java.util.ArrayList;
 
 /**
  * Genotype from VCF File
+ * A Genotype is a view on the index-th sample of a GenotypeBlock
  *
  * @author Thomas E. Ludwig (INSERM - U1078)
  * Started : 2015/03/17
  */
 public class Genotype {
 
-  private final GenotypeFormat format;
-  private final Sample sample;
-  private String genotype;  
-  private int nbChrom;
-  private int[] alleles;
-  private boolean phased = false;
+  private final GenotypeBlock block;
+  private final int index;
 
   public Genotype(String genotype, GenotypeFormat format, Sample sample) {
-    this.format = format;
-    this.sample = sample;
-    this.setTo(genotype);
+    this(new GenotypeBlock(format, sample.getSingleIndex(), new String[]{genotype}), 0);
   }
-  
+
+  Genotype(GenotypeBlock block, int index) {
+    this.block = block;
+    this.index = index;
+  }
+
+  /**
+   * @return the index of this genotype in its GenotypeBlock
+   */
+  public int getIndex() {
+    return index;
+  }
+
   public final void setTo(String genotype) {
-    this.genotype = genotype;
-    if (genotype.charAt(0) == '.') {//missing
-      this.nbChrom = 0;
-      this.alleles = null;
-    } else {
-      String gts = this.genotype.split(":")[0];
-      this.phased = isPhased(gts);
-      this.alleles = getAlleles(gts);
-      this.nbChrom = this.alleles == null ? 0 : alleles.length;
-    }
+    this.block.set(index, genotype);
   }
 
   /**
@@ -69,7 +67,7 @@ public class Genotype {
   }
 
   public final void setTo(Genotype replacement) {
-    this.setTo(replacement.genotype);
+    this.setTo(replacement.toString());
   }
 
   public final void setToMissing() {
@@ -82,11 +80,11 @@ public class Genotype {
   }
   
   public boolean isPhased(){
-    return this.phased;
+    return this.block.isPhased(index);
   }
 
   public int getFormatSize() {
-    return this.format.size();
+    return this.block.getFormat().size();
   }
 
   public String createMissingGenotype() {
@@ -94,44 +92,42 @@ public class Genotype {
   }
 
   public String getValue(String key/*, GenotypeFormat format*/) { //TODO possible bug source, don't understand why we had to provide format
-    if (this.genotype.charAt(0) == '.')
-      return null;
-    return format.getValue(genotype, key);
+    return this.block.getValue(index, key);
   }
 
   public Sample getSample() {
-    return this.sample;
+    return this.block.getSample(index);
   }
 
   public int getNbChrom() {
-    return nbChrom;
+    return this.block.getNbChrom(index);
   }
 
+  /**
+   * @return a copy of the alleles (one per chromosome), or null if the genotype is missing
+   */
   public int[] getAlleles() {
-    return alleles;
+    return this.block.getAlleles(index);
+  }
+
+  /**
+   * @param chromosome the index of the chromosome (must be lower than getNbChrom())
+   * @return the allele carried by the chromosome
+   */
+  public int getAllele(int chromosome) {
+    return this.block.getAllele(index, chromosome);
   }
   
   public int getCount(int allele){
-    if(this.isMissing())
-      return 0;
-    int count = 0;
-    for(int a : this.alleles)
-      if(a == allele)
-        count ++;
-    return count;
+    return this.block.getCount(index, allele);
   }
 
   public boolean hasAllele(int allele) {
-    if(this.isMissing())
-      return false;
-    for(int a : this.alleles)
-      if(a == allele)
-        return true;
-    return false;
+    return this.block.hasAllele(index, allele);
   }
 
   public boolean isMissing() {
-    return this.nbChrom == 0;
+    return this.block.isMissing(index);
   }
   
   public int getNbAlleles(){
@@ -150,11 +146,11 @@ public class Genotype {
   public boolean isHomozygousOrHaploidToAlt() {
     if(this.isMissing())
       return false;
-    int allele = alleles[0];
+    int allele = this.getAllele(0);
     if(allele == 0)
       return false;
-    for(int a = 1 ; a < this.nbChrom; a++)
-      if(alleles[a] != allele)
+    for(int a = 1 ; a < this.getNbChrom(); a++)
+      if(this.getAllele(a) != allele)
         return false;
     return true;
   }
@@ -166,11 +162,11 @@ public class Genotype {
   public boolean isHomozygousOrHaploid(){
     if(this.isMissing())
       return false;
-    int allele = alleles[0];
+    int allele = this.getAllele(0);
     if(allele == -1)
       return false;
-    for(int a = 1 ; a < this.nbChrom; a++)
-      if(alleles[a] != allele)
+    for(int a = 1 ; a < this.getNbChrom(); a++)
+      if(this.getAllele(a) != allele)
         return false;
     return true;
   }
@@ -184,20 +180,17 @@ public class Genotype {
   }
 
   public boolean isHomozygous(){
-    return
-        !isMissing()
-        && !isHaploid()
-        && alleles[0] == alleles[1];
+    return this.block.isHomozygous(index);
   }
   
   public boolean isHomozygousOrHaploid(int al){
     if(this.isMissing())
       return false;
-    int allele = alleles[0];
+    int allele = this.getAllele(0);
     if(allele == al)
       return false;
-    for(int a = 1 ; a < this.nbChrom; a++)
-      if(alleles[a] != allele)
+    for(int a = 1 ; a < this.getNbChrom(); a++)
+      if(this.getAllele(a) != allele)
         return false;
     return true;
   }
@@ -207,31 +200,24 @@ public class Genotype {
    * @return  if heterozygous and diploid
    */
   public boolean isHeterozygousDiploid() {
-    if(this.nbChrom != 2)
-      return false;
-    return this.alleles[0] != this.alleles[1];
+    return this.block.isHeterozygousDiploid(index);
   }
 
   public boolean isHaploid() {
-    return this.nbChrom == 1;
+    return this.block.isHaploid(index);
   }
 
   public boolean hasAlternate() {
-    if(this.isMissing())
-      return false;
-    for(int a : this.alleles)
-      if(a > 0)
-        return true;
-    return false;
+    return this.block.hasAlternate(index);
   }
 
   public ArrayList<Integer> getDistinctAlleles(){
     ArrayList<Integer> ret = new ArrayList<>();
     if(this.isMissing())
       return ret;
-    for(int a : this.alleles)
-      if(!ret.contains(a))
-        ret.add(a);
+    for(int c = 0; c < this.getNbChrom(); c++)
+      if(!ret.contains(this.getAllele(c)))
+        ret.add(this.getAllele(c));
     return ret;
   }
 
@@ -243,25 +229,13 @@ public class Genotype {
   }
 
   public boolean isDPBellow(int min) {
-    String dp = this.getValue(GenotypeFormat.DP);
-    try {
-      int intDP = Integer.parseInt(dp);
-      return intDP < min;
-    } catch (Exception e) {
-      //Nothing
-    }
-    return false;
+    int dp = this.getDP();
+    return dp > GenotypeBlock.MISSING && dp < min;
   }
 
   public boolean isGQBellow(int min) {
-    String gq = this.getValue(GenotypeFormat.GQ);
-    try {
-      int intGQ = Integer.parseInt(gq);
-      return intGQ < min;
-    } catch (Exception e) {
-      //Nothing
-    }
-    return false;
+    int gq = this.getGQ();
+    return gq > GenotypeBlock.MISSING && gq < min;
   }
 
   /**
@@ -269,61 +243,27 @@ public class Genotype {
    * @return
    */
   public int getSumADOrElseDP() {
-    int sumAD = getSumAD();
-    if(sumAD > -1)
-      return sumAD;
-    return getDP();
+    return this.block.getSumADOrElseDP(index);
   }
 
   public int getDP() {
-    String dp = this.getValue(GenotypeFormat.DP);
-    try {
-      return Integer.parseInt(dp);
-    } catch (NumberFormatException e) {
-      return -1;
-    }
+    return this.block.getDP(index);
   }
 
   public int getSumAD() {
-    int[] ads = getAD();
-    if (ads == null)
-      return -1;
-    int sum = 0;
-    for (int ad : getAD())
-      sum += ad;
-    return sum;
+    return this.block.getSumAD(index);
   }
 
   public int getGQ() {
-    String gq = this.getValue(GenotypeFormat.GQ);
-    try {
-      return Integer.parseInt(gq);
-    } catch (Exception ignore) {
-      //Nothing
-    }
-    return -1;
+    return this.block.getGQ(index);
   }
 
   public int[] getAD() {
-    String ad = this.getValue(GenotypeFormat.AD);
-    if (ad != null)
-      try {
-        String[] strings = ad.split(",");
-        int[] intValues = new int[strings.length];
-        for (int i = 0; i < strings.length; i++)
-          intValues[i] = Integer.parseInt(strings[i]);
-        return intValues;
-      } catch (Exception e) {
-        //Nothing
-      }
-    return null;
+    return this.block.getAD(index);
   }
 
   public int getAD(int allele) {
-    int[] ads = this.getAD();
-    if (ads != null)
-      return ads[allele];
-    return -1;
+    return this.block.getAD(index, allele);
   }
 
   public int[] getPL() {
@@ -343,7 +283,7 @@ public class Genotype {
 
   @Override
   public String toString() {
-    return this.genotype;
+    return this.block.getValue(index);
   }
 
   /**
@@ -354,7 +294,7 @@ public class Genotype {
   public void addField(String value) {
     if(isShortFormatMissing() && ".".equals(value))
       return;
-    this.genotype += ":" + value;
+    this.setTo(this + ":" + value);
   }
 
   /**
@@ -362,15 +302,13 @@ public class Genotype {
    * @return true if a genotype is short missing
    */
   public boolean isShortFormatMissing(){
-    String[] f = this.genotype.split(":", -1);
+    String[] f = this.toString().split(":", -1);
     if(!f[0].startsWith("."))
       return false;
-    return this.format.getSize() != f.length;
+    return this.block.getFormat().getSize() != f.length;
   }
 
   public void setMissing() {
-    this.genotype = this.createMissingGenotype();
-    this.nbChrom = 0;
-    this.alleles = null;
+    this.setTo(this.createMissingGenotype());
   }
 }
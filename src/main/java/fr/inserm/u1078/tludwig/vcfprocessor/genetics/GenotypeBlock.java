@@ -0,0 +1,395 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
+
+import fr.inserm.u1078.tludwig.maok.tools.Message;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of all the Genotypes of a Variant.
+ * The alleles of every sample are parsed once, into a flat int[] (one row of "ploidy" cells per sample), with the number of
+ * chromosomes and the phasing stored in parallel arrays. The DP, GQ and AD columns are only parsed the first time they are requested.
+ * Genotype objects are lightweight views (block, index) on this storage.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class GenotypeBlock {
+
+  public static final int MISSING = -1;
+  private static final int INVALID = Integer.MIN_VALUE;
+  private static final int DEFAULT_PLOIDY = 2;
+
+  private final GenotypeFormat format;
+  private final SampleIndex samples;
+  private final String[] values;
+
+  private int ploidy = DEFAULT_PLOIDY;
+  private int[] alleles;
+  private final byte[] nbChrom;
+  private final long[] phased;
+
+  private int[] dp;
+  private int[] gq;
+  private int adStride;
+  private int[] ad;
+  private byte[] adCount;
+
+  /**
+   * @param format the FORMAT of the genotypes
+   * @param samples the samples, shared by all the Variants of the file
+   * @param values the raw genotype Strings (GT:DP:...), one per sample, in the same order as samples
+   */
+  public GenotypeBlock(GenotypeFormat format, SampleIndex samples, String[] values) {
+    this.format = format;
+    this.samples = samples;
+    this.values = values;
+    this.alleles = new int[values.length * ploidy];
+    this.nbChrom = new byte[values.length];
+    this.phased = new long[(values.length + 63) >>> 6];
+    for (int i = 0; i < values.length; i++)
+      if(values[i] != null)
+        parseGT(i);
+  }
+
+  public GenotypeFormat getFormat() {
+    return format;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public SampleIndex getSampleIndex() {
+    return samples;
+  }
+
+  public Sample getSample(int i) {
+    return samples.getSample(i);
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return the raw genotype String
+   */
+  public String getValue(int i) {
+    return values[i];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @param key the FORMAT key
+   * @return the value associated to the key, or null if the genotype is missing or the key absent
+   */
+  public String getValue(int i, String key) {
+    String value = values[i];
+    if (value.isEmpty() || value.charAt(0) == '.')
+      return null;
+    return format.getValue(value, key);
+  }
+
+  /**
+   * Replaces the genotype of a sample, every column already parsed is updated for this sample
+   * @param i the index of the genotype
+   * @param value the new raw genotype String
+   */
+  public void set(int i, String value) {
+    values[i] = value;
+    parseGT(i);
+    if (dp != null)
+      dp[i] = parseIntField(i, format.getIndex(GenotypeFormat.DP));
+    if (gq != null)
+      gq[i] = parseIntField(i, format.getIndex(GenotypeFormat.GQ));
+    if (ad != null)
+      parseAD(i, format.getIndex(GenotypeFormat.AD));
+  }
+
+  public int getNbChrom(int i) {
+    return nbChrom[i];
+  }
+
+  public boolean isMissing(int i) {
+    return nbChrom[i] == 0;
+  }
+
+  public boolean isPhased(int i) {
+    return (phased[i >>> 6] & (1L << i)) != 0;
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @param c the index of the chromosome (must be lower than getNbChrom(i))
+   * @return the allele carried by the chromosome
+   */
+  public int getAllele(int i, int c) {
+    return alleles[i * ploidy + c];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return a copy of the alleles of the genotype (one per chromosome), or null if the genotype is missing
+   */
+  public int[] getAlleles(int i) {
+    if (isMissing(i))
+      return null;
+    int start = i * ploidy;
+    return Arrays.copyOfRange(alleles, start, start + nbChrom[i]);
+  }
+
+  public int getCount(int i, int allele) {
+    int count = 0;
+    for (int c = i * ploidy, end = c + nbChrom[i]; c < end; c++)
+      if (alleles[c] == allele)
+        count++;
+    return count;
+  }
+
+  public boolean hasAllele(int i, int allele) {
+    for (int c = i * ploidy, end = c + nbChrom[i]; c < end; c++)
+      if (alleles[c] == allele)
+        return true;
+    return false;
+  }
+
+  public boolean hasAlternate(int i) {
+    for (int c = i * ploidy, end = c + nbChrom[i]; c < end; c++)
+      if (alleles[c] > 0)
+        return true;
+    return false;
+  }
+
+  public boolean isHaploid(int i) {
+    return nbChrom[i] == 1;
+  }
+
+  public boolean isHomozygous(int i) {
+    return nbChrom[i] > 1 && alleles[i * ploidy] == alleles[i * ploidy + 1];
+  }
+
+  public boolean isHeterozygousDiploid(int i) {
+    return nbChrom[i] == 2 && alleles[i * ploidy] != alleles[i * ploidy + 1];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return the DP of the genotype, -1 if the genotype is missing or if the DP is unavailable
+   */
+  public int getDP(int i) {
+    if (dp == null)
+      dp = parseIntColumn(GenotypeFormat.DP);
+    return isMissing(i) ? MISSING : dp[i];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return the GQ of the genotype, -1 if the genotype is missing or if the GQ is unavailable
+   */
+  public int getGQ(int i) {
+    if (gq == null)
+      gq = parseIntColumn(GenotypeFormat.GQ);
+    return isMissing(i) ? MISSING : gq[i];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @param allele the allele
+   * @return the AD of the allele for the genotype, -1 if unavailable
+   */
+  public int getAD(int i, int allele) {
+    loadAD();
+    if (isMissing(i) || allele >= adCount[i])
+      return MISSING;
+    return ad[i * adStride + allele];
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return the AD of the genotype, or null if the genotype is missing or if the AD is unavailable
+   */
+  public int[] getAD(int i) {
+    loadAD();
+    if (isMissing(i) || adCount[i] == 0)
+      return null;
+    int start = i * adStride;
+    return Arrays.copyOfRange(ad, start, start + adCount[i]);
+  }
+
+  /**
+   * @param i the index of the genotype
+   * @return the sum of the AD of the genotype, -1 if unavailable
+   */
+  public int getSumAD(int i) {
+    loadAD();
+    if (isMissing(i) || adCount[i] == 0)
+      return MISSING;
+    int sum = 0;
+    for (int c = i * adStride, end = c + adCount[i]; c < end; c++)
+      sum += ad[c];
+    return sum;
+  }
+
+  /**
+   * If possible get Sum Of AD, if metrics is unavailable, get DP
+   * @param i the index of the genotype
+   * @return the sum of AD or the DP
+   */
+  public int getSumADOrElseDP(int i) {
+    int sumAD = getSumAD(i);
+    if (sumAD > MISSING)
+      return sumAD;
+    return getDP(i);
+  }
+
+  /**
+   * Parses the GT field (first field) of a genotype, without allocating anything
+   * @param i the index of the genotype
+   */
+  private void parseGT(int i) {
+    String value = values[i];
+    int length = value.length();
+    phased[i >>> 6] &= ~(1L << i);
+    if (length == 0 || value.charAt(0) == '.') {//missing
+      nbChrom[i] = 0;
+      return;
+    }
+    int n = 1;
+    int end = 0;
+    for (; end < length; end++) {
+      char c = value.charAt(end);
+      if (c == ':')
+        break;
+      if (c == '/' || c == '|') {
+        n++;
+        if (c == '|')
+          phased[i >>> 6] |= 1L << i;
+      }
+    }
+    if (n > ploidy)
+      growPloidy(n);
+    int cell = i * ploidy;
+    int start = 0;
+    for (int pos = 0; pos <= end; pos++)
+      if (pos == end || value.charAt(pos) == '/' || value.charAt(pos) == '|') {
+        int allele = parseInt(value, start, pos);
+        if (allele == INVALID) {
+          Message.error("Could not get alleles from the genotype [" + value.substring(0, end) + "]");
+          allele = 0;
+        }
+        alleles[cell++] = allele;
+        start = pos + 1;
+      }
+    nbChrom[i] = (byte) n;
+  }
+
+  private void growPloidy(int newPloidy) {
+    int[] grown = new int[values.length * newPloidy];
+    for (int i = 0; i < values.length; i++)
+      System.arraycopy(alleles, i * ploidy, grown, i * newPloidy, nbChrom[i]);
+    alleles = grown;
+    ploidy = newPloidy;
+  }
+
+  private int[] parseIntColumn(String key) {
+    int field = format.getIndex(key);
+    int[] column = new int[values.length];
+    for (int i = 0; i < values.length; i++)
+      column[i] = parseIntField(i, field);
+    return column;
+  }
+
+  private int parseIntField(int i, int field) {
+    if (field < 0)
+      return MISSING;
+    String value = values[i];
+    int start = fieldStart(value, field);
+    if (start < 0)
+      return MISSING;
+    int v = parseInt(value, start, fieldEnd(value, start));
+    return v == INVALID ? MISSING : v;
+  }
+
+  private void loadAD() {
+    if (ad != null)
+      return;
+    int field = format.getIndex(GenotypeFormat.AD);
+    adCount = new byte[values.length];
+    adStride = 0;
+    ad = new int[0];
+    for (int i = 0; i < values.length; i++)
+      parseAD(i, field);
+  }
+
+  /**
+   * Parses the AD of genotype i into its row, the rows are widened if this AD is longer than the previous ones
+   */
+  private void parseAD(int i, int field) {
+    adCount[i] = 0;
+    if (field < 0)
+      return;
+    String value = values[i];
+    int start = fieldStart(value, field);
+    if (start < 0)
+      return;
+    int end = fieldEnd(value, start);
+    int n = 1;
+    for (int pos = start; pos < end; pos++)
+      if (value.charAt(pos) == ',')
+        n++;
+    if (n > adStride)
+      widenAD(n);
+    int cell = i * adStride;
+    for (int pos = start; pos <= end; pos++)
+      if (pos == end || value.charAt(pos) == ',') {
+        int v = parseInt(value, start, pos);
+        if (v == INVALID)
+          return;//unparsable AD, considered as unavailable
+        ad[cell++] = v;
+        start = pos + 1;
+      }
+    adCount[i] = (byte) n;
+  }
+
+  private void widenAD(int newStride) {
+    int[] grown = new int[values.length * newStride];
+    for (int j = 0; j < values.length; j++)
+      System.arraycopy(ad, j * adStride, grown, j * newStride, adCount[j]);
+    ad = grown;
+    adStride = newStride;
+  }
+
+  /**
+   * @return the index of the first character of the given field, -1 if the value has not enough fields
+   */
+  private static int fieldStart(String value, int field) {
+    int start = 0;
+    for (int f = 0; f < field; f++) {
+      start = value.indexOf(':', start) + 1;
+      if (start == 0)
+        return -1;
+    }
+    return start;
+  }
+
+  private static int fieldEnd(String value, int start) {
+    int end = value.indexOf(':', start);
+    return end < 0 ? value.length() : end;
+  }
+
+  /**
+   * Parses a decimal integer from value[start, end[ without allocation
+   * @return the integer, or INVALID if the substring is not an integer
+   */
+  private static int parseInt(String value, int start, int end) {
+    if (start >= end)
+      return INVALID;
+    boolean negative = value.charAt(start) == '-';
+    if (negative && ++start >= end)
+      return INVALID;
+    int v = 0;
+    for (int pos = start; pos < end; pos++) {
+      int d = value.charAt(pos) - '0';
+      if (d < 0 || d > 9)
+        return INVALID;
+      v = 10 * v + d;
+    }
+    return negative ? -v : v;
+  }
+}
@@ -2,6 +2,7 @@ package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
 
 import fr.inserm.u1078.tludwig.maok.SortedList;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
+import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.InfoIndex;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF;
 import fr.inserm.u1078.tludwig.vcfprocessor.files.variants.VCF.InfoFormatHeader;
 
@@ -33,13 +34,27 @@ public class Info {
 
   private Variant variant;
 
-  private final HashMap<Integer, ArrayList<VEPAnnotation>> vepAnnotations;
+  /** the raw values of the CSQ fields, only parsed when the VEP annotations are first accessed */
+  private final ArrayList<String> csqValues;
+  private HashMap<Integer, ArrayList<VEPAnnotation>> vepAnnotations = null;
   private final TreeMap<String, String> infoMap;
   private final VCF vcfFile;
+  /** the index of the record, used by the typed getters, rebuilt after an update */
+  private InfoIndex index = null;
+
+  /**
+   * Builds the Info from the INFO index of a record, that is reused by the typed getters (getInt(), getDoubleArray()...)
+   * @param index the INFO index of the record
+   * @param vcfFile the VCF file
+   */
+  public Info(InfoIndex index, VCF vcfFile){
+    this(index.toArray(), vcfFile);
+    this.index = index;
+  }
 
   public Info(String[][] infoFields, VCF vcfFile){
     this.vcfFile = vcfFile;
-    this.vepAnnotations = new HashMap<>();
+    this.csqValues = new ArrayList<>(1);
     infoMap = new TreeMap<>();
     for (String[] kv : infoFields) {
       String key = kv[0];
@@ -52,14 +67,25 @@ public class Info {
         Message.warning("Duplicate key [" + kv[0] + "] found for info [" + merge(infoFields) + "]");
 
       if (kv[0].equals(CSQ_PREFIX) && kv.length > 1 && kv[1] != null)
-        for (String annot : kv[1].split(",")) {
+        this.csqValues.add(kv[1]);
+    }
+  }
+
+  /**
+   * @return the VEP annotations by allele, parsed on first access
+   */
+  private HashMap<Integer, ArrayList<VEPAnnotation>> getVEPAnnotationMap() {
+    if (vepAnnotations == null) {
+      HashMap<Integer, ArrayList<VEPAnnotation>> map = new HashMap<>();
+      for (String csq : csqValues)
+        for (String annot : csq.split(",")) {
           VEPAnnotation vepAnnotation = new VEPAnnotation(annot, vcfFile.getVepFormat());
           int allele = vepAnnotation.getAlleleNumber();
-          ArrayList<VEPAnnotation> list = this.vepAnnotations.computeIfAbsent(allele, k -> new ArrayList<>());
-          list.add(vepAnnotation);
-          //this.vepAnnotations.add(); //Message.debug("Allele "+this.vepAnnotations.get(this.vepAnnotations.size()-1).getAllele());
+          map.computeIfAbsent(allele, k -> new ArrayList<>()).add(vepAnnotation);
         }
+      vepAnnotations = map;
     }
+    return vepAnnotations;
   }
 
   public static String merge(String[][] fields) {
@@ -148,18 +174,18 @@ public class Info {
 
   public ArrayList<VEPAnnotation> getAllVEPAnnotations() {
     ArrayList<VEPAnnotation> annotations = new ArrayList<>();
-    for(ArrayList<VEPAnnotation> list : this.vepAnnotations.values())
+    for(ArrayList<VEPAnnotation> list : this.getVEPAnnotationMap().values())
       annotations.addAll(list);
     return annotations;
   }
 
   public ArrayList<VEPAnnotation> getVEPAnnotations(int allele) {
-    return this.vepAnnotations.get(allele);
+    return this.getVEPAnnotationMap().get(allele);
   }
 
   ArrayList<String> getAllVEPValues(String key) {
     ArrayList<String> ret = new ArrayList<>();
-    for (int allele : this.vepAnnotations.keySet())
+    for (int allele : this.getVEPAnnotationMap().keySet())
       ret.addAll(this.getVEPValues(key, allele));
     return ret;
   }
@@ -177,8 +203,8 @@ public class Info {
   
   public ArrayList<Integer> getConsequenceLevels() {
     ArrayList<Integer> ret = new ArrayList<>();
-    for(String cons : this.getConsequencesRaw()){
-      int level = VEPConsequence.getWorstConsequence(cons).getLevel();
+    for(VEPAnnotation vep : this.getAllVEPAnnotations()){
+      int level = vep.getWorstVEPConsequence().getLevel();
       if (!ret.contains(level))
         ret.add(level);
     }
@@ -187,8 +213,8 @@ public class Info {
   
   public ArrayList<Integer> getConsequenceLevels(int a) {
     ArrayList<Integer> ret = new ArrayList<>();
-    for(String cons : this.getConsequencesRaw(a)){
-      int level = VEPConsequence.getWorstConsequence(cons).getLevel();
+    for(VEPAnnotation vep : this.getVEPAnnotations(a)){
+      int level = vep.getWorstVEPConsequence().getLevel();
       if (!ret.contains(level))
         ret.add(level);
     }
@@ -857,14 +883,8 @@ public class Info {
   }
   
   public Double getInbreedingCoeff() {
-    String value = getAnnot(Info.INBREEDING_COEFF);
-    if (value != null)
-      try {
-        return Double.parseDouble(value);
-      } catch (NumberFormatException ignore) {
-        //Nothing
-      }
-    return null;
+    double value = getDouble(Info.INBREEDING_COEFF, Double.NaN);
+    return Double.isNaN(value) ? null : value;
   }
 
   public void addInfo(String s) {
@@ -878,28 +898,50 @@ public class Info {
 
   public void update(String key, String value) {
     this.infoMap.put(key, value);
+    this.index = null;
+  }
+
+  private InfoIndex getIndex() {
+    if (index == null)
+      index = new InfoIndex(toString(), vcfFile);
+    return index;
   }
   
   public String getValue(String key){
     return this.infoMap.get(key);
   }
   
+  /**
+   * @param key the INFO key (matched exactly)
+   * @return the values as integers, null if the key is absent or a value is not an integer
+   */
   public int[] getIntArray(String key){
-    try {
-      String[] vals = this.getValue(key).split(",");
-      int[] ret = new int[vals.length];
-      for(int i = 0; i < vals.length; i++)
-        ret[i] = Integer.parseInt(vals[i]);
-      return ret;
-    } catch (Exception ignore) { }
-    return null;
+    return getIndex().getIntArray(key);
   }
-  
+
+  /**
+   * @param key the INFO key (matched exactly)
+   * @param defaultValue the value returned if the key is absent, has several values or is not an integer
+   * @return the value as an integer
+   */
   public int getInt(String key, int defaultValue){
-    try {
-      return Integer.parseInt(this.getValue(key));
-    } catch (Exception ignore) { }
-    return defaultValue;
+    return getIndex().getInt(key, defaultValue);
+  }
+
+  /**
+   * @param key the INFO key
+   * @return the values as decimals (NaN for missing values), null if the key is absent
+   */
+  public double[] getDoubleArray(String key){
+    return getIndex().getDoubleArray(key);
+  }
+
+  public double getDouble(String key, double defaultValue){
+    return getIndex().getDouble(key, defaultValue);
+  }
+
+  public boolean getFlag(String key){
+    return getIndex().getFlag(key);
   }
   
   public int[] getACs(){
@@ -22,6 +22,8 @@ public class Sample implements Comparable<Sample> {
   private int sex;
   private int phenotype;
   private String group;
+  /** index holding only this sample, shared by the genotypes built for this sample alone */
+  private SampleIndex singleIndex = null;
 
   public Sample(String line) {
     String[] fields = line.split("\\s+");
@@ -44,6 +46,18 @@ public class Sample implements Comparable<Sample> {
     this.group = group;
   }
 
+  /**
+   * @return an index holding only this sample, created once (SampleIndex is immutable, so a concurrent duplicate is harmless)
+   */
+  SampleIndex getSingleIndex() {
+    SampleIndex ret = singleIndex;
+    if (ret == null) {
+      ret = new SampleIndex(new Sample[]{this});
+      singleIndex = ret;
+    }
+    return ret;
+  }
+
   @Override
   public int hashCode() {
     return Objects.hash(this.fid, this.id, this.pid, this.mid, this.sex, this.phenotype, this.group);
@@ -0,0 +1,69 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
+
+import java.util.HashMap;
+
+/**
+ * Dense, immutable index of the samples of a VCF file, shared by all the Variants read from this file.
+ * The position of a sample in the index is the position of its genotype in every Variant, so that genotypes can be looked up
+ * by Sample or sample ID with an array access.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class SampleIndex {
+
+  private final Sample[] samples;
+  private final int[] columns;
+  private final HashMap<String, Integer> positions;
+
+  /**
+   * @param samples the samples, in the order of the genotypes
+   * @param columns for each sample, its index among the samples of the original file
+   */
+  public SampleIndex(Sample[] samples, int[] columns) {
+    this.samples = samples;
+    this.columns = columns;
+    this.positions = new HashMap<>(2 * samples.length);
+    for (int i = 0; i < samples.length; i++)
+      positions.put(samples[i].getId(), i);
+  }
+
+  /**
+   * @param samples the samples, in the order of the genotypes and of the original file
+   */
+  public SampleIndex(Sample[] samples) {
+    this(samples, null);
+  }
+
+  public int size() {
+    return samples.length;
+  }
+
+  public Sample getSample(int i) {
+    return samples[i];
+  }
+
+  /**
+   * @param i the position of the sample in the index
+   * @return the index of the sample among the samples of the original file
+   */
+  public int getColumn(int i) {
+    return columns == null ? i : columns[i];
+  }
+
+  /**
+   * @param sampleID the ID of the sample
+   * @return the position of the sample in the index, -1 if absent
+   */
+  public int indexOf(String sampleID) {
+    Integer i = positions.get(sampleID);
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * @param sample the sample
+   * @return the position of the sample in the index, -1 if absent
+   */
+  public int indexOf(Sample sample) {
+    return indexOf(sample.getId());
+  }
+}
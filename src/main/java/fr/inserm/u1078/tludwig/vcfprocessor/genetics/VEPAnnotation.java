@@ -7,7 +7,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * One group of VEPAnnotation (comma separated, starting with csq=allele) is an object
+ * One group of VEPAnnotation (comma separated, starting with csq=allele) is an object<br/>
+ * Only the columns of the projection of the VEPFormat are extracted when the annotation is parsed, the whole annotation is
+ * split on the first access to another column. The consequence terms are interned as VEPConsequence
  *
  * @author Thomas E. Ludwig (INSERM - U1078) Started : 21 avr. 2016
  */
@@ -19,20 +21,54 @@ public class VEPAnnotation { //TODO rewrite this to be 100% compliant with vep91
   public static final String POLYPHEN_BENIGN = "benign";
 
   private final VEPFormat format;
+  private final String annotation;
   private final String[] values;
+  private boolean complete = false;
+  private final VEPConsequence[] consequences;
+  private final VEPConsequence worstConsequence;
 
   public VEPAnnotation(String annotations, VEPFormat format) {
     //this.variant = variant;
     this.format = format;
-    String[] tmpValues = annotations.split("\\|", -1);
+    this.annotation = annotations;
+    this.values = new String[format.size()];
+    this.extract(format.getProjection());
+    int csq = format.getIndex(VEPFormat.KEY_CONSEQUENCE);
+    this.consequences = VEPConsequence.parse(csq < 0 ? null : values[csq]);
+    this.worstConsequence = VEPConsequence.getWorst(this.consequences);
+  }
+
+  /**
+   * Extracts some columns, in a single pass that stops after the last one
+   * @param columns the columns, in increasing order
+   */
+  private void extract(int[] columns) {
+    int column = 0;
+    int start = 0;
+    for (int c = 0; c < columns.length; column++) {
+      int end = annotation.indexOf('|', start);
+      if (column == columns[c]) {
+        values[column] = end == -1 ? annotation.substring(start) : annotation.substring(start, end);
+        c++;
+      }
+      if (end == -1)
+        break;
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Extracts all the columns
+   */
+  private void extractAll() {
+    String[] tmpValues = annotation.split("\\|", -1);
     if (tmpValues.length != format.size()){//TODO temporarily disabled, should be reEnabled : for some annotated 1000g variant this is false !!
-      String msg = "Mismatch between number of values (" + tmpValues.length + ") and size of format (" + format.size() + ") : line \n" + annotations;
+      String msg = "Mismatch between number of values (" + tmpValues.length + ") and size of format (" + format.size() + ") : line \n" + annotation;
       Message.warning(msg);
       //throw new AnnotationException(msg);
-      this.values = new String[format.size()];
-      System.arraycopy(tmpValues, 0, this.values, 0, tmpValues.length);
-    } else
-      this.values = tmpValues;
+    }
+    System.arraycopy(tmpValues, 0, this.values, 0, Math.min(tmpValues.length, values.length));
+    this.complete = true;
   }
 
   /**
@@ -51,9 +87,25 @@ public class VEPAnnotation { //TODO rewrite this to be 100% compliant with vep91
       }
       return null;
     }
+    if (!complete && !format.isProjected(idx))
+      extractAll();
     return values[idx];
   }
 
+  /**
+   * @return the consequences of this annotation
+   */
+  public VEPConsequence[] getConsequences() {
+    return consequences;
+  }
+
+  /**
+   * @return the worst consequence of this annotation (EMPTY if there are none)
+   */
+  public VEPConsequence getWorstVEPConsequence() {
+    return worstConsequence;
+  }
+
   public String getAllele() {
     return this.getValue(VEPFormat.KEY_ALLELE);
   }
@@ -390,13 +442,10 @@ public class VEPAnnotation { //TODO rewrite this to be 100% compliant with vep91
 
   @Override
   public String toString(){
-    return String.join("|", values);
+    return annotation;
   }
 
   public String getWorstConsequence() {
-    String csq = this.getConsequence();
-    if(csq == null || csq.isEmpty())
-      return VEPConsequence.EMPTY.getName();
-    return VEPConsequence.getWorstConsequence(csq.split(("&"))).getName();
+    return worstConsequence.getName();
   }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 /**
  *
@@ -62,6 +63,13 @@ public enum VEPConsequence {
     this.impact = impact;
   }
 
+  private static final HashMap<String, VEPConsequence> BY_NAME = new HashMap<>();
+
+  static {
+    for (VEPConsequence consequence : VEPConsequence.values())
+      BY_NAME.put(consequence.getName().toLowerCase(), consequence);
+  }
+
   public int getLevel() {
     return level;
   }
@@ -94,10 +102,45 @@ public enum VEPConsequence {
   public static VEPConsequence getConsequence(String csq) {
     if(csq == null || csq.isEmpty())
       return VEPConsequence.EMPTY;
-    for (VEPConsequence consequence : VEPConsequence.values())
-      if (consequence.matches(csq))
-        return consequence;
-    return null;
+    VEPConsequence consequence = BY_NAME.get(csq); //VEP terms are lower case
+    return consequence != null ? consequence : BY_NAME.get(csq.toLowerCase());
+  }
+
+  /**
+   * Interns the terms of a Consequence value
+   * @param csq the terms, separated by &amp;
+   * @return the consequences, unknown terms are ignored
+   */
+  public static VEPConsequence[] parse(String csq) {
+    if (csq == null || csq.isEmpty())
+      return new VEPConsequence[]{EMPTY};
+    ArrayList<VEPConsequence> ret = new ArrayList<>(2);
+    int start = 0;
+    while (start <= csq.length()) {
+      int end = csq.indexOf('&', start);
+      if (end == -1)
+        end = csq.length();
+      String term = csq.substring(start, end);
+      VEPConsequence vc = getConsequence(term);
+      if (vc != null)
+        ret.add(vc);
+      else
+        Message.debug("NULL for " + term);
+      start = end + 1;
+    }
+    return ret.toArray(new VEPConsequence[0]);
+  }
+
+  /**
+   * @param consequences some consequences
+   * @return the worst of the consequences, EMPTY if there are none
+   */
+  public static VEPConsequence getWorst(VEPConsequence... consequences) {
+    VEPConsequence worst = EMPTY;
+    for (VEPConsequence vc : consequences)
+      if (vc.getLevel() > worst.getLevel())
+        worst = vc;
+    return worst;
   }
 
   public static VEPConsequence getConsequence(int l) {
@@ -113,22 +156,23 @@ public enum VEPConsequence {
   }
 
   public static VEPConsequence getWorstConsequence(Collection<VEPAnnotation> veps, String symbol) {
-    ArrayList<String> csqs = new ArrayList<>();
+    VEPConsequence worst = EMPTY;
     for (VEPAnnotation vep : veps)
-      if (vep.getSYMBOL().equalsIgnoreCase(symbol))
-        csqs.add(vep.getConsequence());
-    return getWorstConsequence(csqs.toArray(new String[0]));
+      if (vep.getSYMBOL().equalsIgnoreCase(symbol) && vep.getWorstVEPConsequence().getLevel() > worst.getLevel())
+        worst = vep.getWorstVEPConsequence();
+    return worst;
   }
 
   public static VEPConsequence getWorst(Collection<VEPAnnotation> veps) {
-    ArrayList<String> csqs = new ArrayList<>();
+    VEPConsequence worst = EMPTY;
     for (VEPAnnotation vep : veps)
-      csqs.add(vep.getConsequence());
-    return getWorstConsequence(csqs.toArray(new String[0]));
+      if (vep.getWorstVEPConsequence().getLevel() > worst.getLevel())
+        worst = vep.getWorstVEPConsequence();
+    return worst;
   }
 
   public static VEPConsequence getWorstConsequence(VEPAnnotation vep) {
-    return getWorstConsequence(vep.getConsequence());
+    return vep.getWorstVEPConsequence();
   }
 
   public static VEPConsequence getWorstConsequence(Collection<String> csqs) {
@@ -2,6 +2,9 @@ package fr.inserm.u1078.tludwig.vcfprocessor.genetics;
 
 import fr.inserm.u1078.tludwig.maok.tools.Message;
 
+import java.util.HashMap;
+import java.util.TreeSet;
+
 /**
  *
  * @author Thomas E. Ludwig (INSERM - U1078) Started : 7 avr. 2015
@@ -81,6 +84,10 @@ public class VEPFormat {
   public static final String KEY_ALLELE_NUMBER = "ALLELE_NUM";
 
   private final String[] keys;
+  private final HashMap<String, Integer> indices;
+  /** the columns extracted when an annotation is parsed (sorted), the others are extracted on demand */
+  private int[] projection;
+  private boolean[] projected;
   public static final String[] FREQUENCY_KEYS = { 
     KEY_AF,KEY_AFR_AF, KEY_AMR_AF, KEY_EAS_AF, KEY_EUR_AF, KEY_SAS_AF,
     KEY_AA_AF, KEY_EA_AF,
@@ -91,13 +98,55 @@ public class VEPFormat {
   private VEPFormat(String format) {
     this.format = format;
     keys = format.split("\\|");
-    boolean found = false;
-    for(String key : keys)
-      if(key.equals(KEY_ALLELE_NUMBER)) {
-        found = true;
-        break;
-      }
-    Message.error(!found, "VEP annotations must contain ["+KEY_ALLELE_NUMBER+"]");
+    indices = new HashMap<>();
+    for (int i = keys.length - 1; i >= 0; i--)
+      indices.put(keys[i], i);
+    Message.error(!indices.containsKey(KEY_ALLELE_NUMBER), "VEP annotations must contain ["+KEY_ALLELE_NUMBER+"]");
+    setProjection();
+  }
+
+  /**
+   * Sets the columns that are extracted when an annotation is parsed (ALLELE_NUM and Consequence are always extracted).
+   * The other columns are still available, but the first access to one of them splits the whole annotation
+   * @param required the keys needed (null or empty for ALLELE_NUM and Consequence only)
+   */
+  public void setProjection(String... required) {
+    TreeSet<Integer> columns = new TreeSet<>();
+    addColumn(columns, KEY_ALLELE_NUMBER);
+    addColumn(columns, KEY_CONSEQUENCE);
+    if (required != null)
+      for (String key : required)
+        addColumn(columns, key);
+    int[] p = new int[columns.size()];
+    boolean[] b = new boolean[keys.length];
+    int i = 0;
+    for (int column : columns) {
+      p[i++] = column;
+      b[column] = true;
+    }
+    this.projected = b;
+    this.projection = p;
+  }
+
+  private void addColumn(TreeSet<Integer> columns, String key) {
+    int idx = getIndex(key);
+    if (idx > -1)
+      columns.add(idx);
+  }
+
+  /**
+   * @return the columns extracted when an annotation is parsed, in increasing order
+   */
+  int[] getProjection() {
+    return projection;
+  }
+
+  /**
+   * @param idx the index of a column
+   * @return true if the column is extracted when an annotation is parsed
+   */
+  boolean isProjected(int idx) {
+    return projected[idx];
   }
 
   public static VEPFormat createVepFormat(String line) {
@@ -119,10 +168,8 @@ public class VEPFormat {
   }
 
   protected int getIndex(String key) {
-    for (int i = 0; i < keys.length; i++)
-      if (keys[i].equals(key))
-        return i;
-    return -1;
+    Integer idx = indices.get(key);
+    return idx == null ? -1 : idx;
   }
 
   public int size() {
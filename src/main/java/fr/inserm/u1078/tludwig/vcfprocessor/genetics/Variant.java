@@ -22,7 +22,8 @@ public class Variant implements Comparable<Variant> {
   private String filter;
   private final Info info;
   private final GenotypeFormat format;
-  private final Genotype[] genotypes;
+  private final GenotypeBlock genotypes;
+  private Genotype[] genotypeViews;
   private final String[] alleles;
   private final VariantType[] variantTypes;
   //private Effect[] effect = null; //TODO rewrite
@@ -44,7 +45,7 @@ public class Variant implements Comparable<Variant> {
     variantTypes = null;
   }
 
-  public Variant(String chrom, int pos, String id, String ref, String alt, String qual, String filter, Info info, GenotypeFormat format, Genotype[] genotypes) throws VariantException {
+  public Variant(String chrom, int pos, String id, String ref, String alt, String qual, String filter, Info info, GenotypeFormat format, GenotypeBlock genotypes) throws VariantException {
     this.chrom = chrom;
     this.pos = pos;
     this.id = id;
@@ -60,16 +61,16 @@ public class Variant implements Comparable<Variant> {
 
     this.an = 0;
 
-    for (int i = 0 ; i < genotypes.length; i++) {
-      Genotype g = genotypes[i];
-      if(g == null)
+    for (int i = 0 ; i < genotypes.size(); i++) {
+      if(genotypes.getValue(i) == null)
         throw new VariantException("At least one genotype is null ["+i+"th sample]");
-      if (g.getNbChrom() > 0)
-        for (int a : g.getAlleles())
-          if (a > -1) {
-            an++;
-            ac[a]++;
-          }
+      for (int c = 0; c < genotypes.getNbChrom(i); c++) {
+        int a = genotypes.getAllele(i, c);
+        if (a > -1) {
+          an++;
+          ac[a]++;
+        }
+      }
     }
     System.arraycopy(alter, 0, alleles, 1, alter.length);
     variantTypes = new VariantType[alleles.length];
@@ -101,15 +102,15 @@ public class Variant implements Comparable<Variant> {
       throw new VariantException(prefix + "(POS mismatch)" + shortix);
     if (!this.getRef().equals(v.getRef()))
       throw new VariantException(prefix + "(Ref mismatch)" + shortix);
-    if (this.getGenotypes().length != v.getGenotypes().length)
+    if (this.genotypes.size() != v.genotypes.size())
       throw new VariantException(prefix + "(Different number of samples)" + suffix);
     if (this.getAlt().equals(v.getAlt())) //simple case
-      for (int i = 0; i < this.getGenotypes().length; i++) {
-        Genotype genotype = this.genotypes[i];
+      for (int i = 0; i < this.genotypes.size(); i++) {
+        Genotype genotype = this.getGenotypes()[i];
         if (!genotype.isMissing()) {
           Genotype other = v.getGenotypes()[i];
           if (!genotype.isSame(other))
-            this.genotypes[i] = Genotype.createNullGenotype(this.getFormat(), genotype.getSample());
+            genotype.setTo(NULL_GENOTYPE);
         }
       }
     else { //alternative alleles are different between both variants
@@ -117,7 +118,7 @@ public class Variant implements Comparable<Variant> {
       indices[0] = 0;
       for (int i = 1; i < indices.length; i++)
         indices[i] = ArrayTools.indexOf(v.getAlleles(), this.alleles[i]);
-      for (int i = 0; i < this.getGenotypes().length; i++) {
+      for (int i = 0; i < this.genotypes.size(); i++) {
         Genotype genotype = this.getGenotypes()[i];
         if (!genotype.isMissing()) {
           boolean clear = false;
@@ -131,16 +132,17 @@ public class Variant implements Comparable<Variant> {
               if (!genotype.isSame(other))
                 clear = true;
           if (clear)
-            this.genotypes[i] = Genotype.createNullGenotype(this.getFormat(), genotype.getSample());
+            genotype.setTo(NULL_GENOTYPE);
         }
       }
     }
   }
 
   public static final String T = "\t";
+  private static final String NULL_GENOTYPE = "./.";
 
   public String[] getFields() {
-    String[] ret = new String[9 + genotypes.length];
+    String[] ret = new String[9 + genotypes.size()];
     ret[0] = this.chrom;
     ret[1] = this.pos + "";
     ret[2] = this.id;
@@ -150,8 +152,8 @@ public class Variant implements Comparable<Variant> {
     ret[6] = this.filter;
     ret[7] = this.info.toString();
     ret[8] = this.format.toString();
-    for (int i = 0; i < this.genotypes.length; i++)
-      ret[9 + i] = this.genotypes[i].toString();
+    for (int i = 0; i < this.genotypes.size(); i++)
+      ret[9 + i] = this.genotypes.getValue(i);
     return ret;
   }
   
@@ -159,8 +161,8 @@ public class Variant implements Comparable<Variant> {
   public String toString() { // should return the line that was used to construct the variant .... NO ! that would ignore updates
     String[] left = {chrom, pos+"", id, getRef(), getAlt(),this.getQual(), this.getFilter(), this.info.toString(), this.format.toString()};
     LineBuilder ret = new LineBuilder(String.join(T, left));
-    for (Genotype genotype : genotypes)
-      ret.addColumn(genotype);
+    for (int i = 0; i < this.genotypes.size(); i++)
+      ret.addColumn(this.genotypes.getValue(i));
     return ret.toString();
   }
 
@@ -172,8 +174,8 @@ public class Variant implements Comparable<Variant> {
     if(this.ploidyCount == null){
       int maxPl = 0;
       int[] tmpCount = new int[100];
-      for (Genotype g : genotypes) {
-        int n = g.getNbChrom();
+      for (int i = 0; i < this.genotypes.size(); i++) {
+        int n = this.genotypes.getNbChrom(i);
         tmpCount[n]++;
         if(n > maxPl)
           maxPl = n;
@@ -223,39 +225,39 @@ public class Variant implements Comparable<Variant> {
   }
 
   public boolean isMissingForAll() {
-    for (Genotype genotype : this.genotypes)
-      if (!genotype.isMissing())
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (!this.genotypes.isMissing(i))
         return false;
     return true;
   }
 
   public boolean hasAlternate(int a) {
-    for (Genotype genotype : this.genotypes)
-      if (genotype.hasAllele(a))
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.hasAllele(i, a))
         return true;
     return false;
   }
 
   public boolean hasNoVariants() {
-    for (Genotype genotype : this.genotypes)
-      if (genotype.hasAlternate())
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.hasAlternate(i))
         return false;
     return true;
   }
 
   public ArrayList<Sample> getSamplesWithAllele(int a) {
     ArrayList<Sample> ret = new ArrayList<>();
-    for (Genotype genotype : this.getGenotypes())
-      if (genotype.hasAllele(a))
-        ret.add(genotype.getSample());
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.hasAllele(i, a))
+        ret.add(this.genotypes.getSample(i));
     return ret;
   }
 
   public ArrayList<Sample> getSamplesWithAlternateAllele() {
     ArrayList<Sample> ret = new ArrayList<>();
-    for (Genotype genotype : this.getGenotypes())
-      if (genotype.hasAlternate())
-        ret.add(genotype.getSample());
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.hasAlternate(i))
+        ret.add(this.genotypes.getSample(i));
     return ret;
   }
 
@@ -412,23 +414,58 @@ public class Variant implements Comparable<Variant> {
     return alleles.length;
   }
 
+  /**
+   * @return the Genotypes of this Variant, as views on its GenotypeBlock (created on first call)
+   */
   public Genotype[] getGenotypes() {
-    return genotypes;
+    if (this.genotypeViews == null && this.genotypes != null) {
+      Genotype[] views = new Genotype[this.genotypes.size()];
+      for (int i = 0; i < views.length; i++)
+        views[i] = new Genotype(this.genotypes, i);
+      this.genotypeViews = views;
+    }
+    return this.genotypeViews;
+  }
+
+  /**
+   * @return the columnar storage of the genotypes, to be used by functions that loop over all the samples
+   */
+  public GenotypeBlock getGenotypeBlock() {
+    return this.genotypes;
+  }
+
+  /**
+   * @param sample the sample
+   * @return the index of the sample's genotype in getGenotypes() and getGenotypeBlock(), -1 if the sample is absent
+   */
+  public int indexOf(Sample sample) {
+    return this.genotypes.getSampleIndex().indexOf(sample);
+  }
+
+  /**
+   * @param sampleID the ID of the sample
+   * @return the index of the sample's genotype in getGenotypes() and getGenotypeBlock(), -1 if the sample is absent
+   */
+  public int indexOf(String sampleID) {
+    return this.genotypes.getSampleIndex().indexOf(sampleID);
   }
 
   public Genotype getGenotype(String sampleID) {
-    for (Genotype genotype : this.genotypes)
-      if (genotype.getSample().getId().equals(sampleID))
-        return genotype;
-    return null;
+    return this.getGenotype(this.indexOf(sampleID));
   }
 
   public Genotype getGenotype(Sample sample) {
-    //TODO if this works and not getGenotypes()[sampleIndex], there is a bug in the indexes, and this can lead to serious problems for all algorithms
-    for (Genotype genotype : this.genotypes)
-      if (genotype.getSample().equals(sample))
-        return genotype;
-    return null;
+    return this.getGenotype(this.indexOf(sample));
+  }
+
+  /**
+   * @param i the index of the genotype, as given by indexOf() or by the VCF's SampleIndex
+   * @return the genotype, or null if i is negative
+   */
+  public Genotype getGenotype(int i) {
+    if (i < 0)
+      return null;
+    return this.genotypeViews == null ? new Genotype(this.genotypes, i) : this.genotypeViews[i];
   }
 
   public String getChrom() {
@@ -458,6 +495,25 @@ public class Variant implements Comparable<Variant> {
     }
   }
 
+  /**
+   * @param chr the name of a contig
+   * @return the name of the contig without the "chr" prefix (and MT for the mitochondrial chromosome), so that the names used by
+   * the different references (chr1/1, chrM/MT) can be compared
+   */
+  public static String normalizeChrom(String chr) {
+    String c = chr.replace("chr", "");
+    return "M".equalsIgnoreCase(c) ? "MT" : c;
+  }
+
+  /**
+   * @param chr1 the name of a contig
+   * @param chr2 the name of another contig
+   * @return true if both names are the same contig, with or without the "chr" prefix
+   */
+  public static boolean isSameChrom(String chr1, String chr2) {
+    return normalizeChrom(chr1).equals(normalizeChrom(chr2));
+  }
+
   public int getPos() {
     return pos;
   }
@@ -506,10 +562,10 @@ public class Variant implements Comparable<Variant> {
   }
 
   public double getPercentMissing() {
-    double total = this.genotypes.length;
+    double total = this.genotypes.size();
     double missing = 0;
-    for (Genotype g : this.genotypes)
-      if (g.isMissing())
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.isMissing(i))
         missing++;
     return missing / total;
   }
@@ -517,14 +573,15 @@ public class Variant implements Comparable<Variant> {
   public double getAlleleFrequencyPresent(int allele) {
     int count = 0;
     double present = 0;
-    for (Genotype g : this.genotypes)
-      if(!g.isMissing())
-        for (int a : g.getAlleles())
-          if (a > -1) {
-            present++;
-            if (a == allele)
-              count++;
-          }
+    for (int i = 0; i < this.genotypes.size(); i++)
+      for (int c = 0; c < this.genotypes.getNbChrom(i); c++) {
+        int a = this.genotypes.getAllele(i, c);
+        if (a > -1) {
+          present++;
+          if (a == allele)
+            count++;
+        }
+      }
 
     if (present == 0)
       return 0;
@@ -533,13 +590,13 @@ public class Variant implements Comparable<Variant> {
 
   public int getAlleleCount(int allele) {
     int count = 0;
-    for (Genotype g : this.genotypes)
-      count += g.getCount(allele);
+    for (int i = 0; i < this.genotypes.size(); i++)
+      count += this.genotypes.getCount(i, allele);
     return count;
   }
 
   public double getAlleleFrequencyTotal(int allele) {
-    return this.getAlleleCount(allele) / (2.0 * this.genotypes.length);
+    return this.getAlleleCount(allele) / (2.0 * this.genotypes.size());
   }
 
   public static int compare(String chrom1, int pos1, String chrom2, int pos2) {
@@ -593,14 +650,14 @@ public class Variant implements Comparable<Variant> {
       return false;
     int nbHQ = 0;
     int nbVariantHQ = 0;
-    for (Genotype g : getGenotypes())
-      if (g.getSumADOrElseDP() >= minSumAD && g.getGQ() >= minGQ) {
+    for (int i = 0; i < this.genotypes.size(); i++)
+      if (this.genotypes.getSumADOrElseDP(i) >= minSumAD && this.genotypes.getGQ(i) >= minGQ) {
         nbHQ++;
-        if (g.hasAlternate())
+        if (this.genotypes.hasAlternate(i))
           nbVariantHQ++;
       }
     //at least 80% of the individuals in the dataset had at least depth (DP) >= 10 and genotype quality (GQ) >= 20 (i.e. AN_Adj >= 60706*0.8*2 or 97130)
-    int nb = (int) (maxMissingRate * this.genotypes.length);
+    int nb = (int) (maxMissingRate * this.genotypes.size());
     if (nbHQ < nb)
       return false;
     //there was at least one individual harboring the alternate allele with depth >= 10 and GQ >= 20
@@ -646,12 +703,11 @@ public class Variant implements Comparable<Variant> {
     this.an = 0;
     Arrays.fill(ac, 0);
 
-    for (Genotype g : this.genotypes)
-      if (!g.isMissing()) {
-        an += g.getNbChrom();
-        for (int a : g.getAlleles())
-          ac[a]++;
-      }
+    for (int i = 0; i < this.genotypes.size(); i++) {
+      an += this.genotypes.getNbChrom(i);
+      for (int c = 0; c < this.genotypes.getNbChrom(i); c++)
+        ac[this.genotypes.getAllele(i, c)]++;
+    }
     this.updateACANAF(ac, an);
   }
 
@@ -661,13 +717,10 @@ public class Variant implements Comparable<Variant> {
     HashMap<String, Integer> acs = new HashMap<>();
     HashMap<String, Double> afs = new HashMap<>();
 
-    for (Genotype genotype : this.genotypes) {
-      int[] g = genotype.getAlleles();
-      if(g != null) {
-        int count = (g[0] == a ? 1 : 0) + (g[1] == a ? 1 : 0);
-        if (count > 0)
-          acs.merge(genotype.getSample().getGroup(), count, Integer::sum);
-      }
+    for (int i = 0; i < this.genotypes.size(); i++) {
+      int count = this.genotypes.getCount(i, a);
+      if (count > 0)
+        acs.merge(this.genotypes.getSample(i).getGroup(), count, Integer::sum);
     }
     for(String group : groupSizes.keySet()) {
       Integer ac = acs.get(group);
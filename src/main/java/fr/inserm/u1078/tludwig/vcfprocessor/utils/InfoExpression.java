@@ -0,0 +1,245 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A logical expression on the values of INFO fields (e.g. (i:DP>10&&f:FREQ<=0.1)||s:VARIANTTYPE!=SNP), compiled once into an
+ * immutable tree of predicates, that can be shared by all the threads.<br/>
+ * The values are read from the INFO index of the record (InfoValues), so each value is converted to a number at most once,
+ * even if several comparisons (or other filters) read the same key.<br/>
+ * As with BooleanParser, a comparison is true if it is true for at least one of the comma-separated values, and && has
+ * precedence over ||
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class InfoExpression {
+  private final String expression;
+  private final String[] keys;
+  private final Node root;
+
+  private InfoExpression(String expression, boolean numeric) throws EvaluatorParsingException {
+    this.expression = expression.replaceAll("\\s+", "");
+    Parser parser = new Parser(this.expression, numeric);
+    this.root = parser.parse();
+    this.keys = parser.keys.toArray(new String[0]);
+  }
+
+  /**
+   * @param expression the expression, with typed comparisons (type:KEY[OPERATOR]value), && and ||
+   * @return the compiled expression
+   * @throws EvaluatorParsingException if the expression is invalid
+   */
+  public static InfoExpression compile(String expression) throws EvaluatorParsingException {
+    return new InfoExpression(expression, false);
+  }
+
+  /**
+   * @param expression the expression, with untyped comparisons (KEY[OPERATOR]value) that are decimal, & or &&, | or ||
+   * @return the compiled expression
+   * @throws EvaluatorParsingException if the expression is invalid
+   */
+  public static InfoExpression compileNumeric(String expression) throws EvaluatorParsingException {
+    return new InfoExpression(expression, true);
+  }
+
+  public String getExpression() {
+    return expression;
+  }
+
+  public String[] getKeys() {
+    return keys;
+  }
+
+  /**
+   * @param values the values of the INFO fields of a record
+   * @return the value of the expression for this record
+   */
+  public boolean evaluate(InfoValues values) {
+    return root.test(values);
+  }
+
+  private interface Node {
+    boolean test(InfoValues values);
+  }
+
+  private static class And implements Node {
+    private final Node[] children;
+
+    And(List<Node> children) {
+      this.children = children.toArray(new Node[0]);
+    }
+
+    @Override
+    public boolean test(InfoValues values) {
+      for (Node child : children)
+        if (!child.test(values))
+          return false;
+      return true;
+    }
+  }
+
+  private static class Or implements Node {
+    private final Node[] children;
+
+    Or(List<Node> children) {
+      this.children = children.toArray(new Node[0]);
+    }
+
+    @Override
+    public boolean test(InfoValues values) {
+      for (Node child : children)
+        if (child.test(values))
+          return true;
+      return false;
+    }
+  }
+
+  /**
+   * A single comparison, with the same semantic as the Evaluators : an absent key is a single missing value
+   */
+  private static class Comparison implements Node {
+    private final String key;
+    private final Evaluator.Operator operator;
+    private final char type;
+    private final Object value;
+
+    Comparison(String key, Evaluator evaluator) {
+      this.key = key;
+      this.operator = evaluator.getOperator();
+      this.value = evaluator.getValue();
+      if (evaluator instanceof IntegerEvaluator)
+        this.type = IntegerEvaluator.TYPE;
+      else if (evaluator instanceof DecimalEvaluator)
+        this.type = DecimalEvaluator.TYPE;
+      else
+        this.type = StringEvaluator.TYPE;
+    }
+
+    @Override
+    public boolean test(InfoValues values) {
+      String[] parts = values.getValues(key);
+      if (parts == null)
+        return testMissing();
+      switch (type) {
+        case IntegerEvaluator.TYPE: {
+          int[] ints = values.getIntegers(key);
+          int expected = (Integer) value;
+          for (int i = 0; i < ints.length; i++)
+            if (Evaluator.evaluate(Integer.compare(ints[i], expected), parts[i].isEmpty(), operator))
+              return true;
+          return false;
+        }
+        case DecimalEvaluator.TYPE: {
+          double[] doubles = values.getDecimals(key);
+          double expected = (Double) value;
+          for (int i = 0; i < doubles.length; i++)
+            if (Evaluator.evaluate(Double.compare(Double.isNaN(doubles[i]) ? DecimalEvaluator.MISSING_DECIMAL : doubles[i], expected), parts[i].isEmpty(), operator))
+              return true;
+          return false;
+        }
+        default: {
+          String expected = (String) value;
+          for (String part : parts)
+            if (Evaluator.evaluate(part.compareTo(expected), part.isEmpty(), operator))
+              return true;
+          return false;
+        }
+      }
+    }
+
+    private boolean testMissing() {
+      switch (type) {
+        case IntegerEvaluator.TYPE:
+          return Evaluator.evaluate(Integer.compare(IntegerEvaluator.MISSING_INTEGER, (Integer) value), true, operator);
+        case DecimalEvaluator.TYPE:
+          return Evaluator.evaluate(Double.compare(DecimalEvaluator.MISSING_DECIMAL, (Double) value), true, operator);
+        default:
+          return Evaluator.evaluate(Evaluator.MISSING_STRING.compareTo((String) value), true, operator);
+      }
+    }
+  }
+
+  /**
+   * Recursive descent parser : expression := term (|| term)* ; term := factor (&& factor)* ; factor := (expression) | comparison
+   */
+  private static class Parser {
+    private final String input;
+    private final boolean numeric;
+    private int position = 0;
+    private final ArrayList<String> keys = new ArrayList<>();
+
+    Parser(String input, boolean numeric) {
+      this.input = input;
+      this.numeric = numeric;
+    }
+
+    Node parse() throws EvaluatorParsingException {
+      Node node = parseOr();
+      if (position < input.length())
+        throw new EvaluatorParsingException("Unexpected [" + input.substring(position) + "] in expression [" + input + "]");
+      return node;
+    }
+
+    private Node parseOr() throws EvaluatorParsingException {
+      ArrayList<Node> children = new ArrayList<>();
+      children.add(parseAnd());
+      while (consume('|'))
+        children.add(parseAnd());
+      return children.size() == 1 ? children.get(0) : new Or(children);
+    }
+
+    private Node parseAnd() throws EvaluatorParsingException {
+      ArrayList<Node> children = new ArrayList<>();
+      children.add(parseFactor());
+      while (consume('&'))
+        children.add(parseFactor());
+      return children.size() == 1 ? children.get(0) : new And(children);
+    }
+
+    private Node parseFactor() throws EvaluatorParsingException {
+      if (position < input.length() && input.charAt(position) == '(') {
+        position++;
+        Node node = parseOr();
+        if (position >= input.length() || input.charAt(position) != ')')
+          throw new EvaluatorParsingException("Missing closing parenthesis in expression [" + input + "]");
+        position++;
+        return node;
+      }
+      int start = position;
+      while (position < input.length() && !isDelimiter(position))
+        position++;
+      if (start == position)
+        throw new EvaluatorParsingException("Missing comparison at position " + start + " in expression [" + input + "]");
+      String token = input.substring(start, position);
+      Evaluator evaluator = Evaluator.newEvaluator(numeric ? DecimalEvaluator.TYPE + ":" + token : token);
+      if (!keys.contains(evaluator.getKey()))
+        keys.add(evaluator.getKey());
+      return new Comparison(evaluator.getKey(), evaluator);
+    }
+
+    /**
+     * Consumes the logical operator (doubled, or single in numeric mode)
+     */
+    private boolean consume(char operator) {
+      if (input.startsWith("" + operator + operator, position)) {
+        position += 2;
+        return true;
+      }
+      if (numeric && position < input.length() && input.charAt(position) == operator) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private boolean isDelimiter(int i) {
+      char c = input.charAt(i);
+      if (c == '(' || c == ')')
+        return true;
+      if (c == '&' || c == '|')
+        return numeric || (i + 1 < input.length() && input.charAt(i + 1) == c);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+/**
+ * The values of the INFO fields of a record, as read by InfoExpression.<br/>
+ * Keys are matched exactly, or regardless of case if there is no exact match
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public interface InfoValues {
+  /**
+   * @param key the INFO key
+   * @return the comma-separated values of the key, null if the key is absent or has no value
+   */
+  String[] getValues(String key);
+
+  /**
+   * @param key the INFO key
+   * @return the values of the key as integers (IntegerEvaluator.MISSING_INTEGER for missing or unparsable values), null if
+   * the key is absent or has no value
+   */
+  int[] getIntegers(String key);
+
+  /**
+   * @param key the INFO key
+   * @return the values of the key as decimals (NaN for missing or unparsable values), null if the key is absent or has no value
+   */
+  double[] getDecimals(String key);
+}
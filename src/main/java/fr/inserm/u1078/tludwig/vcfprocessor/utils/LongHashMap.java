@@ -0,0 +1,141 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive long keys (linear probing, power-of-2 capacity).
+ * No Entry/Long is allocated per mapping. Not thread-safe. Null values are not allowed.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class LongHashMap<V> {
+  private static final float LOAD_FACTOR = 0.6f;
+  /** marks the free slots, the mapping of the key FREE itself is stored aside */
+  private static final long FREE = 0;
+
+  private long[] keys;
+  private Object[] values;
+  private int mask;
+  private int size = 0;
+  private int threshold;
+  private V freeValue = null;
+
+  public LongHashMap() {
+    this(16);
+  }
+
+  /**
+   * @param expected the expected number of mappings
+   */
+  public LongHashMap(int expected) {
+    allocate(Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1);
+  }
+
+  private void allocate(int capacity) {
+    this.keys = new long[capacity];
+    this.values = new Object[capacity];
+    this.mask = capacity - 1;
+    this.threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * Spreads the bits of the key (murmur3 finalizer)
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /**
+   * @return the slot of the key, or the free slot where it would be inserted
+   */
+  private int slot(long key) {
+    int i = hash(key) & mask;
+    while (keys[i] != FREE && keys[i] != key)
+      i = (i + 1) & mask;
+    return i;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    if (key == FREE)
+      return freeValue;
+    return (V) values[slot(key)];
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /**
+   * @param key the key
+   * @param value the value (not null)
+   * @return the previous value associated to the key, or null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if (value == null)
+      throw new NullPointerException("Can't put null in " + this.getClass().getSimpleName());
+    if (key == FREE) {
+      V previous = freeValue;
+      freeValue = value;
+      if (previous == null)
+        size++;
+      return previous;
+    }
+    int i = slot(key);
+    V previous = (V) values[i];
+    values[i] = value;
+    if (previous == null) {
+      keys[i] = key;
+      if (++size > threshold)
+        rehash();
+    }
+    return previous;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++)
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+  }
+
+  /**
+   * @return the keys, in no particular order
+   */
+  public long[] keys() {
+    long[] ret = new long[size];
+    int n = 0;
+    if (freeValue != null)
+      ret[n++] = FREE;
+    for (int i = 0; i < keys.length; i++)
+      if (values[i] != null)
+        ret[n++] = keys[i];
+    return ret;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, FREE);
+    Arrays.fill(values, null);
+    freeValue = null;
+    size = 0;
+  }
+}
@@ -0,0 +1,70 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size circular reorder buffer : elements are pushed, in any order, by several producers, with their rank n (starting at 1),
+ * and are taken in order by a single consumer.
+ * The element of rank n is stored in slot n % window. A producer whose element is window ranks (or more) ahead of the consumer
+ * waits until the consumer catches up (backpressure).
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class ReorderWindow<T> {
+
+  private final int window;
+  private final AtomicReferenceArray<T> slots;
+  private volatile int next = 1;
+  private final AtomicInteger peakDepth = new AtomicInteger(0);
+
+  /**
+   * @param window the number of slots, that is the maximum distance between the rank of a pushed element and the next rank to be taken
+   */
+  public ReorderWindow(int window) {
+    this.window = Math.max(1, window);
+    this.slots = new AtomicReferenceArray<>(this.window);
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * @return the maximum number of ranks an element had to wait for, before it could be taken
+   */
+  public int getPeakDepth() {
+    return peakDepth.get();
+  }
+
+  /**
+   * Pushes the element of rank n, waiting while it is too far ahead of the consumer
+   * @param n the rank of the element
+   * @param value the element (not null)
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void put(int n, T value) throws InterruptedException {
+    if (value == null)
+      throw new NullPointerException("Can't add null to " + this.getClass().getSimpleName());
+    for (int attempt = 0; n - next >= window; attempt++)
+      RingBuffer.idle(attempt);
+    int depth = n - next;
+    peakDepth.accumulateAndGet(depth, Math::max);
+    slots.set(n % window, value);
+  }
+
+  /**
+   * Takes the next element, in rank order, waiting for it if necessary. Must only be called by a single consumer
+   * @return the element
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public T take() throws InterruptedException {
+    int index = next % window;
+    T value;
+    for (int attempt = 0; (value = slots.get(index)) == null; attempt++)
+      RingBuffer.idle(attempt);
+    slots.set(index, null);
+    next++;
+    return value;
+  }
+}
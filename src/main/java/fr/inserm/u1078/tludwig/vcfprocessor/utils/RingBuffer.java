@@ -0,0 +1,133 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free, multi-producer/multi-consumer ring buffer (sequence-numbered slots).
+ * Producers and consumers only contend on a CAS of their own cursor, and no node is allocated per element.
+ * The blocking methods (put/take) spin, then yield, then park when the buffer is full/empty.
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class RingBuffer<T> {
+
+  private static final int SPINS = 100;
+  private static final int YIELDS = 200;
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final int mask;
+  private final AtomicReferenceArray<T> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head = new AtomicLong(0);
+  private final AtomicLong tail = new AtomicLong(0);
+
+  /**
+   * @param minCapacity the minimal number of elements the buffer can hold (rounded up to the next power of 2)
+   */
+  public RingBuffer(int minCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+    this.mask = capacity - 1;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++)
+      this.sequences.set(i, i);
+  }
+
+  public int capacity() {
+    return this.mask + 1;
+  }
+
+  /**
+   * @return the approximate number of elements in the buffer
+   */
+  public int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, capacity()));
+  }
+
+  /**
+   * Adds an element if there is room
+   * @param value the element to add (not null)
+   * @return true if the element was added, false if the buffer is full
+   */
+  public boolean offer(T value) {
+    if (value == null)
+      throw new NullPointerException("Can't add null to " + this.getClass().getSimpleName());
+    long pos = tail.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.set(index, value);
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0)
+        return false;
+      else
+        pos = tail.get();
+    }
+  }
+
+  /**
+   * Removes the oldest element if there is one
+   * @return the element, or null if the buffer is empty
+   */
+  public T poll() {
+    long pos = head.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          T value = slots.getAndSet(index, null);
+          sequences.set(index, pos + mask + 1);
+          return value;
+        }
+        pos = head.get();
+      } else if (diff < 0)
+        return null;
+      else
+        pos = head.get();
+    }
+  }
+
+  /**
+   * Adds an element, waiting for room if necessary
+   * @param value the element to add (not null)
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void put(T value) throws InterruptedException {
+    for (int attempt = 0; !offer(value); attempt++)
+      idle(attempt);
+  }
+
+  /**
+   * Removes the oldest element, waiting for one if necessary
+   * @return the element
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public T take() throws InterruptedException {
+    T value;
+    for (int attempt = 0; (value = poll()) == null; attempt++)
+      idle(attempt);
+    return value;
+  }
+
+  static void idle(int attempt) throws InterruptedException {
+    if (Thread.interrupted())
+      throw new InterruptedException();
+    if (attempt < SPINS)
+      Thread.onSpinWait();
+    else if (attempt < SPINS + YIELDS)
+      Thread.yield();
+    else
+      LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, (attempt - SPINS - YIELDS) / 10)));
+  }
+}
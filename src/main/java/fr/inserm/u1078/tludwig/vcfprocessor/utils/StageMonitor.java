@@ -0,0 +1,65 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates, for the threads of a pipeline stage, the time spent working and the time spent waiting for the other stages
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class StageMonitor {
+
+  private final String name;
+  private final int threads;
+  private final LongAdder busy = new LongAdder();
+  private final LongAdder waiting = new LongAdder();
+
+  public StageMonitor(String name, int threads) {
+    this.name = name;
+    this.threads = threads;
+  }
+
+  /**
+   * @return a timestamp to pass to busy() or waited()
+   */
+  public static long now() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records working time
+   * @param since the timestamp at which the work started
+   * @return the current timestamp
+   */
+  public long busy(long since) {
+    long now = now();
+    busy.add(now - since);
+    return now;
+  }
+
+  /**
+   * Records waiting time
+   * @param since the timestamp at which the wait started
+   * @return the current timestamp
+   */
+  public long waited(long since) {
+    long now = now();
+    waiting.add(now - since);
+    return now;
+  }
+
+  /**
+   * @return the ratio of time spent working (between 0 and 1)
+   */
+  public double getUtilisation() {
+    double b = busy.sum();
+    double total = b + waiting.sum();
+    return total == 0 ? 0 : b / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (%d thread%s) : busy %.1f%%, waiting %.1f%% (%.1fs/%.1fs)", name, threads, threads > 1 ? "s" : "",
+        100 * getUtilisation(), 100 * (1 - getUtilisation()), busy.sum() / 1e9, waiting.sum() / 1e9);
+  }
+}
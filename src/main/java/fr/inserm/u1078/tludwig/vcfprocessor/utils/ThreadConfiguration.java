@@ -0,0 +1,93 @@
+package fr.inserm.u1078.tludwig.vcfprocessor.utils;
+
+/**
+ * Number of threads used by each stage of the parallel pipelines (readers / workers / consumers).
+ * Set once from the command line (--threads, --monothread)
+ *
+ * @author Thomas E. Ludwig (INSERM - U1078) 2026-10-17
+ */
+public class ThreadConfiguration {
+
+  public static final int DEFAULT_MAX_WORKERS = 8;
+  public static final int DEFAULT_MAX_READERS = 4;
+
+  private static boolean monoThread = false;
+  private static int readers = -1;
+  private static int workers = -1;
+  private static int consumers = -1;
+
+  private ThreadConfiguration() {
+  }
+
+  /**
+   * Parses the value of the --threads option
+   * @param value either the total number of threads "N" (one reader, one consumer and N-2 workers), or "R:W:C" for the size of each pool
+   * @throws NumberFormatException if the value is not valid
+   */
+  public static void parse(String value) throws NumberFormatException {
+    String[] f = value.split(":");
+    if (f.length == 1) {
+      int total = Integer.parseInt(f[0]);
+      if (total < 1)
+        throw new NumberFormatException("Number of threads must be at least 1, found [" + value + "]");
+      readers = 1;
+      workers = Math.max(1, total - 2);
+      consumers = 1;
+    } else if (f.length == 3) {
+      int r = Integer.parseInt(f[0]);
+      int w = Integer.parseInt(f[1]);
+      int c = Integer.parseInt(f[2]);
+      if (r < 1 || w < 1 || c < 1)
+        throw new NumberFormatException("Each pool must have at least 1 thread, found [" + value + "]");
+      readers = r;
+      workers = w;
+      consumers = c;
+    } else
+      throw new NumberFormatException("Expected N or readers:workers:consumers, found [" + value + "]");
+  }
+
+  public static void setMonoThread() {
+    monoThread = true;
+  }
+
+  public static boolean isMonoThread() {
+    return monoThread;
+  }
+
+  /**
+   * @return the number of threads reading/decoding the input files. If not set, one for every 4 available processors, and no more than 4
+   */
+  public static int getReaders() {
+    if (monoThread)
+      return 1;
+    if (readers > 0)
+      return readers;
+    return Math.max(1, Math.min(DEFAULT_MAX_READERS, Runtime.getRuntime().availableProcessors() / 4));
+  }
+
+  /**
+   * @return the number of threads processing the records. If not set, there must be one consumer and one reader beside the workers, and no more than 8 workers
+   */
+  public static int getWorkers() {
+    if (monoThread)
+      return 1;
+    if (workers > 0)
+      return workers;
+    return Math.max(1, Math.min(DEFAULT_MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 3));
+  }
+
+  /**
+   * @return the number of threads writing/encoding the output. If not set, one for every 4 available processors, and no more than 4
+   */
+  public static int getConsumers() {
+    if (monoThread)
+      return 1;
+    if (consumers > 0)
+      return consumers;
+    return Math.max(1, Math.min(DEFAULT_MAX_READERS, Runtime.getRuntime().availableProcessors() / 4));
+  }
+
+  public static String getDescription() {
+    return "readers[" + getReaders() + "] workers[" + getWorkers() + "] consumers[" + getConsumers() + "]";
+  }
+}